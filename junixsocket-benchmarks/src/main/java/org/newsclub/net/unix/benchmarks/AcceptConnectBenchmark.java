@@ -0,0 +1,92 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Connection setup: the accept rate (connect, accept and close per operation), and the connect
+ * latency up to the first byte received from the server.
+ *
+ * @author Christian Kohlschütter
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AcceptConnectBenchmark {
+  @Param({BenchmarkUtil.JUNIXSOCKET, BenchmarkUtil.JDK})
+  public String impl;
+
+  private BenchmarkUtil.Server server;
+
+  private final ByteBuffer one = ByteBuffer.allocateDirect(1);
+
+  @Setup
+  public void setup() throws IOException {
+    server = new BenchmarkUtil.Server(impl);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    server.close();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public boolean acceptRate() throws IOException {
+    try (SocketChannel client = BenchmarkUtil.openSocketChannel(impl)) {
+      boolean connected = client.connect(server.address);
+      server.channel.accept().close();
+      return connected;
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int connectLatency() throws IOException {
+    try (SocketChannel client = BenchmarkUtil.openSocketChannel(impl)) {
+      client.connect(server.address);
+      try (SocketChannel accepted = server.channel.accept()) {
+        one.clear();
+        accepted.write(one);
+      }
+      one.clear();
+      BenchmarkUtil.readFully(client, one);
+      return one.get(0);
+    }
+  }
+}
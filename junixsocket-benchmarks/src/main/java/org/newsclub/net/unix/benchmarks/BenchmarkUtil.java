@@ -0,0 +1,231 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.benchmarks;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.newsclub.net.unix.AFUNIXServerSocketChannel;
+import org.newsclub.net.unix.AFUNIXSocketAddress;
+import org.newsclub.net.unix.AFUNIXSocketChannel;
+
+/**
+ * Helper methods shared by the benchmarks.
+ *
+ * Every benchmark is parameterized by an "impl" parameter, which selects junixsocket
+ * ({@link #JUNIXSOCKET}) or the {@code java.nio} baseline ({@link #JDK}, using
+ * {@link UnixDomainSocketAddress} where the JDK supports the operation).
+ *
+ * @author Christian Kohlschütter
+ */
+final class BenchmarkUtil {
+  static final String JUNIXSOCKET = "junixsocket";
+  static final String JDK = "jdk";
+
+  private BenchmarkUtil() {
+    throw new IllegalStateException("No instances");
+  }
+
+  static boolean isJunixsocket(String impl) {
+    if (JUNIXSOCKET.equals(impl)) {
+      return true;
+    } else if (JDK.equals(impl)) {
+      return false;
+    } else {
+      throw new IllegalArgumentException("Unsupported impl: " + impl);
+    }
+  }
+
+  /**
+   * Returns a path for a new socket file in the temporary directory; the file itself is not
+   * created.
+   *
+   * @return The path.
+   * @throws IOException on error.
+   */
+  static Path newSocketPath() throws IOException {
+    Path p = Files.createTempFile("jux", ".sock");
+    Files.delete(p);
+    return p;
+  }
+
+  static ServerSocketChannel openServerSocketChannel(String impl) throws IOException {
+    if (isJunixsocket(impl)) {
+      return AFUNIXServerSocketChannel.open();
+    } else {
+      return ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    }
+  }
+
+  static SocketChannel openSocketChannel(String impl) throws IOException {
+    if (isJunixsocket(impl)) {
+      return AFUNIXSocketChannel.open();
+    } else {
+      return SocketChannel.open(StandardProtocolFamily.UNIX);
+    }
+  }
+
+  static SocketAddress socketAddress(String impl, Path path) throws IOException {
+    if (isJunixsocket(impl)) {
+      return AFUNIXSocketAddress.of(path);
+    } else {
+      return UnixDomainSocketAddress.of(path);
+    }
+  }
+
+  /**
+   * Reads exactly {@code bb.remaining()} bytes.
+   *
+   * @param ch The channel to read from.
+   * @param bb The buffer to read into.
+   * @throws IOException on error, or upon premature end of stream.
+   */
+  static void readFully(ReadableByteChannel ch, ByteBuffer bb) throws IOException {
+    while (bb.hasRemaining()) {
+      if (ch.read(bb) < 0) {
+        throw new EOFException();
+      }
+    }
+  }
+
+  /**
+   * Reads exactly {@code buf.length} bytes.
+   *
+   * @param in The stream to read from.
+   * @param buf The buffer to read into.
+   * @throws IOException on error, or upon premature end of stream.
+   */
+  static void readFully(InputStream in, byte[] buf) throws IOException {
+    int total = 0;
+    while (total < buf.length) {
+      int read = in.read(buf, total, buf.length - total);
+      if (read < 0) {
+        throw new EOFException();
+      }
+      total += read;
+    }
+  }
+
+  /**
+   * Opens the given number of connected channel pairs, using the same temporary server socket.
+   *
+   * @param impl The implementation.
+   * @param count The number of pairs.
+   * @return The pairs.
+   * @throws IOException on error.
+   */
+  static ChannelPair[] openChannelPairs(String impl, int count) throws IOException {
+    ChannelPair[] pairs = new ChannelPair[count];
+    try (Server server = new Server(impl)) {
+      for (int i = 0; i < count; i++) {
+        pairs[i] = new ChannelPair(server, impl);
+      }
+    } catch (IOException e) {
+      closeAll(null, pairs);
+      throw e;
+    }
+    return pairs;
+  }
+
+  /**
+   * Closes the given selector (if any), and all channel pairs.
+   *
+   * @param selector The selector, or {@code null}.
+   * @param pairs The pairs, possibly containing {@code null} elements.
+   * @throws IOException on error.
+   */
+  static void closeAll(Selector selector, ChannelPair[] pairs) throws IOException {
+    if (selector != null) {
+      selector.close();
+    }
+    for (ChannelPair pair : pairs) {
+      if (pair != null) {
+        pair.close();
+      }
+    }
+  }
+
+  /**
+   * A bound server socket along with its socket file; closing it also deletes the file.
+   */
+  static final class Server implements Closeable {
+    final ServerSocketChannel channel;
+    final SocketAddress address;
+    private final Path path;
+
+    Server(String impl) throws IOException {
+      this.path = newSocketPath();
+      this.address = socketAddress(impl, path);
+      this.channel = openServerSocketChannel(impl);
+      channel.bind(address, 1024);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        channel.close();
+      } finally {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+
+  /**
+   * A pair of connected stream sockets, established via a temporary server socket, so both
+   * implementations are measured on identically set-up connections.
+   */
+  static final class ChannelPair implements Closeable {
+    final SocketChannel client;
+    final SocketChannel server;
+
+    ChannelPair(String impl) throws IOException {
+      try (Server srv = new Server(impl)) {
+        client = openSocketChannel(impl);
+        client.connect(srv.address);
+        server = srv.channel.accept();
+      }
+    }
+
+    ChannelPair(Server srv, String impl) throws IOException {
+      client = openSocketChannel(impl);
+      client.connect(srv.address);
+      server = srv.channel.accept();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        client.close();
+      } finally {
+        server.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.benchmarks;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.newsclub.net.unix.AFDatagramChannel;
+import org.newsclub.net.unix.AFUNIXDatagramChannel;
+import org.newsclub.net.unix.AFUNIXSocketPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Datagram throughput: each operation sends a datagram of {@code payloadSize} bytes and receives it
+ * on the other end, either one at a time or in batches of {@value #BATCH_SIZE}.
+ *
+ * The JDK does not support AF_UNIX datagrams, so the {@code java.nio} baseline uses UDP over the
+ * loopback interface instead.
+ *
+ * @author Christian Kohlschütter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DatagramBenchmark {
+  static final int BATCH_SIZE = 32;
+
+  @Param({BenchmarkUtil.JUNIXSOCKET, BenchmarkUtil.JDK})
+  public String impl;
+
+  @Param({"64", "1024"})
+  public int payloadSize;
+
+  private DatagramChannel sender;
+  private DatagramChannel receiver;
+
+  private ByteBuffer sendBuffer;
+  private ByteBuffer receiveBuffer;
+  private ByteBuffer[] sendBuffers;
+  private ByteBuffer[] receiveBuffers;
+
+  @Setup
+  public void setup() throws IOException {
+    if (BenchmarkUtil.isJunixsocket(impl)) {
+      AFUNIXSocketPair<AFUNIXDatagramChannel> pair = AFUNIXSocketPair.openDatagram();
+      sender = pair.getSocket1();
+      receiver = pair.getSocket2();
+    } else {
+      InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+      sender = DatagramChannel.open(StandardProtocolFamily.INET).bind(loopback);
+      receiver = DatagramChannel.open(StandardProtocolFamily.INET).bind(loopback);
+      sender.connect(receiver.getLocalAddress());
+      receiver.connect(sender.getLocalAddress());
+    }
+
+    sendBuffer = ByteBuffer.allocateDirect(payloadSize);
+    receiveBuffer = ByteBuffer.allocateDirect(payloadSize);
+    sendBuffers = new ByteBuffer[BATCH_SIZE];
+    receiveBuffers = new ByteBuffer[BATCH_SIZE];
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      sendBuffers[i] = ByteBuffer.allocateDirect(payloadSize);
+      receiveBuffers[i] = ByteBuffer.allocateDirect(payloadSize);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    try {
+      sender.close();
+    } finally {
+      receiver.close();
+    }
+  }
+
+  @Benchmark
+  public int sendReceive() throws IOException {
+    sendBuffer.clear();
+    sender.write(sendBuffer);
+    receiveBuffer.clear();
+    return receiver.read(receiveBuffer);
+  }
+
+  /**
+   * Sends and receives {@value #BATCH_SIZE} datagrams; junixsocket uses its batch API (Linux:
+   * sendmmsg/recvmmsg), the baseline sends and receives them one by one.
+   *
+   * @return The number of datagrams received.
+   * @throws IOException on error.
+   */
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public int sendReceiveBatch() throws IOException {
+    for (ByteBuffer bb : sendBuffers) {
+      bb.clear();
+    }
+    for (ByteBuffer bb : receiveBuffers) {
+      bb.clear();
+    }
+
+    if (sender instanceof AFDatagramChannel) {
+      AFDatagramChannel<?> afSender = (AFDatagramChannel<?>) sender;
+      AFDatagramChannel<?> afReceiver = (AFDatagramChannel<?>) receiver;
+      int sent = 0;
+      while (sent < BATCH_SIZE) {
+        sent += afSender.send(sendBuffers, sent, BATCH_SIZE - sent, null);
+      }
+      int received = 0;
+      while (received < BATCH_SIZE) {
+        received += afReceiver.receive(receiveBuffers, received, BATCH_SIZE - received, null);
+      }
+      return received;
+    } else {
+      for (ByteBuffer bb : sendBuffers) {
+        sender.write(bb);
+      }
+      for (ByteBuffer bb : receiveBuffers) {
+        receiver.read(bb);
+      }
+      return BATCH_SIZE;
+    }
+  }
+}
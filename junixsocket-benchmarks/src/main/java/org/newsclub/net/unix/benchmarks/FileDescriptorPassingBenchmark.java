@@ -0,0 +1,120 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.benchmarks;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.newsclub.net.unix.AFUNIXSocketChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * File descriptor passing (SCM_RIGHTS): each operation sends a one-byte message along with
+ * {@code numFileDescriptors} file descriptors, receives it, and closes the received descriptors.
+ *
+ * The JDK cannot pass file descriptors, so the {@code java.nio} baseline sends and receives the
+ * same one-byte message without any file descriptors; it marks the lower bound of the operation.
+ *
+ * @author Christian Kohlschütter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileDescriptorPassingBenchmark {
+  @Param({BenchmarkUtil.JUNIXSOCKET, BenchmarkUtil.JDK})
+  public String impl;
+
+  @Param({"1", "8"})
+  public int numFileDescriptors;
+
+  private BenchmarkUtil.ChannelPair pair;
+  private Path file;
+  private FileInputStream fileIn;
+  private FileDescriptor[] fds;
+
+  private final ByteBuffer one = ByteBuffer.allocateDirect(1);
+
+  @Setup
+  public void setup() throws IOException {
+    pair = new BenchmarkUtil.ChannelPair(impl);
+    file = Files.createTempFile("jux", ".bin");
+    fileIn = new FileInputStream(file.toFile());
+    fds = new FileDescriptor[numFileDescriptors];
+    Arrays.fill(fds, fileIn.getFD());
+
+    if (pair.server instanceof AFUNIXSocketChannel) {
+      ((AFUNIXSocketChannel) pair.server).setAncillaryReceiveBufferSize(1024);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    try {
+      pair.close();
+      fileIn.close();
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Benchmark
+  public int sendReceive() throws IOException {
+    AFUNIXSocketChannel afClient = null;
+    if (pair.client instanceof AFUNIXSocketChannel) {
+      afClient = (AFUNIXSocketChannel) pair.client;
+      afClient.setOutboundFileDescriptors(fds);
+    }
+    one.clear();
+    pair.client.write(one);
+
+    one.clear();
+    BenchmarkUtil.readFully(pair.server, one);
+
+    if (afClient == null) {
+      return 0;
+    }
+    FileDescriptor[] received = ((AFUNIXSocketChannel) pair.server).getReceivedFileDescriptors();
+    if (received == null) {
+      throw new IOException("No file descriptors received");
+    }
+    for (FileDescriptor fd : received) {
+      new FileInputStream(fd).close();
+    }
+    return received.length;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.newsclub.net.unix.AFSocket;
+import org.newsclub.net.unix.AFUNIXSocketChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Request/response latency: each operation sends {@code payloadSize} bytes on one end of a
+ * connection, and waits until they are echoed back by a thread on the other end.
+ *
+ * The result is a latency distribution; see the {@code p0.50}, {@code p0.99} and {@code p0.999}
+ * percentiles of the {@link Mode#SampleTime} output. {@code busyPollMicros} configures busy-poll
+ * mode on both ends (see {@link AFSocket#setBusyPollMicros(int)}); 0 measures plain blocking
+ * reads.
+ *
+ * @author Christian Kohlschütter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PingPongLatencyBenchmark {
+  @Param({"0", "20", "100"})
+  public int busyPollMicros;
+
+  @Param({"64"})
+  public int payloadSize;
+
+  private BenchmarkUtil.ChannelPair pair;
+  private InputStream in;
+  private OutputStream out;
+  private byte[] array;
+  private Thread echoThread;
+
+  @Setup
+  public void setup() throws IOException {
+    pair = new BenchmarkUtil.ChannelPair(BenchmarkUtil.JUNIXSOCKET);
+    AFSocket<?> client = ((AFUNIXSocketChannel) pair.client).socket();
+    AFSocket<?> server = ((AFUNIXSocketChannel) pair.server).socket();
+    client.setBusyPollMicros(busyPollMicros);
+    server.setBusyPollMicros(busyPollMicros);
+
+    in = client.getInputStream();
+    out = client.getOutputStream();
+    array = new byte[payloadSize];
+
+    InputStream serverIn = server.getInputStream();
+    OutputStream serverOut = server.getOutputStream();
+    echoThread = new Thread(() -> echo(serverIn, serverOut), "echo");
+    echoThread.setDaemon(true);
+    echoThread.start();
+  }
+
+  private void echo(InputStream serverIn, OutputStream serverOut) {
+    byte[] buf = new byte[payloadSize];
+    try {
+      while (true) { // NOPMD.WhileLoopWithLiteralBoolean
+        BenchmarkUtil.readFully(serverIn, buf);
+        serverOut.write(buf);
+      }
+    } catch (IOException e) {
+      // closed
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException, InterruptedException {
+    pair.close();
+    echoThread.join();
+  }
+
+  @Benchmark
+  public byte[] pingPong() throws IOException {
+    out.write(array);
+    BenchmarkUtil.readFully(in, array);
+    return array;
+  }
+}
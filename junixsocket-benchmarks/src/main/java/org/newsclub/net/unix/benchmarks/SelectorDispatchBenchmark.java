@@ -0,0 +1,129 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Dispatching ready keys: compares the classic {@code selectedKeys()} iteration loop with
+ * {@link Selector#selectNow(Consumer)}, which passes the ready keys directly to an action.
+ *
+ * {@code numReady} of the {@code numKeys} registered channels are kept readable (the data is never
+ * consumed), similar to a busy server with many mostly-idle connections.
+ *
+ * Each key requires a connected pair of sockets, i.e., two file descriptors; the 10k case therefore
+ * requires raising the open file limit accordingly (e.g., {@code ulimit -n 32768}).
+ *
+ * By default, junixsocket's selector uses poll(2); run with
+ * {@code -jvmArgsAppend -Dorg.newsclub.net.unix.selector.epoll=true} to measure the epoll-based
+ * selector on Linux.
+ *
+ * @author Christian Kohlschütter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectorDispatchBenchmark {
+  @Param({BenchmarkUtil.JUNIXSOCKET, BenchmarkUtil.JDK})
+  public String impl;
+
+  @Param({"1000", "10000"})
+  public int numKeys;
+
+  @Param({"10", "100"})
+  public int numReady;
+
+  private BenchmarkUtil.ChannelPair[] pairs;
+  private Selector selector;
+
+  private int readyOpsSum;
+  private final Consumer<SelectionKey> action = (key) -> readyOpsSum += key.readyOps();
+
+  @Setup
+  public void setup() throws IOException {
+    if (numReady > numKeys) {
+      throw new IllegalStateException("numReady > numKeys");
+    }
+
+    pairs = BenchmarkUtil.openChannelPairs(impl, numKeys);
+
+    selector = pairs[0].server.provider().openSelector();
+    ByteBuffer one = ByteBuffer.allocateDirect(1);
+    int step = numKeys / numReady;
+    for (int i = 0; i < numKeys; i++) {
+      BenchmarkUtil.ChannelPair pair = pairs[i];
+      pair.server.configureBlocking(false);
+      pair.server.register(selector, SelectionKey.OP_READ, pair);
+      if (i % step == 0) {
+        one.clear();
+        pair.client.write(one);
+      }
+    }
+    if (selector.selectNow() != numReady) {
+      throw new IllegalStateException("Unexpected number of ready keys");
+    }
+    selector.selectedKeys().clear();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    BenchmarkUtil.closeAll(selector, pairs);
+  }
+
+  @Benchmark
+  public int selectedKeysLoop() throws IOException {
+    selector.selectNow();
+    int sum = 0;
+    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+    while (it.hasNext()) {
+      SelectionKey key = it.next();
+      it.remove();
+      sum += key.readyOps();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int selectWithAction() throws IOException {
+    readyOpsSum = 0;
+    selector.selectNow(action);
+    return readyOpsSum;
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.benchmarks;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Socket address resolution: creating addresses from paths (for a single path, and for more
+ * distinct paths than fit into junixsocket's address cache), and retrieving the local address of a
+ * bound socket, which junixsocket resolves from the native socket address.
+ *
+ * @author Christian Kohlschütter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SocketAddressBenchmark {
+  /**
+   * Larger than the default maximum size of junixsocket's address cache (4096).
+   */
+  private static final int NUM_DISTINCT_PATHS = 8192;
+
+  @Param({BenchmarkUtil.JUNIXSOCKET, BenchmarkUtil.JDK})
+  public String impl;
+
+  private Path[] paths;
+  private int next;
+
+  private BenchmarkUtil.Server server;
+
+  @Setup
+  public void setup() throws IOException {
+    Path dir = BenchmarkUtil.newSocketPath().getParent();
+    paths = new Path[NUM_DISTINCT_PATHS];
+    for (int i = 0; i < NUM_DISTINCT_PATHS; i++) {
+      paths[i] = dir.resolve("jux-benchmark-" + i + ".sock");
+    }
+
+    server = new BenchmarkUtil.Server(impl);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    server.close();
+  }
+
+  @Benchmark
+  public SocketAddress ofSamePath() throws IOException {
+    return BenchmarkUtil.socketAddress(impl, paths[0]);
+  }
+
+  @Benchmark
+  public SocketAddress ofDistinctPaths() throws IOException {
+    Path p = paths[next];
+    next = (next + 1) % NUM_DISTINCT_PATHS;
+    return BenchmarkUtil.socketAddress(impl, p);
+  }
+
+  @Benchmark
+  public SocketAddress localAddress() throws IOException {
+    return server.channel.getLocalAddress();
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.newsclub.net.unix.AFSocket;
+import org.newsclub.net.unix.AFUNIXSocketAddress;
+import org.newsclub.net.unix.server.AFSocketServer;
+import org.newsclub.net.unix.server.SocketServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Connection-per-thread serving: measures one-byte round-trips with a {@link SocketServer} that
+ * serves {@code clients} concurrently open connections, each on its own thread, either from a
+ * {@link java.util.concurrent.ForkJoinPool} ({@code executor=forkjoin}), or a virtual thread
+ * ({@code executor=virtual}, see {@link SocketServer#virtualThreadFactory()}).
+ *
+ * Virtual threads require Java 21 or newer; on older versions, {@code executor=virtual} falls back
+ * to the {@link java.util.concurrent.ForkJoinPool}. Run with
+ * {@code -jvmArgsAppend -Dorg.newsclub.net.unix.virtual-thread-poller=true} so blocking reads do
+ * not pin the virtual threads' carrier threads.
+ *
+ * This is a junixsocket-only benchmark; the JDK does not provide an equivalent server.
+ *
+ * @author Christian Kohlschütter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class SocketServerBenchmark {
+  static final String FORK_JOIN = "forkjoin";
+  static final String VIRTUAL = "virtual";
+
+  @Param({FORK_JOIN, VIRTUAL})
+  public String executor;
+
+  @Param({"1000", "10000"})
+  public int clients;
+
+  private Path path;
+  private AFSocketServer<AFUNIXSocketAddress> server;
+  private SocketChannel[] channels;
+
+  @Setup
+  public void setup() throws IOException, InterruptedException {
+    path = BenchmarkUtil.newSocketPath();
+    AFUNIXSocketAddress address = AFUNIXSocketAddress.of(path);
+
+    server = new AFSocketServer<AFUNIXSocketAddress>(address) {
+      @Override
+      protected void doServeSocket(AFSocket<? extends AFUNIXSocketAddress> sock)
+          throws IOException {
+        try (InputStream in = sock.getInputStream(); OutputStream out = sock.getOutputStream()) {
+          int b;
+          while ((b = in.read()) != -1) {
+            out.write(b);
+          }
+        }
+      }
+    };
+    server.setMaxConcurrentConnections(clients);
+    server.setSocketTimeout(0);
+    if (VIRTUAL.equals(executor)) {
+      server.setExecutorServiceFactory(SocketServer.virtualThreadFactory());
+    } else if (FORK_JOIN.equals(executor)) {
+      server.setExecutorServiceFactory(SocketServer.forkJoinPoolFactory());
+    } else {
+      throw new IllegalArgumentException("Unsupported executor: " + executor);
+    }
+    if (!server.startAndWaitToBecomeReady(10, TimeUnit.SECONDS)) {
+      throw new IOException("Server did not start");
+    }
+
+    channels = new SocketChannel[clients];
+    for (int i = 0; i < clients; i++) {
+      channels[i] = BenchmarkUtil.openSocketChannel(BenchmarkUtil.JUNIXSOCKET);
+      channels[i].connect(address);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    try {
+      for (SocketChannel ch : channels) {
+        if (ch != null) {
+          ch.close();
+        }
+      }
+      server.stop();
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  /**
+   * The connections used by a single benchmark thread; connections are partitioned among threads,
+   * so every connection is only used by one thread.
+   */
+  @State(Scope.Thread)
+  public static class Client {
+    private final ByteBuffer one = ByteBuffer.allocateDirect(1);
+    private int next;
+    private int step;
+
+    @Setup
+    public void setup(ThreadParams params) {
+      next = params.getThreadIndex();
+      step = params.getThreadCount();
+    }
+  }
+
+  @Benchmark
+  public int roundTrip(Client client) throws IOException {
+    SocketChannel ch = channels[client.next];
+    client.next += client.step;
+    if (client.next >= clients) {
+      client.next %= client.step;
+    }
+
+    ByteBuffer one = client.one;
+    one.clear();
+    ch.write(one);
+    one.clear();
+    BenchmarkUtil.readFully(ch, one);
+    return one.get(0);
+  }
+}
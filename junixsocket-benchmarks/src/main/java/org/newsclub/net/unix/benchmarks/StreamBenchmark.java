@@ -0,0 +1,118 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+import org.newsclub.net.unix.AFUNIXSocketChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Stream socket throughput: each operation writes {@code payloadSize} bytes on one end of a
+ * connection and reads them back on the other end.
+ *
+ * For the {@code byte[]} case, the {@code java.nio} baseline wraps the channels using
+ * {@link Channels}, since JDK AF_UNIX channels do not provide a {@link java.net.Socket}.
+ *
+ * @author Christian Kohlschütter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamBenchmark {
+  @Param({BenchmarkUtil.JUNIXSOCKET, BenchmarkUtil.JDK})
+  public String impl;
+
+  @Param({"64", "8192"})
+  public int payloadSize;
+
+  private BenchmarkUtil.ChannelPair pair;
+  private InputStream in;
+  private OutputStream out;
+
+  private byte[] array;
+  private ByteBuffer heapBuffer;
+  private ByteBuffer directBuffer;
+
+  @Setup
+  public void setup() throws IOException {
+    pair = new BenchmarkUtil.ChannelPair(impl);
+    if (BenchmarkUtil.isJunixsocket(impl)) {
+      in = ((AFUNIXSocketChannel) pair.server).socket().getInputStream();
+      out = ((AFUNIXSocketChannel) pair.client).socket().getOutputStream();
+    } else {
+      in = Channels.newInputStream(pair.server);
+      out = Channels.newOutputStream(pair.client);
+    }
+
+    array = new byte[payloadSize];
+    heapBuffer = ByteBuffer.allocate(payloadSize);
+    directBuffer = ByteBuffer.allocateDirect(payloadSize);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    pair.close();
+  }
+
+  @Benchmark
+  public int byteArray() throws IOException {
+    out.write(array);
+    BenchmarkUtil.readFully(in, array);
+    return array.length;
+  }
+
+  @Benchmark
+  public int heapByteBuffer() throws IOException {
+    return writeAndRead(heapBuffer);
+  }
+
+  @Benchmark
+  public int directByteBuffer() throws IOException {
+    return writeAndRead(directBuffer);
+  }
+
+  private int writeAndRead(ByteBuffer bb) throws IOException {
+    bb.clear();
+    while (bb.hasRemaining()) {
+      pair.client.write(bb);
+    }
+    bb.clear();
+    BenchmarkUtil.readFully(pair.server, bb);
+    return bb.position();
+  }
+}
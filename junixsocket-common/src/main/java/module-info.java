@@ -8,6 +8,7 @@ module org.newsclub.net.unix {
 
   requires java.base;
   requires static java.rmi;
+  requires static java.management;
   requires static transitive com.kohlschutter.annotations.compiletime;
   requires static org.eclipse.jdt.annotation;
   requires static animal.sniffer.annotations;
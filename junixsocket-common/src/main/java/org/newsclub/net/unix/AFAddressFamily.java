@@ -65,6 +65,8 @@ public final class AFAddressFamily<A extends AFSocketAddress> {
 
   private SelectorProvider selectorProvider = null;
 
+  private final AFSocketAddressCache<A> addressCache = new AFSocketAddressCache<>();
+
   static {
     NativeUnixSocket.isLoaded(); // trigger init
   }
@@ -129,6 +131,47 @@ public final class AFAddressFamily<A extends AFSocketAddress> {
     return domain;
   }
 
+  /**
+   * Returns the cache of {@link AFSocketAddress} instances of this address family.
+   *
+   * @return The cache.
+   */
+  AFSocketAddressCache<A> getAddressCache() {
+    return addressCache;
+  }
+
+  /**
+   * Returns the number of times an {@link AFSocketAddress} of this address family could be reused
+   * from the address cache, since the start of this process.
+   *
+   * @return The number of cache hits.
+   * @see #getAddressCacheMissCount()
+   */
+  public long getAddressCacheHitCount() {
+    return addressCache.getHitCount();
+  }
+
+  /**
+   * Returns the number of times an {@link AFSocketAddress} of this address family had to be
+   * created because it was not found in the address cache, since the start of this process.
+   *
+   * @return The number of cache misses.
+   * @see #getAddressCacheHitCount()
+   */
+  public long getAddressCacheMissCount() {
+    return addressCache.getMissCount();
+  }
+
+  /**
+   * Returns the number of addresses of this address family that have been evicted from the
+   * address cache because it reached its maximum size, since the start of this process.
+   *
+   * @return The number of evictions.
+   */
+  public long getAddressCacheEvictionCount() {
+    return addressCache.getEvictionCount();
+  }
+
   String getJuxString() {
     return juxString;
   }
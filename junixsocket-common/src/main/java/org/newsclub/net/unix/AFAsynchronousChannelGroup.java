@@ -0,0 +1,300 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ShutdownChannelGroupException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * An {@link AsynchronousChannelGroup} for junixsocket's asynchronous channels.
+ *
+ * Readiness of all channels in the group is tracked by a single {@link AFSelector} (using epoll,
+ * where supported), run by a dedicated event-loop thread. The non-blocking I/O for an operation is
+ * attempted right away; only if it would block, the channel is registered for readiness, and the
+ * operation is retried from the event loop. Completion handlers are invoked by the group's
+ * executor, which is either a fixed pool of threads, or a user-supplied {@link ExecutorService}
+ * (see {@link AFAsynchronousChannelProvider}).
+ *
+ * @author Christian Kohlschütter
+ */
+public final class AFAsynchronousChannelGroup extends AsynchronousChannelGroup {
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  private final AFSelector selector;
+  private final ExecutorService executor;
+  private final ScheduledThreadPoolExecutor timer;
+  private final Thread loopThread;
+
+  private final Queue<Runnable> loopTasks = new ConcurrentLinkedQueue<>();
+  private final Set<Closeable> channels = ConcurrentHashMap.newKeySet();
+  private final CountDownLatch terminated = new CountDownLatch(1);
+  private volatile boolean shutdown = false;
+
+  AFAsynchronousChannelGroup(AFAsynchronousChannelProvider<?> provider, ExecutorService executor)
+      throws IOException {
+    super(provider);
+    this.executor = executor;
+    this.selector = new AFSelector(provider.selectorProvider(), true);
+
+    int id = THREAD_COUNTER.incrementAndGet();
+    this.timer = new ScheduledThreadPoolExecutor(1, (r) -> {
+      Thread t = new Thread(r, "junixsocket async timeouts " + id);
+      t.setDaemon(true);
+      return t;
+    });
+    timer.setRemoveOnCancelPolicy(true);
+
+    Thread t = new Thread(this::runLoop, "junixsocket async event loop " + id);
+    t.setDaemon(true);
+    this.loopThread = t;
+    t.start();
+  }
+
+  /**
+   * Registers a channel with this group.
+   *
+   * @param channel The channel.
+   * @throws ShutdownChannelGroupException if the group has been shut down.
+   */
+  void addChannel(Closeable channel) {
+    if (shutdown) {
+      throw new ShutdownChannelGroupException();
+    }
+    channels.add(channel);
+  }
+
+  /**
+   * Removes a (closed) channel from this group.
+   *
+   * @param channel The channel.
+   */
+  void removeChannel(Closeable channel) {
+    if (channels.remove(channel) && shutdown) {
+      selector.wakeup();
+    }
+  }
+
+  /**
+   * Waits for the given channel to become ready for the given operation, and then calls the
+   * registration's {@link ReadyHandler}, from the event loop thread.
+   *
+   * @param reg The registration.
+   * @param op The operation ({@link SelectionKey#OP_READ}, etc.).
+   */
+  void await(Registration reg, int op) {
+    if (Thread.currentThread() == loopThread) {
+      reg.arm(op);
+    } else {
+      loopTasks.add(() -> reg.arm(op));
+      selector.wakeup();
+    }
+  }
+
+  /**
+   * Invokes a completion handler via the group's executor.
+   *
+   * @param task The task.
+   */
+  void dispatch(Runnable task) {
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      // the group is being shut down; invoke the handler directly, so it's not lost
+      task.run();
+    }
+  }
+
+  /**
+   * Schedules a timeout.
+   *
+   * @param task The task to run after the timeout.
+   * @param timeout The timeout.
+   * @param unit The time unit.
+   * @return The scheduled task, or {@code null} if there is no timeout.
+   */
+  @Nullable
+  ScheduledFuture<?> schedule(Runnable task, long timeout, TimeUnit unit) {
+    if (timeout <= 0) {
+      return null;
+    }
+    try {
+      return timer.schedule(task, timeout, unit);
+    } catch (RejectedExecutionException e) {
+      return null;
+    }
+  }
+
+  private void runLoop() {
+    try {
+      while (true) {
+        Runnable task;
+        while ((task = loopTasks.poll()) != null) {
+          task.run();
+        }
+        if (shutdown && channels.isEmpty()) {
+          break;
+        }
+
+        selector.select(AFAsynchronousChannelGroup::dispatchReady);
+      }
+    } catch (IOException | RuntimeException e) { // NOPMD.AvoidCatchingGenericException
+      StackTraceUtil.printStackTrace(e);
+    } finally {
+      terminate();
+    }
+  }
+
+  private static void dispatchReady(SelectionKey key) {
+    Registration reg = (Registration) key.attachment();
+    if (reg != null) {
+      reg.ready(key);
+    }
+  }
+
+  private void terminate() {
+    try {
+      selector.close();
+    } catch (IOException e) {
+      // ignore
+    }
+    timer.shutdownNow();
+    executor.shutdown();
+    terminated.countDown();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return terminated.getCount() == 0 && executor.isTerminated();
+  }
+
+  @Override
+  public void shutdown() {
+    shutdown = true;
+    selector.wakeup();
+  }
+
+  @Override
+  public void shutdownNow() throws IOException {
+    shutdown();
+    for (Closeable channel : channels) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    if (!terminated.await(timeout, unit)) {
+      return false;
+    }
+    return executor.awaitTermination(Math.max(0, deadline - System.nanoTime()),
+        TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * The registration of a channel with the group's selector. All state is only accessed from the
+   * event loop thread.
+   */
+  static final class Registration {
+    private final AFAsynchronousChannelGroup group;
+    private final SelectableChannel channel;
+    private final ReadyHandler handler;
+    private @Nullable SelectionKey key;
+    private int interestOps;
+
+    Registration(AFAsynchronousChannelGroup group, SelectableChannel channel,
+        ReadyHandler handler) {
+      this.group = group;
+      this.channel = channel;
+      this.handler = handler;
+    }
+
+    private void arm(int op) {
+      if (!channel.isOpen()) {
+        handler.ready(op);
+        return;
+      }
+      interestOps |= op;
+      try {
+        SelectionKey k = key;
+        if (k == null) {
+          key = channel.register(group.selector, interestOps, this);
+        } else {
+          k.interestOps(interestOps);
+        }
+      } catch (ClosedChannelException | RuntimeException e) { // NOPMD
+        // the pending operation will observe the closed channel upon retry
+        interestOps = 0;
+        handler.ready(op);
+      }
+    }
+
+    private void ready(SelectionKey k) {
+      int ops = k.isValid() ? k.readyOps() & interestOps : interestOps;
+      if (ops == 0) {
+        return;
+      }
+      interestOps &= ~ops;
+      if (k.isValid()) {
+        k.interestOps(interestOps);
+      }
+      handler.ready(ops);
+    }
+  }
+
+  /**
+   * Receives readiness notifications from the event loop.
+   */
+  @FunctionalInterface
+  interface ReadyHandler {
+    /**
+     * Called from the event loop thread when the channel is ready for the given operations (or
+     * when it has been closed).
+     *
+     * @param readyOps The ready operations.
+     */
+    void ready(int readyOps);
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.IllegalChannelGroupException;
+import java.nio.channels.spi.AsynchronousChannelProvider;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Service-provider class for junixsocket's asynchronous channels, for the address family of the
+ * given {@link AFSelectorProvider}; see {@link AFSelectorProvider#asynchronousChannelProvider()}.
+ *
+ * Channels opened without an explicit group use a default group, whose number of threads can be
+ * configured via the system property {@code org.newsclub.net.unix.async.threads} (default: the
+ * number of available processors).
+ *
+ * @param <A> The concrete {@link AFSocketAddress} that is supported by this type.
+ * @author Christian Kohlschütter
+ */
+public final class AFAsynchronousChannelProvider<A extends AFSocketAddress> extends
+    AsynchronousChannelProvider {
+  private static final int DEFAULT_THREADS = Math.max(1, Integer.getInteger(
+      "org.newsclub.net.unix.async.threads", Runtime.getRuntime().availableProcessors()));
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  private final AFSelectorProvider<A> selectorProvider;
+  private @Nullable AFAsynchronousChannelGroup defaultGroup;
+
+  AFAsynchronousChannelProvider(AFSelectorProvider<A> selectorProvider) {
+    super();
+    this.selectorProvider = selectorProvider;
+  }
+
+  /**
+   * Returns the {@link AFSelectorProvider} used to open the underlying channels.
+   *
+   * @return The selector provider.
+   */
+  public AFSelectorProvider<A> selectorProvider() {
+    return selectorProvider;
+  }
+
+  private static ThreadFactory daemonThreadFactory() {
+    return (r) -> {
+      Thread t = new Thread(r, "junixsocket async handler " + THREAD_COUNTER.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    };
+  }
+
+  @Override
+  public AFAsynchronousChannelGroup openAsynchronousChannelGroup(int numThreads,
+      ThreadFactory threadFactory) throws IOException {
+    if (numThreads <= 0) {
+      throw new IllegalArgumentException("numThreads");
+    }
+    return new AFAsynchronousChannelGroup(this, Executors.newFixedThreadPool(numThreads,
+        threadFactory));
+  }
+
+  @Override
+  public AFAsynchronousChannelGroup openAsynchronousChannelGroup(ExecutorService executor,
+      int initialSize) throws IOException {
+    return new AFAsynchronousChannelGroup(this, executor);
+  }
+
+  /**
+   * Returns the default group, which uses a fixed pool of daemon threads.
+   *
+   * @return The default group.
+   * @throws IOException on error.
+   */
+  synchronized AFAsynchronousChannelGroup defaultGroup() throws IOException {
+    AFAsynchronousChannelGroup group = defaultGroup;
+    if (group == null || group.isShutdown()) {
+      group = defaultGroup = openAsynchronousChannelGroup(DEFAULT_THREADS, daemonThreadFactory());
+    }
+    return group;
+  }
+
+  private AFAsynchronousChannelGroup toGroup(@Nullable AsynchronousChannelGroup group)
+      throws IOException {
+    if (group == null) {
+      return defaultGroup();
+    } else if (group instanceof AFAsynchronousChannelGroup) {
+      // groups are not specific to an address family
+      return (AFAsynchronousChannelGroup) group;
+    } else {
+      throw new IllegalChannelGroupException();
+    }
+  }
+
+  @Override
+  public AFAsynchronousServerSocketChannel<A> openAsynchronousServerSocketChannel(
+      @Nullable AsynchronousChannelGroup group) throws IOException {
+    return new AFAsynchronousServerSocketChannel<>(this, toGroup(group), selectorProvider
+        .openServerSocketChannel());
+  }
+
+  @Override
+  public AFAsynchronousSocketChannel<A> openAsynchronousSocketChannel(
+      @Nullable AsynchronousChannelGroup group) throws IOException {
+    return new AFAsynchronousSocketChannel<>(this, toGroup(group), selectorProvider
+        .openSocketChannel());
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A pending operation of an asynchronous channel (see {@link AFAsynchronousChannelGroup}).
+ *
+ * At most one operation of a kind (read, write, accept) can be pending per channel; this is
+ * tracked by a "slot". Whoever clears the slot (completion, failure, timeout, cancellation or
+ * closing the channel) gets to invoke the completion handler, exactly once.
+ *
+ * @param <V> The result type.
+ * @param <T> The attachment type.
+ * @author Christian Kohlschütter
+ */
+abstract class AFAsynchronousOperation<V, T> {
+  private final AFAsynchronousChannelGroup group;
+  private final AFAsynchronousChannelGroup.Registration registration;
+  private final int interestOp;
+  private final AtomicReference<AFAsynchronousOperation<?, ?>> slot;
+  private final @Nullable T attachment;
+  private final CompletionHandler<V, ? super T> handler;
+  private volatile @Nullable ScheduledFuture<?> timeoutTask;
+  private @Nullable V result;
+
+  AFAsynchronousOperation(AFAsynchronousChannelGroup group,
+      AFAsynchronousChannelGroup.Registration registration, int interestOp,
+      AtomicReference<AFAsynchronousOperation<?, ?>> slot, @Nullable T attachment,
+      CompletionHandler<V, ? super T> handler) {
+    this.group = group;
+    this.registration = registration;
+    this.interestOp = interestOp;
+    this.slot = slot;
+    this.attachment = attachment;
+    this.handler = handler;
+    if (handler instanceof PendingFuture) {
+      ((PendingFuture<?>) handler).op = this;
+    }
+  }
+
+  /**
+   * Attempts to perform the non-blocking I/O operation.
+   *
+   * @param ready {@code true} if the channel has been selected as ready for the operation.
+   * @return {@code true} if the operation is done (the result has been set via
+   *         {@link #setResult(Object)}), or {@code false} if it would block.
+   * @throws IOException on error.
+   */
+  protected abstract boolean attempt(boolean ready) throws IOException;
+
+  /**
+   * Called when the operation has been aborted due to a timeout or cancellation. The channel's
+   * state is undefined then, as some data may already have been transferred.
+   */
+  protected abstract void aborted();
+
+  /**
+   * Returns the channel, which is closed when the operation is cancelled with
+   * {@code mayInterruptIfRunning}.
+   *
+   * @return The channel.
+   */
+  protected abstract Closeable channel();
+
+  final void setResult(@Nullable V v) {
+    this.result = v;
+  }
+
+  /**
+   * Starts the operation, which must already occupy its slot. If the operation would block, the
+   * channel is registered for readiness, and the operation is retried from the event loop.
+   *
+   * @param timeout The timeout (0 or negative means no timeout).
+   * @param unit The time unit.
+   */
+  final void start(long timeout, TimeUnit unit) {
+    if (tryRun(false)) {
+      return;
+    }
+    timeoutTask = group.schedule(this::timedOut, timeout, unit);
+    group.await(registration, interestOp);
+  }
+
+  /**
+   * Retries the operation upon readiness; called from the event loop.
+   */
+  final void retry() {
+    if (slot.get() != this) {
+      return;
+    }
+    if (!tryRun(true)) {
+      group.await(registration, interestOp);
+    }
+  }
+
+  private boolean tryRun(boolean ready) {
+    boolean done;
+    try {
+      done = attempt(ready);
+    } catch (IOException | RuntimeException e) { // NOPMD.AvoidCatchingGenericException
+      failed(e);
+      return true;
+    }
+    if (done) {
+      completed();
+    }
+    return done;
+  }
+
+  private boolean claim() {
+    if (!slot.compareAndSet(this, null)) {
+      return false;
+    }
+    ScheduledFuture<?> t = timeoutTask;
+    if (t != null) {
+      t.cancel(false);
+    }
+    return true;
+  }
+
+  private void completed() {
+    if (claim()) {
+      V v = result;
+      invoke(() -> handler.completed(v, attachment));
+    }
+  }
+
+  /**
+   * Fails the operation, unless it has already completed.
+   *
+   * @param exc The exception.
+   */
+  final void failed(Throwable exc) {
+    if (claim()) {
+      invoke(() -> handler.failed(exc, attachment));
+    }
+  }
+
+  private void timedOut() {
+    if (claim()) {
+      aborted();
+      invoke(() -> handler.failed(new InterruptedByTimeoutException(), attachment));
+    }
+  }
+
+  private boolean cancelled(boolean mayInterruptIfRunning) {
+    if (!claim()) {
+      return false;
+    }
+    aborted();
+    if (mayInterruptIfRunning) {
+      try {
+        channel().close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+    return true;
+  }
+
+  private void invoke(Runnable task) {
+    if (handler instanceof PendingFuture) {
+      // completing a future is cheap and never blocks
+      task.run();
+    } else {
+      group.dispatch(task);
+    }
+  }
+
+  /**
+   * The {@link java.util.concurrent.Future} returned by the operations that don't take a
+   * {@link CompletionHandler}.
+   *
+   * @param <V> The result type.
+   */
+  static final class PendingFuture<V> extends CompletableFuture<V> implements
+      CompletionHandler<V, Object> {
+    private volatile AFAsynchronousOperation<?, ?> op;
+
+    @Override
+    public void completed(V v, Object attachment) {
+      complete(v);
+    }
+
+    @Override
+    public void failed(Throwable exc, Object attachment) {
+      completeExceptionally(exc);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      AFAsynchronousOperation<?, ?> o = op;
+      if (o != null && !o.cancelled(mayInterruptIfRunning)) {
+        return false;
+      }
+      return super.cancel(mayInterruptIfRunning);
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.channels.AcceptPendingException;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.NotYetBoundException;
+import java.nio.channels.SelectionKey;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * An {@link AsynchronousServerSocketChannel} for junixsocket's address families (AF_UNIX,
+ * AF_TIPC, AF_VSOCK, etc.), backed by a non-blocking {@link AFServerSocketChannel}.
+ *
+ * Accepted connections are {@link AFAsynchronousSocketChannel}s in the same
+ * {@link AFAsynchronousChannelGroup}.
+ *
+ * @param <A> The concrete {@link AFSocketAddress} that is supported by this type.
+ * @author Christian Kohlschütter
+ */
+public final class AFAsynchronousServerSocketChannel<A extends AFSocketAddress> extends
+    AsynchronousServerSocketChannel {
+  private final AFAsynchronousChannelProvider<A> afProvider;
+  private final AFAsynchronousChannelGroup group;
+  private final AFServerSocketChannel<A> channel;
+  private final AFAsynchronousChannelGroup.Registration registration;
+
+  private final AtomicReference<AFAsynchronousOperation<?, ?>> pendingAccept =
+      new AtomicReference<>();
+
+  AFAsynchronousServerSocketChannel(AFAsynchronousChannelProvider<A> provider,
+      AFAsynchronousChannelGroup group, AFServerSocketChannel<A> channel) throws IOException {
+    super(provider);
+    this.afProvider = provider;
+    this.group = group;
+    this.channel = channel;
+    this.registration = new AFAsynchronousChannelGroup.Registration(group, channel, (ops) -> {
+      AFAsynchronousOperation<?, ?> op = pendingAccept.get();
+      if (op != null) {
+        op.retry();
+      }
+    });
+
+    try {
+      channel.configureBlocking(false);
+      group.addChannel(this);
+    } catch (IOException | RuntimeException e) { // NOPMD.AvoidCatchingGenericException
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the group this channel belongs to.
+   *
+   * @return The group.
+   */
+  public AFAsynchronousChannelGroup group() {
+    return group;
+  }
+
+  @Override
+  public AFAsynchronousServerSocketChannel<A> bind(SocketAddress local, int backlog)
+      throws IOException {
+    channel.bind(local, backlog);
+    return this;
+  }
+
+  @Override
+  public <T> AFAsynchronousServerSocketChannel<A> setOption(SocketOption<T> name, T value)
+      throws IOException {
+    channel.setOption(name, value);
+    return this;
+  }
+
+  @Override
+  public <T> T getOption(SocketOption<T> name) throws IOException {
+    return channel.getOption(name);
+  }
+
+  @Override
+  public Set<SocketOption<?>> supportedOptions() {
+    return channel.supportedOptions();
+  }
+
+  @Override
+  public @Nullable A getLocalAddress() throws IOException {
+    if (!isOpen()) {
+      throw new ClosedChannelException();
+    }
+    return channel.socket().getLocalSocketAddress();
+  }
+
+  @Override
+  public <T> void accept(T attachment,
+      CompletionHandler<AsynchronousSocketChannel, ? super T> handler) {
+    AFAsynchronousOperation<AsynchronousSocketChannel, T> op =
+        new AFAsynchronousOperation<AsynchronousSocketChannel, T>(group, registration,
+            SelectionKey.OP_ACCEPT, pendingAccept, attachment, Objects.requireNonNull(handler)) {
+          @Override
+          protected boolean attempt(boolean ready) throws IOException {
+            AFSocketChannel<A> accepted = channel.accept();
+            if (accepted == null) {
+              return false;
+            }
+            setResult(new AFAsynchronousSocketChannel<>(afProvider, group, accepted));
+            return true;
+          }
+
+          @Override
+          protected void aborted() {
+            // accepting again is fine
+          }
+
+          @Override
+          protected Closeable channel() {
+            return AFAsynchronousServerSocketChannel.this;
+          }
+        };
+
+    if (isOpen() && !channel.socket().isBound()) {
+      throw new NotYetBoundException();
+    }
+    if (!pendingAccept.compareAndSet(null, op)) {
+      throw new AcceptPendingException();
+    }
+    if (isOpen()) {
+      op.start(0, TimeUnit.MILLISECONDS);
+    } else {
+      op.failed(new ClosedChannelException());
+    }
+  }
+
+  @Override
+  public Future<AsynchronousSocketChannel> accept() {
+    AFAsynchronousOperation.PendingFuture<AsynchronousSocketChannel> future =
+        new AFAsynchronousOperation.PendingFuture<>();
+    accept(null, future);
+    return future;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return channel.isOpen();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      AFAsynchronousOperation<?, ?> op = pendingAccept.get();
+      if (op != null) {
+        op.failed(new AsynchronousCloseException());
+      }
+      channel.close();
+    } finally {
+      group.removeChannel(this);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + "[" + channel + "]";
+  }
+}
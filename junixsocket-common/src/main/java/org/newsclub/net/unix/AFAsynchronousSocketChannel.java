@@ -0,0 +1,434 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.AlreadyConnectedException;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.ConnectionPendingException;
+import java.nio.channels.NotYetConnectedException;
+import java.nio.channels.ReadPendingException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.WritePendingException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * An {@link AsynchronousSocketChannel} for junixsocket's address families (AF_UNIX, AF_TIPC,
+ * AF_VSOCK, etc.), backed by a non-blocking {@link AFSocketChannel}.
+ *
+ * Instances are opened via {@link AFAsynchronousChannelProvider} (see
+ * {@link AFSelectorProvider#asynchronousChannelProvider()}), or accepted by an
+ * {@link AFAsynchronousServerSocketChannel}. Operations are driven by the channel's
+ * {@link AFAsynchronousChannelGroup}.
+ *
+ * @param <A> The concrete {@link AFSocketAddress} that is supported by this type.
+ * @author Christian Kohlschütter
+ */
+public final class AFAsynchronousSocketChannel<A extends AFSocketAddress> extends
+    AsynchronousSocketChannel {
+  private final AFAsynchronousChannelGroup group;
+  private final AFSocketChannel<A> channel;
+  private final AFAsynchronousChannelGroup.Registration registration;
+
+  private final AtomicReference<AFAsynchronousOperation<?, ?>> pendingRead =
+      new AtomicReference<>();
+  private final AtomicReference<AFAsynchronousOperation<?, ?>> pendingWrite =
+      new AtomicReference<>();
+  private volatile boolean readAborted = false;
+  private volatile boolean writeAborted = false;
+
+  AFAsynchronousSocketChannel(AFAsynchronousChannelProvider<A> provider,
+      AFAsynchronousChannelGroup group, AFSocketChannel<A> channel) throws IOException {
+    super(provider);
+    this.group = group;
+    this.channel = channel;
+    this.registration = new AFAsynchronousChannelGroup.Registration(group, channel, this::ready);
+
+    try {
+      channel.configureBlocking(false);
+      group.addChannel(this);
+    } catch (IOException | RuntimeException e) { // NOPMD.AvoidCatchingGenericException
+      channel.close();
+      throw e;
+    }
+  }
+
+  private void ready(int readyOps) {
+    if ((readyOps & SelectionKey.OP_READ) != 0) {
+      retry(pendingRead);
+    }
+    if ((readyOps & (SelectionKey.OP_WRITE | SelectionKey.OP_CONNECT)) != 0) {
+      retry(pendingWrite);
+    }
+  }
+
+  private static void retry(AtomicReference<AFAsynchronousOperation<?, ?>> slot) {
+    AFAsynchronousOperation<?, ?> op = slot.get();
+    if (op != null) {
+      op.retry();
+    }
+  }
+
+  /**
+   * Returns the group this channel belongs to.
+   *
+   * @return The group.
+   */
+  public AFAsynchronousChannelGroup group() {
+    return group;
+  }
+
+  @Override
+  public AFAsynchronousSocketChannel<A> bind(SocketAddress local) throws IOException {
+    channel.bind(local);
+    return this;
+  }
+
+  @Override
+  public <T> AFAsynchronousSocketChannel<A> setOption(SocketOption<T> name, T value)
+      throws IOException {
+    channel.setOption(name, value);
+    return this;
+  }
+
+  @Override
+  public <T> T getOption(SocketOption<T> name) throws IOException {
+    return channel.getOption(name);
+  }
+
+  @Override
+  public Set<SocketOption<?>> supportedOptions() {
+    return channel.supportedOptions();
+  }
+
+  @Override
+  public AFAsynchronousSocketChannel<A> shutdownInput() throws IOException {
+    channel.shutdownInput();
+    return this;
+  }
+
+  @Override
+  public AFAsynchronousSocketChannel<A> shutdownOutput() throws IOException {
+    channel.shutdownOutput();
+    return this;
+  }
+
+  @Override
+  public @Nullable A getRemoteAddress() throws IOException {
+    ensureOpen();
+    return channel.getRemoteAddress();
+  }
+
+  @Override
+  public @Nullable A getLocalAddress() throws IOException {
+    ensureOpen();
+    return channel.getLocalAddress();
+  }
+
+  private void ensureOpen() throws ClosedChannelException {
+    if (!isOpen()) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  @Override
+  public <T> void connect(SocketAddress remote, T attachment,
+      CompletionHandler<Void, ? super T> handler) {
+    Objects.requireNonNull(handler);
+    AFAsynchronousOperation<Void, T> op = new Operation<Void, T>(pendingWrite,
+        SelectionKey.OP_CONNECT, attachment, handler) {
+      private boolean started = false;
+
+      @Override
+      protected boolean attempt(boolean ready) throws IOException {
+        if (started) {
+          return channel.finishConnect();
+        }
+        started = true;
+        return channel.connect(remote);
+      }
+    };
+    if (isOpen() && channel.isConnected()) {
+      throw new AlreadyConnectedException();
+    }
+    if (!pendingWrite.compareAndSet(null, op)) {
+      throw new ConnectionPendingException();
+    }
+    start(op, 0, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public Future<Void> connect(SocketAddress remote) {
+    AFAsynchronousOperation.PendingFuture<Void> future =
+        new AFAsynchronousOperation.PendingFuture<>();
+    connect(remote, null, future);
+    return future;
+  }
+
+  @Override
+  public <T> void read(ByteBuffer dst, long timeout, TimeUnit unit, T attachment,
+      CompletionHandler<Integer, ? super T> handler) {
+    if (dst.isReadOnly()) {
+      throw new IllegalArgumentException("Read-only buffer");
+    }
+    startRead(new Operation<Integer, T>(pendingRead, SelectionKey.OP_READ, attachment, handler) {
+      @Override
+      protected boolean attempt(boolean ready) throws IOException {
+        if (!dst.hasRemaining()) {
+          setResult(0);
+          return true;
+        }
+        long count = read(ready, () -> channel.read(dst));
+        if (count == 0) {
+          return false;
+        }
+        setResult((int) count);
+        return true;
+      }
+    }, timeout, unit);
+  }
+
+  @Override
+  public Future<Integer> read(ByteBuffer dst) {
+    AFAsynchronousOperation.PendingFuture<Integer> future =
+        new AFAsynchronousOperation.PendingFuture<>();
+    read(dst, 0, TimeUnit.MILLISECONDS, null, future);
+    return future;
+  }
+
+  @Override
+  public <T> void read(ByteBuffer[] dsts, int offset, int length, long timeout, TimeUnit unit,
+      T attachment, CompletionHandler<Long, ? super T> handler) {
+    checkBounds(offset, length, dsts.length);
+    for (int i = offset, end = offset + length; i < end; i++) {
+      if (dsts[i].isReadOnly()) {
+        throw new IllegalArgumentException("Read-only buffer");
+      }
+    }
+    startRead(new Operation<Long, T>(pendingRead, SelectionKey.OP_READ, attachment, handler) {
+      @Override
+      protected boolean attempt(boolean ready) throws IOException {
+        if (!hasRemaining(dsts, offset, length)) {
+          setResult(0L);
+          return true;
+        }
+        long count = read(ready, () -> channel.read(dsts, offset, length));
+        if (count == 0) {
+          return false;
+        }
+        setResult(count);
+        return true;
+      }
+    }, timeout, unit);
+  }
+
+  @Override
+  public <T> void write(ByteBuffer src, long timeout, TimeUnit unit, T attachment,
+      CompletionHandler<Integer, ? super T> handler) {
+    startWrite(new Operation<Integer, T>(pendingWrite, SelectionKey.OP_WRITE, attachment,
+        handler) {
+      @Override
+      protected boolean attempt(boolean ready) throws IOException {
+        int count = src.hasRemaining() ? channel.write(src) : 0;
+        if (count == 0 && src.hasRemaining()) {
+          return false;
+        }
+        setResult(count);
+        return true;
+      }
+    }, timeout, unit);
+  }
+
+  @Override
+  public Future<Integer> write(ByteBuffer src) {
+    AFAsynchronousOperation.PendingFuture<Integer> future =
+        new AFAsynchronousOperation.PendingFuture<>();
+    write(src, 0, TimeUnit.MILLISECONDS, null, future);
+    return future;
+  }
+
+  @Override
+  public <T> void write(ByteBuffer[] srcs, int offset, int length, long timeout, TimeUnit unit,
+      T attachment, CompletionHandler<Long, ? super T> handler) {
+    checkBounds(offset, length, srcs.length);
+    startWrite(new Operation<Long, T>(pendingWrite, SelectionKey.OP_WRITE, attachment, handler) {
+      @Override
+      protected boolean attempt(boolean ready) throws IOException {
+        boolean hasRemaining = hasRemaining(srcs, offset, length);
+        long count = hasRemaining ? channel.write(srcs, offset, length) : 0;
+        if (count == 0 && hasRemaining) {
+          return false;
+        }
+        setResult(count);
+        return true;
+      }
+    }, timeout, unit);
+  }
+
+  private static void checkBounds(int offset, int length, int size) {
+    if (offset < 0 || length < 0 || offset > size - length) {
+      throw new IndexOutOfBoundsException();
+    }
+  }
+
+  /**
+   * Performs a non-blocking read.
+   *
+   * On non-blocking sockets, an orderly shutdown by the peer may be reported by the native layer
+   * as a {@link ClosedChannelException}, or as an empty read. Both are mapped to end-of-stream here
+   * (an empty read only if the channel has been selected as readable, which is level-triggered).
+   *
+   * @param ready {@code true} if the channel has been selected as readable.
+   * @param read The read call.
+   * @return The number of bytes read, 0 if the read would block, or -1 upon end of stream.
+   * @throws IOException on error.
+   */
+  private long read(boolean ready, ReadCall read) throws IOException {
+    long count;
+    try {
+      count = read.read();
+    } catch (ClosedChannelException e) {
+      if (!channel.isOpen()) {
+        throw e;
+      }
+      return -1;
+    }
+    return (count == 0 && ready) ? -1 : count;
+  }
+
+  @FunctionalInterface
+  private interface ReadCall {
+    long read() throws IOException;
+  }
+
+  private static boolean hasRemaining(ByteBuffer[] bufs, int offset, int length) {
+    for (int i = offset, end = offset + length; i < end; i++) {
+      if (bufs[i].hasRemaining()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void startRead(Operation<?, ?> op, long timeout, TimeUnit unit) {
+    if (isOpen()) {
+      if (!channel.isConnected()) {
+        throw new NotYetConnectedException();
+      } else if (readAborted) {
+        throw new IllegalStateException("Reading not allowed due to timeout or cancellation");
+      }
+    }
+    if (!pendingRead.compareAndSet(null, op)) {
+      throw new ReadPendingException();
+    }
+    start(op, timeout, unit);
+  }
+
+  private void startWrite(Operation<?, ?> op, long timeout, TimeUnit unit) {
+    if (isOpen()) {
+      if (!channel.isConnected()) {
+        throw new NotYetConnectedException();
+      } else if (writeAborted) {
+        throw new IllegalStateException("Writing not allowed due to timeout or cancellation");
+      }
+    }
+    if (!pendingWrite.compareAndSet(null, op)) {
+      throw new WritePendingException();
+    }
+    start(op, timeout, unit);
+  }
+
+  private void start(AFAsynchronousOperation<?, ?> op, long timeout, TimeUnit unit) {
+    if (isOpen()) {
+      op.start(timeout, unit);
+    } else {
+      op.failed(new ClosedChannelException());
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return channel.isOpen();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      failPending(pendingRead);
+      failPending(pendingWrite);
+      channel.close();
+    } finally {
+      group.removeChannel(this);
+    }
+  }
+
+  private static void failPending(AtomicReference<AFAsynchronousOperation<?, ?>> slot) {
+    AFAsynchronousOperation<?, ?> op = slot.get();
+    if (op != null) {
+      op.failed(new AsynchronousCloseException());
+    }
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + "[" + channel + "]";
+  }
+
+  /**
+   * A read, write or connect operation on this channel.
+   *
+   * @param <V> The result type.
+   * @param <T> The attachment type.
+   */
+  private abstract class Operation<V, T> extends AFAsynchronousOperation<V, T> {
+    private final boolean read;
+
+    Operation(AtomicReference<AFAsynchronousOperation<?, ?>> slot, int interestOp,
+        @Nullable T attachment, CompletionHandler<V, ? super T> handler) {
+      super(group, registration, interestOp, slot, attachment, Objects.requireNonNull(handler));
+      this.read = slot == pendingRead;
+    }
+
+    @Override
+    protected final void aborted() {
+      if (read) {
+        readAborted = true;
+      } else {
+        writeAborted = true;
+      }
+    }
+
+    @Override
+    protected final Closeable channel() {
+      return AFAsynchronousSocketChannel.this;
+    }
+  }
+}
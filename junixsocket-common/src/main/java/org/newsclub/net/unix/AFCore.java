@@ -21,7 +21,9 @@ import java.io.FileDescriptor;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -35,6 +37,13 @@ class AFCore extends CleanableState {
   private static final String PROP_TL_BUFFER_MAX_CAPACITY =
       "org.newsclub.net.unix.thread-local-buffer.max-capacity"; // 0 means "no limit" (discouraged)
 
+  private static final ThreadLocal<int[]> TL_IOV_ARRAY = new ThreadLocal<>();
+
+  /**
+   * The maximum number of buffers passed to a single scatter/gather call (Linux' UIO_MAXIOV).
+   */
+  static final int IOV_MAX = 1024;
+
   private static final int TL_BUFFER_MIN_CAPACITY = 8192; // 8 kb per thread
   private static final int TL_BUFFER_MAX_CAPACITY = Integer.parseInt(System.getProperty(
       PROP_TL_BUFFER_MAX_CAPACITY, Integer.toString(1 * 1024 * 1024))); // 1 MB per thread
@@ -43,21 +52,33 @@ class AFCore extends CleanableState {
 
   final FileDescriptor fd;
   final AncillaryDataSupport ancillaryDataSupport;
+  final AFIOMetrics metrics;
 
   private final boolean datagramMode;
 
   private boolean blocking = true;
 
+  private volatile boolean nonBlockingInternally = false;
+
   AFCore(Object observed, FileDescriptor fd, AncillaryDataSupport ancillaryDataSupport,
       boolean datagramMode) {
+    this(observed, fd, ancillaryDataSupport, datagramMode, true);
+  }
+
+  AFCore(Object observed, FileDescriptor fd) {
+    this(observed, fd, null, false, false);
+  }
+
+  private AFCore(Object observed, FileDescriptor fd, AncillaryDataSupport ancillaryDataSupport,
+      boolean datagramMode, boolean socket) {
     super(observed);
     this.datagramMode = datagramMode;
     this.fd = (fd == null) ? new FileDescriptor() : fd;
     this.ancillaryDataSupport = ancillaryDataSupport;
-  }
-
-  AFCore(Object observed, FileDescriptor fd) {
-    this(observed, fd, null, false);
+    this.metrics = socket ? AFIOMetrics.newSocketMetrics(this.fd) : null;
+    if (ancillaryDataSupport != null) {
+      ancillaryDataSupport.metrics = metrics;
+    }
   }
 
   @Override
@@ -72,6 +93,10 @@ class AFCore extends CleanableState {
     if (ancillaryDataSupport != null) {
       ancillaryDataSupport.close();
     }
+    if (metrics != null) {
+      // the file descriptor may never have been valid
+      metrics.socketClosed();
+    }
   }
 
   boolean isClosed() {
@@ -80,10 +105,57 @@ class AFCore extends CleanableState {
 
   void doClose() throws IOException {
     if (closed.compareAndSet(false, true)) {
+      VirtualThreadPoller.wakeupWaiters(fd);
+      if (metrics != null) {
+        metrics.socketClosed();
+      }
       NativeUnixSocket.close(fd);
     }
   }
 
+  /**
+   * Records a read/receive call, if metrics are enabled.
+   *
+   * @param count The number of bytes read, 0 if the call would have blocked, or -1 upon EOF.
+   */
+  final void recordRead(long count) {
+    if (metrics != null) {
+      metrics.recordRead(count);
+    }
+  }
+
+  /**
+   * Records a write/send call, if metrics are enabled.
+   *
+   * @param requested The number of bytes that were to be written.
+   * @param written The number of bytes actually written.
+   */
+  final void recordWrite(long requested, long written) {
+    if (metrics != null) {
+      metrics.recordWrite(requested, written);
+    }
+  }
+
+  /**
+   * Records an operation that timed out, if metrics are enabled.
+   */
+  final void recordTimeout() {
+    if (metrics != null) {
+      metrics.recordTimeout();
+    }
+  }
+
+  /**
+   * Records the outcome of a busy-poll spin, if metrics are enabled.
+   *
+   * @param hit {@code true} if data was received while spinning.
+   */
+  final void recordBusyPoll(boolean hit) {
+    if (metrics != null) {
+      metrics.recordBusyPoll(hit);
+    }
+  }
+
   FileDescriptor validFdOrException() throws SocketException {
     FileDescriptor fdesc = validFd();
     if (fdesc == null) {
@@ -135,9 +207,13 @@ class AFCore extends CleanableState {
     if (!blocking) {
       options |= NativeUnixSocket.OPT_NON_BLOCKING;
     }
+    if (datagramMode) {
+      options |= NativeUnixSocket.OPT_DGRAM_MODE;
+    }
 
     int count = NativeUnixSocket.receive(fdesc, buf, pos, remaining, socketAddressBuffer, options,
         ancillaryDataSupport, 0);
+    recordRead(count);
     if (count == -1) {
       return count;
     }
@@ -165,10 +241,188 @@ class AFCore extends CleanableState {
     return count;
   }
 
+  /**
+   * Reads into multiple buffers ("scatter" read) using a single system call.
+   *
+   * If all buffers are direct, the data is received into them directly. Otherwise, a thread-local
+   * direct buffer is used, and the data is then distributed among the target buffers.
+   *
+   * @param dsts The buffers.
+   * @param offset The offset of the first buffer in {@code dsts}.
+   * @param length The number of buffers to use.
+   * @param options Options.
+   * @return The number of bytes read, or -1 upon EOF.
+   * @throws IOException on error.
+   */
+  long read(ByteBuffer[] dsts, int offset, int length, int options) throws IOException {
+    checkBufferArrayBounds(dsts.length, offset, length);
+    if (length == 1) {
+      return read(dsts[offset], null, options);
+    }
+    length = Math.min(length, IOV_MAX);
+
+    boolean allDirect = true;
+    long remainingTotal = 0;
+    for (int i = offset, n = offset + length; i < n; i++) {
+      ByteBuffer dst = dsts[i];
+      if (dst.isReadOnly()) {
+        throw new IllegalArgumentException("Read-only buffer");
+      }
+      remainingTotal += dst.remaining();
+      allDirect &= dst.isDirect();
+    }
+    if (remainingTotal == 0) {
+      return 0;
+    }
+    FileDescriptor fdesc = validFdOrException();
+
+    if (!blocking) {
+      options |= NativeUnixSocket.OPT_NON_BLOCKING;
+    }
+    if (datagramMode) {
+      options |= NativeUnixSocket.OPT_DGRAM_MODE;
+    }
+
+    if (!allDirect) {
+      ByteBuffer buf = getThreadLocalDirectByteBuffer((int) Math.min(remainingTotal,
+          Integer.MAX_VALUE));
+      int count = NativeUnixSocket.receive(fdesc, buf, 0, (int) Math.min(remainingTotal, buf
+          .remaining()), null, options, ancillaryDataSupport, 0);
+      recordRead(count);
+      if (count <= 0) {
+        return count;
+      }
+      buf.limit(count);
+      for (int i = offset, n = offset + length; i < n && buf.hasRemaining(); i++) {
+        ByteBuffer dst = dsts[i];
+        int oldLimit = buf.limit();
+        int num = Math.min(dst.remaining(), buf.remaining());
+        buf.limit(buf.position() + num);
+        dst.put(buf);
+        buf.limit(oldLimit);
+      }
+      return count;
+    }
+
+    int[] offsetsAndLengths = getThreadLocalIovArray(length);
+    for (int i = 0; i < length; i++) {
+      ByteBuffer dst = dsts[offset + i];
+      offsetsAndLengths[2 * i] = dst.position();
+      offsetsAndLengths[2 * i + 1] = dst.remaining();
+    }
+
+    long count = NativeUnixSocket.receivev(fdesc, dsts, offset, offsetsAndLengths, length, options,
+        ancillaryDataSupport, 0);
+    recordRead(count);
+    if (count > 0) {
+      advancePositions(dsts, offset, length, count);
+    }
+    return count;
+  }
+
   int write(ByteBuffer src) throws IOException {
     return write(src, null, 0);
   }
 
+  /**
+   * Writes from multiple buffers ("gather" write) using a single system call.
+   *
+   * If all buffers are direct, the data is sent from them directly. Otherwise, the data is first
+   * copied into a thread-local direct buffer.
+   *
+   * @param srcs The buffers.
+   * @param offset The offset of the first buffer in {@code srcs}.
+   * @param length The number of buffers to use.
+   * @param options Options.
+   * @return The number of bytes written (which may be 0).
+   * @throws IOException on error.
+   */
+  long write(ByteBuffer[] srcs, int offset, int length, int options) throws IOException {
+    checkBufferArrayBounds(srcs.length, offset, length);
+    if (length == 1) {
+      return write(srcs[offset], null, options);
+    }
+    length = Math.min(length, IOV_MAX);
+
+    boolean allDirect = true;
+    long remainingTotal = 0;
+    for (int i = offset, n = offset + length; i < n; i++) {
+      ByteBuffer src = srcs[i];
+      remainingTotal += src.remaining();
+      allDirect &= src.isDirect();
+    }
+    if (remainingTotal == 0) {
+      return 0;
+    }
+    FileDescriptor fdesc = validFdOrException();
+
+    if (!blocking) {
+      options |= NativeUnixSocket.OPT_NON_BLOCKING;
+    }
+    if (datagramMode) {
+      options |= NativeUnixSocket.OPT_DGRAM_MODE;
+    }
+
+    if (!allDirect) {
+      ByteBuffer buf = getThreadLocalDirectByteBuffer((int) Math.min(remainingTotal,
+          Integer.MAX_VALUE));
+      for (int i = offset, n = offset + length; i < n && buf.hasRemaining(); i++) {
+        ByteBuffer src = srcs[i].duplicate();
+        if (src.remaining() > buf.remaining()) {
+          src.limit(src.position() + buf.remaining());
+        }
+        buf.put(src);
+      }
+      int numBytes = buf.position();
+      int written = NativeUnixSocket.send(fdesc, buf, 0, numBytes, null, 0, options,
+          ancillaryDataSupport);
+      recordWrite(remainingTotal, written);
+      if (written > 0) {
+        advancePositions(srcs, offset, length, written);
+      }
+      return written;
+    }
+
+    int[] offsetsAndLengths = getThreadLocalIovArray(length);
+    for (int i = 0; i < length; i++) {
+      ByteBuffer src = srcs[offset + i];
+      offsetsAndLengths[2 * i] = src.position();
+      offsetsAndLengths[2 * i + 1] = src.remaining();
+    }
+
+    long written = NativeUnixSocket.sendv(fdesc, srcs, offset, offsetsAndLengths, length, options,
+        ancillaryDataSupport);
+    recordWrite(remainingTotal, written);
+    if (written > 0) {
+      advancePositions(srcs, offset, length, written);
+    }
+    return written;
+  }
+
+  static void checkBufferArrayBounds(int arrayLength, int offset, int length) {
+    if (offset < 0 || length < 0 || offset > arrayLength - length) {
+      throw new IndexOutOfBoundsException();
+    }
+  }
+
+  private static void advancePositions(ByteBuffer[] buffers, int offset, int length, long count) {
+    for (int i = offset, n = offset + length; i < n && count > 0; i++) {
+      ByteBuffer bb = buffers[i];
+      int num = (int) Math.min(bb.remaining(), count);
+      bb.position(bb.position() + num);
+      count -= num;
+    }
+  }
+
+  static int[] getThreadLocalIovArray(int numBuffers) {
+    int[] array = TL_IOV_ARRAY.get();
+    if (array == null || array.length < numBuffers * 2) {
+      array = new int[Math.max(16, numBuffers) * 2];
+      TL_IOV_ARRAY.set(array);
+    }
+    return array;
+  }
+
   int write(ByteBuffer src, SocketAddress target, int options) throws IOException {
     int remaining = src.remaining();
 
@@ -218,6 +472,7 @@ class AFCore extends CleanableState {
 
     int written = NativeUnixSocket.send(fdesc, buf, bufPos, remaining, addressTo, addressToLen,
         options, ancillaryDataSupport);
+    recordWrite(remaining, written);
     src.position(pos + written);
 
     return written;
@@ -233,6 +488,16 @@ class AFCore extends CleanableState {
    * @param capacity The desired capacity.
    * @return A byte buffer satisfying the requested capacity.
    */
+  /**
+   * Returns the maximum capacity of the cached thread-local direct buffer; larger buffers returned
+   * by {@link #getThreadLocalDirectByteBuffer(int)} are allocated upon each call.
+   *
+   * @return The maximum capacity.
+   */
+  static int getThreadLocalDirectByteBufferMaxCapacity() {
+    return TL_BUFFER_MAX_CAPACITY > 0 ? TL_BUFFER_MAX_CAPACITY : Integer.MAX_VALUE;
+  }
+
   ByteBuffer getThreadLocalDirectByteBuffer(int capacity) {
     if (capacity > TL_BUFFER_MAX_CAPACITY && TL_BUFFER_MAX_CAPACITY > 0) {
       // Capacity exceeds configurable maximum limit;
@@ -252,9 +517,143 @@ class AFCore extends CleanableState {
     return buffer;
   }
 
+  /**
+   * Transfers up to {@code count} bytes from the given file to this socket, without copying the
+   * data into the Java heap.
+   *
+   * In blocking mode, this method only returns early upon end of file; in non-blocking mode, it
+   * returns as soon as the socket cannot accept more data, i.e., the returned count may be short,
+   * or even zero.
+   *
+   * {@code sendfile(2)} cannot be made non-blocking for a single call, and the file descriptor's
+   * non-blocking flag is shared with other threads, so virtual threads (see
+   * {@link VirtualThreadPoller}) cannot park while waiting for the socket. For a blocking socket,
+   * they get an {@link OperationNotSupportedSocketException}, and callers fall back to copying.
+   *
+   * @param fdIn The file descriptor of the source file.
+   * @param position The file position to start reading from, or -1 to use (and update) the file's
+   *          current position.
+   * @param count The maximum number of bytes to transfer.
+   * @return The number of bytes transferred.
+   * @throws OperationNotSupportedSocketException if zero-copy transfer is not supported for the
+   *           given file descriptors (no data has been transferred).
+   * @throws IOException on error.
+   */
+  long transferFromFile(FileDescriptor fdIn, long position, long count) throws IOException {
+    FileDescriptor fdesc = validFdOrException();
+    if (blocking && VirtualThreadPoller.isParkingThread()) {
+      throw new OperationNotSupportedSocketException("sendfile would block a virtual thread");
+    }
+    int options = blocking ? 0 : NativeUnixSocket.OPT_NON_BLOCKING;
+
+    long transferred = 0;
+    while (transferred < count) {
+      long n = NativeUnixSocket.sendfile(fdesc, fdIn, position < 0 ? -1 : position + transferred,
+          count - transferred, options);
+      if (n != 0) {
+        // 0 means end of file, and -1 means "would block"
+        recordWrite(count - transferred, Math.max(0, n));
+      }
+      if (n <= 0) {
+        // end of file, or socket buffer is full (non-blocking)
+        break;
+      }
+      transferred += n;
+    }
+    return transferred;
+  }
+
+  /**
+   * Transfers up to {@code count} bytes from this socket to the given file, without copying the
+   * data into the Java heap.
+   *
+   * In blocking mode, this method only returns early upon end of stream; in non-blocking mode, it
+   * returns as soon as no more data is immediately available, i.e., the returned count may be
+   * short, or even zero.
+   *
+   * Virtual threads (see {@link VirtualThreadPoller}) are parked instead of blocking in native
+   * code while waiting for data.
+   *
+   * @param fdOut The file descriptor of the target file.
+   * @param position The file position to start writing at, or -1 to use (and update) the file's
+   *          current position.
+   * @param count The maximum number of bytes to transfer.
+   * @param timeoutMillis The read timeout, or 0.
+   * @return The number of bytes transferred, or -1 if end of stream was reached before any data was
+   *         transferred.
+   * @throws OperationNotSupportedSocketException if zero-copy transfer is not supported for the
+   *           given file descriptors (no data has been transferred).
+   * @throws SocketTimeoutException if a parked virtual thread timed out.
+   * @throws IOException on error.
+   */
+  long transferToFile(FileDescriptor fdOut, long position, long count, int timeoutMillis)
+      throws IOException {
+    FileDescriptor fdesc = validFdOrException();
+    // splice(2) can be made non-blocking for a single call, so virtual threads can park
+    final boolean parking = blocking && VirtualThreadPoller.isParkingThread();
+    int options = blocking && !parking ? 0 : NativeUnixSocket.OPT_NON_BLOCKING;
+    long deadline = parking ? VirtualThreadPoller.deadline(timeoutMillis) : 0;
+
+    long transferred = 0;
+    while (transferred < count) {
+      long n = NativeUnixSocket.splice(fdesc, fdOut, position < 0 ? -1 : position + transferred,
+          count - transferred, options, timeoutMillis);
+      if (n != 0) {
+        // -1 means "would block"
+        recordRead(Math.max(0, n));
+      }
+      if (n == 0) {
+        // end of stream
+        return transferred == 0 ? -1 : transferred;
+      } else if (n < 0) {
+        if (!parking) {
+          // no more data available (non-blocking)
+          break;
+        } else if (!VirtualThreadPoller.await(this, SelectionKey.OP_READ, deadline)) {
+          throw new SocketTimeoutException("Read timed out");
+        }
+        continue;
+      }
+      transferred += n;
+      if (parking) {
+        // the timeout applies to each wait for data, not to the entire transfer
+        deadline = VirtualThreadPoller.deadline(timeoutMillis);
+      }
+    }
+    return transferred;
+  }
+
   void implConfigureBlocking(boolean block) throws IOException {
     NativeUnixSocket.configureBlocking(validFdOrException(), block);
     this.blocking = block;
+    this.nonBlockingInternally = false;
+  }
+
+  /**
+   * Puts the file descriptor into non-blocking mode, while this core stays in blocking mode.
+   *
+   * Blocking operations then need to wait for the file descriptor to become ready by themselves
+   * (see {@link VirtualThreadPoller}). The file descriptor stays in non-blocking mode until
+   * {@link #implConfigureBlocking(boolean)} is called.
+   *
+   * @throws IOException on error.
+   */
+  synchronized void configureNonBlockingInternally() throws IOException {
+    if (blocking && !nonBlockingInternally) {
+      NativeUnixSocket.configureBlocking(validFdOrException(), false);
+      nonBlockingInternally = true;
+    }
+  }
+
+  /**
+   * Checks if the file descriptor was put into non-blocking mode while this core is in blocking
+   * mode.
+   *
+   * @return {@code true} if so.
+   * @see #configureNonBlockingInternally()
+   */
+  boolean isNonBlockingInternally() {
+    return nonBlockingInternally;
   }
 
   boolean isBlocking() {
@@ -146,6 +146,95 @@ public abstract class AFDatagramChannel<A extends AFSocketAddress> extends Datag
     return afSocket.getAFImpl().send(src, target);
   }
 
+  /**
+   * Receives multiple datagrams, one per buffer, using a single system call where supported
+   * (Linux: recvmmsg(2)).
+   *
+   * In blocking mode, this call blocks until at least one datagram is available; any further
+   * datagrams are only received if they are immediately available. Like with
+   * {@link #receive(ByteBuffer)}, the position of each buffer is advanced by the number of bytes
+   * received, and any excess bytes of a datagram that does not fit into its buffer are discarded.
+   *
+   * @param dsts The buffers to receive into, one per datagram.
+   * @param senders If not {@code null}, receives the sender address of each datagram, at the same
+   *          index as the corresponding buffer (entries may be {@code null} if the sender address
+   *          is unknown).
+   * @return The number of datagrams received; may be 0 in non-blocking mode.
+   * @throws IOException on error.
+   */
+  public final int receive(ByteBuffer[] dsts, A @Nullable [] senders) throws IOException {
+    return receive(dsts, 0, dsts.length, senders);
+  }
+
+  /**
+   * Receives multiple datagrams, one per buffer, using a single system call where supported
+   * (Linux: recvmmsg(2)).
+   *
+   * In blocking mode, this call blocks until at least one datagram is available; any further
+   * datagrams are only received if they are immediately available. Like with
+   * {@link #receive(ByteBuffer)}, the position of each buffer is advanced by the number of bytes
+   * received, and any excess bytes of a datagram that does not fit into its buffer are discarded.
+   *
+   * @param dsts The buffers to receive into, one per datagram.
+   * @param offset The offset of the first buffer in {@code dsts}.
+   * @param length The maximum number of datagrams to receive.
+   * @param senders If not {@code null}, receives the sender address of each datagram, at the same
+   *          index as the corresponding buffer (entries may be {@code null} if the sender address
+   *          is unknown).
+   * @return The number of datagrams received; may be 0 in non-blocking mode.
+   * @throws IOException on error.
+   */
+  public final int receive(ByteBuffer[] dsts, int offset, int length, A @Nullable [] senders)
+      throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    return afSocket.getAFImpl().receive(dsts, offset, length, senders);
+  }
+
+  /**
+   * Sends multiple datagrams, one per buffer, using a single system call where supported (Linux:
+   * sendmmsg(2)).
+   *
+   * The remaining bytes of each buffer are sent as one datagram; the position of each buffer
+   * whose datagram was sent is advanced to its limit.
+   *
+   * @param srcs The buffers to send, one per datagram.
+   * @param targets The target address of each datagram, at the same index as the corresponding
+   *          buffer, or {@code null} to send all datagrams to the connected peer.
+   * @return The number of datagrams sent; may be less than requested (e.g., 0) in non-blocking
+   *         mode, or if non-direct buffers exceed the size of the internal staging buffer.
+   * @throws IOException on error.
+   */
+  public final int send(ByteBuffer[] srcs, SocketAddress @Nullable [] targets)
+      throws IOException {
+    return send(srcs, 0, srcs.length, targets);
+  }
+
+  /**
+   * Sends multiple datagrams, one per buffer, using a single system call where supported (Linux:
+   * sendmmsg(2)).
+   *
+   * The remaining bytes of each buffer are sent as one datagram; the position of each buffer
+   * whose datagram was sent is advanced to its limit.
+   *
+   * @param srcs The buffers to send, one per datagram.
+   * @param offset The offset of the first buffer in {@code srcs}.
+   * @param length The number of datagrams to send.
+   * @param targets The target address of each datagram, at the same index as the corresponding
+   *          buffer, or {@code null} to send all datagrams to the connected peer.
+   * @return The number of datagrams sent; may be less than requested (e.g., 0) in non-blocking
+   *         mode, or if non-direct buffers exceed the size of the internal staging buffer.
+   * @throws IOException on error.
+   */
+  public final int send(ByteBuffer[] srcs, int offset, int length,
+      SocketAddress @Nullable [] targets) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    return afSocket.getAFImpl().send(srcs, offset, length, targets);
+  }
+
   @Override
   public final int read(ByteBuffer dst) throws IOException {
     return afSocket.getAFImpl().read(dst, null);
@@ -156,8 +245,7 @@ public abstract class AFDatagramChannel<A extends AFSocketAddress> extends Datag
     if (length == 0) {
       return 0;
     }
-    // FIXME support more than one buffer for scatter-gather access
-    return read(dsts[offset]);
+    return afSocket.getAFImpl().read(dsts, offset, length);
   }
 
   @Override
@@ -170,8 +258,7 @@ public abstract class AFDatagramChannel<A extends AFSocketAddress> extends Datag
     if (length == 0) {
       return 0;
     }
-    // FIXME support more than one buffer for scatter-gather access
-    return write(srcs[offset]);
+    return afSocket.getAFImpl().write(srcs, offset, length);
   }
 
   @Override
@@ -243,6 +330,15 @@ public abstract class AFDatagramChannel<A extends AFSocketAddress> extends Datag
     return afSocket.getFileDescriptor();
   }
 
+  /**
+   * Returns the I/O metrics of this socket.
+   *
+   * @return The metrics, or {@code null} if metrics are disabled (see {@link AFIOMetrics}).
+   */
+  public final @Nullable AFIOMetrics getIOMetrics() {
+    return afSocket.getIOMetrics();
+  }
+
   /**
    * Checks if this {@link DatagramSocket}'s bound filename should be removed upon {@link #close()}.
    *
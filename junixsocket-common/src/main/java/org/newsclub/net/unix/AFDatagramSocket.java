@@ -402,6 +402,15 @@ public abstract class AFDatagramSocket<A extends AFSocketAddress> extends Datagr
     return getAFImpl().getFileDescriptor();
   }
 
+  /**
+   * Returns the I/O metrics of this socket.
+   *
+   * @return The metrics, or {@code null} if metrics are disabled (see {@link AFIOMetrics}).
+   */
+  public final @Nullable AFIOMetrics getIOMetrics() {
+    return getAFImpl(false).getCore().metrics;
+  }
+
   @Override
   public final void receive(DatagramPacket p) throws IOException {
     getAFImpl().receive(p);
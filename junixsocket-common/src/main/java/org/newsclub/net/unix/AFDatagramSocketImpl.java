@@ -175,17 +175,26 @@ public abstract class AFDatagramSocketImpl<A extends AFSocketAddress> extends
     len = Math.min(len, datagramPacketBuffer.capacity());
 
     options |= core.isBlocking() ? 0 : NativeUnixSocket.OPT_NON_BLOCKING;
+    options |= NativeUnixSocket.OPT_DGRAM_MODE;
 
     ByteBuffer socketAddressBuffer = AFSocketAddress.SOCKETADDRESS_BUFFER_TL.get();
-    int count = NativeUnixSocket.receive(fdesc, datagramPacketBuffer, 0, len, socketAddressBuffer,
-        options, ancillaryDataSupport, socketTimeout.get());
+    int count;
+    try {
+      count = NativeUnixSocket.receive(fdesc, datagramPacketBuffer, 0, len, socketAddressBuffer,
+          options, ancillaryDataSupport, socketTimeout.get());
+    } catch (SocketTimeoutException e) {
+      core.recordTimeout();
+      throw e;
+    }
     if (count > len) {
       throw new IllegalStateException("count > len: " + count + " > " + len);
     } else if (count == -1) {
+      core.recordTimeout();
       throw new SocketTimeoutException();
     } else if (count < 0) {
       throw new IllegalStateException("count: " + count + " < 0");
     }
+    core.recordRead(count);
     datagramPacketBuffer.limit(count);
     datagramPacketBuffer.rewind();
     datagramPacketBuffer.get(p.getData(), p.getOffset(), count);
@@ -223,9 +232,11 @@ public abstract class AFDatagramSocketImpl<A extends AFSocketAddress> extends
     datagramPacketBuffer.put(p.getData(), p.getOffset(), p.getLength());
     datagramPacketBuffer.flip();
 
-    NativeUnixSocket.send(fdesc, datagramPacketBuffer, 0, len, sendToBuf, sendToBufLen,
+    int written = NativeUnixSocket.send(fdesc, datagramPacketBuffer, 0, len, sendToBuf,
+        sendToBufLen,
         /* NativeUnixSocket.OPT_NON_BLOCKING | */
         NativeUnixSocket.OPT_DGRAM_MODE, ancillaryDataSupport);
+    core.recordWrite(len, written);
   }
 
   @Override
@@ -320,6 +331,23 @@ public abstract class AFDatagramSocketImpl<A extends AFSocketAddress> extends
     }
   }
 
+  final int receive(ByteBuffer[] dsts, int offset, int length, A[] senders) throws IOException {
+    try {
+      return core.receive(dsts, offset, length, senders);
+    } catch (SocketClosedException e) {
+      throw (ClosedChannelException) new ClosedChannelException().initCause(e);
+    }
+  }
+
+  final int send(ByteBuffer[] srcs, int offset, int length, SocketAddress[] targets)
+      throws IOException {
+    try {
+      return core.send(srcs, offset, length, targets);
+    } catch (SocketClosedException e) {
+      throw (ClosedChannelException) new ClosedChannelException().initCause(e);
+    }
+  }
+
   final int read(ByteBuffer dst, ByteBuffer socketAddressBuffer) throws IOException {
     try {
       return core.read(dst, socketAddressBuffer, 0);
@@ -336,6 +364,22 @@ public abstract class AFDatagramSocketImpl<A extends AFSocketAddress> extends
     }
   }
 
+  final long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    try {
+      return core.read(dsts, offset, length, 0);
+    } catch (SocketClosedException e) {
+      throw (ClosedChannelException) new ClosedChannelException().initCause(e);
+    }
+  }
+
+  final long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+    try {
+      return core.write(srcs, offset, length, 0);
+    } catch (SocketClosedException e) {
+      throw (ClosedChannelException) new ClosedChannelException().initCause(e);
+    }
+  }
+
   final boolean isConnected() {
     if (connected.get()) {
       return true;
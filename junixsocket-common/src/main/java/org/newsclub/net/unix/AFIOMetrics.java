@@ -0,0 +1,340 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * I/O counters for a single socket, or, see {@link #global()}, for all sockets of this process.
+ *
+ * Metrics are disabled by default; they can be enabled by setting the system property
+ * {@code org.newsclub.net.unix.io-metrics} to {@code true} (make sure this property is set before
+ * junixsocket is accessed). Counters are striped ({@link LongAdder}), so contention between threads
+ * is low, but there is still some overhead for every I/O call.
+ *
+ * When enabled, the process-wide metrics are also registered as a JMX MBean under the name
+ * {@value #OBJECT_NAME}. This requires the {@code java.management} module.
+ *
+ * @author Christian Kohlschütter
+ * @see AFSocket#getIOMetrics()
+ * @see AFDatagramSocket#getIOMetrics()
+ */
+public final class AFIOMetrics implements AFIOMetricsMBean {
+  /**
+   * The JMX object name of the process-wide metrics.
+   */
+  public static final String OBJECT_NAME = "org.newsclub.net.unix:type=IOMetrics";
+
+  private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(
+      "org.newsclub.net.unix.io-metrics", "false"));
+
+  private static final AFIOMetrics GLOBAL = ENABLED ? newGlobal() : null;
+
+  private static final AtomicLong NEXT_ID = new AtomicLong();
+
+  private final LongAdder readCalls = new LongAdder();
+  private final LongAdder bytesRead = new LongAdder();
+  private final LongAdder writeCalls = new LongAdder();
+  private final LongAdder bytesWritten = new LongAdder();
+  private final LongAdder wouldBlock = new LongAdder();
+  private final LongAdder partialWrites = new LongAdder();
+  private final LongAdder timeouts = new LongAdder();
+  private final LongAdder busyPollHits = new LongAdder();
+  private final LongAdder busyPollMisses = new LongAdder();
+  private final LongAdder fileDescriptorsReceived = new LongAdder();
+  private final LongAdder fileDescriptorsLeaked = new LongAdder();
+
+  private final @Nullable AFIOMetrics parent;
+  private final long id;
+  private final @Nullable FileDescriptor fd;
+  private final Set<AFIOMetrics> openSockets;
+
+  AFIOMetrics(@Nullable AFIOMetrics parent, @Nullable FileDescriptor fd) {
+    this.parent = parent;
+    this.fd = fd;
+    if (parent == null) {
+      this.id = 0;
+      this.openSockets = ConcurrentHashMap.newKeySet();
+    } else {
+      this.id = NEXT_ID.incrementAndGet();
+      this.openSockets = null;
+      parent.openSockets.add(this);
+    }
+  }
+
+  private static AFIOMetrics newGlobal() {
+    AFIOMetrics metrics = new AFIOMetrics(null, null);
+    try {
+      AFIOMetricsJMX.registerMBean(metrics, OBJECT_NAME);
+    } catch (LinkageError e) {
+      // java.management not available
+    }
+    return metrics;
+  }
+
+  /**
+   * Checks if I/O metrics are enabled.
+   *
+   * @return {@code true} if enabled.
+   */
+  public static boolean isEnabled() {
+    return ENABLED;
+  }
+
+  /**
+   * Returns the process-wide metrics, aggregating the metrics of all sockets, including closed
+   * ones.
+   *
+   * @return The metrics, or {@code null} if metrics are disabled.
+   */
+  public static @Nullable AFIOMetrics global() {
+    return GLOBAL;
+  }
+
+  /**
+   * Creates new metrics for a socket, if metrics are enabled.
+   *
+   * @param fd The socket's file descriptor.
+   * @return The metrics, or {@code null} if disabled.
+   */
+  static @Nullable AFIOMetrics newSocketMetrics(FileDescriptor fd) {
+    return ENABLED ? new AFIOMetrics(GLOBAL, fd) : null;
+  }
+
+  /**
+   * Removes these (per-socket) metrics from the list of open sockets.
+   */
+  void socketClosed() {
+    if (parent != null) {
+      parent.openSockets.remove(this);
+    }
+  }
+
+  void recordRead(long count) {
+    readCalls.increment();
+    if (count > 0) {
+      bytesRead.add(count);
+    } else if (count == 0) {
+      wouldBlock.increment();
+    }
+    if (parent != null) {
+      parent.recordRead(count);
+    }
+  }
+
+  void recordWrite(long requested, long written) {
+    writeCalls.increment();
+    if (written > 0) {
+      bytesWritten.add(written);
+      if (written < requested) {
+        partialWrites.increment();
+      }
+    } else if (written == 0 && requested > 0) {
+      wouldBlock.increment();
+    }
+    if (parent != null) {
+      parent.recordWrite(requested, written);
+    }
+  }
+
+  void recordTimeout() {
+    timeouts.increment();
+    if (parent != null) {
+      parent.recordTimeout();
+    }
+  }
+
+  void recordBusyPoll(boolean hit) {
+    (hit ? busyPollHits : busyPollMisses).increment();
+    if (parent != null) {
+      parent.recordBusyPoll(hit);
+    }
+  }
+
+  void recordFileDescriptorsReceived(int count) {
+    fileDescriptorsReceived.add(count);
+    if (parent != null) {
+      parent.recordFileDescriptorsReceived(count);
+    }
+  }
+
+  void recordFileDescriptorsLeaked(int count) {
+    fileDescriptorsLeaked.add(count);
+    if (parent != null) {
+      parent.recordFileDescriptorsLeaked(count);
+    }
+  }
+
+  @Override
+  public long getReadCalls() {
+    return readCalls.sum();
+  }
+
+  @Override
+  public long getBytesRead() {
+    return bytesRead.sum();
+  }
+
+  @Override
+  public long getWriteCalls() {
+    return writeCalls.sum();
+  }
+
+  @Override
+  public long getBytesWritten() {
+    return bytesWritten.sum();
+  }
+
+  @Override
+  public long getWouldBlockCount() {
+    return wouldBlock.sum();
+  }
+
+  @Override
+  public long getPartialWrites() {
+    return partialWrites.sum();
+  }
+
+  @Override
+  public long getTimeouts() {
+    return timeouts.sum();
+  }
+
+  @Override
+  public long getBusyPollHits() {
+    return busyPollHits.sum();
+  }
+
+  @Override
+  public long getBusyPollMisses() {
+    return busyPollMisses.sum();
+  }
+
+  /**
+   * Returns the ratio of busy-poll spins that received data, out of all spins.
+   *
+   * @return The ratio (between 0 and 1), or {@link Double#NaN} if there were no spins.
+   */
+  public double getBusyPollHitRatio() {
+    long hits = getBusyPollHits();
+    long total = hits + getBusyPollMisses();
+    return total == 0 ? Double.NaN : (double) hits / total;
+  }
+
+  @Override
+  public long getFileDescriptorsReceived() {
+    return fileDescriptorsReceived.sum();
+  }
+
+  @Override
+  public long getFileDescriptorsLeaked() {
+    return fileDescriptorsLeaked.sum();
+  }
+
+  private long getBytesTransferred() {
+    return getBytesRead() + getBytesWritten();
+  }
+
+  @Override
+  public int getOpenSockets() {
+    return openSockets == null ? 0 : openSockets.size();
+  }
+
+  @Override
+  public String[] hotSockets(int limit) {
+    if (openSockets == null || limit <= 0) {
+      return new String[0];
+    }
+    // take a snapshot first, since counters may change while sorting
+    List<Map.Entry<AFIOMetrics, Long>> list = new ArrayList<>();
+    for (AFIOMetrics m : openSockets) {
+      list.add(new AbstractMap.SimpleImmutableEntry<>(m, m.getBytesTransferred()));
+    }
+    Comparator<Map.Entry<AFIOMetrics, Long>> byBytesTransferred = Map.Entry.comparingByValue();
+    list.sort(byBytesTransferred.reversed());
+
+    int n = Math.min(limit, list.size());
+    String[] descriptions = new String[n];
+    for (int i = 0; i < n; i++) {
+      descriptions[i] = list.get(i).getKey().toString();
+    }
+    return descriptions;
+  }
+
+  /**
+   * Resets all counters to zero. For per-socket metrics, the process-wide metrics are not
+   * affected.
+   */
+  @Override
+  public void reset() {
+    readCalls.reset();
+    bytesRead.reset();
+    writeCalls.reset();
+    bytesWritten.reset();
+    wouldBlock.reset();
+    partialWrites.reset();
+    timeouts.reset();
+    busyPollHits.reset();
+    busyPollMisses.reset();
+    fileDescriptorsReceived.reset();
+    fileDescriptorsLeaked.reset();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    if (parent == null) {
+      sb.append("global");
+    } else {
+      sb.append('#').append(id);
+      int fdNum = -1;
+      try {
+        fdNum = fd == null || !fd.valid() ? -1 : NativeUnixSocket.getFD(fd);
+      } catch (IOException e) {
+        // ignore
+      }
+      if (fdNum >= 0) {
+        sb.append(";fd=").append(fdNum);
+      }
+    }
+    sb.append(";readCalls=").append(getReadCalls());
+    sb.append(";bytesRead=").append(getBytesRead());
+    sb.append(";writeCalls=").append(getWriteCalls());
+    sb.append(";bytesWritten=").append(getBytesWritten());
+    sb.append(";wouldBlock=").append(getWouldBlockCount());
+    sb.append(";partialWrites=").append(getPartialWrites());
+    sb.append(";timeouts=").append(getTimeouts());
+    sb.append(";busyPollHits=").append(getBusyPollHits());
+    sb.append(";busyPollMisses=").append(getBusyPollMisses());
+    sb.append(";fdsReceived=").append(getFileDescriptorsReceived());
+    sb.append(";fdsLeaked=").append(getFileDescriptorsLeaked());
+    return sb.toString();
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Registers {@link AFIOMetrics} with JMX.
+ *
+ * All references to the (optional) {@code java.management} module are kept in this class, which is
+ * only loaded when metrics are enabled; callers must be prepared for a {@link LinkageError} if that
+ * module is not available.
+ *
+ * @author Christian Kohlschütter
+ */
+final class AFIOMetricsJMX {
+  private AFIOMetricsJMX() {
+    throw new IllegalStateException("No instances");
+  }
+
+  /**
+   * Registers the given metrics as an MBean with the platform MBean server.
+   *
+   * @param metrics The metrics.
+   * @param objectName The object name.
+   * @return {@code true} if registered successfully.
+   */
+  static boolean registerMBean(AFIOMetrics metrics, String objectName) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(
+          objectName));
+      return true;
+    } catch (JMException | SecurityException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+/**
+ * The JMX management interface of {@link AFIOMetrics}.
+ *
+ * @author Christian Kohlschütter
+ */
+public interface AFIOMetricsMBean {
+  /**
+   * Returns the number of read/receive calls that reached native code.
+   *
+   * @return The count.
+   */
+  long getReadCalls();
+
+  /**
+   * Returns the number of bytes read/received.
+   *
+   * @return The count.
+   */
+  long getBytesRead();
+
+  /**
+   * Returns the number of write/send calls that reached native code.
+   *
+   * @return The count.
+   */
+  long getWriteCalls();
+
+  /**
+   * Returns the number of bytes written/sent.
+   *
+   * @return The count.
+   */
+  long getBytesWritten();
+
+  /**
+   * Returns the number of read and write calls that returned without transferring any data because
+   * the operation would have blocked ({@code EAGAIN}).
+   *
+   * @return The count.
+   */
+  long getWouldBlockCount();
+
+  /**
+   * Returns the number of write calls that only transferred some of the given data.
+   *
+   * @return The count.
+   */
+  long getPartialWrites();
+
+  /**
+   * Returns the number of operations that timed out.
+   *
+   * @return The count.
+   */
+  long getTimeouts();
+
+  /**
+   * Returns the number of reads in busy-poll mode that received data while spinning, without
+   * blocking; see {@link AFSocket#setBusyPollMicros(int)}.
+   *
+   * @return The count.
+   */
+  long getBusyPollHits();
+
+  /**
+   * Returns the number of reads in busy-poll mode that spun without receiving data, and then
+   * blocked.
+   *
+   * @return The count.
+   */
+  long getBusyPollMisses();
+
+  /**
+   * Returns the number of file descriptors received as ancillary data.
+   *
+   * @return The count.
+   */
+  long getFileDescriptorsReceived();
+
+  /**
+   * Returns the number of received file descriptors that were still open when their socket was
+   * closed, and were then closed by junixsocket.
+   *
+   * @return The count.
+   */
+  long getFileDescriptorsLeaked();
+
+  /**
+   * Returns the number of currently open sockets that are being tracked; only meaningful for
+   * {@link AFIOMetrics#global()}.
+   *
+   * @return The count.
+   */
+  int getOpenSockets();
+
+  /**
+   * Returns a description of the currently open sockets that transferred the most data, in
+   * descending order; only meaningful for {@link AFIOMetrics#global()}.
+   *
+   * @param limit The maximum number of sockets to list.
+   * @return The descriptions.
+   */
+  String[] hotSockets(int limit);
+
+  /**
+   * Resets all counters to zero.
+   */
+  void reset();
+}
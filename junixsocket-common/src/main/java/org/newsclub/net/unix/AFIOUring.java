@@ -0,0 +1,523 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * An asynchronous I/O engine for {@link AFSocketChannel}s and {@link AFDatagramChannel}s, based on
+ * Linux' io_uring.
+ *
+ * Operations return a {@link CompletableFuture} that is completed with the number of bytes
+ * transferred (or -1 upon end of stream, for {@link #read(AFSocketChannel, ByteBuffer)}). The
+ * buffer's position is advanced accordingly, right before the future is completed; the buffer must
+ * not be accessed while the operation is pending. Direct buffers are used as-is; data for heap
+ * buffers is copied via a temporary direct buffer.
+ *
+ * Operations are put into a submission queue that is shared by all sockets of this engine, and
+ * completions are reaped by a dedicated thread. By default, every operation is submitted to the
+ * kernel right away. Within a {@link #batch()}, operations are only queued, and then submitted
+ * with a single system call once the batch is closed, regardless of how many sockets are
+ * involved. Typically, one engine is used per event loop (or thread).
+ *
+ * If io_uring is not available (see {@link AFSocketCapability#CAPABILITY_IO_URING}; e.g., on
+ * non-Linux platforms, or if disabled via the {@code kernel.io_uring_disabled} sysctl or a seccomp
+ * filter), {@link #open()} returns an engine that falls back to performing the operations with
+ * blocking channel I/O on a pool of threads (see {@link #isNative()}).
+ *
+ * Sending via {@link #send(AFDatagramChannel, ByteBuffer)} requires the channel to be connected.
+ * Like regular channel I/O, operations on non-blocking channels may complete with 0 bytes.
+ *
+ * @author Christian Kohlschütter
+ */
+public final class AFIOUring implements Closeable {
+  private static final int DEFAULT_ENTRIES = 256;
+  private static final int MAX_COMPLETIONS_PER_WAIT = 256;
+
+  /**
+   * Identifier for internal operations (wakeups, cancellations) whose completions are ignored.
+   */
+  private static final long ID_INTERNAL = 0;
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  private final long ring;
+  private final @Nullable Thread completionThread;
+  private final @Nullable ExecutorService fallbackExecutor;
+
+  private final Object submissionLock = new Object();
+  private final Map<Long, Operation> pending = new ConcurrentHashMap<>();
+  private final AtomicLong nextId = new AtomicLong(ID_INTERNAL);
+  private final ThreadLocal<int[]> batchDepth = new ThreadLocal<>();
+  private volatile boolean closed = false;
+
+  private AFIOUring(long ring) {
+    this.ring = ring;
+    if (ring == 0) {
+      this.completionThread = null;
+      this.fallbackExecutor = Executors.newCachedThreadPool((r) -> {
+        Thread t = new Thread(r, "junixsocket io_uring fallback " + THREAD_COUNTER
+            .incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+    } else {
+      this.fallbackExecutor = null;
+      Thread t = new Thread(this::reapCompletions, "junixsocket io_uring completions "
+          + THREAD_COUNTER.incrementAndGet());
+      t.setDaemon(true);
+      this.completionThread = t;
+      t.start();
+    }
+  }
+
+  /**
+   * Checks if io_uring is available on this system.
+   *
+   * @return {@code true} if supported; if {@code false}, {@link #open()} returns an engine using
+   *         the fallback mode.
+   */
+  public static boolean isSupported() {
+    return AFSocket.supports(AFSocketCapability.CAPABILITY_IO_URING);
+  }
+
+  /**
+   * Opens a new engine, with a default submission queue size.
+   *
+   * @return The new engine.
+   * @throws IOException on error.
+   */
+  public static AFIOUring open() throws IOException {
+    return open(DEFAULT_ENTRIES);
+  }
+
+  /**
+   * Opens a new engine, with the given submission queue size. When the submission queue is full,
+   * queued operations are submitted to the kernel automatically, even within a {@link #batch()}.
+   *
+   * @param entries The minimum number of submission queue entries.
+   * @return The new engine.
+   * @throws IOException on error.
+   */
+  public static AFIOUring open(int entries) throws IOException {
+    if (entries <= 0) {
+      throw new IllegalArgumentException("entries");
+    }
+    if (!isSupported()) {
+      return new AFIOUring(0);
+    }
+    long ring;
+    try {
+      ring = NativeUnixSocket.ioUringCreate(entries);
+    } catch (OperationNotSupportedSocketException e) {
+      return new AFIOUring(0);
+    }
+    return new AFIOUring(ring);
+  }
+
+  /**
+   * Checks if this engine uses io_uring, or the fallback mode.
+   *
+   * @return {@code true} if io_uring is used.
+   */
+  public boolean isNative() {
+    return ring != 0;
+  }
+
+  /**
+   * Reads from the given stream socket channel.
+   *
+   * @param channel The channel.
+   * @param dst The buffer to read into.
+   * @return The future, completed with the number of bytes read, or -1 upon end of stream.
+   */
+  public CompletableFuture<Integer> read(AFSocketChannel<?> channel, ByteBuffer dst) {
+    return submit(NativeUnixSocket.IO_URING_OP_RECV, channel, channel.getAFCore(), dst, true);
+  }
+
+  /**
+   * Writes to the given stream socket channel. Like {@link AFSocketChannel#write(ByteBuffer)},
+   * the operation may complete before all bytes have been written.
+   *
+   * @param channel The channel.
+   * @param src The buffer to write from.
+   * @return The future, completed with the number of bytes written.
+   */
+  public CompletableFuture<Integer> write(AFSocketChannel<?> channel, ByteBuffer src) {
+    return submit(NativeUnixSocket.IO_URING_OP_SEND, channel, channel.getAFCore(), src, true);
+  }
+
+  /**
+   * Receives a datagram from the given datagram channel. If the datagram is larger than the
+   * remaining space in the buffer, the excess bytes are discarded.
+   *
+   * @param channel The channel.
+   * @param dst The buffer to receive into.
+   * @return The future, completed with the number of bytes received.
+   */
+  public CompletableFuture<Integer> receive(AFDatagramChannel<?> channel, ByteBuffer dst) {
+    return submit(NativeUnixSocket.IO_URING_OP_RECV, channel, channel.getAFCore(), dst, false);
+  }
+
+  /**
+   * Sends a datagram via the given (connected) datagram channel.
+   *
+   * @param channel The channel.
+   * @param src The buffer to send from.
+   * @return The future, completed with the number of bytes sent.
+   */
+  public CompletableFuture<Integer> send(AFDatagramChannel<?> channel, ByteBuffer src) {
+    return submit(NativeUnixSocket.IO_URING_OP_SEND, channel, channel.getAFCore(), src, false);
+  }
+
+  /**
+   * Starts a batch for the current thread. Until the batch is closed, operations started by the
+   * current thread are only queued, and then submitted together with a single system call.
+   * Batches may be nested; operations are submitted when the outermost batch is closed.
+   *
+   * @return The batch.
+   */
+  public Batch batch() {
+    int[] depth = batchDepth.get();
+    if (depth == null) {
+      depth = new int[1];
+      batchDepth.set(depth);
+    }
+    depth[0]++;
+    return new Batch(depth);
+  }
+
+  /**
+   * A batch of operations, see {@link AFIOUring#batch()}.
+   */
+  public final class Batch implements Closeable {
+    private final int[] depth;
+    private boolean batchClosed = false;
+
+    private Batch(int[] depth) {
+      this.depth = depth;
+    }
+
+    /**
+     * Submits all queued operations, unless this batch is nested in another one.
+     *
+     * @throws IOException on error.
+     */
+    @Override
+    public void close() throws IOException {
+      if (batchClosed) {
+        return;
+      }
+      batchClosed = true;
+      if (--depth[0] == 0) {
+        batchDepth.remove();
+        submit();
+      }
+    }
+  }
+
+  /**
+   * Submits all queued operations to the kernel.
+   *
+   * @throws IOException on error.
+   */
+  public void submit() throws IOException {
+    if (ring == 0) {
+      return;
+    }
+    synchronized (submissionLock) {
+      if (!closed) {
+        NativeUnixSocket.ioUringSubmit(ring);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of operations that have been started but not yet completed.
+   *
+   * @return The number of pending operations.
+   */
+  public int getPendingOperations() {
+    return pending.size();
+  }
+
+  private boolean isInBatch() {
+    int[] depth = batchDepth.get();
+    return depth != null && depth[0] > 0;
+  }
+
+  private CompletableFuture<Integer> submit(int op, ByteChannel channel, AFSocketCore core,
+      ByteBuffer buffer, boolean stream) {
+    boolean receive = op == NativeUnixSocket.IO_URING_OP_RECV;
+    if (receive && buffer.isReadOnly()) {
+      throw new IllegalArgumentException("Read-only buffer");
+    }
+    if (closed) {
+      CompletableFuture<Integer> cf = new CompletableFuture<>();
+      cf.completeExceptionally(new ClosedChannelException());
+      return cf;
+    }
+    if (ring == 0) {
+      return submitFallback(channel, buffer, receive);
+    }
+
+    Operation operation = new Operation(nextId.incrementAndGet(), core, buffer, receive, stream);
+    pending.put(operation.id, operation);
+    try {
+      synchronized (submissionLock) {
+        if (closed) {
+          throw new AsynchronousCloseException();
+        }
+        while (!NativeUnixSocket.ioUringPrepare(ring, op, core.validFdOrException(),
+            operation.directBuffer, operation.directBuffer.position(), operation.length,
+            operation.id)) {
+          // submission queue is full
+          NativeUnixSocket.ioUringSubmit(ring);
+        }
+        if (!isInBatch()) {
+          NativeUnixSocket.ioUringSubmit(ring);
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      pending.remove(operation.id);
+      operation.completeExceptionally(e);
+    }
+    return operation;
+  }
+
+  private CompletableFuture<Integer> submitFallback(ByteChannel channel, ByteBuffer buffer,
+      boolean receive) {
+    CompletableFuture<Integer> cf = new CompletableFuture<>();
+    try {
+      fallbackExecutor.execute(() -> {
+        if (cf.isDone()) {
+          return;
+        }
+        try {
+          cf.complete(receive ? channel.read(buffer) : channel.write(buffer));
+        } catch (IOException | RuntimeException e) {
+          cf.completeExceptionally(e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      cf.completeExceptionally(new ClosedChannelException());
+    }
+    return cf;
+  }
+
+  private void cancel(Operation operation) {
+    synchronized (submissionLock) {
+      if (closed || !pending.containsKey(operation.id)) {
+        return;
+      }
+      try {
+        while (!NativeUnixSocket.ioUringPrepare(ring, NativeUnixSocket.IO_URING_OP_CANCEL, null,
+            null, 0, 0, operation.id)) {
+          NativeUnixSocket.ioUringSubmit(ring);
+        }
+        NativeUnixSocket.ioUringSubmit(ring);
+      } catch (IOException e) {
+        // ignore; the operation completes eventually
+      }
+    }
+  }
+
+  private void reapCompletions() {
+    long[] ids = new long[MAX_COMPLETIONS_PER_WAIT];
+    int[] results = new int[MAX_COMPLETIONS_PER_WAIT];
+    while (!closed || !pending.isEmpty()) {
+      int count;
+      try {
+        count = NativeUnixSocket.ioUringWait(ring, 1, ids, results);
+      } catch (IOException | OutOfMemoryError e) {
+        for (Operation op : pending.values()) {
+          op.completeExceptionally(e);
+        }
+        pending.clear();
+        return;
+      }
+      for (int i = 0; i < count; i++) {
+        long id = ids[i];
+        if (id == ID_INTERNAL) {
+          continue;
+        }
+        Operation op = pending.remove(id);
+        if (op != null) {
+          op.completed(results[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Closes this engine. Pending operations are cancelled, and their futures are completed
+   * exceptionally with an {@link AsynchronousCloseException}. The channels are not closed.
+   *
+   * @throws IOException on error.
+   */
+  @Override
+  public void close() throws IOException {
+    if (ring == 0) {
+      closed = true;
+      fallbackExecutor.shutdownNow();
+      return;
+    }
+
+    synchronized (submissionLock) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      for (long id : pending.keySet()) {
+        while (!NativeUnixSocket.ioUringPrepare(ring, NativeUnixSocket.IO_URING_OP_CANCEL, null,
+            null, 0, 0, id)) {
+          NativeUnixSocket.ioUringSubmit(ring);
+        }
+      }
+      // wake up the completion thread
+      while (!NativeUnixSocket.ioUringPrepare(ring, NativeUnixSocket.IO_URING_OP_NOP, null, null,
+          0, 0, ID_INTERNAL)) {
+        NativeUnixSocket.ioUringSubmit(ring);
+      }
+      NativeUnixSocket.ioUringSubmit(ring);
+    }
+
+    // the kernel may still access our buffers until all operations have completed
+    boolean interrupted = false;
+    while (completionThread.isAlive()) {
+      try {
+        completionThread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    NativeUnixSocket.ioUringDestroy(ring);
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static IOException errorToException(int res) {
+    switch (res) {
+      case NativeUnixSocket.IO_URING_RES_BROKEN_PIPE:
+        return new SocketException("Broken pipe");
+      case NativeUnixSocket.IO_URING_RES_CONNECTION_RESET:
+        return new SocketException("Connection reset");
+      case NativeUnixSocket.IO_URING_RES_NOT_CONNECTED:
+        return new SocketException("Socket is not connected");
+      default:
+        return new SocketException("I/O operation failed; errno=" + -res);
+    }
+  }
+
+  /**
+   * A pending operation.
+   */
+  private final class Operation extends CompletableFuture<Integer> {
+    private final long id;
+    private final AFSocketCore core;
+    private final ByteBuffer buffer;
+    private final ByteBuffer directBuffer;
+    private final int length;
+    private final boolean receive;
+    private final boolean stream;
+
+    Operation(long id, AFSocketCore core, ByteBuffer buffer, boolean receive, boolean stream) {
+      super();
+      this.id = id;
+      this.core = core;
+      this.buffer = buffer;
+      this.receive = receive;
+      this.stream = stream;
+      this.length = buffer.remaining();
+      if (buffer.isDirect()) {
+        this.directBuffer = buffer;
+      } else {
+        ByteBuffer bb = ByteBuffer.allocateDirect(length);
+        if (!receive) {
+          bb.put(buffer.duplicate());
+          bb.flip();
+        }
+        this.directBuffer = bb;
+      }
+    }
+
+    void completed(int res) {
+      if (res < 0) {
+        if (res == NativeUnixSocket.IO_URING_RES_AGAIN) {
+          // would block (non-blocking channel)
+          if (receive) {
+            core.recordRead(0);
+          } else {
+            core.recordWrite(length, 0);
+          }
+          complete(0);
+        } else if (res == NativeUnixSocket.IO_URING_RES_CANCELED) {
+          completeExceptionally(closed ? new AsynchronousCloseException()
+              : new SocketException("Operation cancelled"));
+        } else {
+          completeExceptionally(errorToException(res));
+        }
+        return;
+      }
+
+      if (receive) {
+        core.recordRead(res);
+        if (res > 0) {
+          if (directBuffer == buffer) { // NOPMD.CompareObjectsWithEquals
+            buffer.position(buffer.position() + res);
+          } else {
+            directBuffer.limit(res);
+            buffer.put(directBuffer);
+          }
+        } else if (res == 0 && stream && length > 0) {
+          res = -1; // EOF
+        }
+      } else {
+        core.recordWrite(length, res);
+        buffer.position(buffer.position() + res);
+      }
+      complete(res);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+      if (cancelled) {
+        AFIOUring.this.cancel(this);
+      }
+      return cancelled;
+    }
+  }
+}
@@ -17,6 +17,7 @@
  */
 package org.newsclub.net.unix;
 
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
@@ -29,5 +30,23 @@ public abstract class AFInputStream extends InputStream implements FileDescripto
     super();
   }
 
+  /**
+   * Returned by {@link #peek()} in non-blocking mode if no data is currently available.
+   */
+  public static final int NO_DATA_AVAILABLE = -2;
+
+  /**
+   * Returns the next byte of data without consuming it, blocking until it is available.
+   *
+   * In buffered mode (see {@link AFSocket#setStreamBufferSize(int)}), the byte is taken from the
+   * receive buffer without a system call, if possible. Otherwise, the byte is received with
+   * {@code MSG_PEEK}.
+   *
+   * @return The next byte (0-255), -1 if the end of the stream has been reached, or
+   *         {@link #NO_DATA_AVAILABLE} if, in non-blocking mode, no data is currently available.
+   * @throws IOException on error.
+   */
+  public abstract int peek() throws IOException;
+
   // IMPORTANT! also see src/main/java8/org/newsclub/net/unix/AFInputStream shim
 }
@@ -97,7 +97,7 @@ public final class AFPipe extends Pipe implements Closeable {
       if (length == 0) {
         return 0;
       }
-      return read(dsts[offset]);
+      return sourceCore.read(dsts, offset, length, options);
     }
 
     @Override
@@ -141,7 +141,7 @@ public final class AFPipe extends Pipe implements Closeable {
       if (length == 0) {
         return 0;
       }
-      return write(srcs[offset]);
+      return sinkCore.write(srcs, offset, length, options);
     }
 
     @Override
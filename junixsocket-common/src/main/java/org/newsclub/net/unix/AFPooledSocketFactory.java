@@ -0,0 +1,90 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.util.Objects;
+
+/**
+ * An {@link AFSocketFactory} that borrows connections from an {@link AFSocketPool} instead of
+ * opening a new connection for every socket, and returns them to the pool when the socket is
+ * closed.
+ *
+ * Hostnames are mapped to socket addresses by the wrapped factory, e.g.:
+ *
+ * <pre><code>
+ * AFSocketPool&lt;AFUNIXSocketAddress&gt; pool = new AFSocketPool&lt;&gt;(8, 30_000, 5_000);
+ * SocketFactory sf = new AFPooledSocketFactory&lt;&gt;(new AFUNIXSocketFactory.FactoryArg(
+ *     "/run/service.sock"), pool);
+ * </code></pre>
+ *
+ * For code that instantiates socket factories by class name (e.g., JDBC drivers), subclass this
+ * class with a suitable constructor.
+ *
+ * @param <A> The supported address type.
+ * @author Christian Kohlschütter
+ * @see AFSocketPool
+ */
+public class AFPooledSocketFactory<A extends AFSocketAddress> extends AFSocketFactory<A> {
+  private final AFSocketFactory<A> factory;
+  private final AFSocketPool<A> pool;
+
+  /**
+   * Creates a new pooled socket factory.
+   *
+   * @param factory The wrapped factory, used to map hostnames to socket addresses.
+   * @param pool The pool to borrow connections from.
+   */
+  public AFPooledSocketFactory(AFSocketFactory<A> factory, AFSocketPool<A> pool) {
+    super();
+    this.factory = Objects.requireNonNull(factory, "factory");
+    this.pool = Objects.requireNonNull(pool, "pool");
+  }
+
+  /**
+   * Returns the pool connections are borrowed from.
+   *
+   * @return The pool.
+   */
+  public final AFSocketPool<A> getPool() {
+    return pool;
+  }
+
+  @Override
+  public boolean isHostnameSupported(String host) {
+    return factory.isHostnameSupported(host);
+  }
+
+  @Override
+  public SocketAddress addressFromHost(String host, int port) throws SocketException {
+    return factory.addressFromHost(host, port);
+  }
+
+  @Override
+  public Socket createSocket() throws SocketException {
+    return new PooledSocket<>(pool, factory);
+  }
+
+  @Override
+  protected Socket connectTo(A addr) throws IOException {
+    return pool.getConnection(addr);
+  }
+}
@@ -17,6 +17,7 @@
  */
 package org.newsclub.net.unix;
 
+import java.io.FileDescriptor;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
@@ -24,13 +25,18 @@ import java.nio.channels.spi.AbstractSelectableChannel;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 final class AFSelectionKey extends SelectionKey {
-  private static final int OP_INVALID = 1 << 7; // custom
+  static final int OP_INVALID = 1 << 7; // custom
   private final AFSelector sel;
-  private final AFSocketCore core;
+  private final FileDescriptor fd;
+  private final boolean foreign;
   private int ops;
   private final SelectableChannel chann;
   private final AtomicBoolean cancelled = new AtomicBoolean();
   private int opsReady;
+  private int selectorId = -1;
+  private int selectedIndex = -1;
+  private boolean updatePending;
+  private boolean hangupReported;
 
   AFSelectionKey(AFSelector selector, AbstractSelectableChannel ch, int ops, Object att) {
     super();
@@ -39,14 +45,37 @@ final class AFSelectionKey extends SelectionKey {
     this.ops = ops; // FIXME check
 
     if (ch instanceof AFDatagramChannel<?>) {
-      this.core = ((AFDatagramChannel<?>) ch).getAFCore();
+      this.fd = ((AFDatagramChannel<?>) ch).getAFCore().fd;
     } else if (ch instanceof AFSocketChannel<?>) {
-      this.core = ((AFSocketChannel<?>) ch).getAFCore();
+      this.fd = ((AFSocketChannel<?>) ch).getAFCore().fd;
     } else if (ch instanceof AFServerSocketChannel<?>) {
-      this.core = ((AFServerSocketChannel<?>) ch).getAFCore();
+      this.fd = ((AFServerSocketChannel<?>) ch).getAFCore().fd;
     } else {
       throw new UnsupportedOperationException();
     }
+    this.foreign = false;
+
+    attach(att);
+  }
+
+  /**
+   * Constructs a key for a channel of another provider; see
+   * {@link AFSelectorProvider#registerForeignChannel(Selector, SelectableChannel, int, Object)}.
+   *
+   * @param selector The selector.
+   * @param ch The channel.
+   * @param fd The channel's file descriptor.
+   * @param ops The interest set.
+   * @param att The attachment.
+   */
+  AFSelectionKey(AFSelector selector, SelectableChannel ch, FileDescriptor fd, int ops,
+      Object att) {
+    super();
+    this.chann = ch;
+    this.sel = selector;
+    this.ops = ops;
+    this.fd = fd;
+    this.foreign = true;
 
     attach(att);
   }
@@ -104,6 +133,7 @@ final class AFSelectionKey extends SelectionKey {
   @Override
   public SelectionKey interestOps(int interestOps) {
     this.ops = interestOps; // FIXME check
+    sel.interestOpsChanged(this);
     return this;
   }
 
@@ -112,14 +142,85 @@ final class AFSelectionKey extends SelectionKey {
     return opsReady & ~OP_INVALID;
   }
 
-  AFSocketCore getAFCore() {
-    return core;
+  /**
+   * Returns the file descriptor of the channel.
+   *
+   * @return The file descriptor.
+   */
+  FileDescriptor getFD() {
+    return fd;
+  }
+
+  /**
+   * Checks if the channel is not provided by junixsocket; such channels do not know about this
+   * key, and therefore don't cancel it when closed.
+   *
+   * @return {@code true} if foreign.
+   */
+  boolean isForeign() {
+    return foreign;
   }
 
   void setOpsReady(int opsReady) {
     this.opsReady = opsReady;
   }
 
+  /**
+   * Returns the selector-specific identifier of this key (e.g., the epoll registration ID), or -1
+   * if not set.
+   *
+   * @return The identifier.
+   */
+  int getSelectorId() {
+    return selectorId;
+  }
+
+  void setSelectorId(int id) {
+    this.selectorId = id;
+  }
+
+  /**
+   * Returns the position of this key in its selector's {@link SelectedKeySet}, or -1 if not
+   * selected.
+   *
+   * @return The position.
+   */
+  int getSelectedIndex() {
+    return selectedIndex;
+  }
+
+  void setSelectedIndex(int index) {
+    this.selectedIndex = index;
+  }
+
+  /**
+   * Checks if this key is queued for a registration update in its selector (guarded by the
+   * selector).
+   *
+   * @return {@code true} if queued.
+   */
+  boolean isUpdatePending() {
+    return updatePending;
+  }
+
+  void setUpdatePending(boolean pending) {
+    this.updatePending = pending;
+  }
+
+  /**
+   * Checks if this key, which is no longer polled since its channel has been hung up, has been
+   * selected since its interest set was last changed (guarded by the selector).
+   *
+   * @return {@code true} if reported.
+   */
+  boolean isHangupReported() {
+    return hangupReported;
+  }
+
+  void setHangupReported(boolean reported) {
+    this.hangupReported = reported;
+  }
+
   @Override
   public String toString() {
     return super.toString() + "[" + readyOps() + ";valid=" + isValid() + ";channel=" + channel()
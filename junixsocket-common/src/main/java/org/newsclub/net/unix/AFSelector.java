@@ -22,23 +22,75 @@ import java.io.IOException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.IllegalSelectorException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.spi.AbstractSelectableChannel;
-import java.nio.channels.spi.AbstractSelector;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-
-final class AFSelector extends AbstractSelector {
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+final class AFSelector extends SelectorShim {
+  /**
+   * If set to {@code true}, selectors use epoll on Linux instead of poll(2); ignored if epoll is
+   * not supported ({@link AFSocketCapability#CAPABILITY_EPOLL}).
+   */
+  private static final String PROP_SELECTOR_EPOLL = "org.newsclub.net.unix.selector.epoll";
+
+  private static final boolean USE_EPOLL = Boolean.parseBoolean(System.getProperty(
+      PROP_SELECTOR_EPOLL, "false"));
+
+  private static final int EPOLL_MAX_EVENTS = 256;
+  private static final int EPOLL_ID_WAKEUP = 0;
+
+  /**
+   * The eventfd object that is used to wake up the selector, or {@code null} if
+   * {@link #selectorPipe} is used ({@link AFSocketCapability#CAPABILITY_EVENTFD}).
+   */
+  private final FileDescriptor wakeupEventFd;
+
+  /**
+   * The pipe that is used to wake up the selector, or {@code null} if {@link #wakeupEventFd} is
+   * used.
+   */
   private final AFPipe selectorPipe;
+
+  /**
+   * The file descriptor that becomes readable upon {@link #wakeup()}.
+   */
+  private final FileDescriptor wakeupFd;
   private final PollFd selectorPipePollFd;
 
+  /**
+   * Set upon {@link #wakeup()}, and cleared once the wakeup has been consumed by a select
+   * operation; repeated wakeups in between do not signal {@link #wakeupFd} again.
+   */
+  private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+  /**
+   * The epoll instance, or {@code null} if poll(2) is used.
+   */
+  private final FileDescriptor epollFd;
+  private AFSelectionKey[] epollKeys;
+  private int[] epollFreeIds;
+  private int epollNumFreeIds;
+  private int epollNextId = EPOLL_ID_WAKEUP + 1;
+  private final int[] epollReadyIds;
+  private final int[] epollReadyOps;
+
   private final ByteBuffer pipeMsgWakeUp = ByteBuffer.allocate(1);
   private final ByteBuffer pipeMsgReceiveBuffer = ByteBuffer.allocateDirect(256);
 
@@ -47,28 +99,297 @@ final class AFSelector extends AbstractSelector {
   private final Set<SelectionKey> keysRegisteredPublic = Collections.unmodifiableSet(
       keysRegisteredKeySet);
 
-  private final Set<SelectionKey> selectedKeysSet = new HashSet<>();
+  private final SelectedKeySet selectedKeysSet = new SelectedKeySet();
   private final Set<SelectionKey> selectedKeysPublic = new UngrowableSet<>(selectedKeysSet);
 
-  private PollFd pollFd = null;
+  /**
+   * Keys of channels that have been hung up (or are in an error state), and which are no longer
+   * polled. Such channels are not closed by the selector, as there may still be data to read;
+   * instead, they are selected as ready for their interest set, so that the subsequent I/O
+   * operation can consume any remaining data, and observe the end of stream or the error
+   * condition.
+   *
+   * As such a channel would otherwise be ready forever, each key is selected only once, and then
+   * again only after its interest set has been changed (see
+   * {@link AFSelectionKey#isHangupReported()}); callers should therefore keep reading until the
+   * end of stream, or update the interest set to be notified again.
+   */
+  private final Set<AFSelectionKey> hungUpKeys = new HashSet<>();
+
+  /**
+   * Scratch array for {@link #selectHungUpKeys(Consumer)}, reused to avoid allocations (guarded
+   * by this selector).
+   */
+  private AFSelectionKey[] hungUpKeysScratch = new AFSelectionKey[8];
+
+  /**
+   * Keys of channels of other providers, see {@link #registerForeign(SelectableChannel, int,
+   * Object)}.
+   */
+  private final Map<SelectableChannel, AFSelectionKey> foreignKeys = new IdentityHashMap<>();
+
+  /**
+   * The registration table for poll(2), or {@code null} if epoll is used. Slot 0 is the
+   * {@link #wakeupFd}; every other slot up to {@link PollFd#numFds} holds a registered key, which
+   * knows its slot ({@link AFSelectionKey#getSelectorId()}). Removing a key moves the last entry
+   * into the freed slot, so the table stays compact, and nothing needs to be rebuilt.
+   */
+  private PollFd pollTable;
+
+  /**
+   * Keys whose entry in {@link #pollTable} has to be added, updated or removed before the next
+   * poll. The table itself is not modified while polling.
+   */
+  private final ArrayDeque<AFSelectionKey> pendingUpdates = new ArrayDeque<>();
+
+  /**
+   * Keys whose registration with epoll failed; they are cancelled upon the next select operation
+   * (guarded by this selector).
+   */
+  private final ArrayDeque<AFSelectionKey> failedKeys = new ArrayDeque<>();
 
   AFSelector(AFSelectorProvider<?> provider) throws IOException {
+    this(provider, USE_EPOLL);
+  }
+
+  /**
+   * Constructs a new selector.
+   *
+   * @param provider The selector provider.
+   * @param useEpoll If {@code true}, epoll is used if supported.
+   * @throws IOException on error.
+   */
+  AFSelector(AFSelectorProvider<?> provider, boolean useEpoll) throws IOException {
     super(provider);
 
-    this.selectorPipe = AFUNIXSelectorProvider.getInstance().openSelectablePipe();
-    this.selectorPipePollFd = new PollFd(selectorPipe.sourceFD());
+    if (AFSocket.supports(AFSocketCapability.CAPABILITY_EVENTFD)) {
+      FileDescriptor efd = new FileDescriptor();
+      NativeUnixSocket.eventfdCreate(efd);
+      this.wakeupEventFd = efd;
+      this.selectorPipe = null;
+      this.wakeupFd = efd;
+    } else {
+      this.wakeupEventFd = null;
+      this.selectorPipe = AFUNIXSelectorProvider.getInstance().openSelectablePipe();
+      this.wakeupFd = selectorPipe.sourceFD();
+    }
+    this.selectorPipePollFd = new PollFd(wakeupFd);
+
+    if (useEpoll && AFSocket.supports(AFSocketCapability.CAPABILITY_EPOLL)) {
+      FileDescriptor epfd = new FileDescriptor();
+      try {
+        NativeUnixSocket.epollCreate(epfd);
+        NativeUnixSocket.epollCtl(epfd, NativeUnixSocket.EPOLL_CTL_ADD, wakeupFd,
+            SelectionKey.OP_READ, EPOLL_ID_WAKEUP);
+      } catch (IOException e) {
+        closeWakeup();
+        if (epfd.valid()) {
+          NativeUnixSocket.close(epfd);
+        }
+        throw e;
+      }
+      this.epollFd = epfd;
+      this.epollKeys = new AFSelectionKey[16];
+      this.epollFreeIds = new int[16];
+      this.epollReadyIds = new int[EPOLL_MAX_EVENTS];
+      this.epollReadyOps = new int[EPOLL_MAX_EVENTS];
+    } else {
+      this.epollFd = null;
+      this.epollReadyIds = null;
+      this.epollReadyOps = null;
+      this.pollTable = new PollFd(wakeupFd).withCapacity(16);
+    }
   }
 
   @Override
   protected SelectionKey register(AbstractSelectableChannel ch, int ops, Object att) {
     AFSelectionKey key = new AFSelectionKey(this, ch, ops, att);
     synchronized (this) {
-      pollFd = null;
       keysRegistered.put(key, Boolean.TRUE);
+      if (epollFd != null) {
+        epollRegister(key);
+      } else {
+        queueUpdate(key);
+      }
     }
     return key;
   }
 
+  /**
+   * Registers a channel of another provider, such as a TCP {@link java.nio.channels.SocketChannel}
+   * of the JDK, by its file descriptor.
+   *
+   * Such a channel does not know about the key, so closing the channel does not cancel it; the
+   * key is removed upon the next select operation instead.
+   *
+   * @param ch The channel, which must be in non-blocking mode.
+   * @param ops The interest set.
+   * @param att The attachment, or {@code null}.
+   * @return The key; if the channel is already registered, the existing key is updated and
+   *         returned.
+   * @throws IOException on error.
+   * @throws IllegalSelectorException if the channel's file descriptor cannot be accessed.
+   */
+  SelectionKey registerForeign(SelectableChannel ch, int ops, Object att) throws IOException {
+    if ((ops & ~ch.validOps()) != 0) {
+      throw new IllegalArgumentException("Invalid interest set");
+    }
+    synchronized (ch.blockingLock()) {
+      if (!ch.isOpen()) {
+        throw new ClosedChannelException();
+      }
+      if (ch.isBlocking()) {
+        throw new IllegalBlockingModeException();
+      }
+      FileDescriptor fd = NativeUnixSocket.getSelectableChannelFD(ch);
+      if (fd == null || !fd.valid()) {
+        throw new IllegalSelectorException();
+      }
+      synchronized (this) {
+        if (!isOpen()) {
+          throw new ClosedSelectorException();
+        }
+        AFSelectionKey key = foreignKeys.get(ch);
+        if (key != null) {
+          key.attach(att);
+          key.interestOps(ops);
+          return key;
+        }
+        key = new AFSelectionKey(this, ch, fd, ops, att);
+        foreignKeys.put(ch, key);
+        keysRegistered.put(key, Boolean.TRUE);
+        if (epollFd != null) {
+          epollRegister(key);
+        } else {
+          queueUpdate(key);
+        }
+        return key;
+      }
+    }
+  }
+
+  /**
+   * Removes the keys of foreign channels that have been closed since the last select operation
+   * (guarded by this selector).
+   */
+  private void removeClosedForeignKeys() {
+    if (foreignKeys.isEmpty()) {
+      return;
+    }
+    for (Iterator<AFSelectionKey> it = foreignKeys.values().iterator(); it.hasNext();) {
+      AFSelectionKey key = it.next();
+      if (!key.channel().isOpen()) {
+        it.remove();
+        key.cancel();
+      }
+    }
+  }
+
+  /**
+   * Checks if this selector uses epoll instead of poll(2).
+   *
+   * @return {@code true} if epoll is used.
+   */
+  boolean isEpoll() {
+    return epollFd != null;
+  }
+
+  private void epollRegister(AFSelectionKey key) {
+    int id;
+    if (epollNumFreeIds > 0) {
+      id = epollFreeIds[--epollNumFreeIds];
+    } else {
+      id = epollNextId++;
+      if (id >= epollKeys.length) {
+        epollKeys = Arrays.copyOf(epollKeys, epollKeys.length * 2);
+      }
+    }
+    epollKeys[id] = key;
+    key.setSelectorId(id);
+    try {
+      NativeUnixSocket.epollCtl(epollFd, NativeUnixSocket.EPOLL_CTL_ADD, key.getFD(), key
+          .interestOps(), id);
+    } catch (IOException e) {
+      registrationFailed(key);
+    }
+  }
+
+  private void epollDeregister(AFSelectionKey key) {
+    int id = key.getSelectorId();
+    if (id <= EPOLL_ID_WAKEUP || id >= epollKeys.length || epollKeys[id] != key) {
+      return;
+    }
+    key.setSelectorId(-1);
+    epollKeys[id] = null;
+    if (epollNumFreeIds == epollFreeIds.length) {
+      epollFreeIds = Arrays.copyOf(epollFreeIds, epollFreeIds.length * 2);
+    }
+    epollFreeIds[epollNumFreeIds++] = id;
+
+    FileDescriptor fd = key.getFD();
+    // a foreign channel closes its file descriptor without cancelling the key, and the
+    // descriptor may already have been reused
+    if (key.isForeign() ? key.channel().isOpen() : fd.valid()) {
+      try {
+        NativeUnixSocket.epollCtl(epollFd, NativeUnixSocket.EPOLL_CTL_DEL, fd, 0, id);
+      } catch (IOException e) {
+        // ignore; closed file descriptors are removed from the epoll set automatically
+      }
+    }
+  }
+
+  /**
+   * Called by {@link AFSelectionKey} when its interest set has changed.
+   *
+   * @param key The key.
+   */
+  void interestOpsChanged(AFSelectionKey key) {
+    if (epollFd == null) {
+      synchronized (this) {
+        if (!rearmHungUp(key)) {
+          queueUpdate(key);
+        }
+      }
+      return;
+    }
+    synchronized (this) {
+      int id = key.getSelectorId();
+      if (rearmHungUp(key) || id <= EPOLL_ID_WAKEUP) {
+        return;
+      }
+      try {
+        NativeUnixSocket.epollCtl(epollFd, NativeUnixSocket.EPOLL_CTL_MOD, key.getFD(), key
+            .interestOps(), id);
+      } catch (IOException e) {
+        registrationFailed(key);
+      }
+    }
+  }
+
+  /**
+   * Marks the given key as invalid, and has it cancelled upon the next select operation (guarded
+   * by this selector).
+   *
+   * @param key The key.
+   */
+  private void registrationFailed(AFSelectionKey key) {
+    key.setOpsReady(AFSelectionKey.OP_INVALID);
+    failedKeys.add(key);
+  }
+
+  /**
+   * Cancels the keys that have become invalid since the last select operation, so they no longer
+   * show up in {@link #keys()} (guarded by this selector).
+   */
+  private void cancelFailedKeys() {
+    AFSelectionKey key;
+    while ((key = failedKeys.poll()) != null) {
+      if (!key.isCancelled()) {
+        key.cancel();
+      }
+    }
+  }
+
   @Override
   public Set<SelectionKey> keys() {
     return keysRegisteredPublic;
@@ -81,7 +402,7 @@ final class AFSelector extends AbstractSelector {
 
   @Override
   public int selectNow() throws IOException {
-    return select0(0);
+    return select0(0, null);
   }
 
   @Override
@@ -92,27 +413,72 @@ final class AFSelector extends AbstractSelector {
       throw new IllegalArgumentException("Timeout must not be negative");
     }
 
-    return select0((int) timeout);
+    return select0((int) timeout, null);
   }
 
   @Override
   public int select() throws IOException {
+    return selectIgnoringTimeout(-1, null);
+  }
+
+  // The Consumer-based variants pass the ready keys straight from the poll/epoll result to the
+  // action, without touching the selected-key set, and without allocating any objects.
+
+  @Override
+  public int select(Consumer<SelectionKey> action, long timeout) throws IOException {
+    Objects.requireNonNull(action);
+    if (timeout < 0) {
+      throw new IllegalArgumentException("Timeout must not be negative");
+    }
+    return selectIgnoringTimeout(timeout == 0 ? -1 : (int) Math.min(Integer.MAX_VALUE, timeout),
+        action);
+  }
+
+  @Override
+  public int select(Consumer<SelectionKey> action) throws IOException {
+    return selectIgnoringTimeout(-1, Objects.requireNonNull(action));
+  }
+
+  @Override
+  public int selectNow(Consumer<SelectionKey> action) throws IOException {
+    return select0(0, Objects.requireNonNull(action));
+  }
+
+  private int selectIgnoringTimeout(int timeout, Consumer<SelectionKey> action) throws IOException {
     try {
-      return select0(-1);
+      return select0(timeout, action);
     } catch (SocketTimeoutException e) {
       return 0;
     }
   }
 
-  @SuppressWarnings("PMD.CognitiveComplexity")
-  private int select0(int timeout) throws IOException {
+  /**
+   * Selects the ready keys.
+   *
+   * @param timeout The timeout in milliseconds (0 = return immediately, -1 = no timeout).
+   * @param action The action to pass the ready keys to, or {@code null} to add them to the
+   *          selected-key set (which is cleared beforehand).
+   * @return The number of selected keys.
+   * @throws IOException on error.
+   */
+  private int select0(int timeout, Consumer<SelectionKey> action) throws IOException {
+    if (hasSelectableHungUpKeys()) {
+      timeout = 0;
+    }
+    if (epollFd != null) {
+      return select0Epoll(timeout, action);
+    }
     PollFd pfd;
     synchronized (this) {
       if (!isOpen()) {
         throw new ClosedSelectorException();
       }
-      pfd = pollFd = initPollFd(pollFd);
-      selectedKeysSet.clear();
+      if (action == null) {
+        clearSelectedKeys();
+      }
+      removeClosedForeignKeys();
+      cancelFailedKeys();
+      pfd = applyPendingUpdates();
     }
     int num;
     try {
@@ -122,36 +488,186 @@ final class AFSelector extends AbstractSelector {
       end();
     }
     synchronized (this) {
-      selectedKeysSet.clear();
-      pfd = pollFd;
-      if (pfd != null) {
-        AFSelectionKey[] keys = pfd.keys;
-        if (keys != null) {
-          for (AFSelectionKey key : keys) {
-            if (key != null && key.hasOpInvalid()) {
-              SelectableChannel ch = key.channel();
-              if (ch != null && ch.isOpen()) {
-                ch.close();
-              }
-            }
-          }
-        }
+      int numSelected = 0;
+      if (action == null) {
+        clearSelectedKeys();
       }
       if (num > 0) {
-        consumeAllBytesAfterPoll();
-        setOpsReady(pfd); // updates keysSelected and numKeysSelected
+        if ((pfd.rops[0] & SelectionKey.OP_READ) != 0) {
+          consumeWakeup();
+          num--;
+        }
+        numSelected += setOpsReady(pfd, num, action);
       }
-      return selectedKeysSet.size();
+      numSelected += selectHungUpKeys(action);
+      return numSelected;
     }
   }
 
-  private synchronized void consumeAllBytesAfterPoll() throws IOException {
-    if (pollFd == null) {
-      return;
+  /**
+   * Adds the given key to the selected-key set, or, if an action is given, passes it to that
+   * action instead.
+   *
+   * @param key The key.
+   * @param action The action, or {@code null}.
+   * @return 1 if the key was selected, 0 if it already had been.
+   */
+  private int selectKey(AFSelectionKey key, Consumer<SelectionKey> action) {
+    if (action == null) {
+      return selectedKeysSet.add(key) ? 1 : 0;
+    } else {
+      action.accept(key);
+      return 1;
     }
-    if ((pollFd.rops[0] & SelectionKey.OP_READ) == 0) {
+  }
+
+  /**
+   * Clears the selected-key set, and the ready sets of the keys in it.
+   */
+  private void clearSelectedKeys() {
+    for (int i = 0, n = selectedKeysSet.size(); i < n; i++) {
+      selectedKeysSet.get(i).setOpsReady(0);
+    }
+    selectedKeysSet.clear();
+  }
+
+  /**
+   * Marks the given key for an update of its {@link #pollTable} entry before the next poll.
+   *
+   * @param key The key.
+   */
+  private void queueUpdate(AFSelectionKey key) {
+    if (!key.isUpdatePending()) {
+      key.setUpdatePending(true);
+      pendingUpdates.add(key);
+    }
+  }
+
+  /**
+   * Adds, updates or removes the {@link #pollTable} entries of all keys with pending updates.
+   *
+   * @return The table.
+   */
+  private PollFd applyPendingUpdates() {
+    AFSelectionKey key;
+    while ((key = pendingUpdates.poll()) != null) {
+      key.setUpdatePending(false);
+      int slot = key.getSelectorId();
+      boolean registered = keysRegistered.containsKey(key);
+      if (!registered || !key.isValid() || hungUpKeys.contains(key)) {
+        if (slot > 0) {
+          removePollTableEntry(key, slot);
+        }
+        if (registered && !key.isCancelled() && (key.hasOpInvalid() || !key.getFD().valid())) {
+          failedKeys.add(key);
+        }
+      } else if (slot > 0) {
+        pollTable.ops[slot] = key.interestOps();
+      } else {
+        addPollTableEntry(key);
+      }
+    }
+    return pollTable;
+  }
+
+  private void addPollTableEntry(AFSelectionKey key) {
+    PollFd table = pollTable;
+    int slot = table.numFds;
+    if (slot == table.fds.length) {
+      table = pollTable = table.withCapacity(slot * 2);
+    }
+    table.keys[slot] = key;
+    table.fds[slot] = key.getFD();
+    table.ops[slot] = key.interestOps();
+    table.numFds = slot + 1;
+    key.setSelectorId(slot);
+  }
+
+  private void removePollTableEntry(AFSelectionKey key, int slot) {
+    PollFd table = pollTable;
+    if (slot >= table.numFds || table.keys[slot] != key) { // NOPMD.CompareObjectsWithEquals
       return;
     }
+    key.setSelectorId(-1);
+
+    int last = --table.numFds;
+    if (slot != last) {
+      AFSelectionKey moved = table.keys[last];
+      table.keys[slot] = moved;
+      table.fds[slot] = table.fds[last];
+      table.ops[slot] = table.ops[last];
+      moved.setSelectorId(slot);
+    }
+    table.keys[last] = null;
+    table.fds[last] = null;
+    table.ops[last] = 0;
+  }
+
+  private int select0Epoll(int timeout, Consumer<SelectionKey> action) throws IOException {
+    synchronized (this) {
+      if (!isOpen()) {
+        throw new ClosedSelectorException();
+      }
+      if (action == null) {
+        clearSelectedKeys();
+      }
+      removeClosedForeignKeys();
+      cancelFailedKeys();
+    }
+    int num;
+    try {
+      begin();
+      num = NativeUnixSocket.epollWait(epollFd, epollReadyIds, epollReadyOps, timeout);
+    } finally {
+      end();
+    }
+    synchronized (this) {
+      int numSelected = 0;
+      if (action == null) {
+        selectedKeysSet.clear();
+      }
+      for (int i = 0; i < num; i++) {
+        int id = epollReadyIds[i];
+        if (id == EPOLL_ID_WAKEUP) {
+          consumeWakeup();
+          continue;
+        } else if (id < 0 || id >= epollKeys.length) {
+          continue;
+        }
+        AFSelectionKey key = epollKeys[id];
+        if (key == null) {
+          continue;
+        }
+        int rops = epollReadyOps[i] & (key.interestOps() | AFSelectionKey.OP_INVALID);
+        if ((rops & AFSelectionKey.OP_INVALID) != 0) {
+          // EPOLLHUP/EPOLLERR: don't close the channel, as there may still be data to read; from
+          // now on, the key is selected for its interest set (see hungUpKeys)
+          hungUp(key);
+          continue;
+        }
+        key.setOpsReady(rops);
+        if (rops != 0 && key.isValid()) {
+          numSelected += selectKey(key, action);
+        }
+      }
+      numSelected += selectHungUpKeys(action);
+      return numSelected;
+    }
+  }
+
+  private synchronized void consumeWakeup() throws IOException {
+    if (wakeupEventFd != null) {
+      NativeUnixSocket.eventfdReset(wakeupEventFd);
+    } else {
+      consumeAllBytesAfterPoll();
+    }
+    // A wakeup that comes in between still sees the flag set, and is therefore not signaled
+    // again; that's fine since it coincides with the current select operation, which is about to
+    // return.
+    wakeupPending.set(false);
+  }
+
+  private synchronized void consumeAllBytesAfterPoll() throws IOException {
     int maxReceive;
     int bytesReceived;
 
@@ -160,8 +676,8 @@ final class AFSelector extends AbstractSelector {
     synchronized (pipeMsgReceiveBuffer) {
       pipeMsgReceiveBuffer.clear();
       maxReceive = pipeMsgReceiveBuffer.remaining();
-      bytesReceived = NativeUnixSocket.receive(pollFd.fds[0], pipeMsgReceiveBuffer, 0, maxReceive,
-          null, options, null, 1);
+      bytesReceived = NativeUnixSocket.receive(selectorPipe.sourceFD(), pipeMsgReceiveBuffer, 0,
+          maxReceive, null, options, null, 1);
     }
 
     if (bytesReceived == maxReceive && maxReceive > 0) {
@@ -179,80 +695,130 @@ final class AFSelector extends AbstractSelector {
     }
   }
 
-  private synchronized void setOpsReady(PollFd pfd) {
-    if (pfd != null) {
-      for (int i = 1; i < pfd.rops.length; i++) {
-        int rops = pfd.rops[i];
-        AFSelectionKey key = pfd.keys[i];
-        key.setOpsReady(rops);
-        if (rops != 0 && key.isValid()) {
-          selectedKeysSet.add(key);
-        }
+  /**
+   * Updates the ready sets of the keys polled in the given table, and selects them.
+   *
+   * @param pfd The table, as polled.
+   * @param numReady The number of ready keys, as reported by poll (not counting the wakeup).
+   * @param action The action to pass the selected keys to, or {@code null}.
+   * @return The number of selected keys.
+   * @throws IOException on error.
+   */
+  private int setOpsReady(PollFd pfd, int numReady, Consumer<SelectionKey> action)
+      throws IOException {
+    int numSelected = 0;
+    for (int i = 1, n = pfd.numFds; i < n && numReady > 0; i++) {
+      int rops = pfd.rops[i];
+      if (rops == 0) {
+        continue;
+      }
+      numReady--;
+      AFSelectionKey key = pfd.keys[i];
+      if (key == null) {
+        continue;
+      }
+      if ((rops & AFSelectionKey.OP_INVALID) != 0) {
+        hungUp(key);
+        continue;
+      }
+      key.setOpsReady(rops);
+      if (key.isValid()) {
+        numSelected += selectKey(key, action);
       }
     }
+    return numSelected;
   }
 
-  @SuppressWarnings({"resource", "PMD.CognitiveComplexity"})
-  private PollFd initPollFd(PollFd existingPollFd) throws IOException {
-    synchronized (this) {
-      for (Iterator<AFSelectionKey> it = keysRegisteredKeySet.iterator(); it.hasNext();) {
-        AFSelectionKey key = it.next();
-        if (!key.getAFCore().fd.valid() || key.hasOpInvalid()) {
-          key.cancelNoRemove();
-          it.remove();
-          existingPollFd = null;
-        } else {
-          key.setOpsReady(0);
-        }
+  /**
+   * Stops polling the given hung-up key; see {@link #hungUpKeys}.
+   *
+   * @param key The key.
+   */
+  private void hungUp(AFSelectionKey key) {
+    key.setOpsReady(0);
+    if (!hungUpKeys.add(key)) {
+      return;
+    }
+    key.setHangupReported(false);
+    if (epollFd == null) {
+      queueUpdate(key);
+    } else {
+      try {
+        NativeUnixSocket.epollCtl(epollFd, NativeUnixSocket.EPOLL_CTL_DEL, key.getFD(), 0,
+            key.getSelectorId());
+      } catch (IOException e) {
+        // ignore; the file descriptor may already be closed
       }
+    }
+  }
 
-      if (existingPollFd != null && //
-          existingPollFd.keys != null && //
-          (existingPollFd.keys.length - 1) == keysRegistered.size()) {
-        boolean needsUpdate = false;
-        int i = 1;
-        for (AFSelectionKey key : keysRegisteredKeySet) {
-          if (existingPollFd.keys[i] != key || !key.isValid()) { // NOPMD
-            needsUpdate = true;
-            break;
-          }
-          existingPollFd.ops[i] = key.interestOps();
-
-          i++;
-        }
-
-        if (!needsUpdate) {
-          return existingPollFd;
-        }
+  /**
+   * Has the given key selected once more if it is a hung-up key (guarded by this selector).
+   *
+   * @param key The key whose interest set has changed.
+   * @return {@code true} if the key is a hung-up key, i.e., it is not polled.
+   */
+  private boolean rearmHungUp(AFSelectionKey key) {
+    if (!hungUpKeys.contains(key)) {
+      return false;
+    }
+    if (key.isHangupReported()) {
+      key.setHangupReported(false);
+      if (key.interestOps() != 0) {
+        // a select operation may be blocked waiting for other keys
+        wakeup();
       }
+    }
+    return true;
+  }
 
-      int keysToPoll = keysRegistered.size();
-      for (AFSelectionKey key : keysRegisteredKeySet) {
-        if (!key.isValid()) {
-          keysToPoll--;
-        }
+  private synchronized boolean hasSelectableHungUpKeys() {
+    for (AFSelectionKey key : hungUpKeys) {
+      if (!key.isHangupReported() && key.interestOps() != 0) {
+        return true;
       }
+    }
+    return false;
+  }
 
-      int size = keysToPoll + 1;
-      FileDescriptor[] fds = new FileDescriptor[size];
-      int[] ops = new int[size];
-
-      AFSelectionKey[] keys = new AFSelectionKey[size];
-      fds[0] = selectorPipe.sourceFD();
-      ops[0] = SelectionKey.OP_READ;
+  /**
+   * Selects the hung-up keys that have a non-empty interest set, as they won't block, unless they
+   * already have been selected since their interest set was last changed.
+   *
+   * @param action The action to pass the selected keys to, or {@code null}.
+   * @return The number of selected keys.
+   */
+  private int selectHungUpKeys(Consumer<SelectionKey> action) {
+    int n = hungUpKeys.size();
+    if (n == 0) {
+      return 0;
+    }
+    // the action may cancel keys, so iterate over a copy
+    AFSelectionKey[] keys = hungUpKeysScratch;
+    if (keys.length < n) {
+      keys = hungUpKeysScratch = new AFSelectionKey[Math.max(n, keys.length * 2)];
+    }
+    int i = 0;
+    for (AFSelectionKey key : hungUpKeys) {
+      keys[i++] = key;
+    }
 
-      int i = 1;
-      for (AFSelectionKey key : keysRegisteredKeySet) {
-        if (!key.isValid()) {
-          continue;
-        }
-        keys[i] = key;
-        fds[i] = key.getAFCore().fd;
-        ops[i] = key.interestOps();
-        i++;
+    int numSelected = 0;
+    for (i = 0; i < n; i++) {
+      AFSelectionKey key = keys[i];
+      keys[i] = null;
+      if (!key.isValid()) {
+        hungUpKeys.remove(key);
+        continue;
+      }
+      int rops = key.interestOps();
+      if (rops != 0 && !key.isHangupReported()) {
+        key.setHangupReported(true);
+        key.setOpsReady(rops);
+        numSelected += selectKey(key, action);
       }
-      return new PollFd(keys, fds, ops);
     }
+    return numSelected;
   }
 
   @Override
@@ -262,26 +828,52 @@ final class AFSelector extends AbstractSelector {
     synchronized (this) {
       keys = keys();
       keysRegistered.clear();
+      foreignKeys.clear();
     }
     for (SelectionKey key : keys) {
       ((AFSelectionKey) key).cancelNoRemove();
     }
-    selectorPipe.close();
+    closeWakeup();
+    if (epollFd != null) {
+      synchronized (this) {
+        if (epollFd.valid()) {
+          NativeUnixSocket.close(epollFd);
+        }
+      }
+    }
+  }
+
+  private void closeWakeup() throws IOException {
+    if (wakeupEventFd != null) {
+      synchronized (wakeupEventFd) { // don't signal a reused file descriptor
+        if (wakeupEventFd.valid()) {
+          NativeUnixSocket.close(wakeupEventFd);
+        }
+      }
+    } else {
+      selectorPipe.close();
+    }
   }
 
   @Override
   public Selector wakeup() {
-    if (isOpen()) {
+    if (isOpen() && wakeupPending.compareAndSet(false, true)) {
       try {
-        synchronized (pipeMsgWakeUp) {
-          pipeMsgWakeUp.clear();
-          try {
-            selectorPipe.sink().write(pipeMsgWakeUp);
-          } catch (SocketException e) {
-            if (selectorPipe.sinkFD().valid()) {
-              throw e;
-            } else {
-              // ignore (Broken pipe, etc)
+        if (wakeupEventFd != null) {
+          synchronized (wakeupEventFd) {
+            NativeUnixSocket.eventfdSignal(wakeupEventFd);
+          }
+        } else {
+          synchronized (pipeMsgWakeUp) {
+            pipeMsgWakeUp.clear();
+            try {
+              selectorPipe.sink().write(pipeMsgWakeUp);
+            } catch (SocketException e) {
+              if (selectorPipe.sinkFD().valid()) {
+                throw e;
+              } else {
+                // ignore (Broken pipe, etc)
+              }
             }
           }
         }
@@ -295,8 +887,18 @@ final class AFSelector extends AbstractSelector {
 
   synchronized void remove(AFSelectionKey key) {
     selectedKeysSet.remove(key);
-    deregister(key);
-    pollFd = null;
+    hungUpKeys.remove(key);
+    if (key.isForeign()) {
+      foreignKeys.remove(key.channel());
+    } else {
+      deregister(key);
+    }
+    keysRegistered.remove(key);
+    if (epollFd != null) {
+      epollDeregister(key);
+    } else {
+      queueUpdate(key);
+    }
   }
 
   private void deregister(AFSelectionKey key) {
@@ -318,6 +920,8 @@ final class AFSelector extends AbstractSelector {
     final int[] ops;
     // accessed from native code
     final int[] rops;
+    // accessed from native code; the number of entries to poll (may be less than the capacity)
+    int numFds;
 
     final AFSelectionKey[] keys;
 
@@ -330,6 +934,7 @@ final class AFSelector extends AbstractSelector {
       this.ops = new int[] {op};
       this.rops = new int[1];
       this.keys = null;
+      this.numFds = 1;
     }
 
     @SuppressWarnings("PMD.ArrayIsStoredDirectly")
@@ -341,6 +946,20 @@ final class AFSelector extends AbstractSelector {
       this.fds = fds;
       this.ops = ops;
       this.rops = new int[ops.length];
+      this.numFds = fds.length;
+    }
+
+    /**
+     * Returns a copy of this instance, with the given capacity.
+     *
+     * @param capacity The new capacity, which must not be less than {@link #numFds}.
+     * @return The copy.
+     */
+    PollFd withCapacity(int capacity) {
+      PollFd copy = new PollFd(keys == null ? new AFSelectionKey[capacity] : Arrays.copyOf(keys,
+          capacity), Arrays.copyOf(fds, capacity), Arrays.copyOf(ops, capacity));
+      copy.numFds = numFds;
+      return copy;
     }
   }
 }
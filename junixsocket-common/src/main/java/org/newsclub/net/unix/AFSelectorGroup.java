@@ -0,0 +1,395 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A group of selectors, each run by its own thread, that share the work of serving many channels.
+ *
+ * Channels are assigned to one of the selectors upon {@link #register(SelectableChannel, int,
+ * Object)}, according to the group's {@link Policy}, and stay with that selector until their key
+ * is cancelled. Whenever a channel is ready, the group's handler is called with its key, from the
+ * thread of the channel's selector; the handler must therefore not block.
+ *
+ * Channels can be registered, and interest sets can be changed (via
+ * {@link #interestOps(SelectionKey, int)}) from any thread. The selecting threads are not blocked
+ * by this; the change is handed over to the selector, which is woken up if needed.
+ *
+ * Besides junixsocket's own channels, channels of the JDK (such as TCP
+ * {@link java.nio.channels.SocketChannel}s) can be registered as well; see
+ * {@link AFSelectorProvider#registerForeignChannel(java.nio.channels.Selector, SelectableChannel,
+ * int, Object)}.
+ *
+ * The selectors are the same as those returned by {@link AFSelectorProvider#openSelector()}, i.e.,
+ * they use epoll only if enabled via the system property
+ * {@code org.newsclub.net.unix.selector.epoll}.
+ *
+ * If one of the selecting threads fails unexpectedly (including when the handler throws an
+ * {@link Error}; {@link RuntimeException}s are only logged), the entire group is closed, so that no
+ * more channels are assigned to it; subsequent calls to {@link #register(SelectableChannel, int,
+ * Object)} then throw an {@link IOException} with the failure as its cause.
+ *
+ * @author Christian Kohlschütter
+ */
+public final class AFSelectorGroup implements Closeable {
+  private static final AtomicInteger GROUP_COUNTER = new AtomicInteger();
+
+  /**
+   * The interval in which the ready rates are updated, in milliseconds; the selecting threads wake
+   * up at least that often.
+   */
+  private static final int RATE_INTERVAL_MILLIS = 1000;
+
+  private final Member[] members;
+  private final Policy policy;
+  private final Consumer<SelectionKey> handler;
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+  private volatile Throwable failure;
+
+  /**
+   * The strategy of assigning channels to the selectors of a group.
+   */
+  public enum Policy {
+    /**
+     * Assigns a channel to the selector that currently has the fewest registered channels.
+     */
+    LEAST_LOADED,
+
+    /**
+     * Assigns a channel to a selector determined by the channel's file descriptor number, so that
+     * the assignment does not depend on the current load, and is the same for every group of the
+     * same size.
+     */
+    HASH;
+  }
+
+  private AFSelectorGroup(AFSelectorProvider<?> provider, int numSelectors, Policy policy,
+      Consumer<SelectionKey> handler) throws IOException {
+    if (numSelectors <= 0) {
+      throw new IllegalArgumentException("numSelectors");
+    }
+    this.policy = Objects.requireNonNull(policy, "policy");
+    this.handler = Objects.requireNonNull(handler, "handler");
+    this.members = new Member[numSelectors];
+
+    int id = GROUP_COUNTER.incrementAndGet();
+    try {
+      for (int i = 0; i < numSelectors; i++) {
+        members[i] = new Member(new AFSelector(provider), "junixsocket selector group " + id + "-"
+            + i);
+      }
+    } catch (IOException e) {
+      closeSelectors();
+      throw e;
+    }
+    for (Member m : members) {
+      m.thread.start();
+    }
+  }
+
+  /**
+   * Opens a new selector group.
+   *
+   * @param provider The provider of the selectors.
+   * @param numSelectors The number of selectors (and threads), at least 1.
+   * @param policy The strategy of assigning channels to the selectors.
+   * @param handler The handler that is called with the keys of ready channels, from the thread of
+   *          the respective selector.
+   * @return The new group.
+   * @throws IOException on error.
+   */
+  public static AFSelectorGroup open(AFSelectorProvider<?> provider, int numSelectors,
+      Policy policy, Consumer<SelectionKey> handler) throws IOException {
+    return new AFSelectorGroup(provider, numSelectors, policy, handler);
+  }
+
+  /**
+   * Registers a channel with one of the selectors of this group.
+   *
+   * @param ch The channel, in non-blocking mode.
+   * @param ops The interest set.
+   * @param att The attachment, or {@code null}.
+   * @return The key.
+   * @throws IOException on error, including if the group has been closed due to a failure.
+   * @throws ClosedSelectorException if the group has been closed.
+   */
+  public SelectionKey register(SelectableChannel ch, int ops, Object att) throws IOException {
+    if (closed.get()) {
+      Throwable t = failure;
+      if (t != null) {
+        throw new IOException("Selector group failed", t);
+      }
+      throw new ClosedSelectorException();
+    }
+    Member m = members[selectIndex(ch)];
+    SelectionKey key = AFSelectorProvider.registerForeignChannel(m.selector, ch, ops, att);
+    m.wakeupIfNeeded();
+    return key;
+  }
+
+  /**
+   * Changes the interest set of a key that has been registered with this group, and makes sure
+   * that its selector observes the change right away.
+   *
+   * @param key The key.
+   * @param ops The new interest set.
+   * @throws IllegalArgumentException if the key does not belong to this group.
+   */
+  public void interestOps(SelectionKey key, int ops) {
+    Member m = memberOf(key);
+    key.interestOps(ops);
+    m.wakeupIfNeeded();
+  }
+
+  private Member memberOf(SelectionKey key) {
+    for (Member m : members) {
+      if (key.selector() == m.selector) { // NOPMD.CompareObjectsWithEquals
+        return m;
+      }
+    }
+    throw new IllegalArgumentException("Key does not belong to this group");
+  }
+
+  private int selectIndex(SelectableChannel ch) throws IOException {
+    int n = members.length;
+    if (n == 1) {
+      return 0;
+    }
+    switch (policy) {
+      case HASH:
+        return Math.floorMod(fdNumber(ch), n);
+      case LEAST_LOADED:
+      default:
+        int best = 0;
+        int bestCount = Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+          int count = members[i].selector.keys().size();
+          if (count < bestCount) {
+            best = i;
+            bestCount = count;
+          }
+        }
+        return best;
+    }
+  }
+
+  private static int fdNumber(SelectableChannel ch) throws IOException {
+    FileDescriptor fd;
+    if (ch instanceof FileDescriptorAccess) {
+      fd = ((FileDescriptorAccess) ch).getFileDescriptor();
+    } else {
+      fd = NativeUnixSocket.getSelectableChannelFD(ch);
+    }
+    if (fd == null || !fd.valid()) {
+      return System.identityHashCode(ch);
+    }
+    return NativeUnixSocket.getFD(fd);
+  }
+
+  /**
+   * Returns the number of selectors in this group.
+   *
+   * @return The number of selectors.
+   */
+  public int getSelectorCount() {
+    return members.length;
+  }
+
+  /**
+   * Returns the number of channels currently registered with the given selector.
+   *
+   * @param index The index of the selector, {@code 0 <= index < getSelectorCount()}.
+   * @return The number of registered keys.
+   */
+  public int getKeyCount(int index) {
+    return members[index].selector.keys().size();
+  }
+
+  /**
+   * Returns the total number of ready keys that the given selector has passed to the handler.
+   *
+   * @param index The index of the selector, {@code 0 <= index < getSelectorCount()}.
+   * @return The number of ready keys.
+   */
+  public long getReadyCount(int index) {
+    return members[index].readyCount;
+  }
+
+  /**
+   * Returns the number of ready keys per second that the given selector has recently passed to the
+   * handler; the rate is updated about once per second.
+   *
+   * @param index The index of the selector, {@code 0 <= index < getSelectorCount()}.
+   * @return The ready rate, in keys per second.
+   */
+  public double getReadyRate(int index) {
+    return members[index].readyRate;
+  }
+
+  /**
+   * Checks if this group has been closed.
+   *
+   * @return {@code true} if closed.
+   */
+  public boolean isClosed() {
+    return closed.get();
+  }
+
+  /**
+   * Closes this group, and all of its selectors, and waits for the selecting threads to terminate.
+   * The registered channels are not closed.
+   *
+   * @throws IOException on error.
+   */
+  @Override
+  public void close() throws IOException {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+    for (Member m : members) {
+      m.selector.wakeup();
+    }
+    for (Member m : members) {
+      Thread t = m.thread;
+      if (t != Thread.currentThread()) { // NOPMD.CompareObjectsWithEquals
+        try {
+          t.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+    closeSelectors();
+  }
+
+  private void closeSelectors() throws IOException {
+    IOException ex = null;
+    for (Member m : members) {
+      if (m == null) {
+        continue;
+      }
+      try {
+        m.selector.close();
+      } catch (IOException e) {
+        if (ex == null) {
+          ex = e;
+        } else {
+          ex.addSuppressed(e);
+        }
+      }
+    }
+    if (ex != null) {
+      throw ex;
+    }
+  }
+
+  /**
+   * A selector of the group, and its state. The counters are only written by the selecting thread.
+   */
+  private final class Member {
+    private final AFSelector selector;
+    private final Consumer<SelectionKey> dispatch = this::dispatch;
+    private final Thread thread;
+
+    private volatile long readyCount;
+    private volatile double readyRate;
+    private long rateWindowStart;
+    private long rateWindowCount;
+
+    Member(AFSelector selector, String threadName) {
+      this.selector = selector;
+      this.thread = new Thread(this::runLoop, threadName);
+      thread.setDaemon(true);
+    }
+
+    /**
+     * Wakes up the selector unless called from its own thread, so that a registration update is
+     * observed by the ongoing select operation. With epoll, updates take effect immediately.
+     */
+    void wakeupIfNeeded() {
+      if (!selector.isEpoll() && Thread.currentThread() != thread) {
+        selector.wakeup();
+      }
+    }
+
+    private void dispatch(SelectionKey key) {
+      try {
+        handler.accept(key);
+      } catch (RuntimeException e) { // NOPMD.AvoidCatchingGenericException
+        // don't let a failing handler stop the selector
+        StackTraceUtil.printStackTrace(e);
+      }
+    }
+
+    private void runLoop() {
+      rateWindowStart = System.nanoTime();
+      try {
+        while (!closed.get()) {
+          int n = selector.select(dispatch, RATE_INTERVAL_MILLIS);
+          if (n > 0) {
+            readyCount += n; // single writer
+            rateWindowCount += n;
+          }
+          long now = System.nanoTime();
+          long elapsed = now - rateWindowStart;
+          if (elapsed >= RATE_INTERVAL_MILLIS * 1_000_000L) {
+            readyRate = rateWindowCount * 1e9 / elapsed;
+            rateWindowStart = now;
+            rateWindowCount = 0;
+          }
+        }
+      } catch (Throwable t) { // NOPMD.AvoidCatchingThrowable
+        // including ClosedSelectorException if the selector was closed by someone else, and
+        // Errors thrown by the handler (only RuntimeExceptions are caught by dispatch)
+        if (!closed.get()) {
+          failed(t);
+        }
+        if (t instanceof VirtualMachineError) {
+          throw (VirtualMachineError) t;
+        }
+      }
+    }
+
+    /**
+     * Closes the group after this member's selecting thread failed, so that no more channels are
+     * assigned to a selector that nobody selects on.
+     */
+    private void failed(Throwable t) {
+      StackTraceUtil.printStackTrace(t);
+      if (failure == null) {
+        failure = t;
+      }
+      try {
+        close();
+      } catch (IOException e) {
+        t.addSuppressed(e);
+      }
+    }
+  }
+}
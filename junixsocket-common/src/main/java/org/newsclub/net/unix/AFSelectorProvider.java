@@ -21,6 +21,10 @@ import java.io.IOException;
 import java.net.ProtocolFamily;
 import java.net.SocketAddress;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.IllegalSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.spi.AbstractSelector;
 import java.nio.channels.spi.SelectorProvider;
 
@@ -32,6 +36,7 @@ import org.eclipse.jdt.annotation.NonNull;
  * @param <A> The concrete {@link AFSocketAddress} that is supported by this type.
  */
 public abstract class AFSelectorProvider<A extends AFSocketAddress> extends SelectorProvider {
+  private AFAsynchronousChannelProvider<A> asynchronousChannelProvider;
 
   /**
    * Constructs a new {@link AFSelectorProvider}.
@@ -187,6 +192,39 @@ public abstract class AFSelectorProvider<A extends AFSocketAddress> extends Sele
     return new AFSelector(this);
   }
 
+  /**
+   * Registers a channel with a junixsocket selector, even if that channel is provided by another
+   * {@link SelectorProvider}, such as a TCP {@link java.nio.channels.SocketChannel} of the JDK.
+   * This way, a single selector (and thread) can serve TCP and AF_UNIX connections alike.
+   *
+   * Channels of the selector's own provider are simply registered via
+   * {@link SelectableChannel#register(Selector, int, Object)}. Other channels are registered by
+   * their file descriptor, which is only possible for the JDK's own channel implementations.
+   * Unlike regular registrations, such a channel does not know about its key: the channel has to
+   * stay in non-blocking mode while registered, and when it is closed, its key is only cancelled
+   * upon the next select operation. Channels should therefore be closed (or their keys cancelled)
+   * by the thread that runs the select loop.
+   *
+   * @param sel The selector, which must have been opened by a junixsocket provider.
+   * @param ch The channel, in non-blocking mode.
+   * @param ops The interest set.
+   * @param att The attachment, or {@code null}.
+   * @return The key.
+   * @throws IOException on error.
+   * @throws IllegalSelectorException if the selector is not a junixsocket selector, or if the
+   *           channel is not supported.
+   */
+  public static SelectionKey registerForeignChannel(Selector sel, SelectableChannel ch, int ops,
+      Object att) throws IOException {
+    if (!(sel instanceof AFSelector)) {
+      throw new IllegalSelectorException();
+    }
+    if (ch.provider() == sel.provider()) { // NOPMD.CompareObjectsWithEquals
+      return ch.register(sel, ops, att);
+    }
+    return ((AFSelector) sel).registerForeign(ch, ops, att);
+  }
+
   @Override
   public abstract AFServerSocketChannel<A> openServerSocketChannel() throws IOException;
 
@@ -213,4 +251,17 @@ public abstract class AFSelectorProvider<A extends AFSocketAddress> extends Sele
    * @throws IOException on error.
    */
   public abstract AFSocketChannel<A> openSocketChannel(SocketAddress sa) throws IOException;
+
+  /**
+   * Returns the provider for asynchronous channels ({@link AFAsynchronousSocketChannel},
+   * {@link AFAsynchronousServerSocketChannel}) of this address family.
+   *
+   * @return The provider.
+   */
+  public final synchronized AFAsynchronousChannelProvider<A> asynchronousChannelProvider() {
+    if (asynchronousChannelProvider == null) {
+      asynchronousChannelProvider = new AFAsynchronousChannelProvider<>(this);
+    }
+    return asynchronousChannelProvider;
+  }
 }
@@ -28,6 +28,8 @@ import java.net.SocketException;
 import java.net.SocketOption;
 import java.net.SocketOptions;
 import java.nio.channels.IllegalBlockingModeException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -46,6 +48,11 @@ import com.kohlschutter.annotations.compiletime.SuppressFBWarnings;
 @SuppressWarnings({"PMD.CyclomaticComplexity", "PMD.CouplingBetweenObjects"})
 public abstract class AFServerSocket<A extends AFSocketAddress> extends ServerSocket implements
     FileDescriptorAccess {
+  /**
+   * The maximum number of connections accepted by a single call to {@link #acceptBatch(int)}.
+   */
+  private static final int ACCEPT_BATCH_MAX = 1024;
+
   private final AFSocketImpl<A> implementation;
   private @Nullable A boundEndpoint;
   private final Closeables closeables = new Closeables();
@@ -324,11 +331,81 @@ public abstract class AFServerSocket<A extends AFSocketAddress> extends ServerSo
       }
     }
 
+    finishAccept(as);
+
+    return as;
+  }
+
+  private void finishAccept(AFSocket<A> as) throws IOException {
     as.getAFImpl(true); // trigger create
     as.connect(AFSocketAddress.INTERNAL_DUMMY_CONNECT);
     as.getAFImpl().updatePorts(getAFImpl().getLocalPort1(), getAFImpl().getRemotePort());
+  }
 
-    return as;
+  /**
+   * Accepts up to {@code max} connections at once, using a single native call.
+   *
+   * In non-blocking mode, all connections that are immediately available are accepted (up to
+   * {@code max}), and an empty list is returned if there is nothing to accept. In blocking mode,
+   * this blocks until a connection can be accepted, just like {@link #accept()}, and then also
+   * accepts the connections that are already pending, without blocking again. To do so, unless
+   * {@code max} is 1, the socket's file descriptor is put into non-blocking mode internally (as for
+   * virtual threads, see {@link #accept()}), and the call waits for connections in Java code.
+   *
+   * In non-blocking mode (e.g., upon {@link java.nio.channels.SelectionKey#OP_ACCEPT}), this
+   * reduces the per-connection overhead when many connections arrive in bursts.
+   *
+   * @param max The maximum number of connections to accept; must be positive. At most
+   *          1024 connections are accepted at once.
+   * @return The accepted sockets, in the order they were accepted.
+   * @throws IOException on error.
+   */
+  public List<AFSocket<A>> acceptBatch(int max) throws IOException {
+    if (max <= 0) {
+      throw new IllegalArgumentException("max must be positive");
+    }
+    int[] fds = new int[Math.min(max, ACCEPT_BATCH_MAX)];
+    int count = implementation.acceptBatch0(fds);
+    if (isClosed()) {
+      // We may have connected to the socket to unblock it
+      for (int i = 0; i < count; i++) {
+        AncillaryDataSupport.closeQuietly(fds[i]);
+      }
+      throw new SocketClosedException("Socket is closed");
+    }
+
+    List<AFSocket<A>> sockets = new ArrayList<>(count);
+    int unowned = 0; // the file descriptors from this index on are not owned by any socket
+    try {
+      for (int i = 0; i < count; i++) {
+        AFSocket<A> as = newSocketInstance();
+        try {
+          implementation.initAccepted(as.getAFImpl(false), fds[i]);
+        } catch (IOException | RuntimeException e) {
+          if (as.getAFImpl(false).getFD().valid()) {
+            unowned = i + 1; // closed along with the socket
+          }
+          as.close();
+          throw e;
+        }
+        sockets.add(as); // now owns the file descriptor
+        unowned = i + 1;
+        finishAccept(as);
+      }
+    } catch (IOException | RuntimeException e) {
+      for (AFSocket<A> as : sockets) {
+        try {
+          as.close();
+        } catch (IOException e2) {
+          e.addSuppressed(e2);
+        }
+      }
+      for (int j = unowned; j < count; j++) {
+        AncillaryDataSupport.closeQuietly(fds[j]);
+      }
+      throw e;
+    }
+    return sockets;
   }
 
   /**
@@ -24,6 +24,8 @@ import java.net.SocketAddress;
 import java.net.SocketOption;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
@@ -109,6 +111,27 @@ public abstract class AFServerSocketChannel<A extends AFSocketAddress> extends S
     return socket == null ? null : socket.getChannel();
   }
 
+  /**
+   * Accepts up to {@code max} connections at once, using a single native call; see
+   * {@link AFServerSocket#acceptBatch(int)}.
+   *
+   * In non-blocking mode, this is typically called when the channel has been selected for
+   * {@link java.nio.channels.SelectionKey#OP_ACCEPT}, draining the backlog in one go.
+   *
+   * @param max The maximum number of connections to accept; must be positive.
+   * @return The channels of the accepted connections; empty if there was nothing to accept
+   *         (non-blocking mode).
+   * @throws IOException on error.
+   */
+  public List<AFSocketChannel<A>> acceptBatch(int max) throws IOException {
+    List<AFSocket<A>> sockets = afSocket.acceptBatch(max);
+    List<AFSocketChannel<A>> channels = new ArrayList<>(sockets.size());
+    for (AFSocket<A> socket : sockets) {
+      channels.add(socket.getChannel());
+    }
+    return channels;
+  }
+
   @Override
   public final AFSocketAddress getLocalAddress() throws IOException {
     return afSocket.getLocalSocketAddress();
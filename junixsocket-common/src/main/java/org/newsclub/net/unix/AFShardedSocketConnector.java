@@ -0,0 +1,143 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link AFSocketConnector} that spreads connections to one logical address across several
+ * "shard" addresses, in round-robin order.
+ *
+ * This allows scaling a service beyond what a single listening socket can accept, by running one
+ * server per shard (e.g., for AF_UNIX, one per socket file). If a shard cannot be connected to
+ * (e.g., because its server is not running), the next one is tried, until all shards have been
+ * tried once.
+ *
+ * Connecting to any address other than the logical address connects to that address directly.
+ *
+ * @param <A> The address type.
+ * @author Christian Kohlschütter
+ */
+public final class AFShardedSocketConnector<A extends AFSocketAddress> implements
+    AFSocketConnector<A, A> {
+  private final A address;
+  private final List<A> shards;
+  private final AtomicInteger next = new AtomicInteger();
+
+  private AFShardedSocketConnector(A address, List<A> shards) {
+    this.address = Objects.requireNonNull(address, "address");
+    this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+    if (this.shards.isEmpty()) {
+      throw new IllegalArgumentException("No shards");
+    }
+    for (A shard : this.shards) {
+      Objects.requireNonNull(shard, "shard");
+    }
+  }
+
+  /**
+   * Creates a connector that spreads connections to the given logical address across the given
+   * shard addresses.
+   *
+   * @param <A> The address type.
+   * @param address The logical address; it may also be one of the shards, or not be bound at all.
+   * @param shards The shard addresses, at least one.
+   * @return The connector.
+   */
+  public static <A extends AFSocketAddress> AFShardedSocketConnector<A> of(A address,
+      List<A> shards) {
+    return new AFShardedSocketConnector<>(address, shards);
+  }
+
+  /**
+   * Returns the logical address.
+   *
+   * @return The address.
+   */
+  public A getAddress() {
+    return address;
+  }
+
+  /**
+   * Returns the shard addresses.
+   *
+   * @return The shards (an unmodifiable list).
+   */
+  public List<A> getShards() {
+    return shards;
+  }
+
+  /**
+   * Connects to the next shard of the logical address.
+   *
+   * @return The connected socket.
+   * @throws IOException if no shard could be connected to.
+   */
+  public AFSocket<? extends A> connect() throws IOException {
+    return connect(address);
+  }
+
+  /**
+   * Connects to the next shard if the given address is the logical address, or directly to the
+   * given address otherwise.
+   *
+   * @param addr The address to connect to.
+   * @return The connected socket.
+   * @throws IOException if no shard could be connected to; the exception for the first shard that
+   *           was tried is thrown, with the others added as suppressed exceptions.
+   */
+  @Override
+  public AFSocket<? extends A> connect(A addr) throws IOException {
+    if (!address.equals(addr)) {
+      return newConnectedSocket(addr);
+    }
+
+    int n = shards.size();
+    int start = (next.getAndIncrement() & Integer.MAX_VALUE) % n;
+    IOException ex = null;
+    for (int i = 0; i < n; i++) {
+      A shard = shards.get((start + i) % n);
+      try {
+        return newConnectedSocket(shard);
+      } catch (IOException e) {
+        if (ex == null) {
+          ex = e;
+        } else {
+          ex.addSuppressed(e);
+        }
+      }
+    }
+    throw Objects.requireNonNull(ex);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <A extends AFSocketAddress> AFSocket<? extends A> newConnectedSocket(A addr)
+      throws IOException {
+    return (AFSocket<? extends A>) addr.newConnectedSocket();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "[" + address + ";shards=" + shards + "]";
+  }
+}
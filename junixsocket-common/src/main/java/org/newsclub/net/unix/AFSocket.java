@@ -532,6 +532,86 @@ public abstract class AFSocket<A extends AFSocketAddress> extends Socket impleme
     return impl.getFileDescriptor();
   }
 
+  /**
+   * Returns the I/O metrics of this socket.
+   *
+   * @return The metrics, or {@code null} if metrics are disabled (see {@link AFIOMetrics}).
+   */
+  public final @Nullable AFIOMetrics getIOMetrics() {
+    return impl.getCore().metrics;
+  }
+
+  /**
+   * Returns the size of the per-stream buffers used by this socket's {@link AFInputStream} and
+   * {@link AFOutputStream}, or 0 if buffering is disabled.
+   *
+   * @return The buffer size, in bytes.
+   * @see #setStreamBufferSize(int)
+   */
+  public final int getStreamBufferSize() {
+    return impl.getStreamBufferSize();
+  }
+
+  /**
+   * Enables or disables buffered mode for this socket's {@link AFInputStream} and
+   * {@link AFOutputStream}.
+   *
+   * In buffered mode, each stream reads/writes through a ring buffer of the given size, allocated
+   * in direct memory. Data is received in bulk, so single-byte reads,
+   * {@link java.io.InputStream#available()} and {@link AFInputStream#peek()} are usually answered
+   * without a system call. Written data is collected until the buffer is full, or the stream is
+   * flushed. Similar to {@link java.io.BufferedOutputStream}, data that has not been flushed is
+   * lost when the socket is closed without closing (or flushing) the output stream first;
+   * {@link #shutdownOutput()} flushes the buffer. Reads and writes that are larger than the buffer
+   * bypass it.
+   *
+   * Buffering is only used in blocking mode. Since data is received ahead of time, ancillary
+   * messages (such as file descriptors) may be received earlier than in unbuffered mode.
+   *
+   * The buffers are allocated upon first use; the size must therefore be set before any data is
+   * read from or written to this socket. The default size is 0 (disabled), unless configured via
+   * the system property {@code org.newsclub.net.unix.stream-buffer-size}.
+   *
+   * @param size The buffer size, in bytes, or 0 to disable buffering.
+   * @throws IllegalArgumentException if the size is negative.
+   */
+  public final void setStreamBufferSize(int size) {
+    impl.setStreamBufferSize(size);
+  }
+
+  /**
+   * Returns the maximum time a blocking read spins before blocking, in microseconds, or 0 if
+   * busy-polling is disabled.
+   *
+   * @return The maximum spin time, in microseconds.
+   * @see #setBusyPollMicros(int)
+   */
+  public final int getBusyPollMicros() {
+    return impl.getBusyPollMicros();
+  }
+
+  /**
+   * Enables or disables busy-poll mode for this socket's {@link AFInputStream}.
+   *
+   * In busy-poll mode, a blocking read first spins with non-blocking reads, for up to the given
+   * number of microseconds, before actually blocking. For request/response traffic with very short
+   * response times, this avoids the latency of the thread being descheduled and woken up again, at
+   * the expense of CPU time. The spin time adapts to the observed response times: it shrinks when
+   * spinning doesn't pay off, and spinning is paused altogether for a while on idle connections.
+   * Hit and miss counts are reported by {@link AFIOMetrics#getBusyPollHits()} and
+   * {@link AFIOMetrics#getBusyPollMisses()}, if metrics are enabled.
+   *
+   * Busy-polling only applies to blocking mode, and not to virtual threads. The default is 0
+   * (disabled), unless configured via the system property
+   * {@code org.newsclub.net.unix.busy-poll-micros}.
+   *
+   * @param micros The maximum spin time, in microseconds, or 0 to disable busy-polling.
+   * @throws IllegalArgumentException if the value is negative.
+   */
+  public final void setBusyPollMicros(int micros) {
+    impl.setBusyPollMicros(micros);
+  }
+
   @Override
   public final AFInputStream getInputStream() throws IOException {
     return getAFImpl().getInputStream();
@@ -33,9 +33,7 @@ import java.net.SocketException;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Objects;
 
 import org.eclipse.jdt.annotation.NonNull;
@@ -68,12 +66,9 @@ public abstract class AFSocketAddress extends InetSocketAddress {
   private static final int SOCKADDR_NATIVE_DATA_OFFSET = NativeUnixSocket.isLoaded() //
       ? NativeUnixSocket.sockAddrNativeDataOffset() : -1;
 
-  private static final int SOCKADDR_MAX_LEN = NativeUnixSocket.isLoaded() //
+  static final int SOCKADDR_MAX_LEN = NativeUnixSocket.isLoaded() //
       ? NativeUnixSocket.sockAddrLength(0) : 256;
 
-  private static final Map<AFAddressFamily<?>, Map<Integer, Map<ByteBuffer, AFSocketAddress>>> ADDRESS_CACHE =
-      new HashMap<>();
-
   static final ThreadLocal<ByteBuffer> SOCKETADDRESS_BUFFER_TL = new ThreadLocal<ByteBuffer>() {
 
     @Override
@@ -476,7 +471,7 @@ public abstract class AFSocketAddress extends InetSocketAddress {
    * @return The instance.
    * @throws SocketException on error.
    */
-  @SuppressWarnings({"unchecked", "null"})
+  @SuppressWarnings("null")
   protected static final <A extends AFSocketAddress> A resolveAddress(final byte[] socketAddress,
       int port, AFAddressFamily<A> af) throws SocketException {
     if (socketAddress.length == 0) {
@@ -499,36 +494,16 @@ public abstract class AFSocketAddress extends InetSocketAddress {
     direct.rewind();
     direct.limit(limit);
 
-    A instance;
-    synchronized (AFSocketAddress.class) {
-      Map<ByteBuffer, AFSocketAddress> map;
-      Map<Integer, Map<ByteBuffer, AFSocketAddress>> mapPorts = ADDRESS_CACHE.get(af);
-      if (mapPorts == null) {
-        instance = null;
-        mapPorts = new HashMap<>();
-        map = new HashMap<>();
-        mapPorts.put(port, map);
-        ADDRESS_CACHE.put(af, mapPorts);
-      } else {
-        map = mapPorts.get(port);
-        if (map == null) {
-          instance = null;
-          map = new HashMap<>();
-          mapPorts.put(port, map);
-        } else {
-          instance = (A) map.get(direct);
-        }
-      }
-
-      if (instance == null) {
-        ByteBuffer key = newSockAddrKeyBuffer(limit);
-        key.put(direct);
-        key = key.asReadOnlyBuffer();
-
-        instance = af.getAddressConstructor().newAFSocketAddress(port, socketAddress, key);
+    AFSocketAddressCache<A> cache = af.getAddressCache();
+    A instance = cache.get(port, direct);
+    if (instance == null) {
+      ByteBuffer key = newSockAddrKeyBuffer(limit);
+      key.put(direct);
+      key.flip();
+      key = key.asReadOnlyBuffer();
 
-        map.put(key, instance);
-      }
+      instance = cache.put(port, key, af.getAddressConstructor().newAFSocketAddress(port,
+          socketAddress, key));
     }
 
     return instance;
@@ -537,36 +512,27 @@ public abstract class AFSocketAddress extends InetSocketAddress {
   @SuppressWarnings("null")
   static final <A extends AFSocketAddress> A ofInternal(ByteBuffer socketAddressBuffer,
       AFAddressFamily<A> af) throws SocketException {
-    synchronized (AFSocketAddress.class) {
-      socketAddressBuffer.rewind();
-
-      Map<Integer, Map<ByteBuffer, AFSocketAddress>> mapPorts = ADDRESS_CACHE.get(af);
-      if (mapPorts != null) {
-        Map<ByteBuffer, AFSocketAddress> map = mapPorts.get(0); // FIXME get port, something like
-                                                                // sockAddrToPort
-        if (map != null) {
-          @SuppressWarnings("unchecked")
-          A address = (A) map.get(socketAddressBuffer);
-          if (address != null) {
-            return address;
-          }
-        }
-      }
+    socketAddressBuffer.rewind();
 
-      if (!socketAddressBuffer.isDirect()) {
-        ByteBuffer buf = getNativeAddressDirectBuffer(Math.min(socketAddressBuffer.limit(),
-            SOCKADDR_MAX_LEN));
-        buf.put(socketAddressBuffer);
-        socketAddressBuffer = buf;
-      }
+    // System-native addresses (e.g., the source of a received datagram) carry no Java port, so
+    // these are always resolved (and cached) with port 0
+    A address = af.getAddressCache().get(0, socketAddressBuffer);
+    if (address != null) {
+      return address;
+    }
 
-      byte[] sockAddrToBytes = NativeUnixSocket.sockAddrToBytes(af.getDomain(),
-          socketAddressBuffer);
-      if (sockAddrToBytes == null) {
-        return null;
-      } else {
-        return AFSocketAddress.resolveAddress(sockAddrToBytes, 0, af);
-      }
+    if (!socketAddressBuffer.isDirect()) {
+      ByteBuffer buf = getNativeAddressDirectBuffer(Math.min(socketAddressBuffer.limit(),
+          SOCKADDR_MAX_LEN));
+      buf.put(socketAddressBuffer);
+      socketAddressBuffer = buf;
+    }
+
+    byte[] sockAddrToBytes = NativeUnixSocket.sockAddrToBytes(af.getDomain(), socketAddressBuffer);
+    if (sockAddrToBytes == null) {
+      return null;
+    } else {
+      return AFSocketAddress.resolveAddress(sockAddrToBytes, 0, af);
     }
   }
 
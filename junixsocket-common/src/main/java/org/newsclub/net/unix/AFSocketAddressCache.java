@@ -0,0 +1,211 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A concurrent, size-bounded cache of {@link AFSocketAddress} instances for one
+ * {@link AFAddressFamily}, keyed by Java port and system-native address.
+ *
+ * Lookups do not lock. Once the cache grows beyond its maximum size, entries are evicted using a
+ * "second chance" (CLOCK) policy: entries that have been hit since the last eviction pass are
+ * spared once.
+ *
+ * The maximum number of entries per address family can be configured via the system property
+ * {@code org.newsclub.net.unix.AFSocketAddress.cache.max-size} (default: 4096; 0 disables
+ * caching).
+ *
+ * Hit, miss and eviction counts are available via
+ * {@link AFAddressFamily#getAddressCacheHitCount()},
+ * {@link AFAddressFamily#getAddressCacheMissCount()} and
+ * {@link AFAddressFamily#getAddressCacheEvictionCount()}.
+ *
+ * @param <A> The address type.
+ * @author Christian Kohlschütter
+ */
+final class AFSocketAddressCache<A extends AFSocketAddress> {
+  private static final int DEFAULT_MAX_SIZE = Math.max(0, Integer.getInteger(
+      "org.newsclub.net.unix.AFSocketAddress.cache.max-size", 4096));
+
+  private final Map<Key, Entry<A>> map = new ConcurrentHashMap<>();
+  private final int maxSize;
+  private final AtomicBoolean evicting = new AtomicBoolean(false);
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  AFSocketAddressCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  AFSocketAddressCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Looks up a cached address. A successful lookup is counted as a hit; misses are counted upon
+   * {@link #put(int, ByteBuffer, AFSocketAddress)}, so an address that needs to be looked up
+   * twice (in different representations) before it's created is only counted once.
+   *
+   * @param port The Java port.
+   * @param nativeAddress The system-native address (from position 0 to its limit); not retained.
+   * @return The cached address, or {@code null}.
+   */
+  @Nullable
+  A get(int port, ByteBuffer nativeAddress) {
+    if (maxSize == 0) {
+      return null;
+    }
+    Entry<A> entry = map.get(new Key(port, nativeAddress));
+    if (entry == null) {
+      return null;
+    }
+    if (!entry.referenced) {
+      entry.referenced = true;
+    }
+    hits.increment();
+    return entry.address;
+  }
+
+  /**
+   * Caches a newly created address, unless another thread has cached an equal address in the
+   * meantime, which is then returned instead. Counts as a cache miss.
+   *
+   * @param port The Java port.
+   * @param nativeAddress The system-native address; must not be modified afterwards.
+   * @param address The address.
+   * @return The cached address.
+   */
+  A put(int port, ByteBuffer nativeAddress, A address) {
+    misses.increment();
+    if (maxSize == 0) {
+      return address;
+    }
+    Entry<A> existing = map.putIfAbsent(new Key(port, nativeAddress), new Entry<>(address));
+    if (existing != null) {
+      return existing.address;
+    }
+    if (map.size() > maxSize) {
+      evict();
+    }
+    return address;
+  }
+
+  private void evict() {
+    if (!evicting.compareAndSet(false, true)) {
+      // someone else is already evicting
+      return;
+    }
+    try {
+      int toRemove = map.size() - maxSize;
+      // at most two passes: the first pass may only clear the "referenced" flags
+      int maxVisits = 2 * map.size();
+      Iterator<Entry<A>> it = map.values().iterator();
+      while (toRemove > 0 && maxVisits-- > 0) {
+        if (!it.hasNext()) {
+          it = map.values().iterator();
+          if (!it.hasNext()) {
+            break;
+          }
+        }
+        Entry<A> entry = it.next();
+        if (entry.referenced) {
+          entry.referenced = false;
+        } else {
+          it.remove();
+          evictions.increment();
+          toRemove--;
+        }
+      }
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+  /**
+   * Removes all entries from the cache (counters are not reset).
+   */
+  void clear() {
+    map.clear();
+  }
+
+  int size() {
+    return map.size();
+  }
+
+  int getMaxSize() {
+    return maxSize;
+  }
+
+  long getHitCount() {
+    return hits.sum();
+  }
+
+  long getMissCount() {
+    return misses.sum();
+  }
+
+  long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  private static final class Entry<A> {
+    final A address;
+    volatile boolean referenced;
+
+    Entry(A address) {
+      this.address = address;
+    }
+  }
+
+  private static final class Key {
+    private final int port;
+    private final ByteBuffer nativeAddress;
+    private final int hashCode;
+
+    Key(int port, ByteBuffer nativeAddress) {
+      this.port = port;
+      this.nativeAddress = nativeAddress;
+      this.hashCode = nativeAddress.hashCode() * 31 + port;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return port == other.port && hashCode == other.hashCode && nativeAddress.equals(
+          other.nativeAddress);
+    }
+  }
+}
@@ -17,7 +17,9 @@
  */
 package org.newsclub.net.unix;
 
+import java.io.InputStream;
 import java.lang.ProcessBuilder.Redirect;
+import java.nio.channels.FileChannel;
 
 /**
  * Describes junixsocket capabilities the current environment (system platform, native library,
@@ -146,6 +148,32 @@ public enum AFSocketCapability {
    */
   CAPABILITY_DARWIN(14),
 
+  /**
+   * Support for the Linux epoll API, which can be used by {@link AFSelectorProvider}-provided
+   * selectors.
+   */
+  CAPABILITY_EPOLL(15),
+
+  /**
+   * Support for transferring data between files and sockets without copying the data into the Java
+   * heap (Linux: sendfile(2)/splice(2)), as used by
+   * {@link AFOutputStream#transferFrom(InputStream)},
+   * {@link AFSocketChannel#transferFrom(FileChannel, long, long)}, etc.
+   */
+  CAPABILITY_ZERO_COPY(16),
+
+  /**
+   * Support for the Linux io_uring API, which is used by {@link AFIOUring} to perform socket I/O
+   * asynchronously, with batched submissions.
+   */
+  CAPABILITY_IO_URING(17),
+
+  /**
+   * Support for Linux eventfd(2) objects, which are used to wake up {@link AFSelectorProvider}
+   * -provided selectors more cheaply than with a pipe.
+   */
+  CAPABILITY_EVENTFD(18),
+
   ; // end of list
 
   private final int bitmask;
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.net.SocketAddress;
 import java.net.SocketOption;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
 import java.util.Objects;
@@ -29,6 +30,7 @@ import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 
 import com.kohlschutter.annotations.compiletime.SuppressFBWarnings;
 
@@ -238,8 +240,7 @@ public abstract class AFSocketChannel<A extends AFSocketAddress> extends SocketC
     if (length == 0) {
       return 0;
     }
-    // FIXME support more than one buffer for scatter-gather access
-    return read(dsts[offset]);
+    return afSocket.getAFImpl().read(dsts, offset, length);
   }
 
   @Override
@@ -247,8 +248,7 @@ public abstract class AFSocketChannel<A extends AFSocketAddress> extends SocketC
     if (length == 0) {
       return 0;
     }
-    // FIXME support more than one buffer for scatter-gather access
-    return write(srcs[offset]);
+    return afSocket.getAFImpl().write(srcs, offset, length);
   }
 
   @Override
@@ -256,6 +256,62 @@ public abstract class AFSocketChannel<A extends AFSocketAddress> extends SocketC
     return afSocket.getAFImpl().write(src);
   }
 
+  /**
+   * Transfers bytes from the given file to this channel. This is the reverse notation of
+   * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, with the
+   * same semantics, except that the data is sent without copying it into the Java heap, where
+   * supported ({@link AFSocketCapability#CAPABILITY_ZERO_COPY}).
+   *
+   * In non-blocking mode, only as many bytes as the socket can accept immediately are transferred,
+   * so the returned count may be short, or zero.
+   *
+   * @param src The source file channel.
+   * @param position The position within the file at which the transfer is to begin; must be
+   *          non-negative.
+   * @param count The maximum number of bytes to be transferred; must be non-negative.
+   * @return The number of bytes, possibly zero, that were actually transferred.
+   * @throws IOException on error.
+   */
+  public final long transferFrom(FileChannel src, long position, long count) throws IOException {
+    if (position < 0 || count < 0) {
+      throw new IllegalArgumentException();
+    }
+    long transferred = afSocket.getAFImpl().transferFrom(src, position, count);
+    if (transferred < 0) {
+      transferred = src.transferTo(position, count, this);
+    }
+    return transferred;
+  }
+
+  /**
+   * Transfers bytes from this channel to the given file. This is the reverse notation of
+   * {@link FileChannel#transferFrom(java.nio.channels.ReadableByteChannel, long, long)}, with the
+   * same semantics, except that the data is received without copying it into the Java heap, where
+   * supported ({@link AFSocketCapability#CAPABILITY_ZERO_COPY}).
+   *
+   * In non-blocking mode, only the bytes that are immediately available are transferred, so the
+   * returned count may be short, or zero.
+   *
+   * @param dst The target file channel.
+   * @param position The file position at which the transfer is to begin; must be non-negative.
+   * @param count The maximum number of bytes to be transferred; must be non-negative.
+   * @return The number of bytes, possibly zero, that were actually transferred.
+   * @throws IOException on error.
+   */
+  public final long transferTo(FileChannel dst, long position, long count) throws IOException {
+    if (position < 0 || count < 0) {
+      throw new IllegalArgumentException();
+    }
+    if (position > dst.size()) {
+      return 0;
+    }
+    long transferred = afSocket.getAFImpl().transferTo(dst, position, count);
+    if (transferred < 0) {
+      transferred = dst.transferFrom(this, position, count);
+    }
+    return transferred;
+  }
+
   @Override
   public final A getLocalAddress() throws IOException {
     return getLocalSocketAddress();
@@ -300,6 +356,15 @@ public abstract class AFSocketChannel<A extends AFSocketAddress> extends SocketC
     return afSocket.getFileDescriptor();
   }
 
+  /**
+   * Returns the I/O metrics of this socket.
+   *
+   * @return The metrics, or {@code null} if metrics are disabled (see {@link AFIOMetrics}).
+   */
+  public final @Nullable AFIOMetrics getIOMetrics() {
+    return afSocket.getIOMetrics();
+  }
+
   @Override
   public final String toString() {
     return super.toString() + afSocket.toStringSuffix();
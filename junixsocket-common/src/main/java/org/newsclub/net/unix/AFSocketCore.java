@@ -20,6 +20,7 @@ package org.newsclub.net.unix;
 import java.io.FileDescriptor;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -31,11 +32,19 @@ import java.util.concurrent.atomic.AtomicLong;
 class AFSocketCore extends AFCore {
   private static final int SHUT_RD_WR = 2;
 
+  private static final ThreadLocal<ByteBuffer> TL_ADDRESSES_BUFFER = new ThreadLocal<>();
+  private static final ThreadLocal<int[]> TL_ADDRESS_LENGTHS = new ThreadLocal<>();
+
   /**
    * We keep track of the server's inode to detect when another server connects to our address.
    */
   final AtomicLong inode = new AtomicLong(-1);
 
+  /**
+   * Watches the socket file, so the inode doesn't have to be checked upon every accept.
+   */
+  volatile SocketPathWatcher.Watch pathWatch;
+
   AFSocketAddress socketAddress;
 
   private final AFAddressFamily<?> af;
@@ -56,12 +65,44 @@ class AFSocketCore extends AFCore {
     NativeUnixSocket.shutdown(fd, SHUT_RD_WR);
     unblockAccepts();
 
+    SocketPathWatcher.Watch watch = pathWatch;
+    if (watch != null) {
+      pathWatch = null;
+      watch.close();
+    }
+
     super.doClose();
   }
 
   protected void unblockAccepts() {
   }
 
+  /**
+   * Returns the inode that should be checked upon accept, or {@code 0} if the check can be
+   * skipped, since the socket file has not changed since the inode was last checked (see
+   * {@link SocketPathWatcher}).
+   *
+   * @return The inode, or 0.
+   */
+  long inodeToCheck() {
+    SocketPathWatcher.Watch watch = pathWatch;
+    if (watch != null && watch.isVerified()) {
+      return 0;
+    }
+    return inode.get();
+  }
+
+  /**
+   * Called after a successful accept; the inode has been checked if it was returned by
+   * {@link #inodeToCheck()}.
+   */
+  void inodeChecked() {
+    SocketPathWatcher.Watch watch = pathWatch;
+    if (watch != null) {
+      watch.markVerified();
+    }
+  }
+
   AFSocketAddress receive(ByteBuffer dst) throws IOException {
     ByteBuffer socketAddressBuffer = AFSocketAddress.SOCKETADDRESS_BUFFER_TL.get();
     int read = read(dst, socketAddressBuffer, 0);
@@ -72,6 +113,259 @@ class AFSocketCore extends AFCore {
     }
   }
 
+  /**
+   * Receives multiple datagrams using a single system call (where supported; Linux: recvmmsg(2)).
+   *
+   * Only the first datagram may block; any further datagrams are only received if they are
+   * immediately available. Each datagram is received into its own buffer, whose position is
+   * advanced by the number of bytes received; like with {@link #receive(ByteBuffer)}, any excess
+   * bytes of a datagram that does not fit into its buffer are discarded.
+   *
+   * If all buffers are direct, the data is received into them directly. Otherwise, the data is
+   * received into a thread-local direct buffer first, and only as many datagrams are received as
+   * their buffers fit into it (at least one).
+   *
+   * @param dsts The buffers, one per datagram.
+   * @param offset The offset of the first buffer in {@code dsts}.
+   * @param length The maximum number of datagrams to receive.
+   * @param senders If not {@code null}, receives the sender address of each datagram, at the same
+   *          index as the corresponding buffer.
+   * @return The number of datagrams received (which may be 0).
+   * @throws IOException on error.
+   */
+  int receive(ByteBuffer[] dsts, int offset, int length, AFSocketAddress[] senders)
+      throws IOException {
+    checkBufferArrayBounds(dsts.length, offset, length);
+    if (senders != null) {
+      checkBufferArrayBounds(senders.length, offset, length);
+    }
+    length = Math.min(length, IOV_MAX);
+    if (length == 0) {
+      return 0;
+    }
+
+    boolean allDirect = true;
+    for (int i = offset, n = offset + length; i < n; i++) {
+      ByteBuffer dst = dsts[i];
+      if (dst.isReadOnly()) {
+        throw new IllegalArgumentException("Read-only buffer");
+      }
+      allDirect &= dst.isDirect();
+    }
+    FileDescriptor fdesc = validFdOrException();
+
+    ByteBuffer[] bufs;
+    int bufsOffset;
+    if (allDirect) {
+      bufs = dsts;
+      bufsOffset = offset;
+    } else {
+      length = stagingLength(dsts, offset, length);
+      bufs = sliceStagingBuffer(dsts, offset, length);
+      bufsOffset = 0;
+    }
+
+    int[] offsetsAndLengths = getThreadLocalIovArray(length);
+    for (int i = 0; i < length; i++) {
+      ByteBuffer buf = bufs[bufsOffset + i];
+      offsetsAndLengths[2 * i] = buf.position();
+      offsetsAndLengths[2 * i + 1] = buf.remaining();
+    }
+
+    final ByteBuffer addresses;
+    final int stride = AFSocketAddress.SOCKADDR_MAX_LEN;
+    if (senders == null) {
+      addresses = null;
+    } else {
+      addresses = getThreadLocalAddressesBuffer(stride * length);
+    }
+
+    int options = NativeUnixSocket.OPT_DGRAM_MODE;
+    if (!isBlocking()) {
+      options |= NativeUnixSocket.OPT_NON_BLOCKING;
+    }
+    int count = NativeUnixSocket.receiveMessages(fdesc, bufs, bufsOffset, offsetsAndLengths,
+        length, addresses, stride, options, 0);
+    if (count <= 0) {
+      recordRead(0);
+      return 0;
+    }
+
+    long bytesReceived = 0;
+    for (int i = 0; i < count; i++) {
+      ByteBuffer dst = dsts[offset + i];
+      int len = Math.min(offsetsAndLengths[2 * i + 1], dst.remaining());
+      bytesReceived += len;
+      if (allDirect) {
+        dst.position(dst.position() + len);
+      } else {
+        ByteBuffer buf = bufs[i];
+        buf.limit(buf.position() + len);
+        dst.put(buf);
+      }
+      if (senders != null) {
+        addresses.limit(stride * (i + 1));
+        addresses.position(stride * i);
+        senders[offset + i] = AFSocketAddress.ofInternal(addresses.slice(), af);
+      }
+    }
+    recordRead(bytesReceived);
+    return count;
+  }
+
+  /**
+   * Sends multiple datagrams using a single system call (where supported; Linux: sendmmsg(2)).
+   *
+   * Each buffer's remaining bytes are sent as one datagram. The position of each buffer whose
+   * datagram was sent is advanced to its limit.
+   *
+   * If all buffers are direct, the data is sent from them directly. Otherwise, the data is first
+   * copied into a thread-local direct buffer, and only as many datagrams are sent as fit into it
+   * (at least one).
+   *
+   * @param srcs The buffers, one per datagram.
+   * @param offset The offset of the first buffer in {@code srcs}.
+   * @param length The number of datagrams to send.
+   * @param targets The target address of each datagram, at the same index as the corresponding
+   *          buffer, or {@code null} to send all datagrams to the connected peer.
+   * @return The number of datagrams sent (which may be 0 in non-blocking mode).
+   * @throws IOException on error.
+   */
+  int send(ByteBuffer[] srcs, int offset, int length, SocketAddress[] targets)
+      throws IOException {
+    checkBufferArrayBounds(srcs.length, offset, length);
+    if (targets != null) {
+      checkBufferArrayBounds(targets.length, offset, length);
+    }
+    length = Math.min(length, IOV_MAX);
+    if (length == 0) {
+      return 0;
+    }
+
+    boolean allDirect = true;
+    for (int i = offset, n = offset + length; i < n; i++) {
+      allDirect &= srcs[i].isDirect();
+    }
+    FileDescriptor fdesc = validFdOrException();
+
+    ByteBuffer[] bufs;
+    int bufsOffset;
+    if (allDirect) {
+      bufs = srcs;
+      bufsOffset = offset;
+    } else {
+      length = stagingLength(srcs, offset, length);
+      bufs = sliceStagingBuffer(srcs, offset, length);
+      bufsOffset = 0;
+      for (int i = 0; i < length; i++) {
+        ByteBuffer buf = bufs[i];
+        buf.mark();
+        buf.put(srcs[offset + i].duplicate());
+        buf.reset();
+      }
+    }
+
+    int[] offsetsAndLengths = getThreadLocalIovArray(length);
+    for (int i = 0; i < length; i++) {
+      ByteBuffer buf = bufs[bufsOffset + i];
+      offsetsAndLengths[2 * i] = buf.position();
+      offsetsAndLengths[2 * i + 1] = buf.remaining();
+    }
+
+    final ByteBuffer addresses;
+    final int[] addressLengths;
+    final int stride = AFSocketAddress.SOCKADDR_MAX_LEN;
+    if (targets == null) {
+      addresses = null;
+      addressLengths = null;
+    } else {
+      addresses = getThreadLocalAddressesBuffer(stride * length);
+      addressLengths = getThreadLocalAddressLengthsArray(length);
+      for (int i = 0; i < length; i++) {
+        addresses.limit(stride * (i + 1));
+        addresses.position(stride * i);
+        addressLengths[i] = AFSocketAddress.unwrapAddressDirectBufferInternal(addresses.slice(),
+            targets[offset + i]);
+      }
+      addresses.clear();
+    }
+
+    int options = NativeUnixSocket.OPT_DGRAM_MODE;
+    if (!isBlocking()) {
+      options |= NativeUnixSocket.OPT_NON_BLOCKING;
+    }
+    int count = NativeUnixSocket.sendMessages(fdesc, bufs, bufsOffset, offsetsAndLengths, length,
+        addresses, stride, addressLengths, options);
+    long bytesSent = 0;
+    for (int i = 0; i < count; i++) {
+      ByteBuffer src = srcs[offset + i];
+      bytesSent += src.remaining();
+      src.position(src.limit());
+    }
+    // no datagram sent means "would block"
+    recordWrite(count == 0 ? 1 : bytesSent, bytesSent);
+    return count;
+  }
+
+  /**
+   * Returns the number of buffers (at least one) whose remaining bytes fit into the thread-local
+   * direct buffer together, so that no datagram is truncated while staging it, and the cached
+   * buffer can be used (unless the first buffer alone is larger).
+   */
+  private static int stagingLength(ByteBuffer[] buffers, int offset, int length) {
+    long maxCapacity = getThreadLocalDirectByteBufferMaxCapacity();
+    long total = buffers[offset].remaining();
+    int num = 1;
+    while (num < length) {
+      total += buffers[offset + num].remaining();
+      if (total > maxCapacity) {
+        break;
+      }
+      num++;
+    }
+    return num;
+  }
+
+  /**
+   * Splits the thread-local direct buffer into consecutive slices matching the remaining bytes of
+   * the given buffers.
+   */
+  private ByteBuffer[] sliceStagingBuffer(ByteBuffer[] buffers, int offset, int length) {
+    int total = 0;
+    for (int i = offset, n = offset + length; i < n; i++) {
+      total += buffers[i].remaining();
+    }
+    ByteBuffer staging = getThreadLocalDirectByteBuffer(total);
+    ByteBuffer[] slices = new ByteBuffer[length];
+    for (int i = 0; i < length; i++) {
+      int num = buffers[offset + i].remaining();
+      staging.limit(staging.position() + num);
+      slices[i] = staging.slice();
+      staging.position(staging.limit());
+      staging.limit(staging.capacity());
+    }
+    return slices;
+  }
+
+  private static ByteBuffer getThreadLocalAddressesBuffer(int capacity) {
+    ByteBuffer buffer = TL_ADDRESSES_BUFFER.get();
+    if (buffer == null || capacity > buffer.capacity()) {
+      buffer = AFSocketAddress.newSockAddrDirectBuffer(capacity);
+      TL_ADDRESSES_BUFFER.set(buffer);
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  private static int[] getThreadLocalAddressLengthsArray(int numAddresses) {
+    int[] array = TL_ADDRESS_LENGTHS.get();
+    if (array == null || array.length < numAddresses) {
+      array = new int[Math.max(16, numAddresses)];
+      TL_ADDRESS_LENGTHS.set(array);
+    }
+    return array;
+  }
+
   boolean isConnected(boolean boundOk) {
     try {
       if (fd.valid()) {
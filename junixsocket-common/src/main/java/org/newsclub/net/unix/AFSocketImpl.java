@@ -19,6 +19,9 @@ package org.newsclub.net.unix;
 
 import java.io.EOFException;
 import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
@@ -31,10 +34,13 @@ import java.net.SocketOption;
 import java.net.SocketOptions;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 
@@ -53,6 +59,18 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
   private static final int SHUT_RD_WR = 2;
   private static final int SHUTDOWN_RD_WR = (1 << SHUT_RD) | (1 << SHUT_WR);
 
+  private static final int DEFAULT_STREAM_BUFFER_SIZE = Math.max(0, Integer.getInteger(
+      "org.newsclub.net.unix.stream-buffer-size", 0));
+
+  private static final int DEFAULT_BUSY_POLL_MICROS = Math.max(0, Integer.getInteger(
+      "org.newsclub.net.unix.busy-poll-micros", 0));
+
+  /**
+   * On a single CPU, the peer can only respond if we let it run while busy-polling.
+   */
+  private static final boolean YIELD_WHILE_SPINNING = Runtime.getRuntime()
+      .availableProcessors() == 1;
+
   private final AFSocketStreamCore core;
   final AncillaryDataSupport ancillaryDataSupport = new AncillaryDataSupport();
 
@@ -71,6 +89,11 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
   private final AtomicInteger socketTimeout = new AtomicInteger(0);
   private final AFAddressFamily<A> addressFamily;
 
+  private volatile int streamBufferSize = DEFAULT_STREAM_BUFFER_SIZE;
+
+  private volatile @Nullable AdaptiveBusyPoll busyPoll = AdaptiveBusyPoll.newInstance(
+      DEFAULT_BUSY_POLL_MICROS);
+
   private int shutdownState = 0;
 
   private AFSocketImplExtensions<A> implExtensions = null;
@@ -231,9 +254,7 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
     accept0(socket);
   }
 
-  @SuppressWarnings("Finally" /* errorprone */)
-  final boolean accept0(SocketImpl socket) throws IOException {
-    FileDescriptor fdesc = core.validFdOrException();
+  private AFSocketAddress acceptSocketAddress() throws SocketException {
     if (isClosed()) {
       throw new SocketException("Socket is closed");
     } else if (!isBound()) {
@@ -250,6 +271,13 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
     if (socketAddress == null) {
       throw new SocketException("Socket is not bound");
     }
+    return socketAddress;
+  }
+
+  @SuppressWarnings("Finally" /* errorprone */)
+  final boolean accept0(SocketImpl socket) throws IOException {
+    FileDescriptor fdesc = core.validFdOrException();
+    AFSocketAddress socketAddress = acceptSocketAddress();
 
     @SuppressWarnings("unchecked")
     final AFSocketImpl<A> si = (AFSocketImpl<A>) socket;
@@ -259,8 +287,7 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
 
       SocketException caught = null;
       try {
-        if (!NativeUnixSocket.accept(ab, ab.limit(), fdesc, si.fd, core.inode.get(), socketTimeout
-            .get())) {
+        if (!acceptNative(ab, fdesc, si)) {
           return false;
         }
       } catch (SocketException e) { // NOPMD.ExceptionAsFlowControl
@@ -295,6 +322,152 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
     return true;
   }
 
+  /**
+   * Accepts a connection.
+   *
+   * Virtual threads don't block in native code (see {@link VirtualThreadPoller}); the server
+   * socket is then kept in non-blocking mode internally, and any thread waits for incoming
+   * connections in Java code.
+   *
+   * @param ab The socket address buffer.
+   * @param fdesc The server socket's file descriptor.
+   * @param si The socket to accept into.
+   * @return {@code true} if a connection was accepted, {@code false} if not (non-blocking mode).
+   * @throws IOException on error.
+   */
+  private boolean acceptNative(ByteBuffer ab, FileDescriptor fdesc, AFSocketImpl<A> si)
+      throws IOException {
+    if (!core.isNonBlockingInternally()) {
+      if (!core.isBlocking() || !VirtualThreadPoller.isParkingThread()) {
+        boolean accepted = NativeUnixSocket.accept(ab, ab.limit(), fdesc, si.fd, core
+            .inodeToCheck(), socketTimeout.get(), core.isBlocking() ? 0
+                : NativeUnixSocket.OPT_NON_BLOCKING);
+        core.inodeChecked();
+        return accepted;
+      }
+      core.configureNonBlockingInternally();
+    }
+
+    long deadline = VirtualThreadPoller.deadline(socketTimeout.get());
+    while (!NativeUnixSocket.accept(ab, ab.limit(), fdesc, si.fd, core.inodeToCheck(), 0,
+        NativeUnixSocket.OPT_NON_BLOCKING)) {
+      core.inodeChecked();
+      if (!core.isNonBlockingInternally()) {
+        // the socket has been configured non-blocking in the meantime
+        return false;
+      }
+      if (!VirtualThreadPoller.await(core, SelectionKey.OP_ACCEPT, deadline)) {
+        throw new SocketTimeoutException("Accept timed out");
+      }
+    }
+    core.inodeChecked();
+    // the accepted socket may have inherited non-blocking mode (e.g., on BSD)
+    NativeUnixSocket.configureBlocking(si.fd, true);
+    return true;
+  }
+
+  /**
+   * Accepts up to {@code fds.length} connections using a single native call; see
+   * {@link AFServerSocket#acceptBatch(int)}.
+   *
+   * @param fds Receives the file descriptors of the accepted connections; the caller is
+   *          responsible for closing them, see {@link #initAccepted(SocketImpl, int)}.
+   * @return The number of accepted connections, which may be 0 (non-blocking mode).
+   * @throws IOException on error.
+   */
+  final int acceptBatch0(int[] fds) throws IOException {
+    FileDescriptor fdesc = core.validFdOrException();
+    AFSocketAddress socketAddress = acceptSocketAddress();
+
+    int count = 0;
+    core.incPendingAccepts();
+    try {
+      ByteBuffer ab = socketAddress.getNativeAddressDirectBuffer();
+
+      SocketException caught = null;
+      try {
+        count = acceptBatchNative(ab, fdesc, fds);
+      } catch (SocketException e) { // NOPMD.ExceptionAsFlowControl
+        caught = e;
+      }
+      if (!isBound() || isClosed()) {
+        for (int i = 0; i < count; i++) {
+          AncillaryDataSupport.closeQuietly(fds[i]);
+        }
+        if (caught != null) {
+          throw caught;
+        } else {
+          throw new SocketClosedException("Socket is closed");
+        }
+      } else if (caught != null) {
+        throw caught;
+      }
+    } finally {
+      core.decPendingAccepts();
+    }
+    return count;
+  }
+
+  private int acceptBatchNative(ByteBuffer ab, FileDescriptor fdesc, int[] fds)
+      throws IOException {
+    if (!core.isNonBlockingInternally()) {
+      if (!core.isBlocking()) {
+        int count = NativeUnixSocket.acceptBatch(ab, ab.limit(), fdesc, fds, fds.length, core
+            .inodeToCheck(), socketTimeout.get(), NativeUnixSocket.OPT_NON_BLOCKING);
+        core.inodeChecked();
+        return count;
+      } else if (fds.length == 1 && !VirtualThreadPoller.isParkingThread()) {
+        int count = NativeUnixSocket.acceptBatch(ab, ab.limit(), fdesc, fds, 1, core
+            .inodeToCheck(), socketTimeout.get(), 0);
+        core.inodeChecked();
+        return count;
+      }
+      // Once we have accepted a connection, we must not block again, since another thread or
+      // process could take a pending connection before we get to it. Like for virtual threads,
+      // we therefore wait for connections in Java code, and only accept without blocking.
+      core.configureNonBlockingInternally();
+    }
+
+    long deadline = VirtualThreadPoller.deadline(socketTimeout.get());
+    int count;
+    while ((count = NativeUnixSocket.acceptBatch(ab, ab.limit(), fdesc, fds, fds.length, core
+        .inodeToCheck(), 0, NativeUnixSocket.OPT_NON_BLOCKING)) == 0) {
+      core.inodeChecked();
+      if (!core.isNonBlockingInternally()) {
+        // the socket has been configured non-blocking in the meantime
+        return 0;
+      }
+      if (!VirtualThreadPoller.await(core, SelectionKey.OP_ACCEPT, deadline)) {
+        throw new SocketTimeoutException("Accept timed out");
+      }
+    }
+    core.inodeChecked();
+
+    // the accepted sockets may have inherited non-blocking mode (e.g., on BSD)
+    FileDescriptor tmp = new FileDescriptor();
+    for (int i = 0; i < count; i++) {
+      NativeUnixSocket.initFD(tmp, fds[i]);
+      NativeUnixSocket.configureBlocking(tmp, true);
+    }
+    return count;
+  }
+
+  /**
+   * Initializes a socket with a connection accepted by {@link #acceptBatch0(int[])}; the socket
+   * then owns the file descriptor.
+   *
+   * @param socket The socket.
+   * @param fdNum The accepted file descriptor.
+   * @throws IOException on error.
+   */
+  final void initAccepted(SocketImpl socket, int fdNum) throws IOException {
+    @SuppressWarnings("unchecked")
+    final AFSocketImpl<A> si = (AFSocketImpl<A>) socket;
+    NativeUnixSocket.initFD(si.fd, fdNum);
+    si.setSocketAddress(core.socketAddress);
+    si.connected.set(true);
+  }
+
   final void setSocketAddress(AFSocketAddress socketAddress) {
     if (socketAddress == null) {
       this.core.socketAddress = null;
@@ -336,6 +509,14 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
     ByteBuffer ab = socketAddress.getNativeAddressDirectBuffer();
     core.inode.set(NativeUnixSocket.bind(ab, ab.limit(), fd, options));
     core.validFdOrException();
+
+    if (core.inode.get() > 0 && socketAddress.hasFilename()) {
+      try {
+        core.pathWatch = SocketPathWatcher.watch(socketAddress.getFile());
+      } catch (FileNotFoundException e) {
+        // not watchable; the inode is checked upon every accept
+      }
+    }
   }
 
   @Override
@@ -478,6 +659,14 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
   private final class AFInputStreamImpl extends AFInputStream {
     private volatile boolean streamClosed = false;
     private final AtomicBoolean eofReached = new AtomicBoolean(false);
+    private volatile StreamRingBuffer ring = null;
+
+    /**
+     * Target for busy-polled and parking single-byte reads (a {@code null} buffer cannot be used
+     * there, since the byte value 0 would be indistinguishable from "no data yet"); guarded by
+     * itself.
+     */
+    private final byte[] singleByte = new byte[1];
 
     private final int opt = (core.isBlocking() ? 0 : NativeUnixSocket.OPT_NON_BLOCKING);
 
@@ -497,9 +686,40 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
         throw new IndexOutOfBoundsException();
       }
 
+      StreamRingBuffer rb = readBuffer();
+      if (rb != null) {
+        synchronized (rb) {
+          if (!rb.isEmpty()) {
+            return rb.get(buf, off, len);
+          } else if (len < rb.capacity() && core.isBlocking()) {
+            if (fill(fdesc, rb) < 0) {
+              return -1;
+            }
+            return rb.get(buf, off, len);
+          }
+          // nothing to gain from buffering; read directly into the target array
+          return readUnbuffered(fdesc, buf, off, len);
+        }
+      }
+      return readUnbuffered(fdesc, buf, off, len);
+    }
+
+    private int readUnbuffered(FileDescriptor fdesc, byte[] buf, int off, int len)
+        throws IOException {
       try {
-        return NativeUnixSocket.read(fdesc, buf, off, len, opt, ancillaryDataSupport, socketTimeout
-            .get());
+        if (core.isBlocking() && VirtualThreadPoller.isParkingThread()) {
+          return readParking(fdesc, buf, off, len);
+        }
+        int read = spinRead(fdesc, buf, null, off, len, opt);
+        if (read == 0) {
+          read = NativeUnixSocket.read(fdesc, buf, off, len, opt, ancillaryDataSupport,
+              socketTimeout.get());
+        }
+        core.recordRead(read);
+        return read;
+      } catch (SocketTimeoutException e) {
+        core.recordTimeout();
+        throw e;
       } catch (EOFException e) {
         eofReached.set(true);
         throw e;
@@ -514,8 +734,48 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
         return -1;
       }
 
-      int byteRead = NativeUnixSocket.read(fdesc, null, 0, 1, opt, ancillaryDataSupport,
-          socketTimeout.get());
+      StreamRingBuffer rb = readBuffer();
+      if (rb != null) {
+        synchronized (rb) {
+          if (rb.isEmpty() && core.isBlocking() && fill(fdesc, rb) < 0) {
+            return -1;
+          }
+          if (!rb.isEmpty()) {
+            return rb.get();
+          }
+        }
+      }
+
+      int byteRead;
+      try {
+        if (core.isBlocking() && VirtualThreadPoller.isParkingThread()) {
+          synchronized (singleByte) {
+            byteRead = readParking(fdesc, singleByte, 0, 1);
+            if (byteRead > 0) {
+              byteRead = singleByte[0] & 0xFF;
+            }
+          }
+        } else if (busyPoll != null && core.isBlocking()) {
+          synchronized (singleByte) {
+            byteRead = spinRead(fdesc, singleByte, null, 0, 1, opt);
+            if (byteRead == 0) {
+              byteRead = NativeUnixSocket.read(fdesc, singleByte, 0, 1, opt,
+                  ancillaryDataSupport, socketTimeout.get());
+            }
+            core.recordRead(byteRead);
+            if (byteRead > 0) {
+              byteRead = singleByte[0] & 0xFF;
+            }
+          }
+        } else {
+          byteRead = NativeUnixSocket.read(fdesc, null, 0, 1, opt, ancillaryDataSupport,
+              socketTimeout.get());
+          core.recordRead(byteRead < 0 ? -1 : 1);
+        }
+      } catch (SocketTimeoutException e) {
+        core.recordTimeout();
+        throw e;
+      }
       if (byteRead < 0) {
         eofReached.set(true);
         return -1;
@@ -524,6 +784,166 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
       }
     }
 
+    /**
+     * Reads without blocking in native code, parking the current (virtual) thread while no data is
+     * available.
+     */
+    private int readParking(FileDescriptor fdesc, byte[] buf, int off, int len)
+        throws IOException {
+      long deadline = VirtualThreadPoller.deadline(socketTimeout.get());
+      int read;
+      while ((read = NativeUnixSocket.read(fdesc, buf, off, len, opt
+          | NativeUnixSocket.OPT_NON_BLOCKING, ancillaryDataSupport, 0)) == 0) {
+        core.recordRead(0);
+        if (!VirtualThreadPoller.await(core, SelectionKey.OP_READ, deadline)) {
+          throw new SocketTimeoutException("Read timed out");
+        }
+      }
+      core.recordRead(read);
+      return read;
+    }
+
+    /**
+     * Returns the receive buffer, allocating it upon first use if buffered mode is enabled.
+     */
+    private @Nullable StreamRingBuffer readBuffer() {
+      StreamRingBuffer rb = ring;
+      if (rb == null && streamBufferSize > 0 && core.isBlocking()) {
+        synchronized (this) {
+          rb = ring;
+          if (rb == null) {
+            ring = rb = new StreamRingBuffer(streamBufferSize);
+          }
+        }
+      }
+      return rb;
+    }
+
+    /**
+     * Receives as many bytes as are available (blocking until at least one byte is available)
+     * into the free space of the given buffer, using a single system call.
+     *
+     * @return The number of bytes received, or -1 upon EOF.
+     */
+    private int fill(FileDescriptor fdesc, StreamRingBuffer rb) throws IOException {
+      int count = receive(fdesc, rb.buffer(), rb.writableOffset(), rb.writableLength(), opt);
+      if (count < 0) {
+        eofReached.set(true);
+        return -1;
+      }
+      rb.produced(count);
+      return count;
+    }
+
+    /**
+     * Receives data into a direct byte buffer, parking the current (virtual) thread while no data
+     * is available, if necessary.
+     */
+    private int receive(FileDescriptor fdesc, ByteBuffer bb, int off, int len, int options)
+        throws IOException {
+      int count;
+      try {
+        if (core.isBlocking() && VirtualThreadPoller.isParkingThread()) {
+          long deadline = VirtualThreadPoller.deadline(socketTimeout.get());
+          while ((count = NativeUnixSocket.receive(fdesc, bb, off, len, null, options
+              | NativeUnixSocket.OPT_NON_BLOCKING, ancillaryDataSupport, 0)) == 0) {
+            core.recordRead(0);
+            if (!VirtualThreadPoller.await(core, SelectionKey.OP_READ, deadline)) {
+              throw new SocketTimeoutException("Read timed out");
+            }
+          }
+        } else {
+          count = spinRead(fdesc, null, bb, off, len, options);
+          if (count == 0) {
+            count = NativeUnixSocket.receive(fdesc, bb, off, len, null, options,
+                ancillaryDataSupport, socketTimeout.get());
+          }
+        }
+      } catch (SocketTimeoutException e) {
+        core.recordTimeout();
+        throw e;
+      }
+      core.recordRead(count);
+      return count;
+    }
+
+    /**
+     * Spins with non-blocking reads for up to the socket's current busy-poll budget, before the
+     * caller falls back to a blocking read (see {@link AFSocket#setBusyPollMicros(int)}). Data is
+     * read into either the given array or the given direct buffer.
+     *
+     * @return The number of bytes read, -1 upon EOF, or 0 if busy-polling is disabled, or no data
+     *         arrived while spinning.
+     */
+    private int spinRead(FileDescriptor fdesc, byte @Nullable [] buf, @Nullable ByteBuffer bb,
+        int off, int len, int options) throws IOException {
+      AdaptiveBusyPoll bp = busyPoll;
+      if (bp == null || !core.isBlocking()) {
+        return 0;
+      }
+      long budget = bp.spinBudget();
+      if (budget <= 0) {
+        return 0;
+      }
+      int nonBlockingOptions = options | NativeUnixSocket.OPT_NON_BLOCKING;
+      long start = System.nanoTime();
+      boolean spun = false;
+      while (true) {
+        int count = bb == null ? NativeUnixSocket.read(fdesc, buf, off, len, nonBlockingOptions,
+            ancillaryDataSupport, 0) : NativeUnixSocket.receive(fdesc, bb, off, len, null,
+                nonBlockingOptions, ancillaryDataSupport, 0);
+        long elapsed = System.nanoTime() - start;
+        if (count != 0) {
+          if (spun) {
+            // data that was already available is not a hit, since blocking wouldn't have blocked
+            bp.hit(elapsed);
+            core.recordBusyPoll(true);
+          }
+          return count;
+        } else if (elapsed >= budget) {
+          bp.miss();
+          core.recordBusyPoll(false);
+          return 0;
+        }
+        spun = true;
+        if (YIELD_WHILE_SPINNING) {
+          Thread.yield();
+        }
+      }
+    }
+
+    @Override
+    public int peek() throws IOException {
+      if (streamClosed) {
+        throw new SocketClosedException("This InputStream has already been closed.");
+      }
+      FileDescriptor fdesc = core.validFdOrException();
+      if (eofReached.get()) {
+        return -1;
+      }
+
+      StreamRingBuffer rb = readBuffer();
+      if (rb != null) {
+        synchronized (rb) {
+          if (rb.isEmpty() && core.isBlocking() && fill(fdesc, rb) < 0) {
+            return -1;
+          }
+          if (!rb.isEmpty()) {
+            return rb.peek();
+          }
+        }
+      }
+
+      ByteBuffer bb = core.getThreadLocalDirectByteBuffer(1);
+      int count = receive(fdesc, bb, bb.position(), 1, opt | NativeUnixSocket.OPT_PEEK);
+      if (count < 0) {
+        return -1;
+      } else if (count == 0) {
+        return NO_DATA_AVAILABLE;
+      }
+      return bb.get(bb.position()) & 0xFF;
+    }
+
     @Override
     public synchronized void close() throws IOException {
       streamClosed = true;
@@ -542,9 +962,35 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
         throw new SocketClosedException("This InputStream has already been closed.");
       }
 
+      StreamRingBuffer rb = ring;
+      if (rb != null) {
+        int buffered = rb.size();
+        if (buffered > 0) {
+          return buffered;
+        }
+      }
       return AFSocketImpl.this.available();
     }
 
+    @IgnoreJRERequirement // see src/main/java8
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+      StreamRingBuffer rb = ring;
+      if (out != null && out.getClass() == FileOutputStream.class && !streamClosed && !eofReached
+          .get() && (rb == null || rb.isEmpty()) && canTransferZeroCopy(true)) {
+        try {
+          long transferred = core.transferToFile(((FileOutputStream) out).getFD(), -1,
+              Long.MAX_VALUE, socketTimeout.get());
+          // in blocking mode, transferToFile only returns upon EOF
+          eofReached.set(true);
+          return Math.max(0, transferred);
+        } catch (OperationNotSupportedSocketException e) {
+          // fall back to copying
+        }
+      }
+      return super.transferTo(out);
+    }
+
     @Override
     public FileDescriptor getFileDescriptor() throws IOException {
       return getFD();
@@ -564,6 +1010,7 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
 
   private final class AFOutputStreamImpl extends AFOutputStream {
     private volatile boolean streamClosed = false;
+    private volatile StreamRingBuffer ring = null;
 
     private final int opt = (core.isBlocking() ? 0 : NativeUnixSocket.OPT_NON_BLOCKING);
 
@@ -571,15 +1018,49 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
     public void write(int oneByte) throws IOException {
       FileDescriptor fdesc = core.validFdOrException();
 
+      StreamRingBuffer rb = writeBuffer();
+      if (rb != null) {
+        synchronized (rb) {
+          if (core.isBlocking()) {
+            if (rb.isFull()) {
+              drain(fdesc, rb);
+            }
+            rb.put(oneByte);
+            return;
+          }
+          drain(fdesc, rb);
+        }
+      }
+
+      final boolean parking = core.isBlocking() && VirtualThreadPoller.isParkingThread();
+      final int writeOpt = parking ? (opt | NativeUnixSocket.OPT_NON_BLOCKING) : opt;
+      final long deadline = parking ? VirtualThreadPoller.deadline(socketTimeout.get()) : 0;
+
       int written;
       do {
-        written = NativeUnixSocket.write(fdesc, null, oneByte, 1, opt, ancillaryDataSupport);
+        written = NativeUnixSocket.write(fdesc, null, oneByte, 1, writeOpt, ancillaryDataSupport);
+        core.recordWrite(1, written);
         if (written != 0) {
           break;
         }
+        if (parking) {
+          awaitWritable(deadline, 0);
+        }
       } while (checkWriteInterruptedException(0));
     }
 
+    /**
+     * Parks the current (virtual) thread until the socket may be writable.
+     */
+    private void awaitWritable(long deadline, int bytesTransferred) throws IOException {
+      if (!VirtualThreadPoller.await(core, SelectionKey.OP_WRITE, deadline)) {
+        core.recordTimeout();
+        SocketTimeoutException ex = new SocketTimeoutException("Write timed out");
+        ex.bytesTransferred = bytesTransferred;
+        throw ex;
+      }
+    }
+
     @Override
     public void write(byte[] buf, int off, int len) throws IOException {
       if (streamClosed) {
@@ -596,11 +1077,41 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
         return;
       }
 
+      StreamRingBuffer rb = writeBuffer();
+      if (rb != null) {
+        synchronized (rb) {
+          if (len > 0 && len <= rb.capacity() - rb.size() && core.isBlocking()) {
+            rb.put(buf, off, len);
+            return;
+          }
+          drain(fdesc, rb);
+          if (len > 0 && len < rb.capacity() && core.isBlocking()) {
+            rb.put(buf, off, len);
+          } else {
+            writeUnbuffered(fdesc, buf, off, len);
+          }
+        }
+      } else {
+        writeUnbuffered(fdesc, buf, off, len);
+      }
+    }
+
+    private void writeUnbuffered(FileDescriptor fdesc, byte[] buf, int off, int len)
+        throws IOException {
+      final boolean parking = core.isBlocking() && VirtualThreadPoller.isParkingThread();
+      final int writeOpt = parking ? (opt | NativeUnixSocket.OPT_NON_BLOCKING) : opt;
+      final long deadline = parking ? VirtualThreadPoller.deadline(socketTimeout.get()) : 0;
+
       int writtenTotal = 0;
 
       do {
-        final int written = NativeUnixSocket.write(fdesc, buf, off, len, opt, ancillaryDataSupport);
-        if (written < 0) {
+        final int written = NativeUnixSocket.write(fdesc, buf, off, len, writeOpt,
+            ancillaryDataSupport);
+        core.recordWrite(len, written);
+        if (written == 0 && len > 0 && parking) {
+          awaitWritable(deadline, writtenTotal);
+          continue;
+        } else if (written < 0) {
           if (len == 0) {
             // This exception is only useful to detect OS-level bugs that we need to work-around
             // in native code.
@@ -621,18 +1132,96 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
       } while (len > 0 && checkWriteInterruptedException(writtenTotal));
     }
 
+    /**
+     * Returns the send buffer, allocating it upon first use if buffered mode is enabled.
+     */
+    private @Nullable StreamRingBuffer writeBuffer() {
+      StreamRingBuffer rb = ring;
+      if (rb == null && streamBufferSize > 0 && core.isBlocking()) {
+        synchronized (this) {
+          rb = ring;
+          if (rb == null) {
+            ring = rb = new StreamRingBuffer(streamBufferSize);
+          }
+        }
+      }
+      return rb;
+    }
+
+    /**
+     * Sends all buffered bytes, using as few system calls as possible.
+     */
+    private void drain(FileDescriptor fdesc, StreamRingBuffer rb) throws IOException {
+      if (rb.isEmpty()) {
+        return;
+      }
+
+      final boolean parking = core.isBlocking() && VirtualThreadPoller.isParkingThread();
+      final int writeOpt = parking ? (opt | NativeUnixSocket.OPT_NON_BLOCKING) : opt;
+      final long deadline = parking ? VirtualThreadPoller.deadline(socketTimeout.get()) : 0;
+
+      int writtenTotal = 0;
+      do {
+        int len = rb.readableLength();
+        int written = NativeUnixSocket.send(fdesc, rb.buffer(), rb.readableOffset(), len, null, 0,
+            writeOpt, ancillaryDataSupport);
+        core.recordWrite(len, written);
+        if (written == 0 && parking) {
+          awaitWritable(deadline, writtenTotal);
+          continue;
+        } else if (written < 0) {
+          throw new IOException("Unspecific error while writing");
+        }
+        rb.consumed(written);
+        writtenTotal += written;
+      } while (!rb.isEmpty() && checkWriteInterruptedException(writtenTotal));
+    }
+
+    @Override
+    public void flush() throws IOException {
+      StreamRingBuffer rb = ring;
+      if (rb == null) {
+        return;
+      }
+      synchronized (rb) {
+        if (!rb.isEmpty()) {
+          drain(core.validFdOrException(), rb);
+        }
+      }
+    }
+
     @Override
     public synchronized void close() throws IOException {
       if (streamClosed) {
         return;
       }
-      streamClosed = true;
       FileDescriptor fdesc = core.validFd();
-      if (fdesc != null) {
-        NativeUnixSocket.shutdown(fdesc, SHUT_WR);
+      try {
+        if (fdesc != null) {
+          flush();
+        }
+      } finally {
+        streamClosed = true;
+        if (fdesc != null) {
+          NativeUnixSocket.shutdown(fdesc, SHUT_WR);
+        }
+        closedOutputStream = true;
+        checkClose();
       }
-      closedOutputStream = true;
-      checkClose();
+    }
+
+    @Override
+    public long transferFrom(InputStream in) throws IOException {
+      if (in != null && in.getClass() == FileInputStream.class && !streamClosed
+          && canTransferZeroCopy(false)) {
+        flush();
+        try {
+          return core.transferFromFile(((FileInputStream) in).getFD(), -1, Long.MAX_VALUE);
+        } catch (OperationNotSupportedSocketException e) {
+          // fall back to copying
+        }
+      }
+      return super.transferFrom(in);
     }
 
     @Override
@@ -641,6 +1230,27 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
     }
   }
 
+  /**
+   * Checks if data can be transferred between this socket and a file without copying it into the
+   * Java heap.
+   *
+   * Zero-copy transfers are only used in blocking mode, and not if file descriptors are to be sent
+   * or received as ancillary data, since these would otherwise get lost.
+   *
+   * @param receive {@code true} if data is to be received from this socket.
+   * @return {@code true} if supported.
+   */
+  private boolean canTransferZeroCopy(boolean receive) {
+    if (!core.isBlocking() || !AFSocket.supports(AFSocketCapability.CAPABILITY_ZERO_COPY)) {
+      return false;
+    }
+    if (receive) {
+      return ancillaryDataSupport.getAncillaryReceiveBufferSize() == 0;
+    } else {
+      return !ancillaryDataSupport.hasOutboundFileDescriptors();
+    }
+  }
+
   @Override
   public final String toString() {
     return super.toString() + "[fd=" + fd + "; addr=" + this.core.socketAddress + "; connected="
@@ -882,6 +1492,7 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
   protected final void shutdownOutput() throws IOException {
     FileDescriptor fdesc = core.validFd();
     if (fdesc != null) {
+      out.flush();
       NativeUnixSocket.shutdown(fdesc, SHUT_WR);
       shutdownState |= 1 << (SHUT_RD_WR);
       if (shutdownState == SHUTDOWN_RD_WR) {
@@ -903,6 +1514,29 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
     ancillaryDataSupport.ensureAncillaryReceiveBufferSize(minSize);
   }
 
+  final int getStreamBufferSize() {
+    return streamBufferSize;
+  }
+
+  final void setStreamBufferSize(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("size");
+    }
+    this.streamBufferSize = size;
+  }
+
+  final int getBusyPollMicros() {
+    AdaptiveBusyPoll bp = busyPoll;
+    return bp == null ? 0 : bp.getMaxSpinMicros();
+  }
+
+  final void setBusyPollMicros(int micros) {
+    if (micros < 0) {
+      throw new IllegalArgumentException("micros");
+    }
+    this.busyPoll = AdaptiveBusyPoll.newInstance(micros);
+  }
+
   AncillaryDataSupport getAncillaryDataSupport() {
     return ancillaryDataSupport;
   }
@@ -923,6 +1557,51 @@ public abstract class AFSocketImpl<A extends AFSocketAddress> extends SocketImpl
     return core.write(src);
   }
 
+  final long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    return core.read(dsts, offset, length, 0);
+  }
+
+  final long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+    return core.write(srcs, offset, length, 0);
+  }
+
+  final long transferFrom(FileChannel src, long position, long count) throws IOException {
+    FileDescriptor fdIn = zeroCopyFileDescriptor(src, false);
+    if (fdIn != null) {
+      try {
+        return core.transferFromFile(fdIn, position, Math.min(count, Math.max(0, src.size()
+            - position)));
+      } catch (OperationNotSupportedSocketException e) {
+        // fall back to copying
+      }
+    }
+    return -1;
+  }
+
+  final long transferTo(FileChannel dst, long position, long count) throws IOException {
+    FileDescriptor fdOut = zeroCopyFileDescriptor(dst, true);
+    if (fdOut != null) {
+      try {
+        return Math.max(0, core.transferToFile(fdOut, position, count, 0));
+      } catch (OperationNotSupportedSocketException e) {
+        // fall back to copying
+      }
+    }
+    return -1;
+  }
+
+  private FileDescriptor zeroCopyFileDescriptor(FileChannel channel, boolean receive) {
+    if (!AFSocket.supports(AFSocketCapability.CAPABILITY_ZERO_COPY)) {
+      return null;
+    }
+    if (receive ? ancillaryDataSupport.getAncillaryReceiveBufferSize() != 0
+        : ancillaryDataSupport.hasOutboundFileDescriptors()) {
+      return null;
+    }
+    FileDescriptor fdesc = NativeUnixSocket.getFileChannelFD(channel);
+    return fdesc == null || !fdesc.valid() ? null : fdesc;
+  }
+
   @Override
   protected final FileDescriptor getFileDescriptor() {
     return core.fd;
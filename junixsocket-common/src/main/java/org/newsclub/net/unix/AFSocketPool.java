@@ -0,0 +1,514 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A pool of connected {@link AFSocket}s, keyed by {@link AFSocketAddress}, for request/response
+ * clients that would otherwise open a new connection for every request.
+ *
+ * Sockets are borrowed via {@link #getConnection(AFSocketAddress)}, which returns a {@link Socket}
+ * that is returned to the pool upon {@link Socket#close()}, instead of actually being closed. A
+ * connection is not reused if there was an I/O error, if it was shut down in either direction, or
+ * if there was unread data left; see {@link #discard(Socket)} to explicitly prevent reuse.
+ *
+ * Before an idle connection is reused, it is validated via
+ * {@link AFSocket#checkConnectionClosed()}. Idle connections are closed after
+ * {@link #getMaxIdleMillis()} milliseconds. The number of connections per address (borrowed and
+ * idle) is limited to {@link #getMaxPerAddress()}; when the limit is reached,
+ * {@link #getConnection(AFSocketAddress)} waits up to {@link #getMaxWaitMillis()} milliseconds for
+ * a connection to be returned. The per-address bookkeeping is dropped once an address has neither
+ * borrowed nor idle connections.
+ *
+ * Use {@link AFPooledSocketFactory} to use a pool with code that expects a
+ * {@link javax.net.SocketFactory}.
+ *
+ * The protocol spoken over pooled connections must allow for that, i.e., the server must keep the
+ * connection open after responding, and the client must read each response completely.
+ *
+ * @param <A> The supported address type.
+ * @author Christian Kohlschütter
+ * @see AFPooledSocketFactory
+ */
+public final class AFSocketPool<A extends AFSocketAddress> implements Closeable {
+  private static final ScheduledExecutorService EVICTOR = Executors
+      .newSingleThreadScheduledExecutor((r) -> {
+        Thread t = new Thread(r, "junixsocket socket pool evictor");
+        t.setDaemon(true);
+        return t;
+      });
+
+  private final AFSocketConnector<A, ?> connector;
+  private final int maxPerAddress;
+  private final long maxIdleNanos;
+  private final long maxIdleMillis;
+  private final long maxWaitMillis;
+
+  private final Map<A, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicBoolean closed = new AtomicBoolean(false);
+  private final @Nullable ScheduledFuture<?> evictionFuture;
+
+  private final LongAdder connectionsCreated = new LongAdder();
+  private final LongAdder connectionsReused = new LongAdder();
+  private final LongAdder validationFailures = new LongAdder();
+  private final LongAdder idleEvictions = new LongAdder();
+  private final LongAdder connectionsDiscarded = new LongAdder();
+  private final LongAdder exhausted = new LongAdder();
+
+  /**
+   * Creates a new pool that connects using {@link AFSocketAddress#newConnectedSocket()}.
+   *
+   * @param maxPerAddress The maximum number of connections per address (borrowed and idle).
+   * @param maxIdleMillis The time after which an idle connection is closed, in milliseconds, or 0
+   *          to keep idle connections until they are closed by the server.
+   * @param maxWaitMillis The maximum time to wait for a connection when {@code maxPerAddress}
+   *          connections are borrowed, in milliseconds, or 0 to fail immediately.
+   */
+  public AFSocketPool(int maxPerAddress, long maxIdleMillis, long maxWaitMillis) {
+    this(null, maxPerAddress, maxIdleMillis, maxWaitMillis);
+  }
+
+  /**
+   * Creates a new pool.
+   *
+   * @param connector The connector used to establish new connections, or {@code null} to use
+   *          {@link AFSocketAddress#newConnectedSocket()}.
+   * @param maxPerAddress The maximum number of connections per address (borrowed and idle).
+   * @param maxIdleMillis The time after which an idle connection is closed, in milliseconds, or 0
+   *          to keep idle connections until they are closed by the server.
+   * @param maxWaitMillis The maximum time to wait for a connection when {@code maxPerAddress}
+   *          connections are borrowed, in milliseconds, or 0 to fail immediately.
+   */
+  public AFSocketPool(@Nullable AFSocketConnector<A, ?> connector, int maxPerAddress,
+      long maxIdleMillis, long maxWaitMillis) {
+    if (maxPerAddress <= 0) {
+      throw new IllegalArgumentException("maxPerAddress");
+    }
+    if (maxIdleMillis < 0) {
+      throw new IllegalArgumentException("maxIdleMillis");
+    }
+    if (maxWaitMillis < 0) {
+      throw new IllegalArgumentException("maxWaitMillis");
+    }
+    this.connector = connector == null ? AFSocketAddress::newConnectedSocket : connector;
+    this.maxPerAddress = maxPerAddress;
+    this.maxIdleMillis = maxIdleMillis;
+    this.maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleMillis);
+    this.maxWaitMillis = maxWaitMillis;
+
+    if (maxIdleMillis > 0) {
+      long period = Math.max(maxIdleMillis / 2, 100);
+      this.evictionFuture = EVICTOR.scheduleWithFixedDelay(this::evictIdle, period, period,
+          TimeUnit.MILLISECONDS);
+    } else {
+      this.evictionFuture = null;
+    }
+  }
+
+  /**
+   * Returns a connection to the given address, reusing an idle connection if possible. Closing the
+   * returned socket returns the connection to the pool.
+   *
+   * @param address The address to connect to.
+   * @return The connection.
+   * @throws SocketTimeoutException if {@link #getMaxPerAddress()} connections are borrowed, and
+   *           none was returned within {@link #getMaxWaitMillis()} milliseconds.
+   * @throws InterruptedIOException if interrupted while waiting for a connection to be returned.
+   * @throws IOException on error.
+   */
+  public Socket getConnection(A address) throws IOException {
+    PooledSocket<A> socket = new PooledSocket<>(this);
+    socket.connect(address);
+    return socket;
+  }
+
+  /**
+   * Returns a new, unconnected socket that borrows a connection from this pool once it is
+   * connected, and returns it upon close.
+   *
+   * @return The socket.
+   */
+  public Socket newSocket() {
+    return new PooledSocket<>(this);
+  }
+
+  /**
+   * Closes the given connection instead of returning it to the pool upon close.
+   *
+   * @param socket A socket obtained from this pool.
+   * @throws IOException on error.
+   */
+  public static void discard(Socket socket) throws IOException {
+    if (socket instanceof PooledSocket) {
+      ((PooledSocket<?>) socket).discard();
+    } else {
+      socket.close();
+    }
+  }
+
+  AFSocket<?> borrow(A address) throws IOException {
+    if (closed.get()) {
+      throw new SocketClosedException("Pool is closed");
+    }
+    Entry entry = entries.compute(address, (k, e) -> {
+      Entry en = e == null ? new Entry(maxPerAddress) : e;
+      en.users++;
+      return en;
+    });
+
+    boolean success = false;
+    try {
+      if (!entry.permits.tryAcquire()) {
+        boolean acquired;
+        try {
+          acquired = maxWaitMillis > 0 && entry.permits.tryAcquire(maxWaitMillis,
+              TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw (InterruptedIOException) new InterruptedIOException(
+              "Interrupted while waiting for a connection").initCause(e);
+        }
+        if (!acquired) {
+          exhausted.increment();
+          throw new SocketTimeoutException("Connection pool exhausted: " + address);
+        }
+      }
+
+      try {
+        Idle idle;
+        while ((idle = entry.idle.pollFirst()) != null) {
+          if (isReusable(idle.socket)) {
+            connectionsReused.increment();
+            success = true;
+            return idle.socket;
+          }
+          validationFailures.increment();
+          closeQuietly(idle.socket);
+        }
+
+        AFSocket<?> socket = connector.connect(address);
+        connectionsCreated.increment();
+        success = true;
+        return socket;
+      } finally {
+        if (!success) {
+          entry.permits.release();
+        }
+      }
+    } finally {
+      if (!success) {
+        release(address, entry);
+      }
+    }
+  }
+
+  void giveBack(A address, AFSocket<?> socket, boolean reusable) {
+    Entry entry = entries.get(address);
+    try {
+      if (entry != null && reusable && !closed.get() && isClean(socket)) {
+        Idle idle = new Idle(socket, System.nanoTime());
+        entry.idle.offerFirst(idle);
+        if (closed.get() && entry.idle.removeFirstOccurrence(idle)) {
+          // closed concurrently
+          closeQuietly(socket);
+        }
+      } else {
+        connectionsDiscarded.increment();
+        closeQuietly(socket);
+      }
+    } finally {
+      if (entry != null) {
+        entry.permits.release();
+        release(address, entry);
+      }
+    }
+  }
+
+  /**
+   * Drops a user of the given entry (see {@link Entry#users}), and removes the entry if it is no
+   * longer used and has no idle connections.
+   *
+   * @param address The address.
+   * @param entry The entry.
+   */
+  private void release(A address, Entry entry) {
+    entries.computeIfPresent(address, (k, e) -> {
+      if (e == entry) {
+        e.users--;
+      }
+      return e.isUnused() ? null : e;
+    });
+  }
+
+  /**
+   * Removes the entry for the given address if it is no longer used and has no idle connections.
+   *
+   * @param address The address.
+   */
+  private void removeIfUnused(A address) {
+    entries.computeIfPresent(address, (k, e) -> e.isUnused() ? null : e);
+  }
+
+  private static boolean isClean(AFSocket<?> socket) {
+    try {
+      return !socket.isClosed() && socket.isConnected() && !socket.isInputShutdown() && !socket
+          .isOutputShutdown() && socket.getInputStream().available() == 0;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static boolean isReusable(AFSocket<?> socket) {
+    try {
+      return isClean(socket) && !socket.checkConnectionClosed();
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static void closeQuietly(AFSocket<?> socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+  /**
+   * Closes all connections that have been idle for longer than {@link #getMaxIdleMillis()}
+   * milliseconds. This is called periodically, so there is usually no need to call it manually.
+   */
+  public void evictIdle() {
+    if (maxIdleNanos <= 0) {
+      return;
+    }
+    long now = System.nanoTime();
+    for (Map.Entry<A, Entry> en : entries.entrySet()) {
+      Entry entry = en.getValue();
+      for (Iterator<Idle> it = entry.idle.descendingIterator(); it.hasNext();) {
+        Idle idle = it.next();
+        if (now - idle.since < maxIdleNanos) {
+          // the deque is sorted by idle time, most recently returned first
+          break;
+        }
+        if (entry.idle.removeFirstOccurrence(idle)) {
+          idleEvictions.increment();
+          closeQuietly(idle.socket);
+        }
+      }
+      removeIfUnused(en.getKey());
+    }
+  }
+
+  /**
+   * Closes all idle connections, and prevents connections from being borrowed or returned.
+   * Borrowed connections are closed when they are returned.
+   */
+  @Override
+  public void close() {
+    if (!closed.compareAndSet(false, true)) {
+      return;
+    }
+    if (evictionFuture != null) {
+      evictionFuture.cancel(false);
+    }
+    for (Map.Entry<A, Entry> en : entries.entrySet()) {
+      Idle idle;
+      while ((idle = en.getValue().idle.pollFirst()) != null) {
+        closeQuietly(idle.socket);
+      }
+      removeIfUnused(en.getKey());
+    }
+  }
+
+  /**
+   * Returns the maximum number of connections per address (borrowed and idle).
+   *
+   * @return The maximum.
+   */
+  public int getMaxPerAddress() {
+    return maxPerAddress;
+  }
+
+  /**
+   * Returns the time after which an idle connection is closed, in milliseconds.
+   *
+   * @return The time, or 0 if idle connections are not closed.
+   */
+  public long getMaxIdleMillis() {
+    return maxIdleMillis;
+  }
+
+  /**
+   * Returns the maximum time to wait for a connection, in milliseconds.
+   *
+   * @return The time, or 0 if not waiting.
+   */
+  public long getMaxWaitMillis() {
+    return maxWaitMillis;
+  }
+
+  /**
+   * Returns the number of connections that have been established.
+   *
+   * @return The count.
+   */
+  public long getConnectionsCreated() {
+    return connectionsCreated.sum();
+  }
+
+  /**
+   * Returns the number of times an idle connection has been reused.
+   *
+   * @return The count.
+   */
+  public long getConnectionsReused() {
+    return connectionsReused.sum();
+  }
+
+  /**
+   * Returns the number of idle connections that were closed because they failed validation
+   * before reuse (e.g., because the server closed them).
+   *
+   * @return The count.
+   */
+  public long getValidationFailures() {
+    return validationFailures.sum();
+  }
+
+  /**
+   * Returns the number of idle connections that were closed because they had been idle for too
+   * long.
+   *
+   * @return The count.
+   */
+  public long getIdleEvictions() {
+    return idleEvictions.sum();
+  }
+
+  /**
+   * Returns the number of connections that were closed upon return instead of being reused.
+   *
+   * @return The count.
+   */
+  public long getConnectionsDiscarded() {
+    return connectionsDiscarded.sum();
+  }
+
+  /**
+   * Returns the number of times a connection could not be borrowed because the per-address limit
+   * was reached.
+   *
+   * @return The count.
+   */
+  public long getExhaustedCount() {
+    return exhausted.sum();
+  }
+
+  /**
+   * Returns the number of currently borrowed connections, across all addresses.
+   *
+   * @return The count.
+   */
+  public int getBorrowedConnections() {
+    int n = 0;
+    for (Entry entry : entries.values()) {
+      n += maxPerAddress - entry.permits.availablePermits();
+    }
+    return n;
+  }
+
+  /**
+   * Returns the number of currently idle connections, across all addresses.
+   *
+   * @return The count.
+   */
+  public int getIdleConnections() {
+    int n = 0;
+    for (Entry entry : entries.values()) {
+      n += entry.idle.size();
+    }
+    return n;
+  }
+
+  /**
+   * Returns the number of addresses with borrowed or idle connections.
+   *
+   * @return The count.
+   */
+  int getAddressCount() {
+    return entries.size();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "[maxPerAddress=" + maxPerAddress + ";borrowed="
+        + getBorrowedConnections() + ";idle=" + getIdleConnections() + ";created="
+        + getConnectionsCreated() + ";reused=" + getConnectionsReused() + ";validationFailures="
+        + getValidationFailures() + ";idleEvictions=" + getIdleEvictions() + ";discarded="
+        + getConnectionsDiscarded() + ";exhausted=" + getExhaustedCount() + "]";
+  }
+
+  private static final class Entry {
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<Idle> idle = new ConcurrentLinkedDeque<>();
+
+    /**
+     * The number of borrowed connections plus pending calls to {@code borrow}; only accessed from
+     * within {@code entries.compute} and the like, which lock the entry's mapping.
+     */
+    private int users = 0;
+
+    Entry(int maxPerAddress) {
+      this.permits = new Semaphore(maxPerAddress);
+    }
+
+    private boolean isUnused() {
+      return users == 0 && idle.isEmpty();
+    }
+  }
+
+  private static final class Idle {
+    private final AFSocket<?> socket;
+    private final long since;
+
+    Idle(AFSocket<?> socket, long since) {
+      this.socket = socket;
+      this.since = since;
+    }
+  }
+}
@@ -77,6 +77,21 @@ public final class AFUNIXDatagramChannel extends AFDatagramChannel<AFUNIXSocketA
     ((AFUNIXSocketExtensions) getAFSocket()).setOutboundFileDescriptors(fdescs);
   }
 
+  @Override
+  @Unsafe
+  public int[] getReceivedFileDescriptorNumbers() throws IOException {
+    return ((AFUNIXSocketExtensions) getAFSocket()).getReceivedFileDescriptorNumbers();
+  }
+
+  @Override
+  @Unsafe
+  public void setOutboundFileDescriptorNumbers(int... fds) throws IOException {
+    if (fds != null && fds.length > 0 && !isConnected()) {
+      throw new SocketException("Not connected");
+    }
+    ((AFUNIXSocketExtensions) getAFSocket()).setOutboundFileDescriptorNumbers(fds);
+  }
+
   @Override
   public boolean hasOutboundFileDescriptors() {
     return ((AFUNIXSocketExtensions) getAFSocket()).hasOutboundFileDescriptors();
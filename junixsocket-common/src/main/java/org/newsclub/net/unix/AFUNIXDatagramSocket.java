@@ -96,6 +96,21 @@ public final class AFUNIXDatagramSocket extends AFDatagramSocket<AFUNIXSocketAdd
     getAncillaryDataSupport().setOutboundFileDescriptors(fdescs);
   }
 
+  @Override
+  @Unsafe
+  public int[] getReceivedFileDescriptorNumbers() throws IOException {
+    return getAncillaryDataSupport().getReceivedFileDescriptorNumbers();
+  }
+
+  @Override
+  @Unsafe
+  public void setOutboundFileDescriptorNumbers(int... fds) throws IOException {
+    if (fds != null && fds.length > 0 && !isConnected()) {
+      throw new SocketException("Not connected");
+    }
+    getAncillaryDataSupport().setOutboundFileDescriptorNumbers(fds);
+  }
+
   @Override
   public boolean hasOutboundFileDescriptors() {
     return getAncillaryDataSupport().hasOutboundFileDescriptors();
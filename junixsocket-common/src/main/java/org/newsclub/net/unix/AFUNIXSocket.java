@@ -146,6 +146,21 @@ public final class AFUNIXSocket extends AFSocket<AFUNIXSocketAddress> implements
     ((AFUNIXSocketImpl) getAFImpl()).setOutboundFileDescriptors(fdescs);
   }
 
+  @Override
+  @Unsafe
+  public int[] getReceivedFileDescriptorNumbers() throws IOException {
+    return ((AFUNIXSocketImpl) getAFImpl()).getReceivedFileDescriptorNumbers();
+  }
+
+  @Override
+  @Unsafe
+  public void setOutboundFileDescriptorNumbers(int... fds) throws IOException {
+    if (fds != null && fds.length > 0 && !isConnected()) {
+      throw new SocketException("Not connected");
+    }
+    ((AFUNIXSocketImpl) getAFImpl()).setOutboundFileDescriptorNumbers(fds);
+  }
+
   @Override
   public boolean hasOutboundFileDescriptors() {
     return ((AFUNIXSocketImpl) getAFImpl()).hasOutboundFileDescriptors();
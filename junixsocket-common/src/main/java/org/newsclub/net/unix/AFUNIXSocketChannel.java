@@ -72,6 +72,21 @@ public final class AFUNIXSocketChannel extends AFSocketChannel<AFUNIXSocketAddre
     ((AFUNIXSocketExtensions) getAFSocket()).setOutboundFileDescriptors(fdescs);
   }
 
+  @Override
+  @Unsafe
+  public int[] getReceivedFileDescriptorNumbers() throws IOException {
+    return ((AFUNIXSocketExtensions) getAFSocket()).getReceivedFileDescriptorNumbers();
+  }
+
+  @Override
+  @Unsafe
+  public void setOutboundFileDescriptorNumbers(int... fds) throws IOException {
+    if (fds != null && fds.length > 0 && !isConnected()) {
+      throw new SocketException("Not connected");
+    }
+    ((AFUNIXSocketExtensions) getAFSocket()).setOutboundFileDescriptorNumbers(fds);
+  }
+
   @Override
   public boolean hasOutboundFileDescriptors() {
     return ((AFUNIXSocketExtensions) getAFSocket()).hasOutboundFileDescriptors();
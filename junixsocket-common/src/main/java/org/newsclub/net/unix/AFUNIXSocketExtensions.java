@@ -48,6 +48,8 @@ public interface AFUNIXSocketExtensions extends AFSocketExtensions {
 
   /**
    * Clears the queue of incoming {@link FileDescriptor}s that were sent as ancillary messages.
+   *
+   * File descriptors that have not been retrieved yet are closed.
    */
   void clearReceivedFileDescriptors();
 
@@ -68,6 +70,38 @@ public interface AFUNIXSocketExtensions extends AFSocketExtensions {
    */
   void setOutboundFileDescriptors(FileDescriptor... fdescs) throws IOException;
 
+  /**
+   * Retrieves the system-native values of incoming file descriptors that were sent as ancillary
+   * messages, without wrapping them in {@link FileDescriptor} instances.
+   *
+   * Unlike with {@link #getReceivedFileDescriptors()}, the caller takes ownership of the returned
+   * file descriptors: They are not closed along with the socket, and need to be closed explicitly
+   * (for example, via {@link FileDescriptorCast#unsafeUsing(int)}), even after passing them on via
+   * {@link #setOutboundFileDescriptorNumbers(int...)}.
+   *
+   * NOTE: Another call to this method, or to {@link #getReceivedFileDescriptors()}, will not
+   * return the same file descriptors again.
+   *
+   * @return The file descriptor values, or an empty array if none were available.
+   * @throws IOException if the operation fails, or if "unsafe" operations are not supported.
+   * @see AFSocket#ensureUnsafeSupported()
+   */
+  @Unsafe
+  int[] getReceivedFileDescriptorNumbers() throws IOException;
+
+  /**
+   * Sets the system-native values of file descriptors that should be sent as an ancillary message
+   * along with the next write, just like {@link #setOutboundFileDescriptors(FileDescriptor...)}.
+   *
+   * The file descriptors are not verified, and need to stay open until the write completes.
+   *
+   * @param fds The file descriptor values, or {@code null} if none.
+   * @throws IOException if the operation fails, or if "unsafe" operations are not supported.
+   * @see AFSocket#ensureUnsafeSupported()
+   */
+  @Unsafe
+  void setOutboundFileDescriptorNumbers(int... fds) throws IOException;
+
   /**
    * Returns {@code true} if there are pending file descriptors to be sent as part of an ancillary
    * message.
@@ -53,7 +53,7 @@ class AFUNIXSocketImpl extends AFSocketImpl<AFUNIXSocketAddress> {
     return NativeUnixSocket.peerCredentials(fd, new AFUNIXSocketCredentials());
   }
 
-  final FileDescriptor[] getReceivedFileDescriptors() {
+  final FileDescriptor[] getReceivedFileDescriptors() throws IOException {
     return ancillaryDataSupport.getReceivedFileDescriptors();
   }
 
@@ -69,6 +69,14 @@ class AFUNIXSocketImpl extends AFSocketImpl<AFUNIXSocketAddress> {
     ancillaryDataSupport.setOutboundFileDescriptors(fdescs);
   }
 
+  final int[] getReceivedFileDescriptorNumbers() throws IOException {
+    return ancillaryDataSupport.getReceivedFileDescriptorNumbers();
+  }
+
+  final void setOutboundFileDescriptorNumbers(int... fds) throws IOException {
+    ancillaryDataSupport.setOutboundFileDescriptorNumbers(fds);
+  }
+
   final boolean hasOutboundFileDescriptors() {
     return ancillaryDataSupport.hasOutboundFileDescriptors();
   }
@@ -0,0 +1,108 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The adaptive spin budget of a socket in busy-poll mode (see
+ * {@link AFSocket#setBusyPollMicros(int)}).
+ *
+ * The budget starts at the configured maximum. Whenever data arrives while spinning, the budget
+ * grows to twice the time it took (up to the maximum), so that the spin covers the typical
+ * response time. Whenever the budget is exhausted without data, it is halved; once it drops below
+ * {@link #MIN_SPIN_NANOS}, spinning is suspended for the next {@link #COOLDOWN_READS} reads, and
+ * then retried with the full budget. This way, idle or slow connections quickly stop wasting CPU.
+ *
+ * The state is not synchronized; concurrent reads may lose updates, which only affects the
+ * heuristic.
+ *
+ * @author Christian Kohlschütter
+ */
+final class AdaptiveBusyPoll {
+  /**
+   * Spinning for less than this is not worth it; block right away instead.
+   */
+  private static final long MIN_SPIN_NANOS = 1000;
+
+  /**
+   * The number of reads that block right away after spinning has been found to be futile.
+   */
+  private static final int COOLDOWN_READS = 64;
+
+  private final int maxSpinMicros;
+  private final long maxSpinNanos;
+  private long spinNanos;
+  private int cooldown = 0;
+
+  AdaptiveBusyPoll(int maxSpinMicros) {
+    if (maxSpinMicros <= 0) {
+      throw new IllegalArgumentException("maxSpinMicros");
+    }
+    this.maxSpinMicros = maxSpinMicros;
+    this.maxSpinNanos = maxSpinMicros * 1000L;
+    this.spinNanos = maxSpinNanos;
+  }
+
+  /**
+   * Creates a new instance, unless busy-polling is disabled.
+   *
+   * @param maxSpinMicros The maximum spin time, in microseconds, or 0 to disable.
+   * @return The new instance, or {@code null} if disabled.
+   */
+  static @Nullable AdaptiveBusyPoll newInstance(int maxSpinMicros) {
+    return maxSpinMicros <= 0 ? null : new AdaptiveBusyPoll(maxSpinMicros);
+  }
+
+  int getMaxSpinMicros() {
+    return maxSpinMicros;
+  }
+
+  /**
+   * Returns the time to spin for the next read.
+   *
+   * @return The spin budget, in nanoseconds, or 0 if the read should block right away.
+   */
+  long spinBudget() {
+    if (cooldown > 0) {
+      cooldown--;
+      return 0;
+    }
+    return spinNanos;
+  }
+
+  /**
+   * Called when data arrived while spinning.
+   *
+   * @param elapsedNanos The time spent spinning.
+   */
+  void hit(long elapsedNanos) {
+    spinNanos = Math.min(maxSpinNanos, Math.max(spinNanos, elapsedNanos * 2));
+  }
+
+  /**
+   * Called when the spin budget was exhausted without data.
+   */
+  void miss() {
+    spinNanos >>= 1;
+    if (spinNanos < MIN_SPIN_NANOS) {
+      spinNanos = maxSpinNanos;
+      cooldown = COOLDOWN_READS;
+    }
+  }
+}
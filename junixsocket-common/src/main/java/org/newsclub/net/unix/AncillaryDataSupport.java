@@ -20,13 +20,11 @@ package org.newsclub.net.unix;
 import java.io.Closeable;
 import java.io.FileDescriptor;
 import java.io.IOException;
-import java.net.SocketException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import com.kohlschutter.annotations.compiletime.SuppressFBWarnings;
 
@@ -34,14 +32,26 @@ final class AncillaryDataSupport implements Closeable {
   private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
   private static final FileDescriptor[] NO_FILE_DESCRIPTORS = new FileDescriptor[0];
 
+  private static final int[] NO_FILE_DESCRIPTOR_NUMBERS = new int[0];
+
   private static final int MIN_ANCBUF_LEN = NativeUnixSocket.isLoaded() ? NativeUnixSocket
       .ancillaryBufMinLen() : 0;
 
-  private final Map<FileDescriptor, Integer> openReceivedFileDescriptors = Collections
-      .synchronizedMap(new HashMap<>());
+  private final Object receivedFdsLock = new Object();
+
+  /**
+   * Received file descriptors that have not been retrieved yet (guarded by receivedFdsLock).
+   */
+  private int[] receivedFds = NO_FILE_DESCRIPTOR_NUMBERS;
+  private int numReceivedFds = 0;
 
-  private final List<FileDescriptor[]> receivedFileDescriptors = Collections.synchronizedList(
-      new ArrayList<>());
+  /**
+   * Received file descriptors that have been retrieved as {@link FileDescriptor}s, and that are to
+   * be closed along with the socket (guarded by receivedFdsLock). Descriptors that have already
+   * been closed are pruned from time to time.
+   */
+  private final List<FileDescriptor> retrievedFds = new ArrayList<>();
+  private int pruneRetrievedFdsThreshold = 64;
 
   // referenced from native code
   private ByteBuffer ancillaryReceiveBuffer = EMPTY_BUFFER;
@@ -54,6 +64,9 @@ final class AncillaryDataSupport implements Closeable {
 
   private int[] tipcDestName = null;
 
+  // set by AFCore, if metrics are enabled
+  AFIOMetrics metrics = null;
+
   // referenced from native code
   void setTipcErrorInfo(int errorCode, int dataLength) {
     if (errorCode == 0 && dataLength == 0) {
@@ -93,7 +106,7 @@ final class AncillaryDataSupport implements Closeable {
     } else if (size <= 0) {
       this.ancillaryReceiveBuffer = EMPTY_BUFFER;
     } else {
-      setAncillaryReceiveBufferSize0(Math.max(256, Math.min(MIN_ANCBUF_LEN, size)));
+      setAncillaryReceiveBufferSize0(Math.max(Math.max(256, MIN_ANCBUF_LEN), size));
     }
   }
 
@@ -110,65 +123,104 @@ final class AncillaryDataSupport implements Closeable {
     }
   }
 
-  // called from native code
+  // called from native code; takes ownership of the file descriptors unless this throws
   void receiveFileDescriptors(int[] fds) throws IOException {
     if (fds == null || fds.length == 0) {
       return;
     }
     final int fdsLength = fds.length;
-    FileDescriptor[] descriptors = new FileDescriptor[fdsLength];
-    for (int i = 0; i < fdsLength; i++) {
-      final FileDescriptor fdesc = new FileDescriptor();
-      NativeUnixSocket.initFD(fdesc, fds[i]);
-      descriptors[i] = fdesc;
-
-      openReceivedFileDescriptors.put(fdesc, fds[i]);
-
-      final Closeable cleanup = new Closeable() {
-
-        @Override
-        public void close() throws IOException {
-          openReceivedFileDescriptors.remove(fdesc);
-        }
-      };
-
-      try {
-        NativeUnixSocket.attachCloseable(fdesc, cleanup);
-      } catch (SocketException e) {
-        // ignore (cannot attach)
+    synchronized (receivedFdsLock) {
+      int[] queue = receivedFds;
+      if (numReceivedFds + fdsLength > queue.length) {
+        queue = Arrays.copyOf(queue, Math.max(8, Math.max(numReceivedFds + fdsLength, queue.length
+            * 2)));
+        receivedFds = queue;
       }
+      System.arraycopy(fds, 0, queue, numReceivedFds, fdsLength);
+      numReceivedFds += fdsLength;
     }
 
-    this.receivedFileDescriptors.add(descriptors);
+    if (metrics != null) {
+      metrics.recordFileDescriptorsReceived(fdsLength);
+    }
   }
 
+  /**
+   * Closes all received file descriptors that have not been retrieved yet.
+   */
   void clearReceivedFileDescriptors() {
-    receivedFileDescriptors.clear();
+    int[] fds = takeReceivedFileDescriptorNumbers();
+    for (int fd : fds) {
+      closeQuietly(fd);
+    }
   }
 
-  FileDescriptor[] getReceivedFileDescriptors() {
-    if (receivedFileDescriptors.isEmpty()) {
-      return NO_FILE_DESCRIPTORS;
+  /**
+   * Retrieves the system-native values of all received file descriptors that have not been
+   * retrieved yet. The caller is responsible for closing them.
+   *
+   * @return The file descriptor values, or an empty array.
+   */
+  int[] takeReceivedFileDescriptorNumbers() {
+    synchronized (receivedFdsLock) {
+      if (numReceivedFds == 0) {
+        return NO_FILE_DESCRIPTOR_NUMBERS;
+      }
+      int[] fds = Arrays.copyOf(receivedFds, numReceivedFds);
+      numReceivedFds = 0;
+      return fds;
     }
-    List<FileDescriptor[]> copy = new ArrayList<>(receivedFileDescriptors);
-    if (copy.isEmpty()) {
+  }
+
+  FileDescriptor[] getReceivedFileDescriptors() throws IOException {
+    int[] fds = takeReceivedFileDescriptorNumbers();
+    final int count = fds.length;
+    if (count == 0) {
       return NO_FILE_DESCRIPTORS;
     }
-    receivedFileDescriptors.removeAll(copy);
-    int count = 0;
-    for (FileDescriptor[] fds : copy) {
-      count += fds.length;
+    FileDescriptor[] descriptors = new FileDescriptor[count];
+    for (int i = 0; i < count; i++) {
+      FileDescriptor fdesc = new FileDescriptor();
+      try {
+        NativeUnixSocket.initFD(fdesc, fds[i]);
+      } catch (IOException e) {
+        for (int j = i; j < count; j++) {
+          closeQuietly(fds[j]);
+        }
+        throw e;
+      }
+      descriptors[i] = fdesc;
     }
-    if (count == 0) {
-      return NO_FILE_DESCRIPTORS;
+
+    synchronized (receivedFdsLock) {
+      // these are closed along with the socket, unless they have been closed before
+      if (retrievedFds.size() >= pruneRetrievedFdsThreshold) {
+        retrievedFds.removeIf((fdesc) -> !fdesc.valid());
+        pruneRetrievedFdsThreshold = Math.max(64, retrievedFds.size() * 2);
+      }
+      Collections.addAll(retrievedFds, descriptors);
     }
-    FileDescriptor[] oneArray = new FileDescriptor[count];
-    int offset = 0;
-    for (FileDescriptor[] fds : copy) {
-      System.arraycopy(fds, 0, oneArray, offset, fds.length);
-      offset += fds.length;
+    return descriptors;
+  }
+
+  static void closeQuietly(int fd) {
+    FileDescriptor fdesc = new FileDescriptor();
+    try {
+      NativeUnixSocket.initFD(fdesc, fd);
+      NativeUnixSocket.close(fdesc);
+    } catch (IOException e) {
+      // ignore
     }
-    return oneArray;
+  }
+
+  void setOutboundFileDescriptorNumbers(int... fds) throws IOException {
+    AFSocket.ensureUnsafeSupported();
+    setOutboundFileDescriptors(fds == null ? null : fds.clone());
+  }
+
+  int[] getReceivedFileDescriptorNumbers() throws IOException {
+    AFSocket.ensureUnsafeSupported();
+    return takeReceivedFileDescriptorNumbers();
   }
 
   void setOutboundFileDescriptors(int[] fds) {
@@ -196,16 +248,28 @@ final class AncillaryDataSupport implements Closeable {
 
   @Override
   public void close() {
-    synchronized (openReceivedFileDescriptors) {
-      for (FileDescriptor desc : openReceivedFileDescriptors.keySet()) {
-        if (desc.valid()) {
-          try {
-            NativeUnixSocket.close(desc);
-          } catch (Exception e) {
-            // ignore
-          }
+    int leaked = 0;
+    for (int fd : takeReceivedFileDescriptorNumbers()) {
+      closeQuietly(fd);
+      leaked++;
+    }
+    List<FileDescriptor> retrieved;
+    synchronized (receivedFdsLock) {
+      retrieved = new ArrayList<>(retrievedFds);
+      retrievedFds.clear();
+    }
+    for (FileDescriptor desc : retrieved) {
+      if (desc.valid()) {
+        leaked++;
+        try {
+          NativeUnixSocket.close(desc);
+        } catch (Exception e) {
+          // ignore
         }
       }
     }
+    if (leaked > 0 && metrics != null) {
+      metrics.recordFileDescriptorsLeaked(leaked);
+    }
   }
 }
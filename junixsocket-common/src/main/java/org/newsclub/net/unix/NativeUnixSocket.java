@@ -27,6 +27,8 @@ import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.spi.AbstractSelectableChannel;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -73,6 +75,22 @@ final class NativeUnixSocket {
   static final int SOCKETSTATUS_BOUND = 1;
   static final int SOCKETSTATUS_CONNECTED = 2;
 
+  static final int EPOLL_CTL_ADD = 1;
+  static final int EPOLL_CTL_MOD = 2;
+  static final int EPOLL_CTL_DEL = 3;
+
+  static final int IO_URING_OP_NOP = 0;
+  static final int IO_URING_OP_RECV = 1;
+  static final int IO_URING_OP_SEND = 2;
+  static final int IO_URING_OP_CANCEL = 3;
+
+  // io_uring completion results for errors that need to be distinguished (see ioUringWait)
+  static final int IO_URING_RES_AGAIN = Integer.MIN_VALUE;
+  static final int IO_URING_RES_CANCELED = Integer.MIN_VALUE + 1;
+  static final int IO_URING_RES_BROKEN_PIPE = Integer.MIN_VALUE + 2;
+  static final int IO_URING_RES_CONNECTION_RESET = Integer.MIN_VALUE + 3;
+  static final int IO_URING_RES_NOT_CONNECTED = Integer.MIN_VALUE + 4;
+
   @SuppressWarnings("StaticAssignmentOfThrowable" /* errorprone */)
   private static Throwable initError = null;
 
@@ -130,6 +148,7 @@ final class NativeUnixSocket {
     // in some environments, JNI FindClass won't find these classes unless we resolve them first
     tryResolveClass(AbstractSelectableChannel.class.getName());
     tryResolveClass("java.lang.ProcessBuilder$RedirectPipeImpl");
+    tryResolveClass("sun.nio.ch.FileChannelImpl");
     tryResolveClass(InetSocketAddress.class.getName());
     tryResolveClass(OperationNotSupportedSocketException.class.getName());
     tryResolveClass(InvalidArgumentSocketException.class.getName());
@@ -168,7 +187,10 @@ final class NativeUnixSocket {
   static native void listen(FileDescriptor fd, int backlog) throws IOException;
 
   static native boolean accept(ByteBuffer sockaddr, int sockaddrLen, FileDescriptor fdServer,
-      FileDescriptor fd, long inode, int timeout) throws IOException;
+      FileDescriptor fd, long inode, int timeout, int options) throws IOException;
+
+  static native int acceptBatch(ByteBuffer sockaddr, int sockaddrLen, FileDescriptor fdServer,
+      int[] fds, int max, long inode, int timeout, int options) throws IOException;
 
   static native boolean connect(ByteBuffer sockaddr, int sockaddrLen, FileDescriptor fd, long inode)
       throws IOException;
@@ -220,6 +242,136 @@ final class NativeUnixSocket {
       ByteBuffer directSocketAddress, int addrLen, int options,
       AncillaryDataSupport ancillaryDataSupport) throws IOException;
 
+  /**
+   * Receives data into multiple direct byte buffers ("scatter" read), using a single system call.
+   *
+   * @param fd The corresponding file descriptor.
+   * @param directBuffers The direct buffers to read into.
+   * @param bufferOffset The offset of the first buffer in {@code directBuffers}.
+   * @param offsetsAndLengths Pairs of (offset, maximum length) for each buffer.
+   * @param numBuffers The number of buffers to read into.
+   * @param options Options.
+   * @param ancillaryDataSupport The ancillary data support instance, or {@code null}.
+   * @param timeoutMillis The timeout (only used on some platforms).
+   * @return The total number of bytes read, 0 if nothing could be read in non-blocking mode, or
+   *         -1 upon EOF.
+   * @throws IOException upon error.
+   */
+  static native long receivev(FileDescriptor fd, ByteBuffer[] directBuffers, int bufferOffset,
+      int[] offsetsAndLengths, int numBuffers, int options,
+      AncillaryDataSupport ancillaryDataSupport, int timeoutMillis) throws IOException;
+
+  /**
+   * Sends data from multiple direct byte buffers ("gather" write), using a single system call.
+   *
+   * @param fd The corresponding file descriptor.
+   * @param directBuffers The direct buffers to write from.
+   * @param bufferOffset The offset of the first buffer in {@code directBuffers}.
+   * @param offsetsAndLengths Pairs of (offset, length) for each buffer.
+   * @param numBuffers The number of buffers to write from.
+   * @param options Options.
+   * @param ancillaryDataSupport The ancillary data support instance, or {@code null}.
+   * @return The total number of bytes written (which could be 0).
+   * @throws IOException upon error.
+   */
+  static native long sendv(FileDescriptor fd, ByteBuffer[] directBuffers, int bufferOffset,
+      int[] offsetsAndLengths, int numBuffers, int options,
+      AncillaryDataSupport ancillaryDataSupport) throws IOException;
+
+  /**
+   * Receives multiple datagrams, one per direct byte buffer, using a single system call where
+   * supported (recvmmsg(2)).
+   *
+   * Only the first message may block; any further messages are only received if they are
+   * immediately available.
+   *
+   * @param fd The corresponding file descriptor.
+   * @param directBuffers The direct buffers to receive into, one per message.
+   * @param bufferOffset The offset of the first buffer in {@code directBuffers}.
+   * @param offsetsAndLengths Pairs of (offset, maximum length) for each buffer; upon return, the
+   *          length of each received message is stored in place of the maximum length.
+   * @param numMessages The maximum number of messages to receive.
+   * @param directSocketAddresses A direct buffer to receive the sender addresses into (one every
+   *          {@code addressStride} bytes), or {@code null}.
+   * @param addressStride The number of bytes reserved for each sender address.
+   * @param options Options.
+   * @param timeoutMillis The timeout (only used on some platforms).
+   * @return The number of messages received, 0 if nothing could be received in non-blocking mode,
+   *         or -1 upon timeout.
+   * @throws IOException upon error.
+   */
+  static native int receiveMessages(FileDescriptor fd, ByteBuffer[] directBuffers,
+      int bufferOffset, int[] offsetsAndLengths, int numMessages, ByteBuffer directSocketAddresses,
+      int addressStride, int options, int timeoutMillis) throws IOException;
+
+  /**
+   * Sends multiple datagrams, one per direct byte buffer, using a single system call where
+   * supported (sendmmsg(2)).
+   *
+   * @param fd The corresponding file descriptor.
+   * @param directBuffers The direct buffers to send, one per message.
+   * @param bufferOffset The offset of the first buffer in {@code directBuffers}.
+   * @param offsetsAndLengths Pairs of (offset, length) for each buffer.
+   * @param numMessages The number of messages to send.
+   * @param directSocketAddresses A direct buffer containing the target addresses (one every
+   *          {@code addressStride} bytes), or {@code null} to send to the connected peer.
+   * @param addressStride The number of bytes reserved for each target address.
+   * @param addressLengths The length of each target address, or {@code null}.
+   * @param options Options.
+   * @return The number of messages sent (which could be 0).
+   * @throws IOException upon error.
+   */
+  static native int sendMessages(FileDescriptor fd, ByteBuffer[] directBuffers,
+      int bufferOffset, int[] offsetsAndLengths, int numMessages, ByteBuffer directSocketAddresses,
+      int addressStride, int[] addressLengths, int options) throws IOException;
+
+  /**
+   * Transfers data from a file to a socket without copying it into the Java heap (sendfile(2)).
+   *
+   * @param fdOut The socket file descriptor.
+   * @param fdIn The file descriptor of the source file.
+   * @param offset The file offset to start reading from, or -1 to use (and update) the file's
+   *          current position.
+   * @param count The maximum number of bytes to transfer.
+   * @param options Options.
+   * @return The number of bytes transferred, 0 upon end of file, or -1 if the socket is
+   *         non-blocking and cannot accept more data.
+   * @throws OperationNotSupportedSocketException if the operation is not supported for the given
+   *           file descriptors (nothing was transferred).
+   * @throws IOException upon error.
+   */
+  static native long sendfile(FileDescriptor fdOut, FileDescriptor fdIn, long offset, long count,
+      int options) throws IOException;
+
+  /**
+   * Transfers data from a socket to a file without copying it into the Java heap (splice(2)).
+   * Blocks (subject to the given timeout, unless the socket is non-blocking) until some data is
+   * available, then transfers up to {@code count} bytes that are immediately available.
+   *
+   * @param fdIn The socket file descriptor.
+   * @param fdOut The file descriptor of the target file.
+   * @param offset The file offset to start writing at, or -1 to use (and update) the file's current
+   *          position.
+   * @param count The maximum number of bytes to transfer.
+   * @param options Options.
+   * @param timeoutMillis The timeout (only used on some platforms).
+   * @return The number of bytes transferred, 0 upon end of stream, or -1 if no data is available
+   *         on a non-blocking socket.
+   * @throws OperationNotSupportedSocketException if the operation is not supported for the given
+   *           file descriptors (nothing was transferred).
+   * @throws IOException upon error.
+   */
+  static native long splice(FileDescriptor fdIn, FileDescriptor fdOut, long offset, long count,
+      int options, int timeoutMillis) throws IOException;
+
+  /**
+   * Returns the {@link FileDescriptor} backing the given (JDK-provided) {@link FileChannel}.
+   *
+   * @param channel The channel.
+   * @return The file descriptor, or {@code null} if not available.
+   */
+  static native FileDescriptor getFileChannelFD(FileChannel channel);
+
   static native void close(FileDescriptor fd) throws IOException;
 
   static native void shutdown(FileDescriptor fd, int mode) throws IOException;
@@ -289,6 +441,139 @@ final class NativeUnixSocket {
 
   static native int poll(PollFd pollFd, int timeout) throws IOException;
 
+  /**
+   * Creates a new epoll instance (Linux only), and initializes the given file descriptor with it.
+   *
+   * @param epfd The file descriptor to initialize.
+   * @throws IOException on error.
+   * @see AFSocketCapability#CAPABILITY_EPOLL
+   */
+  static native void epollCreate(FileDescriptor epfd) throws IOException;
+
+  /**
+   * Adds, modifies or removes the registration of a file descriptor with an epoll instance.
+   *
+   * @param epfd The epoll instance.
+   * @param mode One of {@link #EPOLL_CTL_ADD}, {@link #EPOLL_CTL_MOD}, {@link #EPOLL_CTL_DEL}.
+   * @param fd The file descriptor to register.
+   * @param ops The interest set, as {@link java.nio.channels.SelectionKey} operations.
+   * @param id The identifier that is reported by {@link #epollWait(FileDescriptor, int[], int[],
+   *          int)}.
+   * @return {@code true} if successful, {@code false} if the file descriptor was already closed,
+   *         removed or registered.
+   * @throws IOException on error.
+   */
+  static native boolean epollCtl(FileDescriptor epfd, int mode, FileDescriptor fd, int ops, int id)
+      throws IOException;
+
+  /**
+   * Waits for events on an epoll instance.
+   *
+   * @param epfd The epoll instance.
+   * @param idsOut The identifiers of the ready file descriptors (output).
+   * @param opsOut The ready operations, including OP_INVALID for errors/hangups (output).
+   * @param timeout The timeout in milliseconds (0 = return immediately, -1 = no timeout).
+   * @return The number of ready file descriptors.
+   * @throws IOException on error.
+   */
+  static native int epollWait(FileDescriptor epfd, int[] idsOut, int[] opsOut, int timeout)
+      throws IOException;
+
+  /**
+   * Creates a new non-blocking eventfd object (Linux only), and initializes the given file
+   * descriptor with it.
+   *
+   * @param fd The file descriptor to initialize.
+   * @throws IOException on error.
+   * @see AFSocketCapability#CAPABILITY_EVENTFD
+   */
+  static native void eventfdCreate(FileDescriptor fd) throws IOException;
+
+  /**
+   * Increments the counter of an eventfd object, which makes it readable. Ignored if the file
+   * descriptor is already closed.
+   *
+   * @param fd The eventfd object.
+   * @throws IOException on error.
+   */
+  static native void eventfdSignal(FileDescriptor fd) throws IOException;
+
+  /**
+   * Resets the counter of an eventfd object with a single read, which makes it no longer readable.
+   *
+   * @param fd The eventfd object.
+   * @return {@code true} if the eventfd object had been signaled, {@code false} if not (or if the
+   *         file descriptor is already closed).
+   * @throws IOException on error.
+   */
+  static native boolean eventfdReset(FileDescriptor fd) throws IOException;
+
+  /**
+   * Creates a new io_uring instance (Linux only), with the given number of submission queue
+   * entries.
+   *
+   * @param entries The minimum number of submission queue entries.
+   * @return The native handle.
+   * @throws IOException on error.
+   * @see AFSocketCapability#CAPABILITY_IO_URING
+   */
+  static native long ioUringCreate(int entries) throws IOException;
+
+  /**
+   * Closes an io_uring instance, and releases its native resources. The handle must not be used
+   * afterwards.
+   *
+   * @param ring The native handle.
+   */
+  static native void ioUringDestroy(long ring);
+
+  /**
+   * Adds an operation to the submission queue of an io_uring instance, without submitting it to
+   * the kernel yet (see {@link #ioUringSubmit(long)}). The submission queue must not be accessed
+   * concurrently.
+   *
+   * @param ring The native handle.
+   * @param op The operation, one of {@link #IO_URING_OP_NOP}, {@link #IO_URING_OP_RECV},
+   *          {@link #IO_URING_OP_SEND}, {@link #IO_URING_OP_CANCEL}.
+   * @param fd The socket (for {@link #IO_URING_OP_RECV}, {@link #IO_URING_OP_SEND}).
+   * @param directBuffer The direct buffer to receive into/send from; it must not be garbage
+   *          collected before the operation has completed.
+   * @param offset The offset in the buffer.
+   * @param length The number of bytes to receive/send.
+   * @param userData The identifier reported upon completion (or, for
+   *          {@link #IO_URING_OP_CANCEL}, the identifier of the operation to cancel; the cancel
+   *          operation itself then completes with identifier 0).
+   * @return {@code true} if successful, {@code false} if the submission queue is full.
+   * @throws IOException on error.
+   */
+  static native boolean ioUringPrepare(long ring, int op, FileDescriptor fd,
+      ByteBuffer directBuffer, int offset, int length, long userData) throws IOException;
+
+  /**
+   * Submits all prepared operations to the kernel, using a single system call.
+   *
+   * @param ring The native handle.
+   * @return The number of operations submitted.
+   * @throws IOException on error.
+   */
+  static native int ioUringSubmit(long ring) throws IOException;
+
+  /**
+   * Reaps completed operations, optionally waiting for completions first. The completion queue
+   * must not be accessed concurrently.
+   *
+   * @param ring The native handle.
+   * @param minComplete The number of completions to wait for, if none are available yet (0 = do
+   *          not wait).
+   * @param userDataOut The identifiers of the completed operations (output).
+   * @param resultsOut The results of the completed operations (output); upon error, one of the
+   *          {@code IO_URING_RES_*} constants, or the negative errno value for any other error.
+   * @return The number of completions reaped (possibly 0, e.g., upon interruption).
+   * @throws IOException on error.
+   */
+  static native int ioUringWait(long ring, int minComplete, long[] userDataOut, int[] resultsOut)
+      throws IOException;
+
   static native void configureBlocking(FileDescriptor fd, boolean blocking) throws IOException;
 
   static native void socketPair(int domain, int type, FileDescriptor fd, FileDescriptor fd2);
@@ -297,6 +582,15 @@ final class NativeUnixSocket {
 
   static native void deregisterSelectionKey(AbstractSelectableChannel chann, SelectionKey key);
 
+  /**
+   * Returns the file descriptor of a selectable channel that is not provided by junixsocket, such
+   * as a TCP {@link java.nio.channels.SocketChannel} of the JDK.
+   *
+   * @param chann The channel.
+   * @return The file descriptor, or {@code null} if it cannot be determined.
+   */
+  static native FileDescriptor getSelectableChannelFD(SelectableChannel chann);
+
   static native byte[] tipcGetNodeId(int peer) throws IOException;
 
   static native byte[] tipcGetLinkName(int peer, int bearerId) throws IOException;
@@ -0,0 +1,590 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A {@link Socket} that borrows its connection from an {@link AFSocketPool} upon connect, and
+ * returns it upon close.
+ *
+ * All {@link Socket} methods are forwarded to the pooled {@link AFSocket}, except for
+ * {@link #bind(SocketAddress)} and {@link #getChannel()}, which are not supported (closing the
+ * channel would close the pooled connection). The superclass's own socket implementation is never
+ * used.
+ *
+ * Socket options that are changed by the borrower are restored upon close; if that is not possible
+ * (for example, buffer sizes on Linux), the connection is not reused. Options set before
+ * {@link #connect(SocketAddress)} are applied once the connection has been borrowed.
+ *
+ * @param <A> The supported address type.
+ * @author Christian Kohlschütter
+ */
+final class PooledSocket<A extends AFSocketAddress> extends PooledSocketShim {
+  private final AFSocketPool<A> pool;
+  private final @Nullable AFSocketAddressFromHostname<A> afh;
+
+  private A address;
+  private AFSocket<?> socket;
+  private InputStream in;
+  private OutputStream out;
+  private int soTimeout;
+  private boolean reusable = true;
+  private volatile boolean closed;
+
+  /**
+   * Options set before connect, keyed by option.
+   */
+  private final Map<Object, OptionChange> pendingOptions = new LinkedHashMap<>();
+
+  /**
+   * Actions that restore the options changed by the borrower, keyed by option.
+   */
+  private final Map<Object, OptionAction> changedOptions = new LinkedHashMap<>();
+
+  /**
+   * An action on the pooled socket, such as setting an option.
+   */
+  @FunctionalInterface
+  interface OptionAction {
+    void apply(AFSocket<?> socket) throws IOException;
+  }
+
+  /**
+   * Reads the current value of an option, and returns an action that restores it.
+   */
+  @FunctionalInterface
+  interface OptionDefault {
+    OptionAction saveDefault(AFSocket<?> socket) throws IOException;
+  }
+
+  private static final class OptionChange {
+    private final OptionDefault optionDefault;
+    private final OptionAction action;
+
+    OptionChange(OptionDefault optionDefault, OptionAction action) {
+      this.optionDefault = optionDefault;
+      this.action = action;
+    }
+  }
+
+  PooledSocket(AFSocketPool<A> pool) {
+    this(pool, null);
+  }
+
+  PooledSocket(AFSocketPool<A> pool, @Nullable AFSocketAddressFromHostname<A> afh) {
+    super();
+    this.pool = pool;
+    this.afh = afh;
+  }
+
+  @SuppressWarnings("unchecked")
+  private A resolve(SocketAddress endpoint) throws SocketException {
+    SocketAddress addr = endpoint;
+    if (afh != null && addr instanceof InetSocketAddress) {
+      InetSocketAddress isa = (InetSocketAddress) addr;
+      String hostname = isa.getHostString();
+      if (afh.isHostnameSupported(hostname)) {
+        addr = afh.addressFromHost(hostname, isa.getPort());
+      }
+    }
+    if (!(addr instanceof AFSocketAddress)) {
+      throw new IllegalArgumentException("Can only connect to AFSocketAddress endpoints, got: "
+          + endpoint);
+    }
+    return (A) addr;
+  }
+
+  @Override
+  public void connect(SocketAddress endpoint) throws IOException {
+    connect(endpoint, 0);
+  }
+
+  @Override
+  public synchronized void connect(SocketAddress endpoint, int timeout) throws IOException {
+    if (closed) {
+      throw new SocketClosedException("Socket is closed");
+    }
+    if (socket != null) {
+      throw new SocketException("Already connected");
+    }
+    A addr = resolve(endpoint);
+    AFSocket<?> s = pool.borrow(addr);
+    try {
+      s.setSoTimeout(soTimeout);
+      for (Map.Entry<Object, OptionChange> en : pendingOptions.entrySet()) {
+        applyOption(s, en.getKey(), en.getValue());
+      }
+    } catch (IOException | RuntimeException e) {
+      changedOptions.clear();
+      pool.giveBack(addr, s, false);
+      throw e;
+    }
+    pendingOptions.clear();
+    this.address = addr;
+    this.socket = s;
+  }
+
+  @Override
+  public void bind(SocketAddress bindpoint) throws IOException {
+    throw new SocketException("Cannot bind a pooled socket");
+  }
+
+  private synchronized AFSocket<?> socket() throws SocketException {
+    if (closed) {
+      throw new SocketClosedException("Socket is closed");
+    }
+    if (socket == null) {
+      throw new SocketException("Socket is not connected");
+    }
+    return socket;
+  }
+
+  synchronized void discard() throws IOException {
+    reusable = false;
+    close();
+  }
+
+  private synchronized void markNotReusable() {
+    reusable = false;
+  }
+
+  private void applyOption(AFSocket<?> s, Object key, OptionChange change) throws IOException {
+    if (!changedOptions.containsKey(key)) {
+      changedOptions.put(key, change.optionDefault.saveDefault(s));
+    }
+    change.action.apply(s);
+  }
+
+  /**
+   * Changes an option of the pooled socket, remembering its previous value so it can be restored
+   * upon close. If not yet connected, the change is applied upon connect.
+   *
+   * @param key The option key.
+   * @param optionDefault Saves the previous value.
+   * @param action Sets the new value.
+   * @throws IOException on error.
+   */
+  @Override
+  synchronized void changeOption(Object key, OptionDefault optionDefault, OptionAction action)
+      throws IOException {
+    if (closed) {
+      throw new SocketClosedException("Socket is closed");
+    }
+    OptionChange change = new OptionChange(optionDefault, action);
+    if (socket == null) {
+      pendingOptions.put(key, change);
+    } else {
+      applyOption(socket, key, change);
+    }
+  }
+
+  private void changeSocketOption(Object key, OptionDefault optionDefault, OptionAction action)
+      throws SocketException {
+    try {
+      changeOption(key, optionDefault, action);
+    } catch (SocketException e) {
+      throw e;
+    } catch (IOException e) {
+      throw (SocketException) new SocketException("Could not set option").initCause(e);
+    }
+  }
+
+  @Override
+  AFSocket<?> pooledSocket() throws SocketException {
+    return socket();
+  }
+
+  private void ensureOpen() throws SocketException {
+    // the connection may already be used by someone else
+    if (closed) {
+      throw new SocketClosedException("Socket is closed");
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    try {
+      // the superclass's socket implementation is not used, but release it in case it was created
+      super.close();
+    } finally {
+      closed = true;
+      pendingOptions.clear();
+      giveBack();
+    }
+  }
+
+  private void giveBack() {
+    AFSocket<?> s = socket;
+    if (s == null) {
+      return;
+    }
+    try {
+      if (reusable) {
+        s.setSoTimeout(0);
+        for (OptionAction restore : changedOptions.values()) {
+          restore.apply(s);
+        }
+      }
+    } catch (IOException e) {
+      reusable = false;
+    }
+    changedOptions.clear();
+    pool.giveBack(address, s, reusable);
+  }
+
+  @Override
+  public synchronized boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public synchronized boolean isConnected() {
+    return socket != null;
+  }
+
+  @Override
+  public synchronized boolean isBound() {
+    return socket != null;
+  }
+
+  @Override
+  public synchronized InputStream getInputStream() throws IOException {
+    if (in == null) {
+      in = new FilterInputStream(socket().getInputStream()) {
+        @Override
+        public int read() throws IOException {
+          ensureOpen();
+          try {
+            return super.read();
+          } catch (IOException e) {
+            markNotReusable();
+            throw e;
+          }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          ensureOpen();
+          try {
+            return super.read(b, off, len);
+          } catch (IOException e) {
+            markNotReusable();
+            throw e;
+          }
+        }
+
+        @Override
+        public int available() throws IOException {
+          ensureOpen();
+          return super.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+          PooledSocket.this.close();
+        }
+      };
+    }
+    return in;
+  }
+
+  @Override
+  public synchronized OutputStream getOutputStream() throws IOException {
+    if (out == null) {
+      out = new FilterOutputStream(socket().getOutputStream()) {
+        @Override
+        public void write(int b) throws IOException {
+          ensureOpen();
+          try {
+            super.write(b);
+          } catch (IOException e) {
+            markNotReusable();
+            throw e;
+          }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          ensureOpen();
+          try {
+            super.out.write(b, off, len);
+          } catch (IOException e) {
+            markNotReusable();
+            throw e;
+          }
+        }
+
+        @Override
+        public void flush() throws IOException {
+          ensureOpen();
+          super.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+          PooledSocket.this.close();
+        }
+      };
+    }
+    return out;
+  }
+
+  @Override
+  public void shutdownInput() throws IOException {
+    markNotReusable();
+    socket().shutdownInput();
+  }
+
+  @Override
+  public void shutdownOutput() throws IOException {
+    markNotReusable();
+    socket().shutdownOutput();
+  }
+
+  @Override
+  public boolean isInputShutdown() {
+    AFSocket<?> s = socket;
+    return s != null && s.isInputShutdown();
+  }
+
+  @Override
+  public boolean isOutputShutdown() {
+    AFSocket<?> s = socket;
+    return s != null && s.isOutputShutdown();
+  }
+
+  @Override
+  public synchronized void setSoTimeout(int timeout) throws SocketException {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("timeout can't be negative");
+    }
+    this.soTimeout = timeout;
+    if (socket != null) {
+      socket.setSoTimeout(timeout);
+    }
+  }
+
+  @Override
+  public synchronized int getSoTimeout() {
+    return soTimeout;
+  }
+
+  @Override
+  public void setTcpNoDelay(boolean on) throws SocketException {
+    changeSocketOption(StandardSocketOptions.TCP_NODELAY, (s) -> {
+      boolean defaultValue = s.getTcpNoDelay();
+      return (x) -> x.setTcpNoDelay(defaultValue);
+    }, (s) -> s.setTcpNoDelay(on));
+  }
+
+  @Override
+  public boolean getTcpNoDelay() throws SocketException {
+    return socket().getTcpNoDelay();
+  }
+
+  @Override
+  public void setKeepAlive(boolean on) throws SocketException {
+    changeSocketOption(StandardSocketOptions.SO_KEEPALIVE, (s) -> {
+      boolean defaultValue = s.getKeepAlive();
+      return (x) -> x.setKeepAlive(defaultValue);
+    }, (s) -> s.setKeepAlive(on));
+  }
+
+  @Override
+  public boolean getKeepAlive() throws SocketException {
+    return socket().getKeepAlive();
+  }
+
+  @Override
+  public void setSendBufferSize(int size) throws SocketException {
+    if (size <= 0) {
+      throw new IllegalArgumentException("negative send size");
+    }
+    changeSocketOption(StandardSocketOptions.SO_SNDBUF, (s) -> {
+      int defaultValue = s.getSendBufferSize();
+      return (x) -> {
+        x.setSendBufferSize(defaultValue);
+        if (x.getSendBufferSize() != defaultValue) {
+          // e.g., Linux doubles the given value
+          throw new SocketException("Could not restore SO_SNDBUF");
+        }
+      };
+    }, (s) -> s.setSendBufferSize(size));
+  }
+
+  @Override
+  public int getSendBufferSize() throws SocketException {
+    return socket().getSendBufferSize();
+  }
+
+  @Override
+  public void setReceiveBufferSize(int size) throws SocketException {
+    if (size <= 0) {
+      throw new IllegalArgumentException("invalid receive size");
+    }
+    changeSocketOption(StandardSocketOptions.SO_RCVBUF, (s) -> {
+      int defaultValue = s.getReceiveBufferSize();
+      return (x) -> {
+        x.setReceiveBufferSize(defaultValue);
+        if (x.getReceiveBufferSize() != defaultValue) {
+          // e.g., Linux doubles the given value
+          throw new SocketException("Could not restore SO_RCVBUF");
+        }
+      };
+    }, (s) -> s.setReceiveBufferSize(size));
+  }
+
+  @Override
+  public int getReceiveBufferSize() throws SocketException {
+    return socket().getReceiveBufferSize();
+  }
+
+  @Override
+  public void setSoLinger(boolean on, int linger) throws SocketException {
+    if (on && linger < 0) {
+      throw new IllegalArgumentException("invalid value for SO_LINGER");
+    }
+    changeSocketOption(StandardSocketOptions.SO_LINGER, (s) -> {
+      int defaultValue = s.getSoLinger();
+      return (x) -> x.setSoLinger(defaultValue >= 0, Math.max(0, defaultValue));
+    }, (s) -> s.setSoLinger(on, linger));
+  }
+
+  @Override
+  public int getSoLinger() throws SocketException {
+    return socket().getSoLinger();
+  }
+
+  @Override
+  public void setOOBInline(boolean on) throws SocketException {
+    changeSocketOption("SO_OOBINLINE", (s) -> {
+      boolean defaultValue = s.getOOBInline();
+      return (x) -> x.setOOBInline(defaultValue);
+    }, (s) -> s.setOOBInline(on));
+  }
+
+  @Override
+  public boolean getOOBInline() throws SocketException {
+    return socket().getOOBInline();
+  }
+
+  @Override
+  public void sendUrgentData(int data) throws IOException {
+    ensureOpen();
+    try {
+      socket().sendUrgentData(data);
+    } catch (IOException e) {
+      markNotReusable();
+      throw e;
+    }
+  }
+
+  @Override
+  public void setTrafficClass(int tc) throws SocketException {
+    if (tc < 0 || tc > 255) {
+      throw new IllegalArgumentException("tc is not in range 0 -- 255");
+    }
+    changeSocketOption(StandardSocketOptions.IP_TOS, (s) -> {
+      int defaultValue = s.getTrafficClass();
+      return (x) -> x.setTrafficClass(defaultValue);
+    }, (s) -> s.setTrafficClass(tc));
+  }
+
+  @Override
+  public int getTrafficClass() throws SocketException {
+    return socket().getTrafficClass();
+  }
+
+  @Override
+  public void setReuseAddress(boolean on) throws SocketException {
+    changeSocketOption(StandardSocketOptions.SO_REUSEADDR, (s) -> {
+      boolean defaultValue = s.getReuseAddress();
+      return (x) -> x.setReuseAddress(defaultValue);
+    }, (s) -> s.setReuseAddress(on));
+  }
+
+  @Override
+  public boolean getReuseAddress() throws SocketException {
+    return socket().getReuseAddress();
+  }
+
+  @Override
+  public void setPerformancePreferences(int connectionTime, int latency, int bandwidth) {
+    // not supported, like in Socket
+  }
+
+  @Override
+  public synchronized SocketAddress getRemoteSocketAddress() {
+    return address;
+  }
+
+  @Override
+  public synchronized SocketAddress getLocalSocketAddress() {
+    return socket == null ? null : socket.getLocalSocketAddress();
+  }
+
+  @Override
+  public synchronized InetAddress getLocalAddress() {
+    return socket == null ? null : socket.getLocalAddress();
+  }
+
+  @Override
+  public synchronized int getLocalPort() {
+    return socket == null ? -1 : socket.getLocalPort();
+  }
+
+  @Override
+  public synchronized InetAddress getInetAddress() {
+    return socket == null ? null : socket.getInetAddress();
+  }
+
+  @Override
+  public synchronized int getPort() {
+    return socket == null ? 0 : socket.getPort();
+  }
+
+  @Override
+  public SocketChannel getChannel() {
+    return null;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return getClass().getName() + "[" + (closed ? "closed" : socket == null ? "unconnected"
+        : socket.toString()) + "]";
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketOption;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+@IgnoreJRERequirement // see src/main/java8
+abstract class PooledSocketShim extends Socket {
+  PooledSocketShim() {
+    super();
+  }
+
+  abstract AFSocket<?> pooledSocket() throws SocketException;
+
+  abstract void changeOption(Object key, PooledSocket.OptionDefault optionDefault,
+      PooledSocket.OptionAction action) throws IOException;
+
+  @Override
+  public <T> Socket setOption(SocketOption<T> name, T value) throws IOException {
+    changeOption(name, (s) -> {
+      T defaultValue = s.getOption(name);
+      return (x) -> {
+        x.setOption(name, defaultValue);
+        if (!Objects.equals(x.getOption(name), defaultValue)) {
+          throw new SocketException("Could not restore " + name);
+        }
+      };
+    }, (s) -> s.setOption(name, value));
+    return this;
+  }
+
+  @Override
+  public <T> T getOption(SocketOption<T> name) throws IOException {
+    return pooledSocket().getOption(name);
+  }
+
+  @Override
+  public Set<SocketOption<?>> supportedOptions() {
+    try {
+      return pooledSocket().supportedOptions();
+    } catch (SocketException e) {
+      return Collections.emptySet();
+    }
+  }
+}
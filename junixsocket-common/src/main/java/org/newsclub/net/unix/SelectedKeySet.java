@@ -0,0 +1,160 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.nio.channels.SelectionKey;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The selected-key set of an {@link AFSelector}.
+ *
+ * The keys are kept in an array, and each key knows its position
+ * ({@link AFSelectionKey#getSelectedIndex()}), so adding, removing and checking membership take
+ * constant time, and no per-entry objects are allocated. Removing a key moves the last key into
+ * its position; the iteration order is therefore undefined.
+ *
+ * A key can only be a member of the set of its own selector.
+ *
+ * @author Christian Kohlschütter
+ */
+final class SelectedKeySet extends AbstractSet<SelectionKey> {
+  private AFSelectionKey[] keys = new AFSelectionKey[16];
+  private int size = 0;
+  private int modCount = 0;
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    if (!(o instanceof AFSelectionKey)) {
+      return false;
+    }
+    int index = ((AFSelectionKey) o).getSelectedIndex();
+    return index >= 0 && index < size && keys[index] == o; // NOPMD.CompareObjectsWithEquals
+  }
+
+  @Override
+  public boolean add(SelectionKey e) {
+    AFSelectionKey key = (AFSelectionKey) e;
+    if (contains(key)) {
+      return false;
+    }
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+    }
+    key.setSelectedIndex(size);
+    keys[size++] = key;
+    modCount++;
+    return true;
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (!contains(o)) {
+      return false;
+    }
+    removeAt(((AFSelectionKey) o).getSelectedIndex());
+    return true;
+  }
+
+  private void removeAt(int index) {
+    AFSelectionKey key = keys[index];
+    key.setSelectedIndex(-1);
+
+    int last = --size;
+    if (index != last) {
+      AFSelectionKey moved = keys[last];
+      keys[index] = moved;
+      moved.setSelectedIndex(index);
+    }
+    keys[last] = null;
+    modCount++;
+  }
+
+  @Override
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      keys[i].setSelectedIndex(-1);
+      keys[i] = null;
+    }
+    size = 0;
+    modCount++;
+  }
+
+  /**
+   * Returns the key at the given position; {@code 0 <= index < size()}.
+   *
+   * @param index The position.
+   * @return The key.
+   */
+  AFSelectionKey get(int index) {
+    return keys[index];
+  }
+
+  @Override
+  public Iterator<SelectionKey> iterator() {
+    return new Iterator<SelectionKey>() {
+      private int cursor = 0;
+      private int expectedModCount = modCount;
+      private boolean canRemove = false;
+
+      @Override
+      public boolean hasNext() {
+        return cursor < size;
+      }
+
+      @Override
+      public SelectionKey next() {
+        if (expectedModCount != modCount) {
+          throw new ConcurrentModificationException();
+        }
+        if (cursor >= size) {
+          throw new NoSuchElementException();
+        }
+        canRemove = true;
+        return keys[cursor++];
+      }
+
+      @Override
+      public void remove() {
+        if (!canRemove) {
+          throw new IllegalStateException();
+        }
+        if (expectedModCount != modCount) {
+          throw new ConcurrentModificationException();
+        }
+        canRemove = false;
+        // the last key moves into the removed key's position, which we haven't visited yet
+        removeAt(--cursor);
+        expectedModCount = modCount;
+      }
+    };
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.spi.AbstractSelector;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.function.Consumer;
+
+/**
+ * A shim that is filled with Java version-specific overrides. This variant is for Java 9 and above.
+ *
+ * The {@link Consumer}-based selection operations were only added to
+ * {@link java.nio.channels.Selector} in Java 11, so they are declared here for Java 9 and 10.
+ *
+ * @author Christian Kohlschütter
+ */
+abstract class SelectorShim extends AbstractSelector {
+  protected SelectorShim(SelectorProvider provider) {
+    super(provider);
+  }
+
+  public abstract int select(Consumer<SelectionKey> action, long timeout) throws IOException;
+
+  public abstract int select(Consumer<SelectionKey> action) throws IOException;
+
+  public abstract int selectNow(Consumer<SelectionKey> action) throws IOException;
+}
@@ -0,0 +1,273 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.io.File;
+import java.io.IOError;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Watches the socket files of bound server sockets, so the server's inode does not have to be
+ * checked (via stat(2)) upon every accept.
+ *
+ * Server sockets close themselves upon accept when another server has taken over their socket
+ * address (see {@link AFSocketCore#inode}). Instead of checking this every time, the socket's
+ * parent directory is watched for files being created or deleted (Linux: inotify(7), via the JDK's
+ * {@link WatchService}). The inode is checked upon the first accept after the watch has been set
+ * up, and then again only once the socket file may have changed.
+ *
+ * Events are delivered asynchronously, so a takeover may go unnoticed for a short moment; the
+ * regular check has a similar window between stat(2) and accept(2).
+ *
+ * Only the parent directory's entries are watched; the {@link WatchService} does not report the
+ * parent directory itself being renamed, or replaced along with one of its ancestors. To cover
+ * this, the inode is nevertheless checked again upon the first accept after one second has passed
+ * since the last check, so such a takeover may go unnoticed for up to that long.
+ *
+ * This mode is disabled by default; it is enabled by setting the system property
+ * {@code org.newsclub.net.unix.server.watch-socket-path} to {@code true}. It is only available
+ * on Linux, since other platforms may emulate the {@link WatchService} by polling.
+ *
+ * @author Christian Kohlschütter
+ */
+final class SocketPathWatcher {
+  private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(
+      "org.newsclub.net.unix.server.watch-socket-path", "false")) && System.getProperty("os.name",
+          "").startsWith("Linux");
+
+  private static final int STATE_UNVERIFIED = 0;
+  private static final int STATE_VERIFIED = 1;
+  private static final int STATE_CHANGED = -1;
+
+  /**
+   * Changes not reported by the watch service (e.g., the parent directory being renamed) are
+   * noticed by checking the inode again after this interval.
+   */
+  private static final long RECHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final Object LOCK = new Object();
+  private static SocketPathWatcher instance;
+  private static boolean unavailable = !ENABLED;
+
+  private final WatchService watchService;
+  private final Map<Path, Directory> directories = new HashMap<>();
+  private final Map<WatchKey, Directory> directoriesByKey = new HashMap<>();
+
+  SocketPathWatcher() throws IOException {
+    this.watchService = FileSystems.getDefault().newWatchService();
+
+    Thread t = new Thread(this::run, "junixsocket socket path watcher");
+    t.setDaemon(true);
+    t.start();
+  }
+
+  /**
+   * Starts watching the given socket file.
+   *
+   * @param socketFile The socket file.
+   * @return The watch, or {@code null} if the file cannot be watched, or watching is disabled.
+   */
+  static @Nullable Watch watch(File socketFile) {
+    SocketPathWatcher watcher;
+    synchronized (LOCK) {
+      if (unavailable) {
+        return null;
+      }
+      watcher = instance;
+      if (watcher == null) {
+        try {
+          instance = watcher = new SocketPathWatcher();
+        } catch (IOException e) {
+          unavailable = true;
+          return null;
+        }
+      }
+    }
+    return watcher.watch0(socketFile);
+  }
+
+  @Nullable Watch watch0(File socketFile) {
+    Path path;
+    try {
+      path = socketFile.toPath().toAbsolutePath();
+    } catch (InvalidPathException | IOError e) {
+      return null;
+    }
+    Path dir = path.getParent();
+    Path filename = path.getFileName();
+    if (dir == null || filename == null) {
+      return null;
+    }
+
+    synchronized (directories) {
+      Directory d = directories.get(dir);
+      if (d == null) {
+        WatchKey key;
+        try {
+          key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+              StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | ClosedWatchServiceException | UnsupportedOperationException e) {
+          // e.g., too many watches (fs.inotify.max_user_watches)
+          return null;
+        }
+        d = directoriesByKey.get(key);
+        if (d == null) {
+          d = new Directory(dir, key);
+          directoriesByKey.put(key, d);
+        }
+        directories.put(dir, d);
+      }
+      Watch w = new Watch(d, filename);
+      d.watches.add(w);
+      return w;
+    }
+  }
+
+  /**
+   * Stops watching all files, and terminates the watcher thread.
+   *
+   * @throws IOException on error.
+   */
+  void close() throws IOException {
+    watchService.close();
+  }
+
+  private void run() {
+    while (true) { // NOPMD.WhileLoopWithLiteralBoolean
+      WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+
+      synchronized (directories) {
+        Directory d = directoriesByKey.get(key);
+        for (WatchEvent<?> ev : key.pollEvents()) {
+          if (d == null) {
+            continue;
+          }
+          Object context = ev.context();
+          for (Watch w : d.watches) {
+            if (ev.kind() == StandardWatchEventKinds.OVERFLOW || w.filename.equals(context)) {
+              w.state.set(STATE_CHANGED);
+            }
+          }
+        }
+        if (!key.reset() && d != null) {
+          // directory is gone
+          for (Watch w : d.watches) {
+            w.state.set(STATE_CHANGED);
+          }
+          d.watches.clear();
+          directoriesByKey.remove(key);
+          directories.remove(d.dir);
+        }
+      }
+    }
+  }
+
+  private void unwatch(Watch w) {
+    synchronized (directories) {
+      Directory d = w.directory;
+      if (d.watches.remove(w) && d.watches.isEmpty()) {
+        d.key.cancel();
+        directoriesByKey.remove(d.key);
+        directories.remove(d.dir);
+      }
+    }
+  }
+
+  private static final class Directory {
+    private final Path dir;
+    private final WatchKey key;
+    private final Set<Watch> watches = new HashSet<>();
+
+    Directory(Path dir, WatchKey key) {
+      this.dir = dir;
+      this.key = key;
+    }
+  }
+
+  /**
+   * A watched socket file.
+   */
+  final class Watch {
+    private final Directory directory;
+    private final Path filename;
+    private final AtomicInteger state = new AtomicInteger(STATE_UNVERIFIED);
+    private volatile long verifiedAt;
+
+    private Watch(Directory directory, Path filename) {
+      this.directory = directory;
+      this.filename = filename;
+    }
+
+    /**
+     * Checks if the socket file has not changed since its inode was last verified, and the inode
+     * was verified recently.
+     *
+     * @return {@code true} if the inode does not need to be checked.
+     */
+    boolean isVerified() {
+      if (state.get() != STATE_VERIFIED) {
+        return false;
+      } else if (System.nanoTime() - verifiedAt < RECHECK_INTERVAL_NANOS) {
+        return true;
+      }
+      // check again, in case of changes not reported by the watch service
+      state.compareAndSet(STATE_VERIFIED, STATE_UNVERIFIED);
+      return false;
+    }
+
+    /**
+     * Marks the socket file's inode as verified, unless the file has changed since the watch was
+     * set up. Must only be called after the inode has been checked successfully.
+     */
+    void markVerified() {
+      if (state.get() == STATE_UNVERIFIED) {
+        verifiedAt = System.nanoTime();
+        state.compareAndSet(STATE_UNVERIFIED, STATE_VERIFIED);
+      }
+    }
+
+    /**
+     * Stops watching the socket file.
+     */
+    void close() {
+      state.set(STATE_CHANGED);
+      unwatch(this);
+    }
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A fixed-capacity ring buffer backed by direct memory, used by the buffered stream mode of
+ * {@link AFInputStream} and {@link AFOutputStream}.
+ *
+ * Data is received into (or sent from) the buffer's memory directly, without copying it via the
+ * Java heap. The buffer is not thread-safe; callers need to synchronize access.
+ *
+ * @author Christian Kohlschütter
+ */
+final class StreamRingBuffer {
+  private final ByteBuffer buf;
+  private final int capacity;
+
+  /**
+   * The position of the first readable byte.
+   */
+  private int head = 0;
+
+  /**
+   * The number of readable bytes.
+   */
+  private int count = 0;
+
+  StreamRingBuffer(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity");
+    }
+    this.buf = ByteBuffer.allocateDirect(capacity);
+    this.capacity = capacity;
+  }
+
+  /**
+   * Returns the direct buffer backing this ring buffer. Only use with absolute offsets, as
+   * returned by {@link #readableOffset()} and {@link #writableOffset()}.
+   *
+   * @return The buffer.
+   */
+  ByteBuffer buffer() {
+    return buf;
+  }
+
+  int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Returns the number of bytes that can be read from this buffer.
+   *
+   * @return The number of readable bytes.
+   */
+  int size() {
+    return count;
+  }
+
+  boolean isEmpty() {
+    return count == 0;
+  }
+
+  boolean isFull() {
+    return count == capacity;
+  }
+
+  /**
+   * Returns the offset of the first readable byte.
+   *
+   * @return The offset.
+   */
+  int readableOffset() {
+    return head;
+  }
+
+  /**
+   * Returns the number of bytes that can be read contiguously, starting at
+   * {@link #readableOffset()}.
+   *
+   * @return The number of bytes.
+   */
+  int readableLength() {
+    return Math.min(count, capacity - head);
+  }
+
+  /**
+   * Returns the offset of the first writable byte.
+   *
+   * @return The offset.
+   */
+  int writableOffset() {
+    int tail = head + count;
+    return tail >= capacity ? tail - capacity : tail;
+  }
+
+  /**
+   * Returns the number of bytes that can be written contiguously, starting at
+   * {@link #writableOffset()}.
+   *
+   * @return The number of bytes.
+   */
+  int writableLength() {
+    int tail = head + count;
+    if (tail >= capacity) {
+      return capacity - count;
+    } else {
+      return capacity - tail;
+    }
+  }
+
+  /**
+   * Marks the given number of bytes, starting at {@link #writableOffset()}, as readable.
+   *
+   * @param n The number of bytes.
+   */
+  void produced(int n) {
+    count += n;
+  }
+
+  /**
+   * Discards the given number of bytes, starting at {@link #readableOffset()}.
+   *
+   * @param n The number of bytes.
+   */
+  void consumed(int n) {
+    count -= n;
+    if (count == 0) {
+      // keep the whole capacity available for the next contiguous fill
+      head = 0;
+    } else {
+      head += n;
+      if (head >= capacity) {
+        head -= capacity;
+      }
+    }
+  }
+
+  /**
+   * Returns the next readable byte, without consuming it. The buffer must not be empty.
+   *
+   * @return The byte.
+   */
+  int peek() {
+    return buf.get(head) & 0xFF;
+  }
+
+  /**
+   * Returns and consumes the next readable byte. The buffer must not be empty.
+   *
+   * @return The byte.
+   */
+  int get() {
+    int b = buf.get(head) & 0xFF;
+    consumed(1);
+    return b;
+  }
+
+  /**
+   * Reads up to {@code len} bytes into the given array.
+   *
+   * @param dst The target array.
+   * @param off The offset.
+   * @param len The maximum number of bytes to read.
+   * @return The number of bytes read.
+   */
+  int get(byte[] dst, int off, int len) {
+    int total = 0;
+    while (len > 0 && count > 0) {
+      int n = Math.min(len, readableLength());
+      buf.limit(head + n).position(head);
+      buf.get(dst, off, n);
+      consumed(n);
+      off += n;
+      len -= n;
+      total += n;
+    }
+    buf.clear();
+    return total;
+  }
+
+  /**
+   * Appends a single byte. The buffer must not be full.
+   *
+   * @param b The byte.
+   */
+  void put(int b) {
+    buf.put(writableOffset(), (byte) b);
+    count++;
+  }
+
+  /**
+   * Appends up to {@code len} bytes from the given array.
+   *
+   * @param src The source array.
+   * @param off The offset.
+   * @param len The maximum number of bytes to write.
+   * @return The number of bytes written.
+   */
+  int put(byte[] src, int off, int len) {
+    int total = 0;
+    while (len > 0 && count < capacity) {
+      int tail = writableOffset();
+      int n = Math.min(len, writableLength());
+      buf.limit(tail + n).position(tail);
+      buf.put(src, off, n);
+      count += n;
+      off += n;
+      len -= n;
+      total += n;
+    }
+    buf.clear();
+    return total;
+  }
+}
@@ -0,0 +1,438 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.newsclub.net.unix.AFSelector.PollFd;
+
+/**
+ * Lets virtual threads wait for a file descriptor to become ready without blocking (and thereby
+ * pinning) their carrier thread in native code.
+ *
+ * Waiting virtual threads are parked, and unparked by a junixsocket-owned platform thread that
+ * monitors the file descriptors using epoll (on Linux, see
+ * {@link AFSocketCapability#CAPABILITY_EPOLL}) or poll(2). Like the JDK, we use separate pollers
+ * for reading and writing, so a socket can be waited upon for both at the same time.
+ *
+ * Platform threads simply wait in native code, and so does any virtual thread that waits for a
+ * file descriptor and operation another virtual thread is already waiting for.
+ *
+ * This mode is disabled by default; it is enabled by setting the system property
+ * {@code org.newsclub.net.unix.virtual-thread-poller} to {@code true}.
+ *
+ * @author Christian Kohlschütter
+ */
+final class VirtualThreadPoller {
+  private static final String PROP_VIRTUAL_THREAD_POLLER =
+      "org.newsclub.net.unix.virtual-thread-poller";
+
+  private static final MethodHandle MH_IS_VIRTUAL = Boolean.parseBoolean(System.getProperty(
+      PROP_VIRTUAL_THREAD_POLLER, "false")) ? lookupIsVirtual() : null;
+
+  private static final int EPOLL_MAX_EVENTS = 256;
+  private static final int ID_WAKEUP = 0;
+
+  private static final Object LOCK = new Object();
+  private static volatile VirtualThreadPoller readPoller;
+  private static volatile VirtualThreadPoller writePoller;
+
+  private final FileDescriptor epollFd;
+  private final AFPipe wakeupPipe;
+  private final ByteBuffer wakeupBuffer;
+  private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+  private final Map<Integer, Waiter> waiters = new ConcurrentHashMap<>();
+  private final Map<FileDescriptor, Waiter> waitersByFd = new ConcurrentHashMap<>();
+  private final AtomicInteger nextId = new AtomicInteger(ID_WAKEUP + 1);
+  private volatile boolean pollSetChanged = true;
+
+  private VirtualThreadPoller(String name) throws IOException {
+    if (AFSocket.supports(AFSocketCapability.CAPABILITY_EPOLL)) {
+      FileDescriptor epfd = new FileDescriptor();
+      NativeUnixSocket.epollCreate(epfd);
+      this.epollFd = epfd;
+      this.wakeupPipe = null;
+      this.wakeupBuffer = null;
+    } else {
+      AFPipe pipe = AFUNIXSelectorProvider.getInstance().openSelectablePipe();
+      pipe.source().configureBlocking(false);
+      pipe.sink().configureBlocking(false);
+      this.epollFd = null;
+      this.wakeupPipe = pipe;
+      this.wakeupBuffer = ByteBuffer.allocateDirect(1);
+    }
+
+    Thread t = new Thread(this::run, "junixsocket " + name + " poller");
+    t.setDaemon(true);
+    t.start();
+  }
+
+  private static MethodHandle lookupIsVirtual() {
+    try {
+      return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType
+          .methodType(boolean.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      // Java 20 or older
+      return null;
+    }
+  }
+
+  /**
+   * Checks if the current thread should park instead of blocking in native code, i.e., whether it
+   * is a virtual thread, and the virtual thread poller is enabled.
+   *
+   * @return {@code true} if so.
+   */
+  static boolean isParkingThread() {
+    MethodHandle mh = MH_IS_VIRTUAL;
+    if (mh == null) {
+      return false;
+    }
+    try {
+      return (boolean) mh.invokeExact(Thread.currentThread());
+    } catch (Throwable e) { // NOPMD.AvoidCatchingThrowable
+      return false;
+    }
+  }
+
+  /**
+   * Computes the deadline for a timeout, to be used with
+   * {@link #await(AFCore, int, long)}.
+   *
+   * @param timeoutMillis The timeout in milliseconds, or 0 for "no timeout".
+   * @return The deadline, or 0 for "no timeout".
+   */
+  static long deadline(int timeoutMillis) {
+    if (timeoutMillis <= 0) {
+      return 0;
+    }
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    return deadline == 0 ? 1 : deadline;
+  }
+
+  /**
+   * Waits until the given core's file descriptor may be ready for the given operation, the
+   * deadline has passed, or the file descriptor has been shut down or closed.
+   *
+   * Virtual threads are parked (see {@link #isParkingThread()}), other threads wait in native code.
+   * Spurious wake-ups are possible; callers are expected to simply retry their operation.
+   *
+   * @param core The core.
+   * @param op The operation, {@link SelectionKey#OP_READ}, {@link SelectionKey#OP_WRITE} or
+   *          {@link SelectionKey#OP_ACCEPT}.
+   * @param deadline The deadline, see {@link #deadline(int)}.
+   * @return {@code true} if the operation should be retried, {@code false} if the deadline has
+   *         passed.
+   * @throws SocketClosedException if the core has been closed.
+   * @throws InterruptedIOException if a parked virtual thread was interrupted.
+   * @throws IOException on error.
+   */
+  static boolean await(AFCore core, int op, long deadline) throws IOException {
+    return await(core, op, deadline, isParkingThread());
+  }
+
+  /**
+   * Like {@link #await(AFCore, int, long)}, but with explicit control over whether the current
+   * thread should be parked.
+   *
+   * @param core The core.
+   * @param op The operation.
+   * @param deadline The deadline, see {@link #deadline(int)}.
+   * @param park If {@code true}, the current thread is parked, otherwise it waits in native code.
+   * @return {@code true} if the operation should be retried, {@code false} if the deadline has
+   *         passed.
+   * @throws IOException on error.
+   */
+  static boolean await(AFCore core, int op, long deadline, boolean park) throws IOException {
+    FileDescriptor fd = core.validFdOrException();
+    if (park) {
+      VirtualThreadPoller poller = getPoller(op == SelectionKey.OP_WRITE);
+      Waiter w = new Waiter(Thread.currentThread(), fd, op);
+      if (poller.register(w)) {
+        try {
+          // AFCore#doClose marks the core as closed before waking up any waiters
+          core.validFdOrException();
+          return poller.park(w, deadline);
+        } finally {
+          poller.deregister(w);
+        }
+      }
+      // another thread is already waiting on this file descriptor for the same operation
+    }
+
+    int timeout;
+    if (deadline == 0) {
+      timeout = -1;
+    } else {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      // round up, so we don't wake up just before the deadline
+      timeout = (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMillis(remaining
+          + 999_999));
+    }
+    return NativeUnixSocket.poll(new PollFd(fd, op), timeout) > 0 || deadline == 0
+        || deadline - System.nanoTime() > 0;
+  }
+
+  private static VirtualThreadPoller getPoller(boolean write) throws IOException {
+    synchronized (LOCK) {
+      if (write) {
+        if (writePoller == null) {
+          writePoller = new VirtualThreadPoller("write");
+        }
+        return writePoller;
+      } else {
+        if (readPoller == null) {
+          readPoller = new VirtualThreadPoller("read");
+        }
+        return readPoller;
+      }
+    }
+  }
+
+  private boolean park(Waiter w, long deadline) throws IOException {
+    while (!w.ready) {
+      if (Thread.interrupted()) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Thread interrupted while waiting");
+      }
+      if (deadline == 0) {
+        LockSupport.park(this);
+      } else {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        LockSupport.parkNanos(this, remaining);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Wakes up any virtual threads waiting for the given file descriptor, which is about to be
+   * closed.
+   *
+   * @param fd The file descriptor.
+   */
+  static void wakeupWaiters(FileDescriptor fd) {
+    VirtualThreadPoller poller;
+    if ((poller = readPoller) != null) {
+      poller.wakeupWaiter(fd);
+    }
+    if ((poller = writePoller) != null) {
+      poller.wakeupWaiter(fd);
+    }
+  }
+
+  private void wakeupWaiter(FileDescriptor fd) {
+    Waiter w = waitersByFd.get(fd);
+    if (w != null) {
+      signal(w);
+    }
+  }
+
+  private boolean register(Waiter w) throws IOException {
+    if (waitersByFd.putIfAbsent(w.fd, w) != null) {
+      return false;
+    }
+
+    int id;
+    do {
+      id = nextId.getAndIncrement() & Integer.MAX_VALUE;
+    } while (id == ID_WAKEUP || waiters.putIfAbsent(id, w) != null);
+    w.id = id;
+
+    if (epollFd != null) {
+      boolean success;
+      try {
+        success = NativeUnixSocket.epollCtl(epollFd, NativeUnixSocket.EPOLL_CTL_ADD, w.fd, w.op,
+            id);
+      } catch (IOException e) {
+        waiters.remove(id);
+        waitersByFd.remove(w.fd, w);
+        throw e;
+      }
+      if (!success) {
+        waiters.remove(id);
+        waitersByFd.remove(w.fd, w);
+      }
+      return success;
+    } else {
+      pollSetChanged = true;
+      wakeup();
+      return true;
+    }
+  }
+
+  private void deregister(Waiter w) {
+    if (waiters.remove(w.id, w)) {
+      release(w);
+    } else {
+      // The poller thread has claimed the waiter; wait until it has also removed the epoll
+      // registration, so the file descriptor can safely be closed (and its number be reused).
+      // signal(Waiter) unparks us right after that.
+      boolean interrupted = false;
+      while (!w.ready) {
+        LockSupport.park(this);
+        if (Thread.interrupted()) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void epollDelete(Waiter w) {
+    if (w.fd.valid()) {
+      try {
+        NativeUnixSocket.epollCtl(epollFd, NativeUnixSocket.EPOLL_CTL_DEL, w.fd, 0, w.id);
+      } catch (IOException e) {
+        // ignore; closed file descriptors are removed from the epoll set automatically
+      }
+    }
+  }
+
+  private void wakeup() throws IOException {
+    if (!wakeupPending.compareAndSet(false, true)) {
+      // the poller thread has not seen the previous wakeup yet
+      return;
+    }
+    synchronized (wakeupBuffer) {
+      wakeupBuffer.clear();
+      try {
+        wakeupPipe.sink().write(wakeupBuffer);
+      } catch (IOException e) {
+        wakeupPending.set(false);
+        throw e;
+      }
+    }
+  }
+
+  private void signal(Waiter w) {
+    if (waiters.remove(w.id, w)) {
+      release(w);
+      w.ready = true;
+      LockSupport.unpark(w.thread);
+    }
+  }
+
+  private void release(Waiter w) {
+    if (epollFd != null) {
+      epollDelete(w);
+    } else {
+      pollSetChanged = true;
+    }
+    waitersByFd.remove(w.fd, w);
+  }
+
+  @SuppressWarnings("PMD.CognitiveComplexity")
+  private void run() {
+    int[] readyIds = new int[EPOLL_MAX_EVENTS];
+    int[] readyOps = new int[EPOLL_MAX_EVENTS];
+    ByteBuffer drainBuffer = ByteBuffer.allocateDirect(64);
+    PollFd pollFd = null;
+    Waiter[] pollWaiters = null;
+
+    while (true) { // NOPMD.WhileLoopWithLiteralBoolean
+      try {
+        if (epollFd != null) {
+          int num = NativeUnixSocket.epollWait(epollFd, readyIds, readyOps, -1);
+          for (int i = 0; i < num; i++) {
+            Waiter w = waiters.get(readyIds[i]);
+            if (w != null) {
+              signal(w);
+            }
+          }
+          continue;
+        }
+
+        if (pollFd == null || pollSetChanged) {
+          pollSetChanged = false;
+          Waiter[] ws = waiters.values().toArray(new Waiter[0]);
+          FileDescriptor[] fds = new FileDescriptor[ws.length + 1];
+          int[] ops = new int[ws.length + 1];
+          fds[0] = wakeupPipe.sourceFD();
+          ops[0] = SelectionKey.OP_READ;
+          for (int i = 0; i < ws.length; i++) {
+            fds[i + 1] = ws[i].fd;
+            ops[i + 1] = ws[i].op;
+          }
+          pollFd = new PollFd(null, fds, ops);
+          pollWaiters = ws;
+        }
+
+        int num = NativeUnixSocket.poll(pollFd, -1);
+        if (num <= 0) {
+          continue;
+        }
+        if (pollFd.rops[0] != 0) {
+          do {
+            drainBuffer.clear();
+          } while (wakeupPipe.source().read(drainBuffer) > 0);
+          // reset after draining (a wakeup in between may be skipped, but we check pollSetChanged
+          // right away anyway)
+          wakeupPending.set(false);
+        }
+        for (int i = 1; i < pollFd.rops.length; i++) {
+          if (pollFd.rops[i] != 0) {
+            signal(pollWaiters[i - 1]);
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        StackTraceUtil.printStackTrace(e);
+        try {
+          Thread.sleep(10);
+        } catch (InterruptedException e1) {
+          // ignore
+        }
+      }
+    }
+  }
+
+  private static final class Waiter {
+    final Thread thread;
+    final FileDescriptor fd;
+    final int op;
+    int id;
+    volatile boolean ready;
+
+    Waiter(Thread thread, FileDescriptor fd, int op) {
+      this.thread = thread;
+      this.fd = fd;
+      this.op = op;
+    }
+  }
+}
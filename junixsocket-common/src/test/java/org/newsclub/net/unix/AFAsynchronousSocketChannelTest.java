@@ -0,0 +1,199 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+@AFSocketCapabilityRequirement(AFSocketCapability.CAPABILITY_UNIX_DOMAIN)
+public class AFAsynchronousSocketChannelTest {
+  private static final AFAsynchronousChannelProvider<AFUNIXSocketAddress> PROVIDER =
+      AFUNIXSelectorProvider.provider().asynchronousChannelProvider();
+
+  private static final class Connection implements AutoCloseable {
+    private final AFAsynchronousServerSocketChannel<AFUNIXSocketAddress> server;
+    private final AsynchronousSocketChannel client;
+    private final AsynchronousSocketChannel accepted;
+
+    Connection(AFAsynchronousChannelGroup group) throws Exception {
+      server = PROVIDER.openAsynchronousServerSocketChannel(group);
+      server.bind(AFUNIXSocketAddress.ofNewTempFile());
+      Future<AsynchronousSocketChannel> acceptFuture = server.accept();
+
+      client = AsynchronousSocketChannel.open(group);
+      client.connect(server.getLocalAddress()).get(5, TimeUnit.SECONDS);
+      accepted = acceptFuture.get(5, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void close() throws Exception {
+      client.close();
+      accepted.close();
+      server.close();
+    }
+  }
+
+  private static final class HandlerFuture<V> extends CompletableFuture<V> implements
+      CompletionHandler<V, String> {
+    @Override
+    public void completed(V result, String attachment) {
+      assertEquals("attachment", attachment);
+      complete(result);
+    }
+
+    @Override
+    public void failed(Throwable exc, String attachment) {
+      completeExceptionally(exc);
+    }
+  }
+
+  private static AFAsynchronousChannelGroup newGroup() throws Exception {
+    return PROVIDER.openAsynchronousChannelGroup(2, Executors.defaultThreadFactory());
+  }
+
+  private static void shutdown(AFAsynchronousChannelGroup group) throws Exception {
+    group.shutdownNow();
+    assertTrue(group.awaitTermination(5, TimeUnit.SECONDS));
+    assertTrue(group.isTerminated());
+  }
+
+  @Test
+  public void testReadWrite() throws Exception {
+    AFAsynchronousChannelGroup group = newGroup();
+    try (Connection conn = new Connection(group)) {
+      assertTrue(conn.client instanceof AFAsynchronousSocketChannel);
+      assertTrue(conn.accepted instanceof AFAsynchronousSocketChannel);
+
+      ByteBuffer dst = ByteBuffer.allocate(64);
+      HandlerFuture<Integer> read = new HandlerFuture<>();
+      conn.accepted.read(dst, 5, TimeUnit.SECONDS, "attachment", read);
+      assertFalse(read.isDone());
+
+      assertEquals(5, conn.client.write(ByteBuffer.wrap("Hello".getBytes(
+          StandardCharsets.US_ASCII))).get(5, TimeUnit.SECONDS));
+      assertEquals(5, read.get(5, TimeUnit.SECONDS));
+      dst.flip();
+      assertEquals("Hello", StandardCharsets.US_ASCII.decode(dst).toString());
+
+      ByteBuffer direct = ByteBuffer.allocateDirect(64);
+      Future<Integer> eof = conn.client.read(direct);
+      conn.accepted.write(ByteBuffer.wrap(new byte[] {42})).get(5, TimeUnit.SECONDS);
+      conn.accepted.close();
+      assertEquals(1, eof.get(5, TimeUnit.SECONDS));
+      direct.clear();
+      assertEquals(-1, conn.client.read(direct).get(5, TimeUnit.SECONDS));
+    } finally {
+      shutdown(group);
+    }
+  }
+
+  @Test
+  public void testScatterGather() throws Exception {
+    AFAsynchronousChannelGroup group = newGroup();
+    try (Connection conn = new Connection(group)) {
+      ByteBuffer[] srcs = {
+          ByteBuffer.wrap(new byte[] {1, 2, 3}), ByteBuffer.allocateDirect(5).put(new byte[] {
+              4, 5, 6, 7, 8})};
+      srcs[1].flip();
+      HandlerFuture<Long> write = new HandlerFuture<>();
+      conn.client.write(srcs, 0, 2, 5, TimeUnit.SECONDS, "attachment", write);
+      assertEquals(8, (long) write.get(5, TimeUnit.SECONDS));
+
+      ByteBuffer[] dsts = {ByteBuffer.allocate(2), ByteBuffer.allocate(6)};
+      long total = 0;
+      while (total < 8) {
+        HandlerFuture<Long> read = new HandlerFuture<>();
+        conn.accepted.read(dsts, 0, 2, 5, TimeUnit.SECONDS, "attachment", read);
+        total += read.get(5, TimeUnit.SECONDS);
+      }
+      assertEquals(1, dsts[0].get(0));
+      assertEquals(2, dsts[0].get(1));
+      assertEquals(3, dsts[1].get(0));
+      assertEquals(8, dsts[1].get(5));
+    } finally {
+      shutdown(group);
+    }
+  }
+
+  @Test
+  public void testReadTimeout() throws Exception {
+    AFAsynchronousChannelGroup group = newGroup();
+    try (Connection conn = new Connection(group)) {
+      HandlerFuture<Integer> read = new HandlerFuture<>();
+      conn.client.read(ByteBuffer.allocate(16), 100, TimeUnit.MILLISECONDS, "attachment", read);
+      ExecutionException e = assertThrows(ExecutionException.class, () -> read.get(5,
+          TimeUnit.SECONDS));
+      assertTrue(e.getCause() instanceof InterruptedByTimeoutException, e.toString());
+
+      // the channel's state is undefined after a timeout
+      assertThrows(IllegalStateException.class, () -> conn.client.read(ByteBuffer.allocate(16)));
+
+      // writing is still fine
+      assertEquals(1, conn.client.write(ByteBuffer.wrap(new byte[] {1})).get(5,
+          TimeUnit.SECONDS));
+    } finally {
+      shutdown(group);
+    }
+  }
+
+  @Test
+  public void testCloseFailsPending() throws Exception {
+    AFAsynchronousChannelGroup group = newGroup();
+    try (Connection conn = new Connection(group)) {
+      Future<Integer> read = conn.client.read(ByteBuffer.allocate(16));
+      conn.client.close();
+      ExecutionException e = assertThrows(ExecutionException.class, () -> read.get(5,
+          TimeUnit.SECONDS));
+      assertTrue(e.getCause() instanceof AsynchronousCloseException, e.toString());
+    } finally {
+      shutdown(group);
+    }
+  }
+
+  @Test
+  public void testDefaultGroup() throws Exception {
+    try (AFAsynchronousServerSocketChannel<AFUNIXSocketAddress> server = PROVIDER
+        .openAsynchronousServerSocketChannel(null)) {
+      assertFalse(server.group().isShutdown());
+      server.bind(AFUNIXSocketAddress.ofNewTempFile());
+      Future<AsynchronousSocketChannel> accept = server.accept();
+      try (AFAsynchronousSocketChannel<AFUNIXSocketAddress> client = PROVIDER
+          .openAsynchronousSocketChannel(null)) {
+        assertEquals(server.group(), client.group());
+        client.connect(server.getLocalAddress()).get(5, TimeUnit.SECONDS);
+        accept.get(5, TimeUnit.SECONDS).close();
+      }
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+@AFSocketCapabilityRequirement(AFSocketCapability.CAPABILITY_UNIX_DOMAIN)
+public class AFIOMetricsTest {
+  @Test
+  public void testAggregation() throws Exception {
+    AFIOMetrics global = new AFIOMetrics(null, null);
+    AFIOMetrics m1 = new AFIOMetrics(global, null);
+    AFIOMetrics m2 = new AFIOMetrics(global, null);
+    assertEquals(2, global.getOpenSockets());
+
+    m1.recordRead(100);
+    m1.recordRead(0); // would block
+    m1.recordRead(-1); // EOF
+    m2.recordWrite(100, 100);
+    m2.recordWrite(100, 40); // partial write
+    m2.recordWrite(60, 0); // would block
+    m2.recordTimeout();
+    m2.recordFileDescriptorsReceived(3);
+    m2.recordFileDescriptorsLeaked(1);
+
+    assertEquals(3, m1.getReadCalls());
+    assertEquals(100, m1.getBytesRead());
+    assertEquals(1, m1.getWouldBlockCount());
+    assertEquals(0, m1.getWriteCalls());
+
+    assertEquals(3, m2.getWriteCalls());
+    assertEquals(140, m2.getBytesWritten());
+    assertEquals(1, m2.getPartialWrites());
+    assertEquals(1, m2.getWouldBlockCount());
+    assertEquals(1, m2.getTimeouts());
+
+    assertEquals(3, global.getReadCalls());
+    assertEquals(3, global.getWriteCalls());
+    assertEquals(2, global.getWouldBlockCount());
+    assertEquals(3, global.getFileDescriptorsReceived());
+    assertEquals(1, global.getFileDescriptorsLeaked());
+
+    String[] hot = global.hotSockets(10);
+    assertEquals(2, hot.length);
+    assertTrue(hot[0].startsWith("#"), hot[0]);
+    assertTrue(hot[0].contains(";bytesWritten=140;"), hot[0]);
+    assertEquals(1, global.hotSockets(1).length);
+
+    m2.socketClosed();
+    assertEquals(1, global.getOpenSockets());
+    assertEquals(140, global.getBytesWritten());
+
+    m1.reset();
+    assertEquals(0, m1.getReadCalls());
+    assertEquals(3, global.getReadCalls());
+  }
+
+  @Test
+  public void testSocketMetricsDisabled() throws Exception {
+    assumeFalse(AFIOMetrics.isEnabled(), "I/O metrics are enabled");
+    try (AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      assertNull(pair.getSocket1().getIOMetrics());
+      assertNull(AFIOMetrics.global());
+    }
+  }
+
+  @Test
+  public void testChannelMetrics() throws Exception {
+    assumeMetricsEnabled();
+    try (AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      AFIOMetrics metrics = pair.getSocket1().getIOMetrics();
+      assertNotNull(metrics);
+
+      pair.getSocket1().write(ByteBuffer.wrap(new byte[123]));
+      assertEquals(1, metrics.getWriteCalls());
+      assertEquals(123, metrics.getBytesWritten());
+
+      ByteBuffer bb = ByteBuffer.allocate(123);
+      pair.getSocket2().read(bb);
+      assertEquals(123, pair.getSocket2().getIOMetrics().getBytesRead());
+      assertTrue(AFIOMetrics.global().getBytesRead() >= 123);
+
+      pair.getSocket2().configureBlocking(false);
+      bb.clear();
+      assertEquals(0, pair.getSocket2().read(bb));
+      assertEquals(1, pair.getSocket2().getIOMetrics().getWouldBlockCount());
+    }
+  }
+
+  @Test
+  public void testStreamMetrics() throws Exception {
+    assumeMetricsEnabled();
+    try (AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      AFSocket<AFUNIXSocketAddress> sock1 = pair.getSocket1().socket();
+      AFSocket<AFUNIXSocketAddress> sock2 = pair.getSocket2().socket();
+
+      OutputStream out = sock1.getOutputStream();
+      out.write(new byte[10]);
+      out.write(42);
+      assertEquals(2, sock1.getIOMetrics().getWriteCalls());
+      assertEquals(11, sock1.getIOMetrics().getBytesWritten());
+
+      InputStream in = sock2.getInputStream();
+      assertEquals(10, in.read(new byte[10]));
+      assertEquals(42, in.read());
+      assertEquals(11, sock2.getIOMetrics().getBytesRead());
+
+      sock2.setSoTimeout(1);
+      assertThrows(SocketTimeoutException.class, in::read);
+      assertEquals(1, sock2.getIOMetrics().getTimeouts());
+    }
+  }
+
+  @Test
+  public void testDatagramMetrics() throws Exception {
+    assumeMetricsEnabled();
+    try (AFUNIXSocketPair<AFUNIXDatagramChannel> pair = AFUNIXSocketPair.openDatagram()) {
+      AFDatagramSocket<AFUNIXSocketAddress> ds1 = pair.getSocket1().socket();
+      AFDatagramSocket<AFUNIXSocketAddress> ds2 = pair.getSocket2().socket();
+
+      ds1.send(new DatagramPacket(new byte[17], 17));
+      assertEquals(1, ds1.getIOMetrics().getWriteCalls());
+      assertEquals(17, ds1.getIOMetrics().getBytesWritten());
+
+      DatagramPacket dp = new DatagramPacket(new byte[64], 64);
+      ds2.receive(dp);
+      assertEquals(17, dp.getLength());
+      assertEquals(1, ds2.getIOMetrics().getReadCalls());
+      assertEquals(17, ds2.getIOMetrics().getBytesRead());
+    }
+  }
+
+  private static void assumeMetricsEnabled() {
+    // see the "io-metrics" surefire execution in junixsocket-common's pom.xml
+    assumeTrue(AFIOMetrics.isEnabled(), "Requires -Dorg.newsclub.net.unix.io-metrics=true");
+  }
+}
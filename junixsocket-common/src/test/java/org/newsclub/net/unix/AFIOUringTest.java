@@ -0,0 +1,128 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+@AFSocketCapabilityRequirement(AFSocketCapability.CAPABILITY_UNIX_DOMAIN)
+public class AFIOUringTest {
+  @Test
+  public void testStreamReadWrite() throws Exception {
+    try (AFIOUring ring = AFIOUring.open();
+        AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      assertEquals(AFIOUring.isSupported(), ring.isNative());
+
+      ByteBuffer src = ByteBuffer.wrap("Hello".getBytes(StandardCharsets.US_ASCII));
+      ByteBuffer dst = ByteBuffer.allocateDirect(64);
+      CompletableFuture<Integer> read = ring.read(pair.getSocket2(), dst);
+      assertEquals(5, ring.write(pair.getSocket1(), src).get(5, TimeUnit.SECONDS));
+      assertFalse(src.hasRemaining());
+
+      assertEquals(5, read.get(5, TimeUnit.SECONDS));
+      assertEquals(5, dst.position());
+      dst.flip();
+      assertEquals("Hello", StandardCharsets.US_ASCII.decode(dst).toString());
+
+      ByteBuffer heap = ByteBuffer.allocate(64);
+      read = ring.read(pair.getSocket2(), heap);
+      pair.getSocket1().close();
+      assertEquals(-1, read.get(5, TimeUnit.SECONDS));
+      assertEquals(0, ring.getPendingOperations());
+    }
+  }
+
+  @Test
+  public void testBatch() throws Exception {
+    int n = 16;
+    List<AFUNIXSocketPair<AFUNIXSocketChannel>> pairs = new ArrayList<>();
+    try (AFIOUring ring = AFIOUring.open(4)) {
+      for (int i = 0; i < n; i++) {
+        pairs.add(AFUNIXSocketPair.open());
+      }
+
+      List<CompletableFuture<Integer>> writes = new ArrayList<>();
+      try (AFIOUring.Batch batch = ring.batch()) {
+        for (int i = 0; i < n; i++) {
+          writes.add(ring.write(pairs.get(i).getSocket1(), ByteBuffer.wrap(new byte[] {
+              (byte) i})));
+        }
+      }
+      for (CompletableFuture<Integer> cf : writes) {
+        assertEquals(1, cf.get(5, TimeUnit.SECONDS));
+      }
+
+      for (int i = 0; i < n; i++) {
+        ByteBuffer bb = ByteBuffer.allocate(1);
+        assertEquals(1, ring.read(pairs.get(i).getSocket2(), bb).get(5, TimeUnit.SECONDS));
+        assertEquals(i, bb.get(0));
+      }
+    } finally {
+      for (AFUNIXSocketPair<AFUNIXSocketChannel> pair : pairs) {
+        pair.close();
+      }
+    }
+  }
+
+  @Test
+  public void testDatagram() throws Exception {
+    try (AFIOUring ring = AFIOUring.open();
+        AFUNIXSocketPair<AFUNIXDatagramChannel> pair = AFUNIXSocketPair.openDatagram()) {
+      ByteBuffer dst = ByteBuffer.allocate(3);
+      CompletableFuture<Integer> receive = ring.receive(pair.getSocket2(), dst);
+      assertEquals(5, ring.send(pair.getSocket1(), ByteBuffer.wrap(new byte[] {
+          1, 2, 3, 4, 5})).get(5, TimeUnit.SECONDS));
+      assertEquals(3, receive.get(5, TimeUnit.SECONDS)); // truncated
+      assertEquals(3, dst.get(2));
+    }
+  }
+
+  @Test
+  public void testCloseCancelsPending() throws Exception {
+    assumeTrue(AFIOUring.isSupported(), "io_uring is not available");
+    try (AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      AFIOUring ring = AFIOUring.open();
+
+      CompletableFuture<Integer> read = ring.read(pair.getSocket2(), ByteBuffer.allocate(1));
+      CompletableFuture<Integer> cancelled = ring.read(pair.getSocket1(), ByteBuffer.allocate(
+          1));
+      assertTrue(cancelled.cancel(true));
+      ring.close();
+
+      ExecutionException e = assertThrows(ExecutionException.class, () -> read.get(5,
+          TimeUnit.SECONDS));
+      assertTrue(e.getCause() instanceof AsynchronousCloseException, e.toString());
+      assertEquals(0, ring.getPendingOperations());
+      assertTrue(ring.read(pair.getSocket2(), ByteBuffer.allocate(1)).isCompletedExceptionally());
+    }
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+@AFSocketCapabilityRequirement(AFSocketCapability.CAPABILITY_UNIX_DOMAIN)
+public class AFSelectorGroupTest {
+  private static List<AFUNIXSocketPair<AFUNIXSocketChannel>> openPairs(int n) throws IOException {
+    List<AFUNIXSocketPair<AFUNIXSocketChannel>> pairs = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      AFUNIXSocketPair<AFUNIXSocketChannel> p = AFUNIXSocketPair.open();
+      p.getSocket1().configureBlocking(false);
+      pairs.add(p);
+    }
+    return pairs;
+  }
+
+  private static void closePairs(List<AFUNIXSocketPair<AFUNIXSocketChannel>> pairs)
+      throws IOException {
+    for (AFUNIXSocketPair<AFUNIXSocketChannel> p : pairs) {
+      p.close();
+    }
+  }
+
+  @Test
+  public void testLeastLoaded() throws Exception {
+    List<AFUNIXSocketPair<AFUNIXSocketChannel>> pairs = openPairs(6);
+    CountDownLatch latch = new CountDownLatch(pairs.size());
+    Set<Object> seen = ConcurrentHashMap.newKeySet();
+    try (AFSelectorGroup group = AFSelectorGroup.open(AFUNIXSelectorProvider.provider(), 3,
+        AFSelectorGroup.Policy.LEAST_LOADED, (k) -> {
+          try {
+            ((SocketChannel) k.channel()).read(ByteBuffer.allocate(16));
+          } catch (IOException e) {
+            throw new IllegalStateException(e);
+          }
+          if (seen.add(k.attachment())) {
+            latch.countDown();
+          }
+        })) {
+      assertEquals(3, group.getSelectorCount());
+      for (AFUNIXSocketPair<AFUNIXSocketChannel> p : pairs) {
+        group.register(p.getSocket1(), SelectionKey.OP_READ, p);
+      }
+      for (int i = 0; i < 3; i++) {
+        assertEquals(2, group.getKeyCount(i));
+      }
+
+      for (AFUNIXSocketPair<AFUNIXSocketChannel> p : pairs) {
+        p.getSocket2().write(ByteBuffer.wrap(new byte[] {1}));
+      }
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+      long ready = 0;
+      for (int i = 0; i < 3; i++) {
+        ready += group.getReadyCount(i);
+        assertTrue(group.getReadyRate(i) >= 0);
+      }
+      assertTrue(ready >= pairs.size());
+    } finally {
+      closePairs(pairs);
+    }
+  }
+
+  @Test
+  public void testHashAndInterestOps() throws Exception {
+    List<AFUNIXSocketPair<AFUNIXSocketChannel>> pairs = openPairs(4);
+    CountDownLatch latch = new CountDownLatch(1);
+    try (AFSelectorGroup group = AFSelectorGroup.open(AFUNIXSelectorProvider.provider(), 2,
+        AFSelectorGroup.Policy.HASH, (k) -> {
+          k.interestOps(0);
+          latch.countDown();
+        })) {
+      List<SelectionKey> keys = new ArrayList<>();
+      for (AFUNIXSocketPair<AFUNIXSocketChannel> p : pairs) {
+        keys.add(group.register(p.getSocket1(), 0, p));
+      }
+      assertEquals(pairs.size(), group.getKeyCount(0) + group.getKeyCount(1));
+      // channels with adjacent file descriptor numbers end up in different selectors
+      for (SelectionKey key : keys) {
+        int fd = NativeUnixSocket.getFD(((AFUNIXSocketChannel) key.channel())
+            .getFileDescriptor());
+        assertEquals(keys.get(0).selector() == key.selector(), fd % 2 == NativeUnixSocket.getFD(
+            ((AFUNIXSocketChannel) keys.get(0).channel()).getFileDescriptor()) % 2);
+      }
+
+      pairs.get(1).getSocket2().write(ByteBuffer.wrap(new byte[] {1}));
+      Thread.sleep(50);
+      assertEquals(1, latch.getCount());
+
+      // change the interest set from another thread while the selector is blocked
+      group.interestOps(keys.get(1), SelectionKey.OP_READ);
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+      try (Selector other = AFUNIXSelectorProvider.provider().openSelector()) {
+        SelectionKey otherKey = pairs.get(0).getSocket1().register(other, 0);
+        assertThrows(IllegalArgumentException.class, () -> group.interestOps(otherKey,
+            SelectionKey.OP_READ));
+      }
+    } finally {
+      closePairs(pairs);
+    }
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    List<AFUNIXSocketPair<AFUNIXSocketChannel>> pairs = openPairs(1);
+    try {
+      AFSelectorGroup group = AFSelectorGroup.open(AFUNIXSelectorProvider.provider(), 2,
+          AFSelectorGroup.Policy.LEAST_LOADED, (k) -> {
+          });
+      SelectionKey key = group.register(pairs.get(0).getSocket1(), SelectionKey.OP_READ, null);
+      group.close();
+      assertTrue(group.isClosed());
+      assertFalse(key.isValid());
+      assertTrue(pairs.get(0).getSocket1().isOpen());
+      assertThrows(ClosedSelectorException.class, () -> group.register(pairs.get(0).getSocket1(),
+          SelectionKey.OP_READ, null));
+      group.close();
+    } finally {
+      closePairs(pairs);
+    }
+  }
+
+  @Test
+  public void testFailedSelectorClosesGroup() throws Exception {
+    List<AFUNIXSocketPair<AFUNIXSocketChannel>> pairs = openPairs(1);
+    try (AFSelectorGroup group = AFSelectorGroup.open(AFUNIXSelectorProvider.provider(), 2,
+        AFSelectorGroup.Policy.LEAST_LOADED, (k) -> {
+        })) {
+      SelectionKey key = group.register(pairs.get(0).getSocket1(), SelectionKey.OP_READ, null);
+
+      // simulate a failing selector
+      key.selector().close();
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (!group.isClosed() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertTrue(group.isClosed());
+      IOException e = assertThrows(IOException.class, () -> group.register(pairs.get(0)
+          .getSocket1(), SelectionKey.OP_READ, null));
+      assertTrue(e.getCause() instanceof ClosedSelectorException);
+    } finally {
+      closePairs(pairs);
+    }
+  }
+
+  @Test
+  public void testHandlerErrorClosesGroup() throws Exception {
+    List<AFUNIXSocketPair<AFUNIXSocketChannel>> pairs = openPairs(1);
+    try (AFSelectorGroup group = AFSelectorGroup.open(AFUNIXSelectorProvider.provider(), 1,
+        AFSelectorGroup.Policy.LEAST_LOADED, (k) -> {
+          // not a RuntimeException, so it's not just logged by the selecting thread
+          throw new AssertionError("simulated failure");
+        })) {
+      group.register(pairs.get(0).getSocket1(), SelectionKey.OP_READ, null);
+      pairs.get(0).getSocket2().write(ByteBuffer.wrap(new byte[] {1}));
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (!group.isClosed() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertTrue(group.isClosed());
+      IOException e = assertThrows(IOException.class, () -> group.register(pairs.get(0)
+          .getSocket1(), SelectionKey.OP_READ, null));
+      assertTrue(e.getCause() instanceof AssertionError);
+    } finally {
+      closePairs(pairs);
+    }
+  }
+}
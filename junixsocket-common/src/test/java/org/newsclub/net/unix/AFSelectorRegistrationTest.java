@@ -0,0 +1,354 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.IllegalSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the registration table and the selected-key set of {@link AFSelector}, with many keys
+ * being registered, cancelled, closed and updated between select operations.
+ */
+@AFSocketCapabilityRequirement(AFSocketCapability.CAPABILITY_UNIX_DOMAIN)
+public class AFSelectorRegistrationTest {
+  @Test
+  public void testChurnPoll() throws Exception {
+    testChurn(false);
+  }
+
+  @Test
+  public void testChurnEpoll() throws Exception {
+    if (AFSocket.supports(AFSocketCapability.CAPABILITY_EPOLL)) {
+      testChurn(true);
+    }
+  }
+
+  private static void testChurn(boolean epoll) throws Exception {
+    Random rnd = new Random(1);
+    List<AFUNIXSocketPair<AFUNIXSocketChannel>> pairs = new ArrayList<>();
+    try (AFSelector sel = new AFSelector(AFUNIXSelectorProvider.provider(), epoll)) {
+      for (int round = 0; round < 50; round++) {
+        for (int i = 0; i < 4; i++) {
+          AFUNIXSocketPair<AFUNIXSocketChannel> p = AFUNIXSocketPair.open();
+          p.getSocket1().configureBlocking(false);
+          p.getSocket1().register(sel, SelectionKey.OP_READ, p);
+          pairs.add(p);
+        }
+
+        Set<Object> expected = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+          AFUNIXSocketPair<AFUNIXSocketChannel> p = pairs.get(rnd.nextInt(pairs.size()));
+          p.getSocket2().write(ByteBuffer.wrap(new byte[] {1}));
+          expected.add(p);
+        }
+        for (int i = 0; i < 3; i++) {
+          AFUNIXSocketPair<AFUNIXSocketChannel> p = pairs.remove(rnd.nextInt(pairs.size()));
+          expected.remove(p);
+          if (rnd.nextBoolean()) {
+            p.getSocket1().keyFor(sel).cancel();
+          }
+          p.close();
+        }
+        List<AFUNIXSocketPair<AFUNIXSocketChannel>> muted = new ArrayList<>();
+        for (Object o : expected) {
+          if (rnd.nextInt(3) == 0) {
+            @SuppressWarnings("unchecked")
+            AFUNIXSocketPair<AFUNIXSocketChannel> p = (AFUNIXSocketPair<AFUNIXSocketChannel>) o;
+            p.getSocket1().keyFor(sel).interestOps(0);
+            muted.add(p);
+          }
+        }
+        expected.removeAll(muted);
+
+        assertEquals(expected.size(), sel.selectNow());
+        Set<Object> selected = new HashSet<>();
+        for (Iterator<SelectionKey> it = sel.selectedKeys().iterator(); it.hasNext();) {
+          SelectionKey key = it.next();
+          it.remove();
+          assertTrue(key.isReadable());
+          selected.add(key.attachment());
+          ((AFUNIXSocketChannel) key.channel()).read(ByteBuffer.allocate(16));
+        }
+        assertEquals(expected, selected);
+        assertTrue(sel.selectedKeys().isEmpty());
+
+        for (AFUNIXSocketPair<AFUNIXSocketChannel> p : muted) {
+          p.getSocket1().keyFor(sel).interestOps(SelectionKey.OP_READ);
+          assertEquals(1, sel.selectNow());
+          p.getSocket1().read(ByteBuffer.allocate(16));
+        }
+        assertEquals(pairs.size(), sel.keys().size());
+      }
+    } finally {
+      for (AFUNIXSocketPair<AFUNIXSocketChannel> p : pairs) {
+        p.close();
+      }
+    }
+  }
+
+  @Test
+  public void testSelectWithActionPoll() throws Exception {
+    testSelectWithAction(false);
+  }
+
+  @Test
+  public void testSelectWithActionEpoll() throws Exception {
+    if (AFSocket.supports(AFSocketCapability.CAPABILITY_EPOLL)) {
+      testSelectWithAction(true);
+    }
+  }
+
+  private static void testSelectWithAction(boolean epoll) throws Exception {
+    try (AFSelector sel = new AFSelector(AFUNIXSelectorProvider.provider(), epoll);
+        AFUNIXSocketPair<AFUNIXSocketChannel> p1 = AFUNIXSocketPair.open();
+        AFUNIXSocketPair<AFUNIXSocketChannel> p2 = AFUNIXSocketPair.open();
+        AFUNIXSocketPair<AFUNIXSocketChannel> p3 = AFUNIXSocketPair.open()) {
+      List<SelectionKey> keys = new ArrayList<>();
+      for (AFUNIXSocketPair<AFUNIXSocketChannel> p : Arrays.asList(p1, p2, p3)) {
+        p.getSocket1().configureBlocking(false);
+        keys.add(p.getSocket1().register(sel, SelectionKey.OP_READ));
+      }
+      p1.getSocket2().write(ByteBuffer.wrap(new byte[] {1}));
+      p3.getSocket2().write(ByteBuffer.wrap(new byte[] {1}));
+
+      List<SelectionKey> consumed = new ArrayList<>();
+      assertEquals(2, sel.selectNow((k) -> {
+        assertTrue(k.isReadable());
+        consumed.add(k);
+      }));
+      assertEquals(new HashSet<>(Arrays.asList(keys.get(0), keys.get(2))), new HashSet<>(
+          consumed));
+      assertTrue(sel.selectedKeys().isEmpty());
+
+      // keys can be cancelled by the action
+      consumed.clear();
+      assertEquals(2, sel.select((k) -> {
+        k.cancel();
+        consumed.add(k);
+      }, 1000));
+      assertEquals(1, sel.keys().size());
+      assertEquals(0, sel.selectNow((k) -> consumed.add(k)));
+      assertEquals(2, consumed.size());
+
+      // wakeup
+      sel.wakeup();
+      assertEquals(0, sel.select((k) -> consumed.add(k)));
+      assertThrows(NullPointerException.class, () -> sel.selectNow(null));
+      assertThrows(IllegalArgumentException.class, () -> sel.select((k) -> consumed.add(k), -1));
+
+      // the set-based operations still work
+      p2.getSocket2().write(ByteBuffer.wrap(new byte[] {1}));
+      assertEquals(1, sel.selectNow());
+      assertTrue(sel.selectedKeys().contains(keys.get(1)));
+    }
+  }
+
+  @Test
+  public void testHangupWithPendingDataPoll() throws Exception {
+    testHangupWithPendingData(false);
+  }
+
+  @Test
+  public void testHangupWithPendingDataEpoll() throws Exception {
+    if (AFSocket.supports(AFSocketCapability.CAPABILITY_EPOLL)) {
+      testHangupWithPendingData(true);
+    }
+  }
+
+  private static void testHangupWithPendingData(boolean epoll) throws Exception {
+    try (AFSelector sel = new AFSelector(AFUNIXSelectorProvider.provider(), epoll);
+        AFUNIXSocketPair<AFUNIXSocketChannel> p = AFUNIXSocketPair.open()) {
+      AFUNIXSocketChannel ch = p.getSocket1();
+      ch.configureBlocking(false);
+      SelectionKey key = ch.register(sel, SelectionKey.OP_READ);
+
+      p.getSocket2().write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5}));
+      p.getSocket2().close();
+
+      // the hung-up channel is not closed, and is selected once
+      assertEquals(1, sel.selectNow());
+      assertTrue(sel.selectedKeys().contains(key));
+      assertTrue(key.isReadable());
+      assertTrue(ch.isOpen());
+
+      // ... without making subsequent select operations return immediately
+      long time = System.nanoTime();
+      assertEquals(0, sel.select(200));
+      assertTrue(System.nanoTime() - time >= TimeUnit.MILLISECONDS.toNanos(150));
+
+      // ... and again once its interest set has been updated
+      key.interestOps(SelectionKey.OP_READ);
+      assertEquals(1, sel.selectNow());
+      assertTrue(sel.selectedKeys().contains(key));
+      assertTrue(key.isReadable());
+
+      ByteBuffer bb = ByteBuffer.allocate(16);
+      assertEquals(5, ch.read(bb));
+      assertEquals(-1, ch.read(bb)); // end of stream
+
+      // ... or its interest set is cleared
+      key.interestOps(0);
+      assertEquals(0, sel.selectNow());
+      assertTrue(key.isValid());
+    }
+  }
+
+  @Test
+  public void testForeignChannelsPoll() throws Exception {
+    testForeignChannels(false);
+  }
+
+  @Test
+  public void testForeignChannelsEpoll() throws Exception {
+    if (AFSocket.supports(AFSocketCapability.CAPABILITY_EPOLL)) {
+      testForeignChannels(true);
+    }
+  }
+
+  private static void testForeignChannels(boolean epoll) throws Exception {
+    try (AFSelector sel = new AFSelector(AFUNIXSelectorProvider.provider(), epoll);
+        ServerSocketChannel tcpServer = ServerSocketChannel.open();
+        SocketChannel tcpClient = SocketChannel.open();
+        AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      tcpServer.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      assertThrows(IllegalBlockingModeException.class, () -> AFSelectorProvider
+          .registerForeignChannel(sel, tcpServer, SelectionKey.OP_ACCEPT, null));
+      tcpServer.configureBlocking(false);
+      SelectionKey acceptKey = AFSelectorProvider.registerForeignChannel(sel, tcpServer,
+          SelectionKey.OP_ACCEPT, "accept");
+      assertEquals(acceptKey, AFSelectorProvider.registerForeignChannel(sel, tcpServer,
+          SelectionKey.OP_ACCEPT, "accept"));
+      assertThrows(IllegalArgumentException.class, () -> AFSelectorProvider
+          .registerForeignChannel(sel, tcpServer, SelectionKey.OP_READ, null));
+      try (Selector jdkSelector = Selector.open()) {
+        assertThrows(IllegalSelectorException.class, () -> AFSelectorProvider
+            .registerForeignChannel(jdkSelector, tcpServer, SelectionKey.OP_ACCEPT, null));
+      }
+
+      pair.getSocket1().configureBlocking(false);
+      SelectionKey unixKey = AFSelectorProvider.registerForeignChannel(sel, pair.getSocket1(),
+          SelectionKey.OP_READ, "unix");
+      assertEquals(unixKey, pair.getSocket1().keyFor(sel));
+
+      tcpClient.connect(tcpServer.getLocalAddress());
+      assertEquals(1, sel.select(1000));
+      assertTrue(sel.selectedKeys().contains(acceptKey));
+      assertTrue(acceptKey.isAcceptable());
+
+      SocketChannel accepted = tcpServer.accept();
+      try {
+        accepted.configureBlocking(false);
+        SelectionKey tcpKey = AFSelectorProvider.registerForeignChannel(sel, accepted,
+            SelectionKey.OP_READ, "tcp");
+        assertEquals("tcp", tcpKey.attachment());
+        assertEquals(3, sel.keys().size());
+
+        tcpClient.write(ByteBuffer.wrap(new byte[] {1}));
+        pair.getSocket2().write(ByteBuffer.wrap(new byte[] {2}));
+        Set<Object> selected = new HashSet<>();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (selected.size() < 2 && System.currentTimeMillis() < deadline) {
+          sel.select((k) -> {
+            assertTrue(k.isReadable());
+            selected.add(k.attachment());
+          }, 100);
+        }
+        assertEquals(new HashSet<>(Arrays.asList("tcp", "unix")), selected);
+
+        ByteBuffer bb = ByteBuffer.allocate(16);
+        assertEquals(1, accepted.read(bb));
+        assertEquals(1, pair.getSocket1().read(bb));
+        assertEquals(0, sel.selectNow());
+
+        // closing the foreign channel cancels its key upon the next select operation
+        accepted.close();
+        assertEquals(0, sel.selectNow());
+        assertFalse(tcpKey.isValid());
+        assertFalse(sel.keys().contains(tcpKey));
+        assertEquals(2, sel.keys().size());
+
+        acceptKey.cancel();
+        assertEquals(1, sel.keys().size());
+      } finally {
+        accepted.close();
+      }
+    }
+  }
+
+  @Test
+  public void testSelectedKeys() throws Exception {
+    try (AFSelector sel = new AFSelector(AFUNIXSelectorProvider.provider(), false);
+        AFUNIXSocketPair<AFUNIXSocketChannel> p1 = AFUNIXSocketPair.open();
+        AFUNIXSocketPair<AFUNIXSocketChannel> p2 = AFUNIXSocketPair.open();
+        AFUNIXSocketPair<AFUNIXSocketChannel> p3 = AFUNIXSocketPair.open()) {
+      List<SelectionKey> keys = new ArrayList<>();
+      for (AFUNIXSocketPair<AFUNIXSocketChannel> p : Arrays.asList(p1, p2, p3)) {
+        p.getSocket1().configureBlocking(false);
+        keys.add(p.getSocket1().register(sel, SelectionKey.OP_WRITE));
+      }
+      assertEquals(3, sel.select());
+      Set<SelectionKey> selectedKeys = sel.selectedKeys();
+      assertEquals(new HashSet<>(keys), new HashSet<>(selectedKeys));
+      assertThrows(UnsupportedOperationException.class, () -> selectedKeys.add(keys.get(0)));
+
+      assertTrue(selectedKeys.remove(keys.get(0)));
+      assertFalse(selectedKeys.remove(keys.get(0)));
+      assertFalse(selectedKeys.contains(keys.get(0)));
+      assertTrue(selectedKeys.contains(keys.get(2)));
+
+      // the remaining keys can be removed while iterating
+      int n = 0;
+      for (Iterator<SelectionKey> it = selectedKeys.iterator(); it.hasNext();) {
+        assertTrue(keys.contains(it.next()));
+        it.remove();
+        assertThrows(IllegalStateException.class, it::remove);
+        n++;
+      }
+      assertEquals(2, n);
+      assertTrue(selectedKeys.isEmpty());
+
+      // cancelled keys are no longer selected, nor registered
+      keys.get(1).cancel();
+      assertEquals(2, sel.selectNow());
+      assertFalse(selectedKeys.contains(keys.get(1)));
+      assertEquals(2, sel.keys().size());
+    }
+  }
+}
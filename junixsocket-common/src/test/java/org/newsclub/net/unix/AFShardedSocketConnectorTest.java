@@ -0,0 +1,85 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+@AFSocketCapabilityRequirement(AFSocketCapability.CAPABILITY_UNIX_DOMAIN)
+public class AFShardedSocketConnectorTest {
+  private static final int NUM_SHARDS = 3;
+
+  @Test
+  public void testRoundRobin() throws Exception {
+    List<AFUNIXServerSocket> servers = new ArrayList<>();
+    List<AFUNIXSocketAddress> shards = new ArrayList<>();
+    List<AFSocket<?>> sockets = new ArrayList<>();
+    try {
+      for (int i = 0; i < NUM_SHARDS; i++) {
+        AFUNIXServerSocket server = AFUNIXServerSocket.bindOn(AFUNIXSocketAddress.ofNewTempFile());
+        server.setSoTimeout(1000);
+        servers.add(server);
+        shards.add(server.getLocalSocketAddress());
+      }
+      AFShardedSocketConnector<AFUNIXSocketAddress> connector = AFShardedSocketConnector.of(
+          AFUNIXSocketAddress.ofNewTempFile(), shards);
+
+      for (int i = 0; i < 2 * NUM_SHARDS; i++) {
+        sockets.add(connector.connect());
+      }
+      for (AFUNIXServerSocket server : servers) {
+        for (int i = 0; i < 2; i++) {
+          sockets.add(server.accept());
+        }
+      }
+
+      // a shard that is gone is skipped (here: in favor of the next one)
+      servers.get(0).close();
+      for (int i = 0; i < NUM_SHARDS; i++) {
+        sockets.add(connector.connect());
+      }
+      sockets.add(servers.get(1).accept());
+      sockets.add(servers.get(1).accept());
+      sockets.add(servers.get(2).accept());
+
+      // other addresses are connected to directly
+      sockets.add(connector.connect(shards.get(1)));
+      sockets.add(servers.get(1).accept());
+
+      servers.get(1).close();
+      servers.get(2).close();
+      IOException e = assertThrows(SocketException.class, connector::connect);
+      assertEquals(NUM_SHARDS - 1, e.getSuppressed().length, Arrays.toString(e.getSuppressed()));
+    } finally {
+      for (AFSocket<?> s : sockets) {
+        s.close();
+      }
+      for (AFUNIXServerSocket server : servers) {
+        server.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+@AFSocketCapabilityRequirement(AFSocketCapability.CAPABILITY_UNIX_DOMAIN)
+public class AFSocketAddressCacheTest {
+  private static ByteBuffer key(String s) {
+    return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+  }
+
+  private static AFUNIXSocketAddress addr(String s) throws Exception {
+    return AFUNIXSocketAddress.of(new File(s));
+  }
+
+  @Test
+  public void testHitMiss() throws Exception {
+    AFSocketAddressCache<AFUNIXSocketAddress> cache = new AFSocketAddressCache<>(16);
+    AFUNIXSocketAddress a = addr("/tmp/a");
+
+    assertNull(cache.get(0, key("a")));
+    assertSame(a, cache.put(0, key("a"), a));
+    assertSame(a, cache.get(0, key("a")));
+    assertNull(cache.get(1, key("a")));
+
+    // a concurrently created equal address is not cached again
+    assertSame(a, cache.put(0, key("a"), addr("/tmp/a")));
+
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testBounded() throws Exception {
+    AFSocketAddressCache<AFUNIXSocketAddress> cache = new AFSocketAddressCache<>(8);
+    AFUNIXSocketAddress hot = addr("/tmp/hot");
+    cache.put(0, key("hot"), hot);
+    for (int i = 0; i < 100; i++) {
+      assertNotNull(cache.get(0, key("hot")));
+      cache.put(0, key("cold" + i), addr("/tmp/cold" + i));
+      assertTrue(cache.size() <= 8, "Cache should not grow beyond its maximum size");
+    }
+    assertEquals(100 + 1 - 8, cache.getEvictionCount());
+
+    // recently used entries get a second chance
+    assertSame(hot, cache.get(0, key("hot")));
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    AFSocketAddressCache<AFUNIXSocketAddress> cache = new AFSocketAddressCache<>(0);
+    AFUNIXSocketAddress a = addr("/tmp/a");
+    assertSame(a, cache.put(0, key("a"), a));
+    assertNull(cache.get(0, key("a")));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testResolveAddressUsesCache() throws Exception {
+    AFSocketAddressCache<AFUNIXSocketAddress> cache = AFUNIXSocketAddress.addressFamily()
+        .getAddressCache();
+    File f = new File("/tmp/junixsocket-cache-test-" + System.nanoTime());
+    AFUNIXSocketAddress a = AFUNIXSocketAddress.of(f);
+    long hits = cache.getHitCount();
+    assertSame(a, AFUNIXSocketAddress.of(f));
+    assertTrue(cache.getHitCount() > hits);
+
+    File other = new File(f.getPath() + ".other");
+    assertEquals(other.getPath(), AFUNIXSocketAddress.of(other).getPath());
+    assertEquals(f.getPath(), AFUNIXSocketAddress.of(f).getPath());
+
+    // different Java ports are different instances
+    AFUNIXSocketAddress withPort = AFUNIXSocketAddress.of(f, 123);
+    assertEquals(123, withPort.getPort());
+    assertSame(withPort, AFUNIXSocketAddress.of(f, 123));
+  }
+
+  @Test
+  public void testOfInternalCounters() throws Exception {
+    AFAddressFamily<AFUNIXSocketAddress> af = AFUNIXSocketAddress.addressFamily();
+    File f = new File("/tmp/junixsocket-cache-test-" + System.nanoTime());
+    AFUNIXSocketAddress a = AFUNIXSocketAddress.of(f);
+
+    // resolve the same system-native address twice
+    AFUNIXSocketAddress first = AFSocketAddress.ofInternal(a.getNativeAddressDirectBuffer(), af);
+    long hits = af.getAddressCacheHitCount();
+    long misses = af.getAddressCacheMissCount();
+    AFUNIXSocketAddress second = AFSocketAddress.ofInternal(a.getNativeAddressDirectBuffer(), af);
+
+    assertSame(first, second);
+    assertEquals(f.getPath(), second.getPath());
+    assertEquals(hits + 1, af.getAddressCacheHitCount());
+    assertEquals(misses, af.getAddressCacheMissCount());
+  }
+}
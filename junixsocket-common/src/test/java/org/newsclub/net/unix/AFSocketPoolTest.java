@@ -0,0 +1,282 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+@AFSocketCapabilityRequirement(AFSocketCapability.CAPABILITY_UNIX_DOMAIN)
+public class AFSocketPoolTest {
+  /**
+   * Echoes every byte it receives, on every accepted connection.
+   */
+  private static final class EchoServer implements AutoCloseable {
+    private final AFUNIXServerSocket server;
+    private final List<AFUNIXSocket> accepted = new CopyOnWriteArrayList<>();
+
+    EchoServer() throws IOException {
+      server = AFUNIXServerSocket.bindOn(AFUNIXSocketAddress.ofNewTempFile());
+      Thread t = new Thread(this::acceptLoop);
+      t.setDaemon(true);
+      t.start();
+    }
+
+    AFUNIXSocketAddress getAddress() {
+      return server.getLocalSocketAddress();
+    }
+
+    private void acceptLoop() {
+      try {
+        while (!server.isClosed()) {
+          AFUNIXSocket sock = server.accept();
+          accepted.add(sock);
+          Thread t = new Thread(() -> echo(sock));
+          t.setDaemon(true);
+          t.start();
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    }
+
+    private static void echo(AFUNIXSocket sock) {
+      try (InputStream in = sock.getInputStream(); OutputStream out = sock.getOutputStream()) {
+        int b;
+        while ((b = in.read()) != -1) {
+          out.write(b);
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    }
+
+    void closeAccepted() throws IOException {
+      for (AFUNIXSocket sock : accepted) {
+        sock.close();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      server.close();
+      closeAccepted();
+    }
+  }
+
+  @FunctionalInterface
+  private interface Condition {
+    boolean isMet() throws IOException;
+  }
+
+  /**
+   * Waits until the given condition is met, failing after a generous timeout.
+   */
+  private static void awaitCondition(Condition condition) throws IOException,
+      InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.isMet()) {
+      assertTrue(System.nanoTime() - deadline < 0, "Condition not met in time");
+      Thread.sleep(1);
+    }
+  }
+
+  private static void roundTrip(Socket sock, int b) throws IOException {
+    sock.getOutputStream().write(b);
+    assertEquals(b, sock.getInputStream().read());
+  }
+
+  @Test
+  public void testReuse() throws Exception {
+    try (EchoServer server = new EchoServer();
+        AFSocketPool<AFUNIXSocketAddress> pool = new AFSocketPool<>(2, 0, 0)) {
+      for (int i = 0; i < 3; i++) {
+        try (Socket sock = pool.getConnection(server.getAddress())) {
+          roundTrip(sock, i);
+          assertEquals(1, pool.getBorrowedConnections());
+        }
+        assertEquals(0, pool.getBorrowedConnections());
+        assertEquals(1, pool.getIdleConnections());
+      }
+      assertEquals(1, pool.getConnectionsCreated());
+      assertEquals(2, pool.getConnectionsReused());
+
+      Socket sock = pool.getConnection(server.getAddress());
+      sock.close();
+      assertThrows(SocketClosedException.class, () -> sock.getOutputStream().write(1));
+
+      // the server closed the connection while idle
+      server.closeAccepted();
+      try (Socket sock2 = pool.getConnection(server.getAddress())) {
+        roundTrip(sock2, 42);
+      }
+      assertEquals(1, pool.getValidationFailures());
+      assertEquals(2, pool.getConnectionsCreated());
+
+      // unread data: not reused
+      try (Socket sock3 = pool.getConnection(server.getAddress())) {
+        sock3.getOutputStream().write(1);
+        // wait for the echo, but don't read it
+        InputStream in = sock3.getInputStream();
+        awaitCondition(() -> in.available() > 0);
+      }
+      assertEquals(1, pool.getConnectionsDiscarded());
+      assertEquals(0, pool.getIdleConnections());
+    }
+  }
+
+  @Test
+  public void testOptionsRestored() throws Exception {
+    try (EchoServer server = new EchoServer();
+        AFSocketPool<AFUNIXSocketAddress> pool = new AFSocketPool<>(1, 0, 0)) {
+      int sendBufferSize;
+      try (Socket sock = pool.getConnection(server.getAddress())) {
+        assertFalse(sock.getKeepAlive());
+        sendBufferSize = sock.getSendBufferSize();
+        sock.setKeepAlive(true);
+        assertTrue(sock.getKeepAlive());
+      }
+      try (Socket sock = pool.getConnection(server.getAddress())) {
+        assertEquals(1, pool.getConnectionsReused());
+        assertFalse(sock.getKeepAlive());
+
+        // restored, or the connection is discarded if the value can't be restored exactly
+        sock.setSendBufferSize(sendBufferSize * 2);
+      }
+      try (Socket sock = pool.getConnection(server.getAddress())) {
+        assertEquals(sendBufferSize, sock.getSendBufferSize());
+      }
+
+      // options set before connect are applied upon connect
+      try (Socket sock = pool.newSocket()) {
+        sock.setKeepAlive(true);
+        sock.setTrafficClass(0x10);
+        sock.setSoLinger(false, 0);
+        sock.connect(server.getAddress());
+        assertTrue(sock.getKeepAlive());
+        roundTrip(sock, 1);
+      }
+      try (Socket sock = pool.getConnection(server.getAddress())) {
+        assertFalse(sock.getKeepAlive());
+        assertThrows(SocketException.class, () -> sock.bind(null));
+      }
+    }
+  }
+
+  @Test
+  public void testMaxPerAddress() throws Exception {
+    try (EchoServer server = new EchoServer();
+        AFSocketPool<AFUNIXSocketAddress> pool = new AFSocketPool<>(1, 0, 0)) {
+      try (Socket sock = pool.getConnection(server.getAddress())) {
+        assertThrows(SocketTimeoutException.class, () -> pool.getConnection(server.getAddress()));
+        assertEquals(1, pool.getExhaustedCount());
+        AFSocketPool.discard(sock);
+      }
+      assertEquals(0, pool.getIdleConnections());
+      try (Socket sock = pool.getConnection(server.getAddress())) {
+        roundTrip(sock, 1);
+      }
+      assertEquals(2, pool.getConnectionsCreated());
+    }
+  }
+
+  @Test
+  public void testIdleEviction() throws Exception {
+    try (EchoServer server = new EchoServer();
+        AFSocketPool<AFUNIXSocketAddress> pool = new AFSocketPool<>(2, 100, 0)) {
+      pool.getConnection(server.getAddress()).close();
+      assertEquals(1, pool.getIdleConnections());
+      awaitCondition(() -> pool.getIdleConnections() == 0);
+      assertEquals(1, pool.getIdleEvictions());
+      // nothing left for this address
+      assertEquals(0, pool.getAddressCount());
+    }
+  }
+
+  @Test
+  public void testUnusedAddressRemoved() throws Exception {
+    try (EchoServer server = new EchoServer();
+        AFSocketPool<AFUNIXSocketAddress> pool = new AFSocketPool<>(1, 0, 0)) {
+      Socket sock = pool.getConnection(server.getAddress());
+      assertEquals(1, pool.getAddressCount());
+      AFSocketPool.discard(sock);
+      assertEquals(0, pool.getAddressCount());
+
+      // an idle connection keeps the address
+      pool.getConnection(server.getAddress()).close();
+      assertEquals(1, pool.getAddressCount());
+
+      // failed attempts don't leave anything behind
+      AFUNIXSocketAddress unbound = AFUNIXSocketAddress.ofNewTempFile();
+      assertThrows(IOException.class, () -> pool.getConnection(unbound));
+      assertEquals(1, pool.getAddressCount());
+    }
+  }
+
+  @Test
+  public void testInterruptedWhileWaiting() throws Exception {
+    try (EchoServer server = new EchoServer();
+        AFSocketPool<AFUNIXSocketAddress> pool = new AFSocketPool<>(1, 0, 60_000)) {
+      try (Socket sock = pool.getConnection(server.getAddress())) {
+        Thread.currentThread().interrupt();
+        try {
+          assertThrows(InterruptedIOException.class, () -> pool.getConnection(server
+              .getAddress()));
+          assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+          Thread.interrupted(); // clear the flag
+        }
+        assertEquals(0, pool.getExhaustedCount());
+      }
+      assertEquals(0, pool.getBorrowedConnections());
+    }
+  }
+
+  @Test
+  public void testSocketFactory() throws Exception {
+    try (EchoServer server = new EchoServer();
+        AFSocketPool<AFUNIXSocketAddress> pool = new AFSocketPool<>(2, 0, 0)) {
+      AFPooledSocketFactory<AFUNIXSocketAddress> sf = new AFPooledSocketFactory<>(
+          new AFUNIXSocketFactory.FactoryArg(server.getAddress().getFile()), pool);
+      try (Socket sock = sf.createSocket("localhost", 0)) {
+        roundTrip(sock, 1);
+      }
+      try (Socket sock = sf.createSocket()) {
+        sock.connect(new InetSocketAddress("localhost", 0));
+        roundTrip(sock, 2);
+      }
+      assertEquals(1, pool.getConnectionsCreated());
+      assertEquals(1, pool.getConnectionsReused());
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link AFServerSocket#acceptBatch(int)} and
+ * {@link AFServerSocketChannel#acceptBatch(int)}.
+ */
+@AFSocketCapabilityRequirement(AFSocketCapability.CAPABILITY_UNIX_DOMAIN)
+public class AcceptBatchTest {
+  private static final int NUM_CLIENTS = 5;
+
+  @Test
+  public void testAcceptBatch() throws Exception {
+    AFUNIXSocketAddress addr = AFUNIXSocketAddress.ofNewTempFile();
+    List<AFUNIXSocket> clients = new ArrayList<>();
+    List<AFSocket<AFUNIXSocketAddress>> accepted = new ArrayList<>();
+    try (AFUNIXServerSocket server = AFUNIXServerSocket.bindOn(addr)) {
+      assertThrows(IllegalArgumentException.class, () -> server.acceptBatch(0));
+
+      for (int i = 0; i < NUM_CLIENTS; i++) {
+        clients.add(AFUNIXSocket.connectTo(addr));
+      }
+      // all connections are pending, so a single blocking call accepts them all
+      accepted.addAll(server.acceptBatch(NUM_CLIENTS + 1));
+      assertEquals(NUM_CLIENTS, accepted.size());
+
+      for (int i = 0; i < NUM_CLIENTS; i++) {
+        clients.get(i).getOutputStream().write(i);
+        assertEquals(i, accepted.get(i).getInputStream().read());
+      }
+    } finally {
+      for (AFSocket<?> s : accepted) {
+        s.close();
+      }
+      for (AFSocket<?> s : clients) {
+        s.close();
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentBlockingAccepts() throws Exception {
+    final int numClients = 200;
+    AFUNIXSocketAddress addr = AFUNIXSocketAddress.ofNewTempFile();
+    List<AFSocket<?>> accepted = Collections.synchronizedList(new ArrayList<>());
+    List<AFUNIXSocket> clients = new ArrayList<>();
+    AtomicInteger emptyResults = new AtomicInteger();
+    try (AFUNIXServerSocket server = AFUNIXServerSocket.bindOn(addr)) {
+      Thread batchAcceptor = new Thread(() -> {
+        try {
+          while (accepted.size() < numClients) {
+            List<AFSocket<AFUNIXSocketAddress>> batch = server.acceptBatch(NUM_CLIENTS);
+            if (batch.isEmpty()) {
+              emptyResults.incrementAndGet();
+            }
+            accepted.addAll(batch);
+          }
+        } catch (IOException e) {
+          // server closed
+        }
+      });
+      Thread acceptor = new Thread(() -> {
+        try {
+          while (accepted.size() < numClients) {
+            AFUNIXSocket s = server.accept();
+            if (s == null) {
+              emptyResults.incrementAndGet();
+            } else {
+              accepted.add(s);
+            }
+          }
+        } catch (IOException e) {
+          // server closed
+        }
+      });
+      batchAcceptor.start();
+      acceptor.start();
+
+      for (int i = 0; i < numClients; i++) {
+        clients.add(AFUNIXSocket.connectTo(addr));
+      }
+      long deadline = System.currentTimeMillis() + 5000;
+      while (accepted.size() < numClients && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(numClients, accepted.size());
+      // a blocking accept must not return empty-handed
+      assertEquals(0, emptyResults.get());
+
+      server.close();
+      batchAcceptor.join(5000);
+      acceptor.join(5000);
+    } finally {
+      synchronized (accepted) {
+        for (AFSocket<?> s : accepted) {
+          s.close();
+        }
+      }
+      for (AFSocket<?> s : clients) {
+        s.close();
+      }
+    }
+  }
+
+  @Test
+  public void testAcceptBatchNonBlocking() throws Exception {
+    AFUNIXSocketAddress addr = AFUNIXSocketAddress.ofNewTempFile();
+    try (AFUNIXServerSocketChannel server = AFUNIXServerSocketChannel.open()) {
+      server.bind(addr);
+      server.configureBlocking(false);
+      assertTrue(server.acceptBatch(NUM_CLIENTS).isEmpty());
+      // the batch size is capped
+      assertTrue(server.acceptBatch(Integer.MAX_VALUE).isEmpty());
+
+      try (AFUNIXSocketChannel client = AFUNIXSocketChannel.open(addr)) {
+        List<AFSocketChannel<AFUNIXSocketAddress>> batch;
+        do {
+          batch = server.acceptBatch(NUM_CLIENTS);
+        } while (batch.isEmpty());
+        assertEquals(1, batch.size());
+
+        try (AFSocketChannel<AFUNIXSocketAddress> sc = batch.get(0)) {
+          assertTrue(sc.isBlocking());
+          client.write(ByteBuffer.wrap(new byte[] {42}));
+          ByteBuffer bb = ByteBuffer.allocate(1);
+          sc.read(bb);
+          assertEquals(42, bb.get(0));
+        }
+        assertTrue(server.acceptBatch(NUM_CLIENTS).isEmpty());
+      }
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+@AFSocketCapabilityRequirement(AFSocketCapability.CAPABILITY_UNIX_DOMAIN)
+public class BusyPollTest {
+  @Test
+  public void testAdaptiveBudget() throws Exception {
+    AdaptiveBusyPoll bp = new AdaptiveBusyPoll(16);
+    assertEquals(16, bp.getMaxSpinMicros());
+    assertEquals(16000, bp.spinBudget());
+
+    bp.miss();
+    assertEquals(8000, bp.spinBudget());
+    bp.hit(5000);
+    assertEquals(10000, bp.spinBudget());
+    bp.hit(100000);
+    assertEquals(16000, bp.spinBudget());
+
+    // keep missing: the budget shrinks, then spinning is paused for a while
+    for (int i = 0; i < 5; i++) {
+      bp.miss();
+    }
+    int paused = 0;
+    while (bp.spinBudget() == 0) {
+      paused++;
+    }
+    assertTrue(paused > 0);
+    assertEquals(16000, bp.spinBudget());
+
+    assertThrows(IllegalArgumentException.class, () -> new AdaptiveBusyPoll(0));
+  }
+
+  @Test
+  public void testPingPong() throws Exception {
+    try (AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      AFSocket<?> client = pair.getSocket1().socket();
+      AFSocket<?> server = pair.getSocket2().socket();
+      client.setBusyPollMicros(50);
+      server.setBusyPollMicros(50);
+      assertEquals(50, client.getBusyPollMicros());
+      assertThrows(IllegalArgumentException.class, () -> client.setBusyPollMicros(-1));
+
+      Thread echo = new Thread(() -> {
+        try (InputStream in = server.getInputStream();
+            OutputStream out = server.getOutputStream()) {
+          int b;
+          while ((b = in.read()) != -1) {
+            out.write(b);
+          }
+        } catch (Exception e) {
+          // ignore
+        }
+      });
+      echo.start();
+
+      InputStream in = client.getInputStream();
+      OutputStream out = client.getOutputStream();
+      byte[] buf = new byte[1];
+      for (int i = 0; i < 1000; i++) {
+        out.write(i);
+        if ((i & 1) == 0) {
+          assertEquals(i & 0xFF, in.read());
+        } else {
+          assertEquals(1, in.read(buf));
+          assertEquals(i & 0xFF, buf[0] & 0xFF);
+        }
+      }
+      AFIOMetrics metrics = client.getIOMetrics();
+      if (metrics != null) {
+        assertTrue(metrics.getBusyPollHits() + metrics.getBusyPollMisses() > 0);
+      }
+
+      client.shutdownOutput();
+      assertEquals(-1, in.read());
+      echo.join();
+    }
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    try (AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      AFSocket<?> client = pair.getSocket1().socket();
+      client.setBusyPollMicros(100);
+      client.setSoTimeout(50);
+      assertThrows(SocketTimeoutException.class, () -> client.getInputStream().read());
+    }
+  }
+}
@@ -37,6 +37,8 @@ import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.junit.jupiter.api.Test;
 import org.opentest4j.AssertionFailedError;
@@ -219,6 +221,115 @@ public abstract class DatagramSocketTest<A extends SocketAddress> extends Socket
     }
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testChannelSendReceiveBatch() throws Exception {
+    AFSocketAddress ds1Addr = (AFSocketAddress) newTempAddressForDatagram();
+    AFSocketAddress ds2Addr = (AFSocketAddress) newTempAddressForDatagram();
+    try (AFDatagramChannel<AFSocketAddress> dc1 =
+        (AFDatagramChannel<AFSocketAddress>) newDatagramChannel(); //
+        AFDatagramChannel<AFSocketAddress> dc2 =
+            (AFDatagramChannel<AFSocketAddress>) newDatagramChannel()) {
+      dc1.bind(ds1Addr);
+      dc2.bind(ds2Addr);
+
+      ByteBuffer[] srcs = new ByteBuffer[4];
+      SocketAddress[] targets = new SocketAddress[srcs.length];
+      for (int i = 0; i < srcs.length; i++) {
+        srcs[i] = (i % 2 == 0) ? ByteBuffer.allocate(64) : ByteBuffer.allocateDirect(64);
+        for (int j = 0; j <= i; j++) {
+          srcs[i].putInt(i);
+        }
+        srcs[i].flip();
+        targets[i] = ds2Addr;
+      }
+      assertEquals(srcs.length, dc1.send(srcs, targets));
+      for (ByteBuffer bb : srcs) {
+        assertFalse(bb.hasRemaining());
+      }
+
+      ByteBuffer[] dsts = new ByteBuffer[srcs.length + 2];
+      for (int i = 0; i < dsts.length; i++) {
+        dsts[i] = ByteBuffer.allocateDirect(64);
+      }
+      AFSocketAddress[] senders = new AFSocketAddress[dsts.length];
+
+      int received = 0;
+      while (received < srcs.length) {
+        received += dc2.receive(dsts, received, dsts.length - received, senders);
+      }
+      assertEquals(srcs.length, received);
+      for (int i = 0; i < srcs.length; i++) {
+        assertEquals(4 * (i + 1), dsts[i].position());
+        assertEquals(i, dsts[i].getInt(0));
+        assertExpectedSocketAddressFromDatagramChannelReceive(ds1Addr, senders[i]);
+      }
+      assertNull(senders[srcs.length]);
+      assertEquals(0, dsts[srcs.length].position());
+
+      dc2.configureBlocking(false);
+      assertEquals(0, dc2.receive(new ByteBuffer[] {ByteBuffer.allocate(64)}, null));
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testChannelSendReceiveBatchLargeHeapBuffers() throws Exception {
+    AFSocketAddress ds1Addr = (AFSocketAddress) newTempAddressForDatagram();
+    AFSocketAddress ds2Addr = (AFSocketAddress) newTempAddressForDatagram();
+    try (AFDatagramChannel<AFSocketAddress> dc1 =
+        (AFDatagramChannel<AFSocketAddress>) newDatagramChannel(); //
+        AFDatagramChannel<AFSocketAddress> dc2 =
+            (AFDatagramChannel<AFSocketAddress>) newDatagramChannel()) {
+      dc1.bind(ds1Addr);
+      dc2.bind(ds2Addr);
+      dc1.connect(ds2Addr);
+
+      // together, the datagrams exceed the thread-local staging buffer (1 MB by default)
+      final int size = 32 * 1024;
+      ByteBuffer[] srcs = new ByteBuffer[48];
+      for (int i = 0; i < srcs.length; i++) {
+        srcs[i] = ByteBuffer.allocate(size);
+        while (srcs[i].hasRemaining()) {
+          srcs[i].put((byte) i);
+        }
+        srcs[i].flip();
+      }
+      ByteBuffer[] dsts = new ByteBuffer[srcs.length];
+      for (int i = 0; i < dsts.length; i++) {
+        dsts[i] = ByteBuffer.allocate(size + 1);
+      }
+
+      CompletableFuture<Integer> sent = CompletableFuture.supplyAsync(() -> {
+        int numSent = 0;
+        try {
+          while (numSent < srcs.length) {
+            int n = dc1.send(srcs, numSent, srcs.length - numSent, null);
+            assertTrue(n > 0);
+            for (int i = numSent; i < srcs.length; i++) {
+              // only the buffers that were actually sent are marked as such
+              assertEquals(i < numSent + n, !srcs[i].hasRemaining());
+            }
+            numSent += n;
+          }
+        } catch (IOException e) {
+          throw new CompletionException(e);
+        }
+        return numSent;
+      });
+
+      int received = 0;
+      while (received < dsts.length) {
+        received += dc2.receive(dsts, received, dsts.length - received, null);
+      }
+      assertEquals(srcs.length, (int) sent.get());
+      for (int i = 0; i < dsts.length; i++) {
+        assertEquals(size, dsts[i].position(), "Datagram " + i + " was truncated");
+        assertEquals((byte) i, dsts[i].get(size - 1));
+      }
+    }
+  }
+
   @SuppressWarnings("PMD.PreserveStackTrace")
   protected void assertExpectedSocketAddressFromDatagramChannelReceive(SocketAddress expected,
      SocketAddress received) {
@@ -76,6 +76,43 @@ public final class PipeTest {
     }
   }
 
+  /**
+   * Tests scatter/gather writing/reading, with direct and heap buffers.
+   *
+   * @throws IOException on error.
+   */
+  @Test
+  public void testPipeScatterGather() throws IOException {
+    AFPipe pipe = AFUNIXSelectorProvider.provider().openPipe();
+    try (SinkChannel sink = pipe.sink(); //
+        SourceChannel source = pipe.source()) {
+      for (boolean direct : new boolean[] {true, false}) {
+        ByteBuffer out1 = direct ? ByteBuffer.allocateDirect(4) : ByteBuffer.allocate(4);
+        out1.putInt(0x04030201);
+        out1.flip();
+        ByteBuffer out2 = ByteBuffer.allocateDirect(4);
+        out2.putInt(0x08070605);
+        out2.flip();
+
+        assertEquals(8, sink.write(new ByteBuffer[] {out1, out2}));
+
+        ByteBuffer in1 = ByteBuffer.allocateDirect(2);
+        ByteBuffer in2 = direct ? ByteBuffer.allocateDirect(6) : ByteBuffer.allocate(6);
+        long nRead = 0;
+        do {
+          nRead += source.read(new ByteBuffer[] {in1, in2});
+        } while (nRead < 8);
+        assertEquals(8, nRead);
+
+        in1.flip();
+        in2.flip();
+        assertEquals(0x0403, in1.getShort());
+        assertEquals(0x0201, in2.getShort());
+        assertEquals(0x08070605, in2.getInt());
+      }
+    }
+  }
+
   /**
    * Tests concurrent writing/reading from the pipe.
    *
@@ -60,6 +60,29 @@ public abstract class SelectorTest<A extends SocketAddress> extends SocketTestBa
     super(asp);
   }
 
+  /**
+   * Opens the {@link Selector} to be tested.
+   *
+   * @return The selector.
+   * @throws IOException on error.
+   */
+  protected Selector openSelector() throws IOException {
+    return selectorProvider().openSelector();
+  }
+
+  /**
+   * Opens an epoll-based {@link Selector} for the current socket domain, regardless of the
+   * {@code org.newsclub.net.unix.selector.epoll} system property.
+   *
+   * @return The selector.
+   * @throws IOException on error.
+   */
+  protected final Selector openEpollSelector() throws IOException {
+    AFSelector sel = new AFSelector((AFSelectorProvider<?>) selectorProvider(), true);
+    assertTrue(sel.isEpoll());
+    return sel;
+  }
+
   private static void assertChangeToNonBlocking(ServerSocketChannel as) throws IOException {
     assertTrue(as.isBlocking());
     as.configureBlocking(false);
@@ -82,7 +105,7 @@ public abstract class SelectorTest<A extends SocketAddress> extends SocketTestBa
   @Test
   public void testNonBlockingAccept() throws IOException, InterruptedException {
     assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
-      Selector sscSel = selectorProvider().openSelector();
+      Selector sscSel = openSelector();
       assertTrue(sscSel.selectedKeys().isEmpty());
 
       try (ServerSocketChannel ssc = selectorProvider().openServerSocketChannel()) {
@@ -127,7 +150,7 @@ public abstract class SelectorTest<A extends SocketAddress> extends SocketTestBa
 
   @Test
   public void testCancelSelect() throws Exception {
-    Selector selector = selectorProvider().openSelector();
+    Selector selector = openSelector();
     CompletableFuture<Integer> cf = new CompletableFuture<>();
 
     new Thread() {
@@ -157,6 +180,38 @@ public abstract class SelectorTest<A extends SocketAddress> extends SocketTestBa
     }
   }
 
+  @Test
+  public void testWakeupCoalesced() throws Exception {
+    try (Selector selector = openSelector()) {
+      assertWakeupCoalesced(selector);
+    }
+    if (AFSocket.supports(AFSocketCapability.CAPABILITY_EPOLL)) {
+      try (Selector selector = openEpollSelector()) {
+        assertWakeupCoalesced(selector);
+      }
+    }
+  }
+
+  private static void assertWakeupCoalesced(Selector selector) throws IOException {
+    // repeated wakeups before select only cause the next select operation to return immediately
+    for (int i = 0; i < 1000; i++) {
+      selector.wakeup();
+    }
+    assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertEquals(0, selector.select()));
+
+    long time = System.nanoTime();
+    assertEquals(0, selector.select(100));
+    assertTrue(System.nanoTime() - time >= TimeUnit.MILLISECONDS.toNanos(90),
+        "Wakeup should have been consumed");
+
+    selector.wakeup();
+    assertEquals(0, selector.selectNow());
+    time = System.nanoTime();
+    assertEquals(0, selector.select(100));
+    assertTrue(System.nanoTime() - time >= TimeUnit.MILLISECONDS.toNanos(90),
+        "Wakeup should have been consumed by selectNow");
+  }
+
   private Future<Integer> newHelloClient(SocketAddress serverAddr, Semaphore sema) {
     return Executors.newFixedThreadPool(1).submit(() -> {
       try (Socket sock = connectTo(serverAddr); //
@@ -242,7 +297,7 @@ public abstract class SelectorTest<A extends SocketAddress> extends SocketTestBa
       bindServerSocket(server, newTempAddress());
       server.configureBlocking(false);
 
-      Selector selector = provider.openSelector();
+      Selector selector = openSelector();
       server.register(selector, SelectionKey.OP_ACCEPT);
 
       final Semaphore mayCloseSema = new Semaphore(0);
@@ -357,7 +412,7 @@ public abstract class SelectorTest<A extends SocketAddress> extends SocketTestBa
   public void testClosedSelectorSelect() throws Exception {
     assertThrows(ClosedSelectorException.class, () -> {
       @SuppressWarnings("resource")
-      Selector sel = selectorProvider().openSelector();
+      Selector sel = openSelector();
       sel.close();
       sel.select();
     });
@@ -366,7 +421,7 @@ public abstract class SelectorTest<A extends SocketAddress> extends SocketTestBa
   @Test
   public void testClosedSelectorWakeup() throws Exception {
     @SuppressWarnings("resource")
-    Selector sel = selectorProvider().openSelector();
+    Selector sel = openSelector();
     sel.close();
     assertEquals(sel, sel.wakeup());
   }
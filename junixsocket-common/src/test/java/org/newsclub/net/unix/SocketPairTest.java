@@ -17,16 +17,32 @@
  */
 package org.newsclub.net.unix;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
 import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.junit.jupiter.api.Test;
 import org.opentest4j.AssertionFailedError;
@@ -109,6 +125,187 @@ public abstract class SocketPairTest<A extends SocketAddress> extends SocketTest
     }
   }
 
+  @Test
+  public void testNonBlockingEndOfStream() throws Exception {
+    try (CloseablePair<? extends SocketChannel> pair = newSocketPair()) {
+      SocketChannel sc1 = pair.getFirst();
+      SocketChannel sc2 = pair.getSecond();
+      sc2.configureBlocking(false);
+
+      ByteBuffer bb = ByteBuffer.allocate(16);
+      assertEquals(0, sc2.read(bb), "No data available yet");
+
+      sc1.write(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+      sc1.close();
+
+      // remaining data is read first; end of stream is reported as -1, not as "no data" (0)
+      int count;
+      while ((count = sc2.read(bb)) == 0) {
+        Thread.yield();
+      }
+      assertEquals(3, count);
+      assertEquals(-1, sc2.read(bb));
+      assertEquals(-1, sc2.read(bb));
+    }
+  }
+
+  @Test
+  public void testReadTimeoutIsNotEndOfStream() throws Exception {
+    try (CloseablePair<? extends SocketChannel> pair = newSocketPair()) {
+      SocketChannel sc1 = pair.getFirst();
+      Socket s2 = pair.getSecond().socket();
+      s2.setSoTimeout(100);
+
+      InputStream in = s2.getInputStream();
+      assertThrows(SocketTimeoutException.class, in::read);
+
+      // the connection is still usable
+      sc1.write(ByteBuffer.wrap(new byte[] {42}));
+      assertEquals(42, in.read());
+
+      sc1.close();
+      assertEquals(-1, in.read());
+    }
+  }
+
+  @Test
+  public void testSocketPairScatterGather() throws Exception {
+    CloseablePair<? extends SocketChannel> pair = newSocketPair();
+
+    SocketChannel sc1 = pair.getFirst();
+    SocketChannel sc2 = pair.getSecond();
+
+    for (boolean direct : new boolean[] {true, false}) {
+      ByteBuffer header = direct ? ByteBuffer.allocateDirect(4) : ByteBuffer.allocate(4);
+      header.putInt(0x04030201);
+      header.flip();
+      ByteBuffer payload = ByteBuffer.allocateDirect(8);
+      payload.putLong(0x0C0B0A0908070605L);
+      payload.flip();
+
+      assertEquals(12, sc1.write(new ByteBuffer[] {ByteBuffer.allocate(0), header, payload}, 1,
+          2));
+      assertEquals(0, header.remaining());
+      assertEquals(0, payload.remaining());
+
+      ByteBuffer in1 = direct ? ByteBuffer.allocateDirect(4) : ByteBuffer.allocate(4);
+      ByteBuffer in2 = ByteBuffer.allocateDirect(4096);
+      long numRead = 0;
+      do {
+        numRead += sc2.read(new ByteBuffer[] {in1, in2});
+      } while (numRead < 12);
+      assertEquals(12, numRead);
+
+      in1.flip();
+      in2.flip();
+      assertEquals(0x04030201, in1.getInt());
+      assertEquals(0x0C0B0A0908070605L, in2.getLong());
+    }
+  }
+
+  @Test
+  public void testSocketPairTransferFile() throws Exception {
+    CloseablePair<? extends SocketChannel> pair = newSocketPair();
+    if (!(pair.getFirst() instanceof AFSocketChannel)) {
+      return;
+    }
+    AFSocketChannel<?> sc1 = (AFSocketChannel<?>) pair.getFirst();
+    AFSocketChannel<?> sc2 = (AFSocketChannel<?>) pair.getSecond();
+
+    byte[] data = new byte[1024 * 1024 + 17];
+    new Random(0).nextBytes(data);
+    Path src = Files.createTempFile("jux", ".src");
+    Path dst = Files.createTempFile("jux", ".dst");
+    try {
+      Files.write(src, data);
+      Files.write(dst, new byte[100]);
+
+      // FileChannel region -> socket -> FileChannel region
+      try (FileChannel in = FileChannel.open(src); FileChannel out = FileChannel.open(dst,
+          StandardOpenOption.WRITE)) {
+        CompletableFuture<Long> sent = CompletableFuture.supplyAsync(() -> {
+          try {
+            return sc1.transferFrom(in, 10, data.length - 10);
+          } catch (IOException e) {
+            throw new CompletionException(e);
+          }
+        });
+        assertEquals(data.length - 10, sc2.transferTo(out, 100, data.length - 10));
+        assertEquals(data.length - 10, (long) sent.get());
+        assertEquals(0, in.position());
+        assertEquals(0, out.position());
+      }
+      byte[] received = Files.readAllBytes(dst);
+      assertArrayEquals(Arrays.copyOfRange(data, 10, data.length), Arrays.copyOfRange(received,
+          100, received.length));
+
+      // FileInputStream -> socket -> FileOutputStream
+      CompletableFuture<Long> sent = CompletableFuture.supplyAsync(() -> {
+        try (FileInputStream in = new FileInputStream(src.toFile())) {
+          long n = ((AFOutputStream) sc1.socket().getOutputStream()).transferFrom(in);
+          sc1.shutdownOutput();
+          return n;
+        } catch (IOException e) {
+          throw new CompletionException(e);
+        }
+      });
+      try (FileOutputStream out = new FileOutputStream(dst.toFile())) {
+        assertEquals(data.length, sc2.socket().getInputStream().transferTo(out));
+      }
+      assertEquals(data.length, (long) sent.get());
+      assertArrayEquals(data, Files.readAllBytes(dst));
+    } finally {
+      Files.deleteIfExists(src);
+      Files.deleteIfExists(dst);
+    }
+  }
+
+  @Test
+  public void testSocketPairTransferFileNonBlocking() throws Exception {
+    try (CloseablePair<? extends SocketChannel> pair = newSocketPair()) {
+      if (!(pair.getFirst() instanceof AFSocketChannel)) {
+        return;
+      }
+      AFSocketChannel<?> sc1 = (AFSocketChannel<?>) pair.getFirst();
+      AFSocketChannel<?> sc2 = (AFSocketChannel<?>) pair.getSecond();
+      sc1.configureBlocking(false);
+      sc2.configureBlocking(false);
+
+      byte[] data = new byte[4 * 1024 * 1024];
+      new Random(0).nextBytes(data);
+      Path src = Files.createTempFile("jux", ".src");
+      Path dst = Files.createTempFile("jux", ".dst");
+      try {
+        Files.write(src, data);
+
+        try (FileChannel in = FileChannel.open(src); FileChannel out = FileChannel.open(dst,
+            StandardOpenOption.WRITE)) {
+          assertEquals(0, sc2.transferTo(out, 0, data.length), "No data available yet");
+
+          // the socket buffer cannot hold the entire file, so only a short count is sent
+          long sent = sc1.transferFrom(in, 0, data.length);
+          assertTrue(sent < data.length, "Expected a short count: " + sent);
+
+          long received = 0;
+          while (received < data.length) {
+            long n = sc2.transferTo(out, received, data.length - received);
+            received += n;
+            if (sent < data.length) {
+              sent += sc1.transferFrom(in, sent, data.length - sent);
+            } else if (n == 0) {
+              Thread.yield();
+            }
+          }
+          assertEquals(data.length, sent);
+        }
+        assertArrayEquals(data, Files.readAllBytes(dst));
+      } finally {
+        Files.deleteIfExists(src);
+        Files.deleteIfExists(dst);
+      }
+    }
+  }
+
   @Test
   @AFSocketCapabilityRequirement(AFSocketCapability.CAPABILITY_UNIX_DATAGRAMS)
   public void testDatagramPair() throws Exception {
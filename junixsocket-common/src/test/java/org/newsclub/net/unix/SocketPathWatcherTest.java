@@ -0,0 +1,110 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+public class SocketPathWatcherTest {
+  @Test
+  public void testInvalidatedUponDelete() throws Exception {
+    Path dir = Files.createTempDirectory("jux");
+    File file = new File(dir.toFile(), "test.sock");
+    Files.createFile(file.toPath());
+
+    SocketPathWatcher watcher = new SocketPathWatcher();
+    try {
+      SocketPathWatcher.Watch watch = watcher.watch0(file);
+      assertNotNull(watch);
+      assertFalse(watch.isVerified());
+      watch.markVerified();
+      assertTrue(watch.isVerified());
+
+      // other files in the same directory don't matter
+      Files.createFile(new File(dir.toFile(), "other.sock").toPath());
+      Thread.sleep(100);
+      assertTrue(watch.isVerified());
+
+      Files.delete(file.toPath());
+      for (int i = 0; i < 100 && watch.isVerified(); i++) {
+        Thread.sleep(50);
+      }
+      assertFalse(watch.isVerified());
+
+      // the inode needs to be checked from now on
+      watch.markVerified();
+      assertFalse(watch.isVerified());
+
+      watch.close();
+    } finally {
+      watcher.close();
+      Files.deleteIfExists(new File(dir.toFile(), "other.sock").toPath());
+      Files.deleteIfExists(dir);
+    }
+  }
+
+  @Test
+  public void testRecheckedPeriodically() throws Exception {
+    Path dir = Files.createTempDirectory("jux");
+    File file = new File(dir.toFile(), "test.sock");
+
+    SocketPathWatcher watcher = new SocketPathWatcher();
+    try {
+      SocketPathWatcher.Watch watch = watcher.watch0(file);
+      assertNotNull(watch);
+      watch.markVerified();
+      assertTrue(watch.isVerified());
+
+      // e.g., the parent directory may have been renamed, which is not reported
+      Thread.sleep(1100);
+      assertFalse(watch.isVerified());
+      watch.markVerified();
+      assertTrue(watch.isVerified());
+
+      watch.close();
+    } finally {
+      watcher.close();
+      Files.deleteIfExists(dir);
+    }
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    Path dir = Files.createTempDirectory("jux");
+    File file = new File(dir.toFile(), "test.sock");
+
+    SocketPathWatcher watcher = new SocketPathWatcher();
+    try {
+      SocketPathWatcher.Watch watch = watcher.watch0(file);
+      assertNotNull(watch);
+      watch.markVerified();
+      watch.close();
+      assertFalse(watch.isVerified());
+    } finally {
+      watcher.close();
+      Files.deleteIfExists(dir);
+    }
+  }
+}
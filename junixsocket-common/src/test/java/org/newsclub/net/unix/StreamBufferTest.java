@@ -0,0 +1,162 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+@AFSocketCapabilityRequirement(AFSocketCapability.CAPABILITY_UNIX_DOMAIN)
+public class StreamBufferTest {
+  @Test
+  public void testSingleBytes() throws Exception {
+    try (AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      AFSocket<?> s1 = pair.getSocket1().socket();
+      AFSocket<?> s2 = pair.getSocket2().socket();
+      s1.setStreamBufferSize(16);
+      s2.setStreamBufferSize(16);
+      assertEquals(16, s1.getStreamBufferSize());
+
+      AFOutputStream out = s1.getOutputStream();
+      AFInputStream in = s2.getInputStream();
+
+      for (int i = 0; i < 10; i++) {
+        out.write(i);
+      }
+      assertEquals(0, in.available()); // not flushed yet
+      out.flush();
+
+      assertEquals(0, in.peek());
+      assertEquals(10, in.available());
+      for (int i = 0; i < 10; i++) {
+        assertEquals(i, in.peek());
+        assertEquals(i, in.read());
+      }
+      assertEquals(0, in.available());
+    }
+  }
+
+  @Test
+  public void testWrapAroundAndBypass() throws Exception {
+    try (AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      AFSocket<?> s1 = pair.getSocket1().socket();
+      AFSocket<?> s2 = pair.getSocket2().socket();
+      s1.setStreamBufferSize(7);
+      s2.setStreamBufferSize(5);
+
+      byte[] data = new byte[1000];
+      for (int i = 0; i < data.length; i++) {
+        data[i] = (byte) i;
+      }
+
+      AFOutputStream out = s1.getOutputStream();
+      int off = 0;
+      for (int len = 1; off + len <= data.length; len = (len % 11) + 1) {
+        out.write(data, off, len);
+        off += len;
+      }
+      out.write(data, off, data.length - off);
+      s1.shutdownOutput(); // flushes
+
+      AFInputStream in = s2.getInputStream();
+      byte[] received = new byte[data.length];
+      int pos = 0;
+      int count;
+      int len = 1;
+      while ((count = in.read(received, pos, Math.min(len, received.length - pos))) > 0) {
+        pos += count;
+        len = (len % 13) + 1;
+        if (pos < received.length && (pos % 3) == 0) {
+          received[pos++] = (byte) in.read();
+        }
+      }
+      assertEquals(data.length, pos);
+      assertArrayEquals(data, received);
+      assertEquals(-1, in.read());
+      assertEquals(-1, in.peek());
+    }
+  }
+
+  @Test
+  public void testUnbufferedPeek() throws Exception {
+    try (AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      AFOutputStream out = pair.getSocket1().socket().getOutputStream();
+      AFInputStream in = pair.getSocket2().socket().getInputStream();
+
+      out.write(new byte[] {42, 43});
+      assertEquals(42, in.peek());
+      assertEquals(42, in.read());
+      assertEquals(43, in.peek());
+      assertEquals(43, in.read());
+      out.close();
+      assertEquals(-1, in.peek());
+    }
+  }
+
+  @Test
+  public void testNonBlockingPeek() throws Exception {
+    try (AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      pair.getSocket2().configureBlocking(false);
+      AFOutputStream out = pair.getSocket1().socket().getOutputStream();
+      AFInputStream in = pair.getSocket2().socket().getInputStream();
+
+      assertEquals(AFInputStream.NO_DATA_AVAILABLE, in.peek());
+
+      out.write(42);
+      int b;
+      while ((b = in.peek()) == AFInputStream.NO_DATA_AVAILABLE) {
+        Thread.yield();
+      }
+      assertEquals(42, b);
+      assertEquals(42, in.read());
+      assertEquals(AFInputStream.NO_DATA_AVAILABLE, in.peek());
+
+      out.close();
+      while ((b = in.peek()) == AFInputStream.NO_DATA_AVAILABLE) {
+        Thread.yield();
+      }
+      assertEquals(-1, b);
+    }
+  }
+
+  @Test
+  public void testReadTimeout() throws Exception {
+    assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+      try (AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+        AFSocket<?> s2 = pair.getSocket2().socket();
+        s2.setStreamBufferSize(64);
+        s2.setSoTimeout(50);
+        assertThrows(SocketTimeoutException.class, () -> s2.getInputStream().read());
+      }
+    });
+  }
+
+  @Test
+  public void testInvalidSize() throws IOException {
+    try (AFUNIXSocket socket = AFUNIXSocket.newInstance()) {
+      assertThrows(IllegalArgumentException.class, () -> socket.setStreamBufferSize(-1));
+    }
+  }
+}
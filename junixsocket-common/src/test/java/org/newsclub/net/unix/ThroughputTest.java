@@ -73,8 +73,12 @@ import com.kohlschutter.util.SystemPropertyUtil;
  * <ul>
  * <li><code>org.newsclub.net.unix.throughput-test.enabled</code> (0/1, default: 1)</li>
  * <li><code>org.newsclub.net.unix.throughput-test.payload-size</code> (bytes, e.g., 8192)</li>
+ * <li><code>org.newsclub.net.unix.throughput-test.payload-size.large</code> (bytes, default:
+ * 65536; used for the large-payload byte[] stream test)</li>
  * <li><code>org.newsclub.net.unix.throughput-test.payload-size.datagram</code> (bytes, e.g., 2048;
  * defaults to value specified with "payload-size" above)</li>
+ * <li><code>org.newsclub.net.unix.throughput-test.datagram-batch-size</code> (number of datagrams
+ * per batch send/receive call, default: 32)</li>
  * <li><code>org.newsclub.net.unix.throughput-test.seconds</code> (default: 0)</li>
  * </ul>
  *
@@ -88,8 +92,12 @@ public abstract class ThroughputTest<A extends SocketAddress> extends SocketTest
       "org.newsclub.net.unix.throughput-test.enabled", 1);
   protected static final int PAYLOAD_SIZE = SystemPropertyUtil.getIntSystemProperty(
       "org.newsclub.net.unix.throughput-test.payload-size", 2048); // 8192 is much faster
+  protected static final int PAYLOAD_SIZE_LARGE = SystemPropertyUtil.getIntSystemProperty(
+      "org.newsclub.net.unix.throughput-test.payload-size.large", 65536);
   protected static final int PAYLOAD_SIZE_DATAGRAM = SystemPropertyUtil.getIntSystemProperty(
       "org.newsclub.net.unix.throughput-test.payload-size.datagram", PAYLOAD_SIZE);
+  protected static final int DATAGRAM_BATCH_SIZE = SystemPropertyUtil.getIntSystemProperty(
+      "org.newsclub.net.unix.throughput-test.datagram-batch-size", 32);
   protected static final int NUM_SECONDS = SystemPropertyUtil.getIntSystemProperty(
       "org.newsclub.net.unix.throughput-test.seconds", 0);
   protected static final int GRACE_TIME_NUM_SECONDS = SystemPropertyUtil.getIntSystemProperty(
@@ -121,11 +129,29 @@ public abstract class ThroughputTest<A extends SocketAddress> extends SocketTest
     assumeTrue(ENABLED > 0, "Throughput tests are disabled");
     assumeTrue(PAYLOAD_SIZE > 0, "Payload must be positive");
 
+    runTestSocket(PAYLOAD_SIZE);
+  }
+
+  /**
+   * Measures byte[]-based stream throughput with a large payload, which exercises the native
+   * buffer handling beyond small, stack-allocated reads and writes.
+   *
+   * @throws Exception on error.
+   */
+  @Test
+  public void testSocketLargePayload() throws Exception {
+    assumeTrue(ENABLED > 0, "Throughput tests are disabled");
+    assumeTrue(PAYLOAD_SIZE_LARGE > 0, "Payload must be positive");
+
+    runTestSocket(PAYLOAD_SIZE_LARGE);
+  }
+
+  private void runTestSocket(int payloadSize) throws Exception {
     assertTimeoutPreemptively(Duration.ofSeconds(NUM_SECONDS + GRACE_TIME_NUM_SECONDS), () -> {
       try (ServerThread serverThread = new ServerThread() {
         @Override
         protected void handleConnection(final Socket sock) throws IOException {
-          byte[] buf = new byte[PAYLOAD_SIZE];
+          byte[] buf = new byte[payloadSize];
           int read;
 
           try (InputStream inputStream = sock.getInputStream();
@@ -144,7 +170,7 @@ public abstract class ThroughputTest<A extends SocketAddress> extends SocketTest
         });
 
         try (Socket sock = connectTo(serverThread.getServerAddress())) {
-          byte[] buf = createTestData(PAYLOAD_SIZE);
+          byte[] buf = createTestData(payloadSize);
 
           try (InputStream inputStream = sock.getInputStream();
               OutputStream outputStream = sock.getOutputStream()) {
@@ -177,7 +203,7 @@ public abstract class ThroughputTest<A extends SocketAddress> extends SocketTest
             time = System.currentTimeMillis() - time;
 
             reportResults(stbTestType() + " byte[]", ((1000f * readTotal / time) / 1000f / 1000f)
-                + " MB/s for payload size " + PAYLOAD_SIZE);
+                + " MB/s for payload size " + payloadSize);
           }
         }
       }
@@ -469,6 +495,165 @@ public abstract class ThroughputTest<A extends SocketAddress> extends SocketTest
     }
   }
 
+  /**
+   * Measures datagram throughput when sending and receiving multiple datagrams per call (Linux:
+   * sendmmsg/recvmmsg), for comparison with the per-packet results of
+   * {@link #testDatagramChannel()}.
+   *
+   * @throws Exception on error.
+   */
+  @Test
+  @AFSocketCapabilityRequirement(AFSocketCapability.CAPABILITY_UNIX_DATAGRAMS)
+  public void testDatagramChannelBatch() throws Exception {
+    try {
+      assertTimeoutPreemptively(Duration.ofSeconds(NUM_SECONDS + GRACE_TIME_NUM_SECONDS), () -> {
+        testDatagramChannelBatch(false);
+      });
+    } catch (JUnitException e) {
+      // Ignore timeout failure (this is a throughput test only)
+      TestStackTraceUtil.printStackTrace(e);
+    }
+  }
+
+  @Test
+  @AFSocketCapabilityRequirement(AFSocketCapability.CAPABILITY_UNIX_DATAGRAMS)
+  public void testDatagramChannelBatchDirect() throws Exception {
+    try {
+      assertTimeoutPreemptively(Duration.ofSeconds(NUM_SECONDS + GRACE_TIME_NUM_SECONDS), () -> {
+        testDatagramChannelBatch(true);
+      });
+    } catch (JUnitException e) {
+      // Ignore timeout failure (this is a throughput test only)
+      TestStackTraceUtil.printStackTrace(e);
+    }
+  }
+
+  private void testDatagramChannelBatch(boolean direct) throws Exception {
+    assumeTrue(ENABLED > 0, "Throughput tests are disabled");
+    assumeTrue(DATAGRAM_BATCH_SIZE > 0, "Batch size must be positive");
+
+    SocketAddress dsAddr = newTempAddressForDatagram();
+    SocketAddress dcAddr = newTempAddressForDatagram();
+
+    try (DatagramChannel ds0 = newDatagramChannel(); //
+        DatagramChannel dc0 = newDatagramChannel();) {
+      assumeTrue(ds0 instanceof AFDatagramChannel, "Batch operations require AFDatagramChannel");
+      AFDatagramChannel<?> ds = (AFDatagramChannel<?>) ds0;
+      AFDatagramChannel<?> dc = (AFDatagramChannel<?>) dc0;
+
+      if (!ds.socket().isBound()) {
+        ds.bind(dsAddr);
+        dsAddr = ds.getLocalAddress();
+      }
+      if (!dc.socket().isBound()) {
+        dc.bind(dcAddr);
+        dcAddr = dc.getLocalAddress();
+      }
+      dc.connect(dsAddr);
+      ds.connect(dcAddr);
+
+      AtomicBoolean keepRunning = new AtomicBoolean(true);
+      TestAsyncUtil.runAsyncDelayed(NUM_MILLISECONDS, TimeUnit.MILLISECONDS, () -> {
+        keepRunning.set(false);
+        try {
+          ds.close();
+        } catch (IOException e) {
+          // ignore
+        }
+      });
+
+      AtomicLong readTotal = new AtomicLong();
+      long sentTotal = 0;
+      long time;
+
+      CompletableFuture<Long> bytesRead = new CompletableFuture<>();
+      new Thread() {
+        @Override
+        public void run() {
+          ByteBuffer[] receiveBuffers = new ByteBuffer[DATAGRAM_BATCH_SIZE];
+          for (int i = 0; i < receiveBuffers.length; i++) {
+            receiveBuffers[i] = direct ? ByteBuffer.allocateDirect(PAYLOAD_SIZE_DATAGRAM)
+                : ByteBuffer.allocate(PAYLOAD_SIZE_DATAGRAM);
+          }
+          try {
+            while (!Thread.interrupted() && keepRunning.get() && !bytesRead.isCancelled()) {
+              int numReceived = ds.receive(receiveBuffers, null);
+              for (int i = 0; i < numReceived; i++) {
+                ByteBuffer bb = receiveBuffers[i];
+                if (bb.position() != PAYLOAD_SIZE_DATAGRAM) {
+                  throw new IOException("Unexpected response length: " + bb.position());
+                }
+                readTotal.addAndGet(bb.position());
+                bb.clear();
+              }
+            }
+            bytesRead.complete(readTotal.get());
+          } catch (ClosedChannelException | SocketException e) {
+            if (keepRunning.get()) {
+              keepRunning.set(false);
+              bytesRead.completeExceptionally(e);
+            } else {
+              bytesRead.complete(readTotal.get());
+            }
+          } catch (Exception e) { // NOPMD.ExceptionAsFlowControl
+            keepRunning.set(false);
+            bytesRead.completeExceptionally(e);
+          }
+        }
+      }.start();
+
+      time = System.currentTimeMillis();
+
+      ByteBuffer[] sendBuffers = new ByteBuffer[DATAGRAM_BATCH_SIZE];
+      for (int i = 0; i < sendBuffers.length; i++) {
+        sendBuffers[i] = direct ? ByteBuffer.allocateDirect(PAYLOAD_SIZE_DATAGRAM) : ByteBuffer
+            .allocate(PAYLOAD_SIZE_DATAGRAM);
+      }
+
+      try {
+        while (keepRunning.get()) {
+          int numSent;
+          try {
+            numSent = dc.send(sendBuffers, null);
+          } catch (SocketException e) {
+            if (keepRunning.get()) {
+              throw e;
+            } else {
+              numSent = 0;
+            }
+          }
+
+          sentTotal += (long) numSent * PAYLOAD_SIZE_DATAGRAM;
+          for (ByteBuffer bb : sendBuffers) {
+            bb.rewind();
+          }
+        }
+      } finally {
+        time = System.currentTimeMillis() - time;
+        keepRunning.set(false);
+        ds.close(); // terminate server
+      }
+
+      try {
+        bytesRead.get(NUM_MILLISECONDS, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        if (NUM_SECONDS != 0) {
+          TestStackTraceUtil.printStackTrace(e);
+        }
+      } catch (InterruptedException | ExecutionException e) {
+        TestStackTraceUtil.printStackTrace(e);
+      }
+
+      long readTotal0 = readTotal.get();
+
+      reportResults(stbTestType() + " DatagramChannel batch=" + DATAGRAM_BATCH_SIZE + " direct="
+          + direct + ";blocking=true", ((1000f * readTotal0 / time) / 1000f / 1000f)
+              + " MB/s for datagram payload size " + PAYLOAD_SIZE_DATAGRAM + "; " + String.format(
+                  Locale.ENGLISH, "%.1f%% packet loss", 100 * (1 - (readTotal0
+                      / (float) sentTotal))));
+    }
+  }
+
   private void testDatagramChannel(boolean direct, boolean blocking) throws Exception {
     SocketAddress dsAddr = newTempAddressForDatagram();
     SocketAddress dcAddr = newTempAddressForDatagram();
@@ -0,0 +1,123 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link VirtualThreadPoller}, using platform threads that are parked just like virtual
+ * threads would be.
+ */
+@AFSocketCapabilityRequirement(AFSocketCapability.CAPABILITY_UNIX_DOMAIN)
+public class VirtualThreadPollerTest {
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @AfterEach
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testParkUntilReadable() throws Exception {
+    try (AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      AFSocketCore core = pair.getSocket1().getAFCore();
+
+      Future<Boolean> f = executor.submit(() -> VirtualThreadPoller.await(core,
+          SelectionKey.OP_READ, 0, true));
+      Thread.sleep(100);
+      assertFalse(f.isDone());
+
+      pair.getSocket2().write(ByteBuffer.wrap(new byte[] {1}));
+      assertTrue(f.get(5, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testParkWritable() throws Exception {
+    try (AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      assertTrue(VirtualThreadPoller.await(pair.getSocket1().getAFCore(), SelectionKey.OP_WRITE,
+          0, true));
+    }
+  }
+
+  @Test
+  public void testDeadline() throws Exception {
+    try (AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      AFSocketCore core = pair.getSocket1().getAFCore();
+
+      long time = System.nanoTime();
+      assertFalse(VirtualThreadPoller.await(core, SelectionKey.OP_READ, VirtualThreadPoller
+          .deadline(100), true));
+      assertTrue(System.nanoTime() - time >= TimeUnit.MILLISECONDS.toNanos(100));
+
+      // not parked
+      assertFalse(VirtualThreadPoller.await(core, SelectionKey.OP_READ, VirtualThreadPoller
+          .deadline(100), false));
+    }
+  }
+
+  @Test
+  public void testSameFileDescriptorTwice() throws Exception {
+    try (AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      AFSocketCore core = pair.getSocket1().getAFCore();
+
+      // the second waiter cannot be registered with the poller, and waits in native code instead
+      Future<Boolean> f1 = executor.submit(() -> VirtualThreadPoller.await(core,
+          SelectionKey.OP_READ, 0, true));
+      Future<Boolean> f2 = executor.submit(() -> VirtualThreadPoller.await(core,
+          SelectionKey.OP_READ, 0, true));
+      Thread.sleep(100);
+      assertFalse(f1.isDone());
+      assertFalse(f2.isDone());
+
+      pair.getSocket2().write(ByteBuffer.wrap(new byte[] {1}));
+      assertTrue(f1.get(5, TimeUnit.SECONDS));
+      assertTrue(f2.get(5, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    try (AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open()) {
+      AFSocketCore core = pair.getSocket1().getAFCore();
+
+      Future<Boolean> f = executor.submit(() -> VirtualThreadPoller.await(core,
+          SelectionKey.OP_READ, 0, true));
+      Thread.sleep(100);
+      assertFalse(f.isDone());
+
+      pair.getSocket1().close();
+      assertTrue(f.get(5, TimeUnit.SECONDS));
+
+      assertThrows(SocketClosedException.class, () -> VirtualThreadPoller.await(core,
+          SelectionKey.OP_READ, 0, true));
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.domain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.newsclub.net.unix.AFSocketCapability;
+import org.newsclub.net.unix.AFSocketCapabilityRequirement;
+import org.newsclub.net.unix.AFUNIXSocketAddress;
+import org.newsclub.net.unix.AFUNIXSocketChannel;
+import org.newsclub.net.unix.AFUNIXSocketPair;
+
+import com.kohlschutter.annotations.compiletime.SuppressFBWarnings;
+
+/**
+ * Runs the {@link SelectorTest} suite against the epoll-based selector implementation.
+ */
+@AFSocketCapabilityRequirement({
+    AFSocketCapability.CAPABILITY_UNIX_DOMAIN, AFSocketCapability.CAPABILITY_EPOLL})
+@SuppressFBWarnings({
+    "THROWS_METHOD_THROWS_CLAUSE_THROWABLE", "THROWS_METHOD_THROWS_CLAUSE_BASIC_EXCEPTION"})
+public final class EpollSelectorTest extends
+    org.newsclub.net.unix.SelectorTest<AFUNIXSocketAddress> {
+
+  public EpollSelectorTest() throws IOException {
+    super(AFUNIXAddressSpecifics.INSTANCE);
+  }
+
+  @Override
+  protected Selector openSelector() throws IOException {
+    return openEpollSelector();
+  }
+
+  @Test
+  public void testInterestOpsChange() throws Exception {
+    AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open();
+    try (Selector sel = openSelector();
+        AFUNIXSocketChannel s1 = pair.getSocket1();
+        AFUNIXSocketChannel s2 = pair.getSocket2()) {
+      s1.configureBlocking(false);
+      SelectionKey key = s1.register(sel, SelectionKey.OP_READ);
+      assertEquals(0, sel.selectNow());
+
+      s2.write(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+      assertEquals(1, sel.select(1000));
+      assertEquals(Collections.singleton(key), sel.selectedKeys());
+      assertTrue(key.isReadable());
+      sel.selectedKeys().clear();
+
+      key.interestOps(0);
+      assertEquals(0, sel.selectNow());
+
+      key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+      assertEquals(1, sel.selectNow());
+      assertEquals(SelectionKey.OP_READ | SelectionKey.OP_WRITE, key.readyOps());
+      sel.selectedKeys().clear();
+
+      key.cancel();
+      assertEquals(0, sel.selectNow());
+      assertTrue(sel.keys().isEmpty());
+    }
+  }
+}
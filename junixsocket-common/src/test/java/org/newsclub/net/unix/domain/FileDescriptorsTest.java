@@ -22,6 +22,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.File;
 import java.io.FileDescriptor;
@@ -32,9 +33,11 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.DatagramPacket;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.time.Duration;
+import java.util.Arrays;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -44,6 +47,9 @@ import org.newsclub.net.unix.AFSocketCapabilityRequirement;
 import org.newsclub.net.unix.AFUNIXDatagramSocket;
 import org.newsclub.net.unix.AFUNIXSocket;
 import org.newsclub.net.unix.AFUNIXSocketAddress;
+import org.newsclub.net.unix.AFUNIXSocketChannel;
+import org.newsclub.net.unix.AFUNIXSocketPair;
+import org.newsclub.net.unix.FileDescriptorCast;
 import org.newsclub.net.unix.ImplUtil;
 import org.newsclub.net.unix.SocketTestBase;
 
@@ -115,6 +121,62 @@ public final class FileDescriptorsTest extends SocketTestBase<AFUNIXSocketAddres
     });
   }
 
+  @AFSocketCapabilityRequirement(AFSocketCapability.CAPABILITY_UNSAFE)
+  @Test
+  public void testSendRecvFileDescriptorNumbers() throws Exception {
+    assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+      File tmpOut = newTempFile();
+      try (FileOutputStream fos = new FileOutputStream(tmpOut)) {
+        int fd = FileDescriptorCast.using(fos.getFD()).as(Integer.class);
+
+        try (AFUNIXServerThread serverThread = new AFUNIXServerThread() {
+          @Override
+          protected void handleConnection(final AFUNIXSocket socket) throws IOException {
+            // more than fit into the stack-allocated control buffer
+            int[] fds = new int[100];
+            Arrays.fill(fds, fd);
+            socket.setOutboundFileDescriptorNumbers(fds);
+            assertTrue(socket.hasOutboundFileDescriptors());
+            try (OutputStream outputStream = socket.getOutputStream()) {
+              outputStream.write("HELLO".getBytes("UTF-8"));
+            }
+            assertFalse(socket.hasOutboundFileDescriptors());
+
+            stopAcceptingConnections();
+          }
+        };
+            AFUNIXSocket socket = (AFUNIXSocket) connectTo(serverThread.getServerAddress()); //
+            InputStream in = socket.getInputStream()) {
+          socket.setAncillaryReceiveBufferSize(1024);
+
+          byte[] buf = new byte[64];
+          assertEquals(5, in.read(buf));
+
+          int[] fds = socket.getReceivedFileDescriptorNumbers();
+          assertEquals(100, fds.length);
+          assertArrayEquals(new int[0], socket.getReceivedFileDescriptorNumbers(),
+              "If we ask again, these new file descriptors should be gone");
+          assertArrayEquals(new FileDescriptor[0], socket.getReceivedFileDescriptors());
+
+          // we own these file descriptors
+          for (int i = 0; i < fds.length; i++) {
+            try (FileOutputStream fos2 = new FileOutputStream(FileDescriptorCast.unsafeUsing(fds[i])
+                .as(FileDescriptor.class))) {
+              if (i == 0) {
+                fos2.write("Hello".getBytes(StandardCharsets.UTF_8));
+              }
+            }
+          }
+        }
+        fos.write("World".getBytes(StandardCharsets.UTF_8));
+      }
+
+      try (FileInputStream fin = new FileInputStream(tmpOut)) {
+        assertEquals("HelloWorld", new String(IOUtil.readAllBytes(fin), StandardCharsets.UTF_8));
+      }
+    });
+  }
+
   @Test
   public void testNullFileDescriptorArray() throws Exception {
     assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
@@ -284,6 +346,36 @@ public final class FileDescriptorsTest extends SocketTestBase<AFUNIXSocketAddres
     });
   }
 
+  @Test
+  public void testTruncatedFileDescriptorsClosed() throws Exception {
+    File procFds = new File("/proc/self/fd");
+    assumeTrue(procFds.isDirectory(), "Requires /proc/self/fd");
+
+    AFUNIXSocketPair<AFUNIXSocketChannel> pair = AFUNIXSocketPair.open();
+    try (AFUNIXSocketChannel sender = pair.getSocket1();
+        AFUNIXSocketChannel receiver = pair.getSocket2()) {
+      receiver.setAncillaryReceiveBufferSize(256);
+
+      // more file descriptors than fit into the ancillary receive buffer
+      FileDescriptor[] fds = new FileDescriptor[200];
+      Arrays.fill(fds, FileDescriptor.in);
+      sender.setOutboundFileDescriptors(fds);
+
+      int numOpen = procFds.list().length;
+      sender.write(ByteBuffer.wrap(new byte[] {123}));
+      try {
+        receiver.read(ByteBuffer.allocate(1));
+      } catch (SocketException e) {
+        // expected on Linux ("No buffer space available")
+      }
+      for (FileDescriptor fd : receiver.getReceivedFileDescriptors()) {
+        new FileInputStream(fd).close();
+      }
+      // the file descriptors that did fit have not been leaked
+      assertEquals(numOpen, procFds.list().length);
+    }
+  }
+
   @Test
   public void testFileInputStream() throws Exception {
     final File tmpFile = SocketTestBase.newTempFile();
@@ -55,17 +55,70 @@ static jboolean checkAcceptable(JNIEnv * env, jobject fdServer, jobject fd, int
 }
 #endif
 
+/*
+ * Checks that the socket file still refers to the given inode, i.e., that no other server has
+ * taken over our socket address. If not, the server socket is closed, and an exception is thrown.
+ */
+static jboolean checkExpectedInode(JNIEnv * env, jux_sockaddr_t *addr, socklen_t suLength, jobject fdServer, int serverHandle, jlong expectedInode) {
+    if(expectedInode > 0 && suLength > 0) {
+        if(addr->addr.sa_family != AF_UNIX) {
+            _throwException(env, kExceptionSocketException, "Cannot check inode for this type of socket");
+            return false;
+        }
+
+        if(addr->un.sun_path[0] != 0) {
+            jlong statInode = getInodeIdentifier(addr->un.sun_path);
+            if(statInode != expectedInode) {
+                // inode mismatch -> someone else took over this socket address
+                _closeFd(env, fdServer, serverHandle);
+                _throwErrnumException(env, ECONNABORTED, NULL);
+                return false;
+            }
+        }
+    }
+    return true;
+}
+
+static int acceptHandle(int serverHandle, struct sockaddr *addr, socklen_t *suLength, int *errnum) {
+    int socketHandle;
+    do {
+#if defined(junixsocket_have_accept4)
+        socketHandle = accept4(serverHandle, addr, suLength, SOCK_CLOEXEC);
+        if(socketHandle == -1 && errno == ENOSYS) {
+            socketHandle = accept(serverHandle, addr, suLength);
+        }
+#else
+        socketHandle = accept(serverHandle, addr, suLength);
+#endif
+    } while(socketHandle == -1 && (*errnum = socket_errno) == EINTR);
+
+#if !defined(junixsocket_have_accept4)
+    if(socketHandle != -1) {
+#  if defined(_WIN32)
+        // FIXME -- crashes on some Windows versions/compilers; omitting since it's non-essential
+        // HANDLE h = (HANDLE)_get_osfhandle(socketHandle);
+        // SetHandleInformation(h, HANDLE_FLAG_INHERIT, 0);
+#  elif defined(FD_CLOEXEC)
+        fcntl(socketHandle, F_SETFD, FD_CLOEXEC);
+#  endif
+    }
+#endif
+
+    return socketHandle;
+}
+
 /*
  * Class:     org_newsclub_net_unix_NativeUnixSocket
  * Method:    accept
- * Signature: (Ljava/nio/ByteBuffer;ILjava/io/FileDescriptor;Ljava/io/FileDescriptor;JI)Z
+ * Signature: (Ljava/nio/ByteBuffer;ILjava/io/FileDescriptor;Ljava/io/FileDescriptor;JII)Z
  */
 JNIEXPORT jboolean JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_accept
 (
  JNIEnv * env, jclass clazz CK_UNUSED, jobject ab, jint abLen, jobject fdServer,
- jobject fd, jlong expectedInode, int timeout)
+ jobject fd, jlong expectedInode, jint timeout, jint options)
 {
     CK_ARGUMENT_POTENTIALLY_UNUSED(timeout);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(options);
 
     jux_sockaddr_t *addr = (*env)->GetDirectBufferAddress(env, ab);
     socklen_t suLength = (socklen_t)abLen;
@@ -76,26 +129,13 @@ JNIEXPORT jboolean JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_accept
         return false;
     }
 
-    if(expectedInode > 0 && suLength > 0) {
-        if(addr->addr.sa_family != AF_UNIX) {
-            _throwException(env, kExceptionSocketException, "Cannot check inode for this type of socket");
-            return false;
-        }
-
-        if(addr->un.sun_path[0] != 0) {
-            jlong statInode = getInodeIdentifier(addr->un.sun_path);
-            if(statInode != expectedInode) {
-                // inode mismatch -> someone else took over this socket address
-                _closeFd(env, fdServer, serverHandle);
-                _throwErrnumException(env, ECONNABORTED, NULL);
-                return false;
-            }
-        }
+    if(!checkExpectedInode(env, addr, suLength, fdServer, serverHandle, expectedInode)) {
+        return false;
     }
 
 #if defined(junixsocket_use_poll_for_accept)
     {
-        int ret = pollWithTimeout(env, fdServer, serverHandle, timeout);
+        int ret = pollWithTimeout(env, fdServer, serverHandle, timeout, options);
         if(ret == 0) {
             _throwErrnumException(env, ETIMEDOUT, fdServer);
             return false;
@@ -105,18 +145,8 @@ JNIEXPORT jboolean JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_accept
     }
 #endif
 
-    int socketHandle;
     int errnum = 0;
-    do {
-#if defined(junixsocket_have_accept4)
-        socketHandle = accept4(serverHandle, (struct sockaddr *)addr, &suLength, SOCK_CLOEXEC);
-        if(socketHandle == -1 && errno == ENOSYS) {
-            socketHandle = accept(serverHandle, (struct sockaddr *)addr, &suLength);
-        }
-#else
-        socketHandle = accept(serverHandle, (struct sockaddr *)addr, &suLength);
-#endif
-    } while(socketHandle == -1 && (errnum = socket_errno) == EINTR);
+    int socketHandle = acceptHandle(serverHandle, (struct sockaddr *)addr, &suLength, &errnum);
 
     if(socketHandle == -1) {
         if(checkNonBlocking(serverHandle, errnum)) {
@@ -127,16 +157,6 @@ JNIEXPORT jboolean JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_accept
         return false;
     }
 
-#if !defined(junixsocket_have_accept4)
-#  if defined(_WIN32)
-    // FIXME -- crashes on some Windows versions/compilers; omitting since it's non-essential
-    // HANDLE h = (HANDLE)_get_osfhandle(socketHandle);
-    // SetHandleInformation(h, HANDLE_FLAG_INHERIT, 0);
-#  elif defined(FD_CLOEXEC)
-    fcntl(socketHandle, F_SETFD, FD_CLOEXEC);
-#  endif
-#endif
-
 #if defined(_WIN32)
     if(!checkAcceptable(env, fdServer, fd, serverHandle, socketHandle)) {
         return false;
@@ -147,3 +167,93 @@ JNIEXPORT jboolean JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_accept
 
     return true;
 }
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    acceptBatch
+ * Signature: (Ljava/nio/ByteBuffer;ILjava/io/FileDescriptor;[IIJII)I
+ */
+JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_acceptBatch
+(
+ JNIEnv * env, jclass clazz CK_UNUSED, jobject ab, jint abLen, jobject fdServer,
+ jintArray fds, jint max, jlong expectedInode, jint timeout, jint options)
+{
+    CK_ARGUMENT_POTENTIALLY_UNUSED(timeout);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(options);
+
+    jux_sockaddr_t *addr = (*env)->GetDirectBufferAddress(env, ab);
+    socklen_t suLength = (socklen_t)abLen;
+
+    int serverHandle = _getFD(env, fdServer);
+    if(serverHandle < 0) {
+        _throwException(env, kExceptionSocketException, "Socket is closed");
+        return -1;
+    }
+
+    jsize fdsLen = (*env)->GetArrayLength(env, fds);
+    if(max > fdsLen) {
+        max = fdsLen;
+    }
+#if defined(_WIN32)
+    // each accepted socket needs to be checked separately (see checkAcceptable)
+    if(max > 1) {
+        max = 1;
+    }
+#endif
+    if(max <= 0) {
+        return 0;
+    }
+
+    // the inode is checked once per batch
+    if(!checkExpectedInode(env, addr, suLength, fdServer, serverHandle, expectedInode)) {
+        return -1;
+    }
+
+#if defined(junixsocket_use_poll_for_accept)
+    {
+        int ret = pollWithTimeout(env, fdServer, serverHandle, timeout, options);
+        if(ret == 0) {
+            _throwErrnumException(env, ETIMEDOUT, fdServer);
+            return -1;
+        } else if(ret < 0) {
+            return -1;
+        }
+    }
+#endif
+
+    if((options & org_newsclub_net_unix_NativeUnixSocket_OPT_NON_BLOCKING) == 0) {
+        // Don't block once we have accepted something: another thread or process could take a
+        // pending connection before we get to it. The file status flags are shared with everyone
+        // else using the socket, so we must not make it non-blocking here, either; callers that
+        // want more than one connection need to put the socket into non-blocking mode themselves.
+        max = 1;
+    }
+
+    jint count = 0;
+    while(count < max) {
+        int errnum = 0;
+        int socketHandle = acceptHandle(serverHandle, NULL, NULL, &errnum);
+        if(socketHandle == -1) {
+            if(count > 0 || checkNonBlocking(serverHandle, errnum)) {
+                // backlog drained; any other error will be reported upon the next call
+            } else {
+                _throwSockoptErrnumException(env, errnum, fdServer);
+                return -1;
+            }
+            break;
+        }
+
+#if defined(_WIN32)
+        if(!checkAcceptable(env, fdServer, NULL, serverHandle, -1)) {
+            shutdown(socketHandle, SHUT_RDWR);
+            closesocket(socketHandle);
+            return -1;
+        }
+#endif
+
+        jint handle = (jint)socketHandle;
+        (*env)->SetIntArrayRegion(env, fds, count++, 1, &handle);
+    }
+
+    return count;
+}
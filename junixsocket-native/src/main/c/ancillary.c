@@ -55,6 +55,7 @@ static jclass class_AncillaryDataSupport = NULL;
 static jfieldID fieldID_ancillaryReceiveBuffer = NULL;
 static jfieldID fieldID_pendingFileDescriptors = NULL;
 
+static jmethodID kReceiveFileDescriptors = NULL;
 static jmethodID kSetTipcErrorInfo = NULL;
 static jmethodID kSetTipcDestName = NULL;
 
@@ -64,6 +65,9 @@ jfieldID getFieldID_ancillaryReceiveBuffer(void) {
 jfieldID getFieldID_pendingFileDescriptors(void) {
     return fieldID_pendingFileDescriptors;
 }
+jmethodID getMethodID_receiveFileDescriptors(void) {
+    return kReceiveFileDescriptors;
+}
 jmethodID getMethodID_setTipcErrorInfo(void) {
     return kSetTipcErrorInfo;
 }
@@ -76,6 +80,7 @@ void init_ancillary(JNIEnv *env) {
     fieldID_ancillaryReceiveBuffer = (*env)->GetFieldID(env, class_AncillaryDataSupport, "ancillaryReceiveBuffer", "Ljava/nio/ByteBuffer;");
     fieldID_pendingFileDescriptors = (*env)->GetFieldID(env, class_AncillaryDataSupport, "pendingFileDescriptors", "[I");
 
+    kReceiveFileDescriptors = (*env)->GetMethodID(env, class_AncillaryDataSupport, "receiveFileDescriptors", "([I)V");
     kSetTipcErrorInfo = (*env)->GetMethodID(env, class_AncillaryDataSupport, "setTipcErrorInfo", "(II)V");
     kSetTipcDestName = (*env)->GetMethodID(env, class_AncillaryDataSupport, "setTipcDestName", "(III)V");
 }
@@ -83,6 +88,7 @@ void destroy_ancillary(JNIEnv *env) {
     releaseClassGlobalRef(env, class_AncillaryDataSupport);
     fieldID_ancillaryReceiveBuffer = NULL;
     fieldID_pendingFileDescriptors = NULL;
+    kReceiveFileDescriptors = NULL;
     kSetTipcErrorInfo = NULL;
     kSetTipcDestName = NULL;
 }
@@ -34,6 +34,7 @@ void destroy_ancillary(JNIEnv *env);
 
 jfieldID getFieldID_ancillaryReceiveBuffer(void);
 jfieldID getFieldID_pendingFileDescriptors(void);
+jmethodID getMethodID_receiveFileDescriptors(void);
 jmethodID getMethodID_setTipcErrorInfo(void);
 jmethodID getMethodID_setTipcDestName(void);
 
@@ -21,6 +21,7 @@
 
 #include "filedescriptors.h"
 #include "init.h"
+#include "iouring.h"
 #include "reflection.h"
 
 CK_IGNORE_UNUSED_VARIABLE_BEGIN
@@ -40,6 +41,10 @@ static jint CAPABILITY_ZERO_LENGTH_SEND = (1 << 11);
 static jint CAPABILITY_UNSAFE = (1 << 12);
 static jint CAPABILITY_LARGE_PORTS = (1 << 13);
 static jint CAPABILITY_DARWIN = (1 << 14);
+static jint CAPABILITY_EPOLL = (1 << 15);
+static jint CAPABILITY_ZERO_COPY = (1 << 16);
+static jint CAPABILITY_IO_URING = (1 << 17);
+static jint CAPABILITY_EVENTFD = (1 << 18);
 CK_IGNORE_UNUSED_VARIABLE_END
 
 void init_capabilities(JNIEnv *env CK_UNUSED) {
@@ -123,5 +128,23 @@ defined(SO_PEERCRED) || defined(SO_PEERID) || defined(__NetBSD__) || defined(__s
 #if junixsocket_have_system
     capabilities |= CAPABILITY_DARWIN;
 #endif
+
+#if junixsocket_have_epoll
+    capabilities |= CAPABILITY_EPOLL;
+#endif
+
+#if junixsocket_have_sendfile && junixsocket_have_splice
+    capabilities |= CAPABILITY_ZERO_COPY;
+#endif
+
+#if junixsocket_have_io_uring
+    if(jux_io_uring_available()) {
+        capabilities |= CAPABILITY_IO_URING;
+    }
+#endif
+
+#if junixsocket_have_eventfd
+    capabilities |= CAPABILITY_EVENTFD;
+#endif
     return capabilities;
 }
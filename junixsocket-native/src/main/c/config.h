@@ -236,6 +236,27 @@ extern "C" {
 #  include <linux/tipc.h>
 #  include <arpa/inet.h>
 #  define junixsocket_have_tipc 1
+
+#  include <sys/epoll.h>
+#  define junixsocket_have_epoll 1
+
+#  include <sys/eventfd.h>
+#  define junixsocket_have_eventfd 1
+
+#  include <sys/sendfile.h>
+#  define junixsocket_have_sendfile 1
+
+#  if __has_include(<linux/io_uring.h>)
+#    include <linux/io_uring.h>
+#    if defined(IO_URING_OP_SUPPORTED) // Linux 5.6+ (IORING_OP_SEND, IORING_OP_RECV, probing)
+#      include <sys/mman.h>
+#      include <sys/syscall.h>
+#      define junixsocket_have_io_uring 1
+#    endif
+#  endif
+#  define junixsocket_have_splice 1
+
+#  define junixsocket_have_mmsg 1
 #endif // __linux__
 
 #if __TOS_MVS__
@@ -367,6 +388,18 @@ extern int __xstat (int __ver, const char *__filename,
 #define MIN(a,b) ((a) < (b) ? (a) : (b))
 #endif
 
+#if defined(_WIN32)
+typedef struct jux_iovec {
+    void *iov_base;
+    size_t iov_len;
+} jux_iovec_t;
+#else
+typedef struct iovec jux_iovec_t;
+#endif
+
+// maximum number of buffers per scatter/gather call (Linux' UIO_MAXIOV)
+#define JUX_IOV_MAX 1024
+
 #include "org_newsclub_net_unix_NativeUnixSocket.h"
 
 #endif /* config_h */
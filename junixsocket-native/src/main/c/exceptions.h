@@ -33,6 +33,7 @@ typedef enum {
     kExceptionAddressUnavailableSocketException,
     kExceptionOperationNotSupportedSocketException,
     kExceptionNoSuchDeviceSocketException,
+    kExceptionOutOfMemoryError,
     kExceptionMaxExcl
 } ExceptionType;
 
@@ -95,11 +95,18 @@ static jclass *kFDTypeClasses;
 static jclass kRedirectImplClass;
 static jmethodID kRedirectImplConstructor;
 
+static jclass kFileChannelImplClass;
+static jfieldID kFileChannelImplFd;
+
 void init_filedescriptors(JNIEnv *env) {
     kRedirectImplClass = findClassAndGlobalRef0(env, "java/lang/ProcessBuilder$RedirectPipeImpl", JNI_TRUE);
     kRedirectImplConstructor = kRedirectImplClass == NULL ? NULL : (*env)->GetMethodID(env, kRedirectImplClass, "<init>", "()V");
     (*env)->ExceptionClear(env);
 
+    kFileChannelImplClass = findClassAndGlobalRef0(env, "sun/nio/ch/FileChannelImpl", JNI_TRUE);
+    kFileChannelImplFd = kFileChannelImplClass == NULL ? NULL : (*env)->GetFieldID(env, kFileChannelImplClass, "fd", "Ljava/io/FileDescriptor;");
+    (*env)->ExceptionClear(env);
+
     kFDTypeClasses = malloc(sizeof(jclass) * kFDTypeMaxExcl);
     for(int i=0; i<kFDTypeMaxExcl; i++) {
         char *classname = kFDTypeClassNames[i];
@@ -151,6 +158,8 @@ void destroy_filedescriptors(JNIEnv *env) {
         releaseClassGlobalRef(env, kFDTypeClasses[i]);
     }
     releaseClassGlobalRef(env, kRedirectImplClass);
+    releaseClassGlobalRef(env, kFileChannelImplClass);
+    kFileChannelImplFd = NULL;
 
     fieldID_fd = NULL;
 #if defined(_WIN32)
@@ -584,3 +593,19 @@ jboolean supportsCastAsRedirect(void) {
     return kRedirectImplConstructor != NULL;
 #endif
 }
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    getFileChannelFD
+ * Signature: (Ljava/nio/channels/FileChannel;)Ljava/io/FileDescriptor;
+ */
+JNIEXPORT jobject JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_getFileChannelFD
+ (JNIEnv *env, jclass clazz CK_UNUSED, jobject fileChannel) {
+    if(fileChannel == NULL || kFileChannelImplFd == NULL) {
+        return NULL;
+    }
+    if(!(*env)->IsInstanceOf(env, fileChannel, kFileChannelImplClass)) {
+        return NULL;
+    }
+    return (*env)->GetObjectField(env, fileChannel, kFileChannelImplFd);
+}
@@ -24,7 +24,9 @@
 #include "reflection.h"
 #include "ancillary.h"
 #include "filedescriptors.h"
+#include "jniutil.h"
 #include "polling.h"
+#include "receive.h"
 #include "socketoptions.h"
 #include "vsock.h"
 
@@ -158,6 +160,8 @@ JNIEXPORT void JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_init
 #endif
     init_poll(env);
     init_socketoptions(env);
+    init_scratchbuffer(env);
+    init_receive(env);
 
     init_capabilities(env); // should be last
 }
@@ -183,6 +187,8 @@ JNIEXPORT void JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_destroy
 #endif
     destroy_poll(env);
     destroy_socketoptions(env);
+    destroy_scratchbuffer(env);
+    destroy_receive(env);
 }
 
 /*
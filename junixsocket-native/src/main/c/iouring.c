@@ -0,0 +1,461 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "config.h"
+#include "iouring.h"
+
+#include "exceptions.h"
+#include "filedescriptors.h"
+#include "jniutil.h"
+
+#if defined(junixsocket_have_io_uring)
+
+// We talk to the kernel directly instead of depending on liburing
+
+/**
+ * A submission/completion queue pair, with the rings mapped into our address space.
+ *
+ * The submission queue must only be accessed by one thread at a time (the Java code holds a lock);
+ * the same applies to the completion queue (only reaped by the completion thread).
+ */
+struct jux_uring {
+    int fd;
+
+    unsigned *sqHead;
+    unsigned *sqTail;
+    unsigned sqMask;
+    unsigned sqEntries;
+    unsigned *sqArray;
+    struct io_uring_sqe *sqes;
+
+    unsigned *cqHead;
+    unsigned *cqTail;
+    unsigned cqMask;
+    struct io_uring_cqe *cqes;
+
+    void *sqRing;
+    size_t sqRingSize;
+    void *cqRing;
+    size_t cqRingSize;
+    size_t sqesSize;
+};
+
+static int jux_io_uring_setup(unsigned entries, struct io_uring_params *p) {
+    return (int)syscall(__NR_io_uring_setup, entries, p);
+}
+
+static int jux_io_uring_enter(int fd, unsigned toSubmit, unsigned minComplete, unsigned flags) {
+    return (int)syscall(__NR_io_uring_enter, fd, toSubmit, minComplete, flags, NULL, 0);
+}
+
+static int jux_io_uring_register(int fd, unsigned opcode, void *arg, unsigned nrArgs) {
+    return (int)syscall(__NR_io_uring_register, fd, opcode, arg, nrArgs);
+}
+
+static void jux_uring_unmap(struct jux_uring *r) {
+    if(r->sqes != NULL && r->sqes != MAP_FAILED) {
+        munmap(r->sqes, r->sqesSize);
+    }
+    if(r->cqRing != NULL && r->cqRing != MAP_FAILED && r->cqRing != r->sqRing) {
+        munmap(r->cqRing, r->cqRingSize);
+    }
+    if(r->sqRing != NULL && r->sqRing != MAP_FAILED) {
+        munmap(r->sqRing, r->sqRingSize);
+    }
+}
+
+static void *jux_uring_mmap(int fd, size_t size, off_t offset) {
+    return mmap(NULL, size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE, fd, offset);
+}
+
+static int jux_uring_init(struct jux_uring *r, unsigned entries) {
+    struct io_uring_params p;
+    memset(&p, 0, sizeof(p));
+    memset(r, 0, sizeof(*r));
+
+    int fd = jux_io_uring_setup(entries, &p);
+    if(fd < 0) {
+        return -1;
+    }
+    r->fd = fd;
+
+    r->sqRingSize = p.sq_off.array + p.sq_entries * sizeof(unsigned);
+    r->cqRingSize = p.cq_off.cqes + p.cq_entries * sizeof(struct io_uring_cqe);
+    if(p.features & IORING_FEAT_SINGLE_MMAP) {
+        if(r->cqRingSize > r->sqRingSize) {
+            r->sqRingSize = r->cqRingSize;
+        }
+        r->cqRingSize = r->sqRingSize;
+    }
+
+    r->sqRing = jux_uring_mmap(fd, r->sqRingSize, IORING_OFF_SQ_RING);
+    if(r->sqRing == MAP_FAILED) {
+        goto err;
+    }
+    if(p.features & IORING_FEAT_SINGLE_MMAP) {
+        r->cqRing = r->sqRing;
+    } else {
+        r->cqRing = jux_uring_mmap(fd, r->cqRingSize, IORING_OFF_CQ_RING);
+        if(r->cqRing == MAP_FAILED) {
+            goto err;
+        }
+    }
+    r->sqesSize = p.sq_entries * sizeof(struct io_uring_sqe);
+    r->sqes = jux_uring_mmap(fd, r->sqesSize, IORING_OFF_SQES);
+    if(r->sqes == MAP_FAILED) {
+        goto err;
+    }
+
+    char *sq = r->sqRing;
+    r->sqHead = (unsigned *)(sq + p.sq_off.head);
+    r->sqTail = (unsigned *)(sq + p.sq_off.tail);
+    r->sqMask = *(unsigned *)(sq + p.sq_off.ring_mask);
+    r->sqEntries = *(unsigned *)(sq + p.sq_off.ring_entries);
+    r->sqArray = (unsigned *)(sq + p.sq_off.array);
+
+    char *cq = r->cqRing;
+    r->cqHead = (unsigned *)(cq + p.cq_off.head);
+    r->cqTail = (unsigned *)(cq + p.cq_off.tail);
+    r->cqMask = *(unsigned *)(cq + p.cq_off.ring_mask);
+    r->cqes = (struct io_uring_cqe *)(cq + p.cq_off.cqes);
+
+    return 0;
+
+err:
+    {
+        int errnum = errno;
+        jux_uring_unmap(r);
+        close(fd);
+        errno = errnum;
+    }
+    return -1;
+}
+
+static jboolean isUnavailableErrno(int errnum) {
+    // ENOSYS: not compiled into the kernel; EPERM: disabled (kernel.io_uring_disabled, seccomp)
+    return errnum == ENOSYS || errnum == EPERM || errnum == EACCES;
+}
+
+static jboolean isOpSupported(struct io_uring_probe *probe, int op) {
+    return op <= probe->last_op && (probe->ops[op].flags & IO_URING_OP_SUPPORTED);
+}
+
+jboolean jux_io_uring_available(void) {
+    struct io_uring_params p;
+    memset(&p, 0, sizeof(p));
+    int fd = jux_io_uring_setup(1, &p);
+    if(fd < 0) {
+        return false;
+    }
+
+    // The ring may be available while the operations we need are not (older kernels, or
+    // operations restricted by the system)
+    jboolean supported = false;
+    size_t probeLen = sizeof(struct io_uring_probe) + 256 * sizeof(struct io_uring_probe_op);
+    struct io_uring_probe *probe = calloc(1, probeLen);
+    if(probe != NULL) {
+        if(jux_io_uring_register(fd, IORING_REGISTER_PROBE, probe, 256) == 0) {
+            supported = isOpSupported(probe, IORING_OP_RECV)
+            && isOpSupported(probe, IORING_OP_SEND)
+            && isOpSupported(probe, IORING_OP_ASYNC_CANCEL)
+            && isOpSupported(probe, IORING_OP_NOP);
+        }
+        free(probe);
+    }
+    close(fd);
+    return supported;
+}
+
+/*
+ * Translates a completion result; the errno values the Java code needs to distinguish are mapped to
+ * platform-independent constants, other errors are passed on as negative errno values.
+ */
+static jint translateResult(int res) {
+    if(res >= 0) {
+        return res;
+    }
+    switch(-res) {
+        case EAGAIN:
+#if EWOULDBLOCK != EAGAIN
+        case EWOULDBLOCK:
+#endif
+        case EINTR:
+            return org_newsclub_net_unix_NativeUnixSocket_IO_URING_RES_AGAIN;
+        case ECANCELED:
+            return org_newsclub_net_unix_NativeUnixSocket_IO_URING_RES_CANCELED;
+        case EPIPE:
+            return org_newsclub_net_unix_NativeUnixSocket_IO_URING_RES_BROKEN_PIPE;
+        case ECONNRESET:
+            return org_newsclub_net_unix_NativeUnixSocket_IO_URING_RES_CONNECTION_RESET;
+        case ENOTCONN:
+            return org_newsclub_net_unix_NativeUnixSocket_IO_URING_RES_NOT_CONNECTED;
+        default:
+            return res;
+    }
+}
+
+#else
+
+jboolean jux_io_uring_available(void) {
+    return false;
+}
+
+#endif
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    ioUringCreate
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_ioUringCreate
+ (JNIEnv *env, jclass clazz CK_UNUSED, jint entries) {
+#if defined(junixsocket_have_io_uring)
+    if(entries <= 0) {
+        _throwException(env, kExceptionInvalidArgumentSocketException, "entries");
+        return 0;
+    }
+    struct jux_uring *r = calloc(1, sizeof(struct jux_uring));
+    if(r == NULL) {
+        _throwErrnumException(env, ENOMEM, NULL);
+        return 0;
+    }
+    if(jux_uring_init(r, (unsigned)entries) != 0) {
+        int errnum = errno;
+        free(r);
+        if(isUnavailableErrno(errnum)) {
+            _throwException(env, kExceptionOperationNotSupportedSocketException, "io_uring");
+        } else {
+            _throwErrnumException(env, errnum, NULL);
+        }
+        return 0;
+    }
+    return (jlong)(intptr_t)r;
+#else
+    CK_ARGUMENT_POTENTIALLY_UNUSED(entries);
+    _throwException(env, kExceptionOperationNotSupportedSocketException, "io_uring");
+    return 0;
+#endif
+}
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    ioUringDestroy
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_ioUringDestroy
+ (JNIEnv *env CK_UNUSED, jclass clazz CK_UNUSED, jlong ring) {
+#if defined(junixsocket_have_io_uring)
+    struct jux_uring *r = (struct jux_uring *)(intptr_t)ring;
+    if(r == NULL) {
+        return;
+    }
+    jux_uring_unmap(r);
+    close(r->fd);
+    free(r);
+#else
+    CK_ARGUMENT_POTENTIALLY_UNUSED(ring);
+#endif
+}
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    ioUringPrepare
+ * Signature: (JILjava/io/FileDescriptor;Ljava/nio/ByteBuffer;IIJ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_ioUringPrepare
+ (JNIEnv *env, jclass clazz CK_UNUSED, jlong ring, jint op, jobject fd, jobject buffer, jint offset, jint length, jlong userData) {
+#if defined(junixsocket_have_io_uring)
+    struct jux_uring *r = (struct jux_uring *)(intptr_t)ring;
+
+    unsigned tail = *r->sqTail;
+    unsigned head = __atomic_load_n(r->sqHead, __ATOMIC_ACQUIRE);
+    if(tail - head >= r->sqEntries) {
+        // submission queue is full
+        return false;
+    }
+
+    unsigned idx = tail & r->sqMask;
+    struct io_uring_sqe *sqe = &r->sqes[idx];
+    memset(sqe, 0, sizeof(*sqe));
+    sqe->user_data = (uint64_t)userData;
+
+    switch(op) {
+        case org_newsclub_net_unix_NativeUnixSocket_IO_URING_OP_NOP:
+            sqe->opcode = IORING_OP_NOP;
+            sqe->fd = -1;
+            break;
+        case org_newsclub_net_unix_NativeUnixSocket_IO_URING_OP_CANCEL:
+            // the operation to cancel is identified by userData; the cancel request itself uses 0
+            sqe->opcode = IORING_OP_ASYNC_CANCEL;
+            sqe->fd = -1;
+            sqe->addr = (uint64_t)userData;
+            sqe->user_data = 0;
+            break;
+        case org_newsclub_net_unix_NativeUnixSocket_IO_URING_OP_RECV:
+        case org_newsclub_net_unix_NativeUnixSocket_IO_URING_OP_SEND: {
+            int handle = _getFD(env, fd);
+            if(handle < 0) {
+                _throwException(env, kExceptionSocketException, "Socket is closed");
+                return false;
+            }
+            struct jni_direct_byte_buffer_ref bufRef = getDirectByteBufferRef(env, buffer, (size_t)offset, 0);
+            if(bufRef.size == -1) {
+                _throwException(env, kExceptionSocketException, "Cannot get buffer");
+                return false;
+            } else if(bufRef.buf == NULL) {
+                _throwException(env, kExceptionNullPointerException, "buffer");
+                return false;
+            }
+            if(bufRef.size < length) {
+                length = (jint)bufRef.size;
+            }
+            sqe->fd = handle;
+            sqe->addr = (uint64_t)(uintptr_t)bufRef.buf;
+            sqe->len = (uint32_t)length;
+            if(op == org_newsclub_net_unix_NativeUnixSocket_IO_URING_OP_SEND) {
+                sqe->opcode = IORING_OP_SEND;
+                sqe->msg_flags = MSG_NOSIGNAL;
+            } else {
+                sqe->opcode = IORING_OP_RECV;
+            }
+        }
+            break;
+        default:
+            _throwException(env, kExceptionInvalidArgumentSocketException, "op");
+            return false;
+    }
+
+    r->sqArray[idx] = idx;
+    __atomic_store_n(r->sqTail, tail + 1, __ATOMIC_RELEASE);
+    return true;
+#else
+    CK_ARGUMENT_POTENTIALLY_UNUSED(ring);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(op);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(fd);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(buffer);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(offset);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(length);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(userData);
+    _throwException(env, kExceptionOperationNotSupportedSocketException, "io_uring");
+    return false;
+#endif
+}
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    ioUringSubmit
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_ioUringSubmit
+ (JNIEnv *env, jclass clazz CK_UNUSED, jlong ring) {
+#if defined(junixsocket_have_io_uring)
+    struct jux_uring *r = (struct jux_uring *)(intptr_t)ring;
+
+    unsigned toSubmit = *r->sqTail - __atomic_load_n(r->sqHead, __ATOMIC_ACQUIRE);
+    if(toSubmit == 0) {
+        return 0;
+    }
+
+    int ret;
+    do {
+        ret = jux_io_uring_enter(r->fd, toSubmit, 0, 0);
+    } while(ret == -1 && errno == EINTR);
+
+    if(ret == -1) {
+        if(errno == EAGAIN || errno == EBUSY) {
+            // out of resources / completion queue full; try again later
+            return 0;
+        }
+        _throwErrnumException(env, errno, NULL);
+        return -1;
+    }
+    return ret;
+#else
+    CK_ARGUMENT_POTENTIALLY_UNUSED(ring);
+    _throwException(env, kExceptionOperationNotSupportedSocketException, "io_uring");
+    return -1;
+#endif
+}
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    ioUringWait
+ * Signature: (JI[J[I)I
+ */
+JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_ioUringWait
+ (JNIEnv *env, jclass clazz CK_UNUSED, jlong ring, jint minComplete, jlongArray userDataOut, jintArray resultsOut) {
+#if defined(junixsocket_have_io_uring)
+    struct jux_uring *r = (struct jux_uring *)(intptr_t)ring;
+
+    jsize max = MIN((*env)->GetArrayLength(env, userDataOut), (*env)->GetArrayLength(env, resultsOut));
+    if(max <= 0) {
+        return 0;
+    }
+
+    unsigned head = *r->cqHead;
+    unsigned tail = __atomic_load_n(r->cqTail, __ATOMIC_ACQUIRE);
+    if(head == tail && minComplete > 0) {
+        int ret = jux_io_uring_enter(r->fd, 0, (unsigned)minComplete, IORING_ENTER_GETEVENTS);
+        if(ret == -1 && errno != EINTR && errno != EAGAIN && errno != EBUSY) {
+            _throwErrnumException(env, errno, NULL);
+            return -1;
+        }
+        tail = __atomic_load_n(r->cqTail, __ATOMIC_ACQUIRE);
+    }
+
+    jlong stackIds[64];
+    jint stackResults[64];
+    jsize n = (jsize)MIN((unsigned)max, tail - head);
+    if(n == 0) {
+        return 0;
+    }
+    jlong *ids = n <= 64 ? stackIds : malloc((size_t)n * sizeof(jlong));
+    jint *results = n <= 64 ? stackResults : malloc((size_t)n * sizeof(jint));
+    if(ids == NULL || results == NULL) {
+        _throwException(env, kExceptionOutOfMemoryError, "ioUringWait");
+        n = -1;
+        goto end;
+    }
+
+    for(jsize i = 0; i < n; i++) {
+        struct io_uring_cqe *cqe = &r->cqes[(head + (unsigned)i) & r->cqMask];
+        ids[i] = (jlong)cqe->user_data;
+        results[i] = translateResult(cqe->res);
+    }
+    __atomic_store_n(r->cqHead, head + (unsigned)n, __ATOMIC_RELEASE);
+
+    (*env)->SetLongArrayRegion(env, userDataOut, 0, n, ids);
+    (*env)->SetIntArrayRegion(env, resultsOut, 0, n, results);
+
+end:
+    if(ids != stackIds) {
+        free(ids);
+    }
+    if(results != stackResults) {
+        free(results);
+    }
+    return n;
+#else
+    CK_ARGUMENT_POTENTIALLY_UNUSED(ring);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(minComplete);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(userDataOut);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(resultsOut);
+    _throwException(env, kExceptionOperationNotSupportedSocketException, "io_uring");
+    return -1;
+#endif
+}
@@ -0,0 +1,16 @@
+//
+//  iouring.h
+//  junixsocket-native
+//
+
+#ifndef iouring_h
+#define iouring_h
+
+#include "config.h"
+
+/**
+ * Checks if io_uring can be used at runtime (it may be disabled via sysctl or seccomp).
+ */
+CK_VISIBILITY_INTERNAL jboolean jux_io_uring_available(void);
+
+#endif /* iouring_h */
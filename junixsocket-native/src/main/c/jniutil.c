@@ -21,6 +21,11 @@
 
 #include "exceptions.h"
 
+#if !defined(_WIN32) && !__TOS_MVS__ && !_TPF_SOURCE
+#  include <pthread.h>
+#  define junixsocket_have_scratchbuffer_tls 1
+#endif
+
 void handleFieldNotFound(JNIEnv *env, jobject instance, char *fieldName)
 {
     (*env)->ExceptionClear(env);
@@ -171,3 +176,146 @@ struct jni_direct_byte_buffer_ref getDirectByteBufferRef(JNIEnv *env, jobject by
 
     return ref;
 }
+
+jint getDirectByteBufferIovecs(JNIEnv *env, jobjectArray buffers, jint bufferOffset, jintArray offsetsAndLengths, jint numBuffers, jux_iovec_t *iov) {
+    if(buffers == NULL || offsetsAndLengths == NULL) {
+        _throwException(env, kExceptionNullPointerException, "buffers");
+        return -1;
+    }
+    if(numBuffers < 0 || bufferOffset < 0 || numBuffers > (*env)->GetArrayLength(env, buffers) - bufferOffset
+       || numBuffers * 2 > (*env)->GetArrayLength(env, offsetsAndLengths)) {
+        _throwException(env, kExceptionIndexOutOfBoundsException, "Illegal number of buffers");
+        return -1;
+    }
+
+    jint *ol = (*env)->GetIntArrayElements(env, offsetsAndLengths, NULL);
+    if(ol == NULL) {
+        return -1; // OOME
+    }
+
+    jint ret = numBuffers;
+    for(jint i = 0; i < numBuffers; i++) {
+        jobject byteBuffer = (*env)->GetObjectArrayElement(env, buffers, bufferOffset + i);
+        if(byteBuffer == NULL) {
+            _throwException(env, kExceptionNullPointerException, "buffer");
+            ret = -1;
+            break;
+        }
+        jint offset = ol[2 * i];
+        jint length = ol[2 * i + 1];
+        if(offset < 0 || length < 0) {
+            (*env)->DeleteLocalRef(env, byteBuffer);
+            _throwException(env, kExceptionIndexOutOfBoundsException, "Illegal offset or length");
+            ret = -1;
+            break;
+        }
+
+        struct jni_direct_byte_buffer_ref ref = getDirectByteBufferRef(env, byteBuffer, (size_t)offset, (size_t)length);
+        (*env)->DeleteLocalRef(env, byteBuffer);
+        if(ref.size == -1 || ref.buf == NULL) {
+            _throwException(env, kExceptionIndexOutOfBoundsException, "Illegal offset or length");
+            ret = -1;
+            break;
+        }
+
+        iov[i].iov_base = ref.buf;
+        iov[i].iov_len = (size_t)length;
+    }
+
+    (*env)->ReleaseIntArrayElements(env, offsetsAndLengths, ol, JNI_ABORT);
+    return ret;
+}
+
+#if junixsocket_have_scratchbuffer_tls
+struct jux_scratch_buffer {
+    jbyte *buf;
+    size_t capacity;
+};
+
+static pthread_key_t scratchBufferKey;
+static jboolean scratchBufferKeyValid = false;
+
+static void freeScratchBuffer(void *ptr) {
+    struct jux_scratch_buffer *sb = ptr;
+    if(sb != NULL) {
+        free(sb->buf);
+        free(sb);
+    }
+}
+#endif
+
+void init_scratchbuffer(JNIEnv *env CK_UNUSED) {
+#if junixsocket_have_scratchbuffer_tls
+    if(!scratchBufferKeyValid) {
+        scratchBufferKeyValid = (pthread_key_create(&scratchBufferKey, freeScratchBuffer) == 0);
+    }
+#endif
+}
+
+void destroy_scratchbuffer(JNIEnv *env CK_UNUSED) {
+#if junixsocket_have_scratchbuffer_tls
+    if(scratchBufferKeyValid) {
+        scratchBufferKeyValid = false;
+        // the buffer of the current thread is freed here; buffers of other threads leak
+        freeScratchBuffer(pthread_getspecific(scratchBufferKey));
+        pthread_setspecific(scratchBufferKey, NULL);
+        pthread_key_delete(scratchBufferKey);
+    }
+#endif
+}
+
+jbyte *acquireScratchBuffer(size_t length, jbyte *stackBuf, size_t stackBufLen) {
+    if(length <= stackBufLen && stackBuf != NULL) {
+        return stackBuf;
+    }
+#if junixsocket_have_scratchbuffer_tls
+    if(length <= JUX_SCRATCH_BUFFER_MAX_CAPACITY && scratchBufferKeyValid) {
+        struct jux_scratch_buffer *sb = pthread_getspecific(scratchBufferKey);
+        if(sb == NULL) {
+            sb = calloc(1, sizeof(struct jux_scratch_buffer));
+            if(sb == NULL) {
+                return NULL; // OOME
+            }
+            if(pthread_setspecific(scratchBufferKey, sb) != 0) {
+                free(sb);
+                return malloc(length);
+            }
+        }
+        if(sb->capacity < length) {
+            // grow in powers of two to avoid repeated reallocation for varying lengths
+            size_t capacity = stackBufLen > 0 ? stackBufLen : 1;
+            while(capacity < length) {
+                capacity <<= 1;
+            }
+            if(capacity > JUX_SCRATCH_BUFFER_MAX_CAPACITY) {
+                capacity = JUX_SCRATCH_BUFFER_MAX_CAPACITY;
+            }
+            jbyte *newBuf = malloc(capacity);
+            if(newBuf == NULL) {
+                return NULL; // OOME
+            }
+            free(sb->buf);
+            sb->buf = newBuf;
+            sb->capacity = capacity;
+        }
+        return sb->buf;
+    }
+#endif
+    return malloc(length);
+}
+
+void releaseScratchBuffer(jbyte *buf, jbyte *stackBuf) {
+    if(buf == NULL || buf == stackBuf) {
+        return;
+    }
+#if junixsocket_have_scratchbuffer_tls
+    if(scratchBufferKeyValid) {
+        struct jux_scratch_buffer *sb = pthread_getspecific(scratchBufferKey);
+        if(sb != NULL && sb->buf == buf) {
+            // keep for reuse
+            return;
+        }
+    }
+#endif
+    free(buf);
+}
@@ -55,4 +55,39 @@ struct jni_direct_byte_buffer_ref {
  */
 CK_VISIBILITY_INTERNAL struct jni_direct_byte_buffer_ref getDirectByteBufferRef(JNIEnv *env, jobject byteBuffer, size_t offset, size_t minSizeExpected);
 
+/**
+ * Fills the given iovec array with the addresses of the given direct byte buffers.
+ *
+ * The buffers are taken from the given array, starting at bufferOffset; offsetsAndLengths contains
+ * pairs of (offset, length) for each buffer.
+ * Returns the number of iovecs filled, or -1 upon error (an exception is thrown).
+ */
+CK_VISIBILITY_INTERNAL jint getDirectByteBufferIovecs(JNIEnv *env, jobjectArray buffers, jint bufferOffset, jintArray offsetsAndLengths, jint numBuffers, jux_iovec_t *iov);
+
+/**
+ * Size of a stack-allocated buffer used for small byte[] read/write operations.
+ */
+#define JUX_SCRATCH_STACK_BUFFER_SIZE 8192
+
+/**
+ * Maximum size of the per-thread scratch buffer used for byte[] read/write operations.
+ * Larger requests are served from a temporary heap buffer.
+ */
+#define JUX_SCRATCH_BUFFER_MAX_CAPACITY (1024 * 1024)
+
+CK_VISIBILITY_INTERNAL void init_scratchbuffer(JNIEnv *env);
+CK_VISIBILITY_INTERNAL void destroy_scratchbuffer(JNIEnv *env);
+
+/**
+ * Returns a buffer of at least the given length, which is used to copy data between Java byte
+ * arrays and native I/O calls.
+ *
+ * If the given stack buffer is large enough, it is returned. Otherwise, a per-thread buffer is
+ * reused (up to JUX_SCRATCH_BUFFER_MAX_CAPACITY), or a temporary heap buffer is allocated.
+ *
+ * Returns NULL upon OOM. The buffer must be released via releaseScratchBuffer.
+ */
+CK_VISIBILITY_INTERNAL jbyte *acquireScratchBuffer(size_t length, jbyte *stackBuf, size_t stackBufLen);
+CK_VISIBILITY_INTERNAL void releaseScratchBuffer(jbyte *buf, jbyte *stackBuf);
+
 #endif /* jniutil_h */
@@ -45,6 +45,30 @@ extern "C" {
 #define org_newsclub_net_unix_NativeUnixSocket_SOCKETSTATUS_BOUND 1L
 #undef org_newsclub_net_unix_NativeUnixSocket_SOCKETSTATUS_CONNECTED
 #define org_newsclub_net_unix_NativeUnixSocket_SOCKETSTATUS_CONNECTED 2L
+#undef org_newsclub_net_unix_NativeUnixSocket_EPOLL_CTL_ADD
+#define org_newsclub_net_unix_NativeUnixSocket_EPOLL_CTL_ADD 1L
+#undef org_newsclub_net_unix_NativeUnixSocket_EPOLL_CTL_MOD
+#define org_newsclub_net_unix_NativeUnixSocket_EPOLL_CTL_MOD 2L
+#undef org_newsclub_net_unix_NativeUnixSocket_EPOLL_CTL_DEL
+#define org_newsclub_net_unix_NativeUnixSocket_EPOLL_CTL_DEL 3L
+#undef org_newsclub_net_unix_NativeUnixSocket_IO_URING_OP_NOP
+#define org_newsclub_net_unix_NativeUnixSocket_IO_URING_OP_NOP 0L
+#undef org_newsclub_net_unix_NativeUnixSocket_IO_URING_OP_RECV
+#define org_newsclub_net_unix_NativeUnixSocket_IO_URING_OP_RECV 1L
+#undef org_newsclub_net_unix_NativeUnixSocket_IO_URING_OP_SEND
+#define org_newsclub_net_unix_NativeUnixSocket_IO_URING_OP_SEND 2L
+#undef org_newsclub_net_unix_NativeUnixSocket_IO_URING_OP_CANCEL
+#define org_newsclub_net_unix_NativeUnixSocket_IO_URING_OP_CANCEL 3L
+#undef org_newsclub_net_unix_NativeUnixSocket_IO_URING_RES_AGAIN
+#define org_newsclub_net_unix_NativeUnixSocket_IO_URING_RES_AGAIN -2147483648L
+#undef org_newsclub_net_unix_NativeUnixSocket_IO_URING_RES_CANCELED
+#define org_newsclub_net_unix_NativeUnixSocket_IO_URING_RES_CANCELED -2147483647L
+#undef org_newsclub_net_unix_NativeUnixSocket_IO_URING_RES_BROKEN_PIPE
+#define org_newsclub_net_unix_NativeUnixSocket_IO_URING_RES_BROKEN_PIPE -2147483646L
+#undef org_newsclub_net_unix_NativeUnixSocket_IO_URING_RES_CONNECTION_RESET
+#define org_newsclub_net_unix_NativeUnixSocket_IO_URING_RES_CONNECTION_RESET -2147483645L
+#undef org_newsclub_net_unix_NativeUnixSocket_IO_URING_RES_NOT_CONNECTED
+#define org_newsclub_net_unix_NativeUnixSocket_IO_URING_RES_NOT_CONNECTED -2147483644L
 /*
  * Class:     org_newsclub_net_unix_NativeUnixSocket
  * Method:    init
@@ -104,10 +128,18 @@ JNIEXPORT void JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_listen
 /*
  * Class:     org_newsclub_net_unix_NativeUnixSocket
  * Method:    accept
- * Signature: (Ljava/nio/ByteBuffer;ILjava/io/FileDescriptor;Ljava/io/FileDescriptor;JI)Z
+ * Signature: (Ljava/nio/ByteBuffer;ILjava/io/FileDescriptor;Ljava/io/FileDescriptor;JII)Z
  */
 JNIEXPORT jboolean JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_accept
-  (JNIEnv *, jclass, jobject, jint, jobject, jobject, jlong, jint);
+  (JNIEnv *, jclass, jobject, jint, jobject, jobject, jlong, jint, jint);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    acceptBatch
+ * Signature: (Ljava/nio/ByteBuffer;ILjava/io/FileDescriptor;[IIJII)I
+ */
+JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_acceptBatch
+  (JNIEnv *, jclass, jobject, jint, jobject, jintArray, jint, jlong, jint, jint);
 
 /*
  * Class:     org_newsclub_net_unix_NativeUnixSocket
@@ -181,6 +213,62 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_receive
 JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_send
   (JNIEnv *, jclass, jobject, jobject, jint, jint, jobject, jint, jint, jobject);
 
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    receivev
+ * Signature: (Ljava/io/FileDescriptor;[Ljava/nio/ByteBuffer;I[IIILorg/newsclub/net/unix/AncillaryDataSupport;I)J
+ */
+JNIEXPORT jlong JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_receivev
+  (JNIEnv *, jclass, jobject, jobjectArray, jint, jintArray, jint, jint, jobject, jint);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    sendv
+ * Signature: (Ljava/io/FileDescriptor;[Ljava/nio/ByteBuffer;I[IIILorg/newsclub/net/unix/AncillaryDataSupport;)J
+ */
+JNIEXPORT jlong JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_sendv
+  (JNIEnv *, jclass, jobject, jobjectArray, jint, jintArray, jint, jint, jobject);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    receiveMessages
+ * Signature: (Ljava/io/FileDescriptor;[Ljava/nio/ByteBuffer;I[IILjava/nio/ByteBuffer;III)I
+ */
+JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_receiveMessages
+  (JNIEnv *, jclass, jobject, jobjectArray, jint, jintArray, jint, jobject, jint, jint, jint);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    sendMessages
+ * Signature: (Ljava/io/FileDescriptor;[Ljava/nio/ByteBuffer;I[IILjava/nio/ByteBuffer;I[II)I
+ */
+JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_sendMessages
+  (JNIEnv *, jclass, jobject, jobjectArray, jint, jintArray, jint, jobject, jint, jintArray, jint);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    sendfile
+ * Signature: (Ljava/io/FileDescriptor;Ljava/io/FileDescriptor;JJI)J
+ */
+JNIEXPORT jlong JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_sendfile
+  (JNIEnv *, jclass, jobject, jobject, jlong, jlong, jint);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    splice
+ * Signature: (Ljava/io/FileDescriptor;Ljava/io/FileDescriptor;JJII)J
+ */
+JNIEXPORT jlong JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_splice
+  (JNIEnv *, jclass, jobject, jobject, jlong, jlong, jint, jint);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    getFileChannelFD
+ * Signature: (Ljava/nio/channels/FileChannel;)Ljava/io/FileDescriptor;
+ */
+JNIEXPORT jobject JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_getFileChannelFD
+  (JNIEnv *, jclass, jobject);
+
 /*
  * Class:     org_newsclub_net_unix_NativeUnixSocket
  * Method:    close
@@ -229,6 +317,94 @@ JNIEXPORT jobject JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_getSocketO
 JNIEXPORT void JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_setSocketOption
   (JNIEnv *, jclass, jobject, jint, jint, jobject);
 
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    epollCreate
+ * Signature: (Ljava/io/FileDescriptor;)V
+ */
+JNIEXPORT void JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_epollCreate
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    epollCtl
+ * Signature: (Ljava/io/FileDescriptor;ILjava/io/FileDescriptor;II)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_epollCtl
+  (JNIEnv *, jclass, jobject, jint, jobject, jint, jint);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    epollWait
+ * Signature: (Ljava/io/FileDescriptor;[I[II)I
+ */
+JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_epollWait
+  (JNIEnv *, jclass, jobject, jintArray, jintArray, jint);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    eventfdCreate
+ * Signature: (Ljava/io/FileDescriptor;)V
+ */
+JNIEXPORT void JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_eventfdCreate
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    eventfdSignal
+ * Signature: (Ljava/io/FileDescriptor;)V
+ */
+JNIEXPORT void JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_eventfdSignal
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    eventfdReset
+ * Signature: (Ljava/io/FileDescriptor;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_eventfdReset
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    ioUringCreate
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_ioUringCreate
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    ioUringDestroy
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_ioUringDestroy
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    ioUringPrepare
+ * Signature: (JILjava/io/FileDescriptor;Ljava/nio/ByteBuffer;IIJ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_ioUringPrepare
+  (JNIEnv *, jclass, jlong, jint, jobject, jobject, jint, jint, jlong);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    ioUringSubmit
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_ioUringSubmit
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    ioUringWait
+ * Signature: (JI[J[I)I
+ */
+JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_ioUringWait
+  (JNIEnv *, jclass, jlong, jint, jlongArray, jintArray);
+
 /*
  * Class:     org_newsclub_net_unix_NativeUnixSocket
  * Method:    available
@@ -397,6 +573,14 @@ JNIEXPORT jobject JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_initRedire
 JNIEXPORT void JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_deregisterSelectionKey
   (JNIEnv *, jclass, jobject, jobject);
 
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    getSelectableChannelFD
+ * Signature: (Ljava/nio/channels/SelectableChannel;)Ljava/io/FileDescriptor;
+ */
+JNIEXPORT jobject JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_getSelectableChannelFD
+  (JNIEnv *, jclass, jobject);
+
 /*
  * Class:     org_newsclub_net_unix_NativeUnixSocket
  * Method:    tipcGetNodeId
@@ -78,3 +78,86 @@ JNIEXPORT jboolean JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_initPipe
 
      return false;
  }
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    eventfdCreate
+ * Signature: (Ljava/io/FileDescriptor;)V
+ */
+JNIEXPORT void JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_eventfdCreate
+ (JNIEnv *env, jclass clazz CK_UNUSED, jobject fd) {
+#if defined(junixsocket_have_eventfd)
+    int handle = eventfd(0, EFD_CLOEXEC | EFD_NONBLOCK);
+    if(handle == -1) {
+        _throwErrnumException(env, errno, NULL);
+        return;
+    }
+    _initFD(env, fd, handle);
+#else
+    CK_ARGUMENT_POTENTIALLY_UNUSED(fd);
+    _throwException(env, kExceptionOperationNotSupportedSocketException, "eventfd");
+#endif
+}
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    eventfdSignal
+ * Signature: (Ljava/io/FileDescriptor;)V
+ */
+JNIEXPORT void JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_eventfdSignal
+ (JNIEnv *env, jclass clazz CK_UNUSED, jobject fd) {
+#if defined(junixsocket_have_eventfd)
+    int handle = _getFD(env, fd);
+    if(handle < 0) {
+        return;
+    }
+
+    uint64_t value = 1;
+    ssize_t ret;
+    do {
+        ret = write(handle, &value, sizeof(value));
+    } while(ret == -1 && errno == EINTR);
+
+    if(ret == -1 && errno != EAGAIN) {
+        // EAGAIN: counter overflow; the eventfd is readable anyways
+        _throwErrnumException(env, errno, fd);
+    }
+#else
+    CK_ARGUMENT_POTENTIALLY_UNUSED(fd);
+    _throwException(env, kExceptionOperationNotSupportedSocketException, "eventfd");
+#endif
+}
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    eventfdReset
+ * Signature: (Ljava/io/FileDescriptor;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_eventfdReset
+ (JNIEnv *env, jclass clazz CK_UNUSED, jobject fd) {
+#if defined(junixsocket_have_eventfd)
+    int handle = _getFD(env, fd);
+    if(handle < 0) {
+        return false;
+    }
+
+    uint64_t value;
+    ssize_t ret;
+    do {
+        ret = read(handle, &value, sizeof(value));
+    } while(ret == -1 && errno == EINTR);
+
+    if(ret == -1) {
+        if(errno == EAGAIN) {
+            return false;
+        }
+        _throwErrnumException(env, errno, fd);
+        return false;
+    }
+    return true;
+#else
+    CK_ARGUMENT_POTENTIALLY_UNUSED(fd);
+    _throwException(env, kExceptionOperationNotSupportedSocketException, "eventfd");
+    return false;
+#endif
+}
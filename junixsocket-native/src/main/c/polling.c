@@ -37,12 +37,14 @@ static jclass class_PollFd = NULL;
 static jfieldID fieldID_fds = NULL;
 static jfieldID fieldID_ops = NULL;
 static jfieldID fieldID_rops = NULL;
+static jfieldID fieldID_numFds = NULL;
 
 void init_poll(JNIEnv *env) {
     class_PollFd = findClassAndGlobalRef(env, "org/newsclub/net/unix/AFSelector$PollFd");
     fieldID_fds = (*env)->GetFieldID(env, class_PollFd, "fds", "[Ljava/io/FileDescriptor;");
     fieldID_ops = (*env)->GetFieldID(env, class_PollFd, "ops", "[I");
     fieldID_rops = (*env)->GetFieldID(env, class_PollFd, "rops", "[I");
+    fieldID_numFds = (*env)->GetFieldID(env, class_PollFd, "numFds", "I");
 }
 
 void destroy_poll(JNIEnv *env) {
@@ -50,6 +52,7 @@ void destroy_poll(JNIEnv *env) {
     fieldID_fds = NULL;
     fieldID_ops = NULL;
     fieldID_rops = NULL;
+    fieldID_numFds = NULL;
 }
 
 static const int OP_READ = (1<<0);
@@ -94,7 +97,7 @@ static uint64_t timespecToMillis(struct timespec* ts) {
  *
  * Returns -1 if an exception was thrown, 0 if a timeout occurred, 1 if ready.
  */
-jint pollWithTimeout(JNIEnv * env, jobject fd, int handle, int timeout) {
+jint pollWithTimeout(JNIEnv * env, jobject fd, int handle, int timeout, jint opt) {
 #if defined(_WIN32)
     DWORD optVal;
 #else
@@ -105,6 +108,11 @@ jint pollWithTimeout(JNIEnv * env, jobject fd, int handle, int timeout) {
         return -1;
     }
 
+    if((opt & org_newsclub_net_unix_NativeUnixSocket_OPT_NON_BLOCKING) != 0) {
+        // non-blocking sockets never wait, even if a timeout is set
+        return 1;
+    }
+
     socklen_t optLen = sizeof(optVal);
 #if __TOS_MVS__
     int ret = 0;
@@ -346,8 +354,11 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_poll
     }
 
     jobject fdsObj = (*env)->GetObjectField(env, pollFdObj, fieldID_fds);
-    jsize nfds = (*env)->GetArrayLength(env, fdsObj);
-    if(nfds == 0) {
+    jsize nfds = (*env)->GetIntField(env, pollFdObj, fieldID_numFds);
+    if(nfds <= 0) {
+        return 0;
+    } else if(nfds > (*env)->GetArrayLength(env, fdsObj)) {
+        _throwException(env, kExceptionIndexOutOfBoundsException, "numFds");
         return 0;
     }
 
@@ -365,20 +376,30 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_poll
         return 0;
     }
 
+    int numClosed = 0;
     (*env)->GetIntArrayRegion(env, opsObj, 0, nfds, buf);
     for(int i=0; i<nfds;i++) {
         jobject fdObj = (*env)->GetObjectArrayElement(env, fdsObj, i);
 
         struct pollfd *pfd = &pollFd[i];
+        pfd->fd = -1; // ignored by poll
+        pfd->events = 0;
         if(fdObj) {
             int fd = _getFD(env, fdObj);
-            pfd->fd = fd;
-            pfd->events = opToEvent(buf[i]);
-        } else {
-            pfd->fd = 0;
-            pfd->events = 0;
+            if(fd >= 0) {
+                pfd->fd = fd;
+                pfd->events = opToEvent(buf[i]);
+            } else {
+                // already closed; reported as invalid (like POLLNVAL)
+                buf[i] = OP_INVALID;
+                numClosed++;
+            }
+            (*env)->DeleteLocalRef(env, fdObj);
         }
-}
+    }
+    if(numClosed > 0) {
+        timeout = 0;
+    }
 
 #if __TOS_MVS__
     if(timeout == -1) {
@@ -404,8 +425,12 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_poll
         _throwSockoptErrnumException(env, socket_errno, NULL);
         goto end;
     }
+    ret += numClosed;
 
     for(int i=0; i<nfds;i++) {
+        if(buf[i] == OP_INVALID) {
+            continue;
+        }
         int revents = pollFd[i].revents;
         if((revents & (POLLERR|POLLHUP|POLLNVAL)) != 0) {
             buf[i] |= OP_INVALID;
@@ -421,3 +446,170 @@ end:
     free(pollFd);
     return ret;
 }
+
+#if defined(junixsocket_have_epoll)
+// The maximum number of events reported per epollWait call (the Java code uses arrays of this size)
+#define JUX_EPOLL_MAX_EVENTS 256
+
+static uint32_t opToEpollEvent(int op) {
+    uint32_t event = 0;
+    if((op & OP_READ) || (op & OP_ACCEPT)) {
+        event |= EPOLLIN;
+    }
+    if((op & OP_WRITE) || (op & OP_CONNECT)) {
+        event |= EPOLLOUT;
+    }
+    return event;
+}
+
+static int epollEventToOp(uint32_t event) {
+    int op = 0;
+    if((event & EPOLLIN)) {
+        op |= (OP_READ | OP_ACCEPT); // will be masked accordingly later
+    }
+    if((event & EPOLLOUT)) {
+        op |= (OP_WRITE | OP_CONNECT); // will be masked accordingly later
+    }
+    if((event & (EPOLLERR | EPOLLHUP)) != 0) {
+        op |= OP_INVALID;
+    }
+    return op;
+}
+#endif
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    epollCreate
+ * Signature: (Ljava/io/FileDescriptor;)V
+ */
+JNIEXPORT void JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_epollCreate
+ (JNIEnv *env, jclass clazz CK_UNUSED, jobject fd) {
+#if defined(junixsocket_have_epoll)
+    int handle = epoll_create1(EPOLL_CLOEXEC);
+    if(handle == -1) {
+        _throwErrnumException(env, errno, NULL);
+        return;
+    }
+    _initFD(env, fd, handle);
+#else
+    CK_ARGUMENT_POTENTIALLY_UNUSED(fd);
+    _throwException(env, kExceptionOperationNotSupportedSocketException, "epoll");
+#endif
+}
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    epollCtl
+ * Signature: (Ljava/io/FileDescriptor;ILjava/io/FileDescriptor;II)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_epollCtl
+ (JNIEnv *env, jclass clazz CK_UNUSED, jobject epfd, jint mode, jobject fd, jint ops, jint id) {
+#if defined(junixsocket_have_epoll)
+    int epHandle = _getFD(env, epfd);
+    int handle = _getFD(env, fd);
+    if(epHandle < 0 || handle < 0) {
+        return false;
+    }
+
+    int op;
+    switch(mode) {
+        case org_newsclub_net_unix_NativeUnixSocket_EPOLL_CTL_ADD:
+            op = EPOLL_CTL_ADD;
+            break;
+        case org_newsclub_net_unix_NativeUnixSocket_EPOLL_CTL_MOD:
+            op = EPOLL_CTL_MOD;
+            break;
+        case org_newsclub_net_unix_NativeUnixSocket_EPOLL_CTL_DEL:
+            op = EPOLL_CTL_DEL;
+            break;
+        default:
+            _throwException(env, kExceptionInvalidArgumentSocketException, "mode");
+            return false;
+    }
+
+    struct epoll_event ev = {
+        .events = opToEpollEvent(ops),
+        .data.u64 = (uint64_t)(uint32_t)id
+    };
+
+    int ret = epoll_ctl(epHandle, op, handle, &ev);
+    if(ret == -1) {
+        int errnum = errno;
+        if(errnum == ENOENT || errnum == EBADF || errnum == EEXIST) {
+            // already closed/removed, or already registered
+            return false;
+        }
+        _throwErrnumException(env, errnum, fd);
+        return false;
+    }
+    return true;
+#else
+    CK_ARGUMENT_POTENTIALLY_UNUSED(epfd);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(mode);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(fd);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(ops);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(id);
+    _throwException(env, kExceptionOperationNotSupportedSocketException, "epoll");
+    return false;
+#endif
+}
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    epollWait
+ * Signature: (Ljava/io/FileDescriptor;[I[II)I
+ */
+JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_epollWait
+ (JNIEnv *env, jclass clazz CK_UNUSED, jobject epfd, jintArray idsOut, jintArray opsOut, jint timeout) {
+#if defined(junixsocket_have_epoll)
+    int epHandle = _getFD(env, epfd);
+    if(epHandle < 0) {
+        _throwException(env, kExceptionSocketException, "Selector is closed");
+        return -1;
+    }
+
+    jsize maxEvents = MIN((*env)->GetArrayLength(env, idsOut), (*env)->GetArrayLength(env, opsOut));
+    if(maxEvents <= 0) {
+        return 0;
+    }
+    // Performance: no allocations on the hot path; any further events are reported by the next
+    // call (epoll is level-triggered)
+    if(maxEvents > JUX_EPOLL_MAX_EVENTS) {
+        maxEvents = JUX_EPOLL_MAX_EVENTS;
+    }
+    struct epoll_event events[JUX_EPOLL_MAX_EVENTS];
+
+    int ret;
+    do {
+        ret = epoll_wait(epHandle, events, maxEvents, timeout);
+    } while(ret == -1 && errno == EINTR && timeout == 0);
+
+    if(ret == -1) {
+        if(errno == EINTR) {
+            // interrupted (e.g., by a signal); report as "nothing selected"
+            ret = 0;
+        } else {
+            ret = 0;
+            _throwErrnumException(env, errno, NULL);
+        }
+    } else if(ret > 0) {
+        jint ids[JUX_EPOLL_MAX_EVENTS];
+        jint ops[JUX_EPOLL_MAX_EVENTS];
+        for(int i = 0; i < ret; i++) {
+            ids[i] = (jint)(uint32_t)events[i].data.u64;
+            ops[i] = epollEventToOp(events[i].events);
+        }
+        (*env)->SetIntArrayRegion(env, idsOut, 0, ret, ids);
+        (*env)->SetIntArrayRegion(env, opsOut, 0, ret, ops);
+    }
+
+    return ret;
+#else
+    CK_ARGUMENT_POTENTIALLY_UNUSED(epfd);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(idsOut);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(opsOut);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(timeout);
+    _throwException(env, kExceptionOperationNotSupportedSocketException, "epoll");
+    return -1;
+#endif
+}
@@ -26,7 +26,7 @@ void destroy_poll(JNIEnv *env);
 
 #if defined(junixsocket_use_poll_for_accept) || defined(junixsocket_use_poll_for_read)
 
-jint pollWithTimeout(JNIEnv * env, jobject fd, int handle, int timeout);
+jint pollWithTimeout(JNIEnv * env, jobject fd, int handle, int timeout, jint opt);
 jint pollWithMillis(int handle, uint64_t millis);
 
 #endif
@@ -38,6 +38,13 @@ static int optToFlags(jint opt) {
     if ((opt & (org_newsclub_net_unix_NativeUnixSocket_OPT_PEEK)) != 0) {
         flags |= MSG_PEEK;
     }
+#if junixsocket_have_MSG_DONTWAIT
+    if ((opt & (org_newsclub_net_unix_NativeUnixSocket_OPT_NON_BLOCKING | org_newsclub_net_unix_NativeUnixSocket_OPT_NON_SOCKET))
+        == org_newsclub_net_unix_NativeUnixSocket_OPT_NON_BLOCKING) {
+        // don't block, even if the socket itself is in blocking mode
+        flags |= MSG_DONTWAIT;
+    }
+#endif
     return flags;
 }
 
@@ -66,11 +73,88 @@ static ssize_t recv_wrapper(int handle, jbyte *buf, jint length, jux_sockaddr_t
     return count;
 }
 
-static ssize_t recvmsg_wrapper(JNIEnv * env, int handle, jbyte *buf, jint length, jux_sockaddr_t *senderBuf, socklen_t *senderBufLen, jint opt, jobject ancSupp) {
+static ssize_t recvv_wrapper(int handle, jux_iovec_t *iov, int iovcnt, jux_sockaddr_t *senderBuf, socklen_t *senderBufLen, jint opt) {
+    if(iovcnt == 1) {
+        return recv_wrapper(handle, iov->iov_base, (jint)iov->iov_len, senderBuf, senderBufLen, opt);
+    }
+#if defined(_WIN32)
+    // no scatter support; a partial read is permissible
+    return recv_wrapper(handle, iov->iov_base, (jint)iov->iov_len, senderBuf, senderBufLen, opt);
+#else
+    int flags = optToFlags(opt);
+
+    ssize_t count;
+    do {
+        if((opt & org_newsclub_net_unix_NativeUnixSocket_OPT_NON_SOCKET) != 0 && flags == 0) {
+            // "readv" can be used with pipes, too.
+            count = readv(handle, iov, iovcnt);
+            if(senderBufLen) {
+                *senderBufLen = 0;
+            }
+        } else {
+            struct msghdr msg = {.msg_name = (struct sockaddr*)senderBuf, .msg_namelen = senderBufLen == NULL ? 0 : *senderBufLen, .msg_iov = iov, .msg_iovlen = iovcnt};
+            count = recvmsg(handle, &msg, flags);
+            if(count == -1 && socket_errno == ENOTSOCK) {
+                // unexpected non-socket, try again with readv
+                count = readv(handle, iov, iovcnt);
+            } else if(senderBufLen) {
+                *senderBufLen = msg.msg_namelen;
+            }
+        }
+    } while(count == (ssize_t)-1 && (socket_errno == EINTR));
+
+    return count;
+#endif
+}
+
+#if defined(junixsocket_have_ancillary)
+/*
+ * Returns the number of bytes of cmsg data, truncated to the control buffer.
+ */
+static size_t cmsgDataLen(struct cmsghdr *cmsg, void *control, size_t controlLen) {
+    char *endBytes = (char*)cmsg + cmsg->cmsg_len;
+    char *controlEnd = (char*)control + controlLen;
+    if(controlEnd < endBytes) {
+        endBytes = controlEnd;
+    }
+    unsigned char *data = CMSG_DATA(cmsg);
+    if((unsigned char *)endBytes < data) {
+        return 0;
+    }
+    return (size_t)((unsigned char *)endBytes - data);
+}
+
+/*
+ * Closes the file descriptors received via SCM_RIGHTS, starting with the given cmsg, which were
+ * not handed over to Java.
+ */
+static void closeReceivedFileDescriptors(struct msghdr *msg, struct cmsghdr *cmsg) {
+    struct cmsghdr *cmsgPrev = NULL;
+    for(; cmsg != NULL; cmsg = junixsocket_CMSG_NXTHDR(msg, cmsg)) {
+        if(cmsg == cmsgPrev) {
+            break;
+        }
+        cmsgPrev = cmsg;
+
+        if(cmsg->cmsg_level != SOL_SOCKET || cmsg->cmsg_type != SCM_RIGHTS) {
+            continue;
+        }
+        size_t numFds = cmsgDataLen(cmsg, msg->msg_control, msg->msg_controllen) / sizeof(int);
+        unsigned char *data = CMSG_DATA(cmsg);
+        for(size_t i = 0; i < numFds; i++) {
+            int fd;
+            memcpy(&fd, data + i * sizeof(int), sizeof(int));
+            close(fd);
+        }
+    }
+}
+#endif
+
+static ssize_t recvmsgv_wrapper(JNIEnv * env, int handle, jux_iovec_t *iov, int iovcnt, jux_sockaddr_t *senderBuf, socklen_t *senderBufLen, jint opt, jobject ancSupp) {
 #if !defined(junixsocket_have_ancillary)
     CK_ARGUMENT_POTENTIALLY_UNUSED(env);
     CK_ARGUMENT_POTENTIALLY_UNUSED(ancSupp);
-    return recv_wrapper(handle, buf, length, senderBuf, senderBufLen, opt);
+    return recvv_wrapper(handle, iov, iovcnt, senderBuf, senderBufLen, opt);
 #else
 
     static struct msghdr msgHdr;
@@ -98,7 +182,7 @@ static ssize_t recvmsg_wrapper(JNIEnv * env, int handle, jbyte *buf, jint length
 #endif
 
     if (control == NULL || controlLen == 0 || ancSupp == NULL) {
-        return recv_wrapper(handle, buf, length, senderBuf, senderBufLen, opt);
+        return recvv_wrapper(handle, iov, iovcnt, senderBuf, senderBufLen, opt);
     } else if(controlLen < sizeof(struct cmsghdr)) {
         // DragonFlyBSD doesn't throw an exception by itself, so we have to do it.
         _throwException(env, kExceptionSocketException, "No buffer space available");
@@ -109,8 +193,7 @@ static ssize_t recvmsg_wrapper(JNIEnv * env, int handle, jbyte *buf, jint length
 
     ssize_t count;
 
-    struct iovec iov = {.iov_base = buf, .iov_len = (size_t)length};
-    struct msghdr msg = {.msg_name = (struct sockaddr*)senderBuf, .msg_namelen = senderBufLen == NULL ? 0 : *senderBufLen, .msg_iov = &iov, .msg_iovlen = 1, .msg_control =
+    struct msghdr msg = {.msg_name = (struct sockaddr*)senderBuf, .msg_namelen = senderBufLen == NULL ? 0 : *senderBufLen, .msg_iov = iov, .msg_iovlen = iovcnt, .msg_control =
         control, .msg_controllen = controlLen, };
 
     do {
@@ -122,6 +205,10 @@ static ssize_t recvmsg_wrapper(JNIEnv * env, int handle, jbyte *buf, jint length
     }
 
     if((msg.msg_flags & MSG_CTRUNC) != 0) {
+        // some file descriptors may have been received nevertheless
+        if(msg.msg_controllen > 0 && msg.msg_control != NULL) {
+            closeReceivedFileDescriptors(&msg, CMSG_FIRSTHDR(&msg));
+        }
         errno = ENOBUFS;
         count = -1;
         return count;
@@ -142,13 +229,8 @@ static ssize_t recvmsg_wrapper(JNIEnv * env, int handle, jbyte *buf, jint length
         }
         cmsgPrev = cmsg;
 
-        char *endBytes = (char*)cmsg + cmsg->cmsg_len;
-        char *controlEnd = (char*)control + controlLen;
-        if(controlEnd < endBytes) {
-            endBytes = controlEnd;
-        }
         unsigned char *data = CMSG_DATA(cmsg);
-        size_t len = ((unsigned char *)endBytes - data);
+        size_t len = cmsgDataLen(cmsg, control, controlLen);
 
         if(cmsg->cmsg_level == SOL_SOCKET
            && cmsg->cmsg_type == SCM_RIGHTS) {
@@ -159,17 +241,25 @@ static ssize_t recvmsg_wrapper(JNIEnv * env, int handle, jbyte *buf, jint length
 
             if(numFds > 0) {
                 jintArray fdArray = (*env)->NewIntArray(env, numFds);
-                jint *fdBuf = (*env)->GetIntArrayElements(env, fdArray,
-                                                          NULL);
-
-                memcpy(fdBuf, data, numFds * sizeof(int));
-
-                (*env)->ReleaseIntArrayElements(env, fdArray, fdBuf, 0);
+                if(fdArray == NULL) {
+                    // OOME
+                    closeReceivedFileDescriptors(&msg, cmsg);
+                    return -1;
+                }
+                CK_IGNORE_CAST_ALIGN_BEGIN
+                (*env)->SetIntArrayRegion(env, fdArray, 0, numFds, (jint*)data);
+                CK_IGNORE_CAST_ALIGN_END
 
-                callObjectSetter(env, ancSupp, "receiveFileDescriptors",
-                                 "([I)V", fdArray);
+                // receiveFileDescriptors only takes ownership if it doesn't throw
+                (*env)->CallVoidMethod(env, ancSupp, getMethodID_receiveFileDescriptors(), fdArray);
+                (*env)->DeleteLocalRef(env, fdArray);
+                if((*env)->ExceptionCheck(env)) {
+                    closeReceivedFileDescriptors(&msg, cmsg);
+                    return -1;
+                }
             } else if(numFds < 0) {
                 _throwException(env, kExceptionSocketException, "No buffer space available");
+                closeReceivedFileDescriptors(&msg, cmsg);
                 return -1;
             }
 #if junixsocket_have_tipc
@@ -182,6 +272,7 @@ static ssize_t recvmsg_wrapper(JNIEnv * env, int handle, jbyte *buf, jint length
             if(kSetTipcErrorInfo != NULL) {
                 (*env)->CallVoidMethod(env, ancSupp, kSetTipcErrorInfo, errInfo->errorCode, errInfo->dataLength);
                 if((*env)->ExceptionCheck(env)) {
+                    closeReceivedFileDescriptors(&msg, cmsg);
                     return -1;
                 }
             }
@@ -193,6 +284,7 @@ static ssize_t recvmsg_wrapper(JNIEnv * env, int handle, jbyte *buf, jint length
             if(kSetTipcDestName != NULL) {
                 (*env)->CallVoidMethod(env, ancSupp, kSetTipcDestName, addr->type, addr->lower, addr->upper);
                 if((*env)->ExceptionCheck(env)) {
+                    closeReceivedFileDescriptors(&msg, cmsg);
                     return -1;
                 }
             }
@@ -213,6 +305,11 @@ static ssize_t recvmsg_wrapper(JNIEnv * env, int handle, jbyte *buf, jint length
 #endif
 }
 
+static ssize_t recvmsg_wrapper(JNIEnv * env, int handle, jbyte *buf, jint length, jux_sockaddr_t *senderBuf, socklen_t *senderBufLen, jint opt, jobject ancSupp) {
+    jux_iovec_t iov = {.iov_base = buf, .iov_len = (size_t)length};
+    return recvmsgv_wrapper(env, handle, &iov, 1, senderBuf, senderBufLen, opt, ancSupp);
+}
+
 /*
  * Class:     org_newsclub_net_unix_NativeUnixSocket
  * Method:    read
@@ -248,7 +345,7 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_read(
     int handle = _getFD(env, fd);
 
 #if defined(junixsocket_use_poll_for_read)
-    int ret = pollWithTimeout(env, fd, handle, hardTimeoutMillis);
+    int ret = pollWithTimeout(env, fd, handle, hardTimeoutMillis, opt);
     if(ret < 1) {
         if(checkNonBlocking(handle, socket_errno)) {
             // non-blocking socket
@@ -264,7 +361,10 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_read(
     }
 #endif
 
-    jbyte *buf = malloc((size_t)length);
+    // Performance: avoid malloc/free for every call; small reads use the stack,
+    // larger ones a reused per-thread buffer
+    jbyte stackBuf[JUX_SCRATCH_STACK_BUFFER_SIZE];
+    jbyte *buf = acquireScratchBuffer((size_t)length, stackBuf, sizeof(stackBuf));
     if(buf == NULL) {
         return -1; // OOME
     }
@@ -274,7 +374,11 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_read(
     count = recvmsg_wrapper(env, handle, buf, length, NULL, 0, opt, ancSupp);
 
     jint returnValue;
-    if(count < 0) {
+    if(count < 0 && (opt & org_newsclub_net_unix_NativeUnixSocket_OPT_NON_BLOCKING) != 0
+       && (socket_errno == EAGAIN || socket_errno == EWOULDBLOCK)) {
+        // no data available (non-blocking read)
+        returnValue = 0;
+    } else if(count < 0) {
         // read(2) returns -1 on error. Java throws an Exception.
         _throwErrnumException(env, errno, fd);
         returnValue = -1;
@@ -282,7 +386,7 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_read(
         // read(2)/recv return 0 on EOF. Java returns -1.
         returnValue = -1;
     } else if(jbuf) {
-        (*env)->SetByteArrayRegion(env, jbuf, offset, length, buf);
+        (*env)->SetByteArrayRegion(env, jbuf, offset, (jsize)count, buf);
 
         returnValue = (jint)count;
     } else {
@@ -290,10 +394,44 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_read(
         returnValue = (*buf & 0xFF);
     }
 
-    free(buf);
+    releaseScratchBuffer(buf, stackBuf);
     return returnValue;
 }
 
+static ssize_t handleReceiveResult(JNIEnv *env, jobject fd, int handle, ssize_t count, jint opt);
+
+/**
+ * Checks if data can be received (only if junixsocket_use_poll_for_read is defined).
+ *
+ * Returns 1 if the caller should proceed with receiving, or the value the caller should return
+ * otherwise.
+ */
+static jint pollBeforeReceive(JNIEnv *env, jobject fd, int handle, jint opt, jint hardTimeoutMillis) {
+#if defined(junixsocket_use_poll_for_read)
+    int ret = pollWithTimeout(env, fd, handle, hardTimeoutMillis, opt);
+    if(ret < 1) {
+        if(checkNonBlocking0(handle, socket_errno, opt)) {
+            // non-blocking socket
+            return 0;
+        } else if(ret == -1) {
+            _throwErrnumException(env, errno, fd);
+            return -1;
+        } else {
+            // timeout on blocking socket
+            _throwException(env, kExceptionSocketTimeoutException, "timeout");
+            return -1;
+        }
+    }
+#else
+    CK_ARGUMENT_POTENTIALLY_UNUSED(env);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(fd);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(handle);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(opt);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(hardTimeoutMillis);
+#endif
+    return 1;
+}
+
 /*
  * Class:     org_newsclub_net_unix_NativeUnixSocket
  * Method:    receive
@@ -310,22 +448,10 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_receive
         return -1;
     }
 
-#if defined(junixsocket_use_poll_for_read)
-    int ret = pollWithTimeout(env, fd, handle, hardTimeoutMillis);
-    if(ret < 1) {
-        if(checkNonBlocking0(handle, socket_errno, opt)) {
-            // non-blocking socket
-            return 0;
-        } else if(ret == -1) {
-            _throwErrnumException(env, errno, fd);
-            return -1;
-        } else {
-            // timeout on blocking socket
-            _throwException(env, kExceptionSocketTimeoutException, "timeout");
-            return -1;
-        }
+    jint pollRet = pollBeforeReceive(env, fd, handle, opt, hardTimeoutMillis);
+    if(pollRet != 1) {
+        return pollRet;
     }
-#endif
 
     struct jni_direct_byte_buffer_ref dataBufferRef =
     getDirectByteBufferRef (env, buffer, offset, 0);
@@ -355,14 +481,36 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_receive
 
     // NOTE: if we receive messages from an unbound socket, the "sender" may be just a bunch of zeros.
 
+    return (jint)handleReceiveResult(env, fd, handle, count, opt);
+}
+
+/**
+ * Checks if a zero-length result means "end of stream", which is the case for stream sockets (for
+ * datagram sockets, a zero-length datagram is a valid message). The caller indicates datagram
+ * sockets via OPT_DGRAM_MODE.
+ */
+static jboolean isEndOfStream(jint opt) {
+    return (opt & (org_newsclub_net_unix_NativeUnixSocket_OPT_NON_SOCKET
+                   | org_newsclub_net_unix_NativeUnixSocket_OPT_DGRAM_MODE)) == 0;
+}
+
+static ssize_t handleReceiveResult(JNIEnv *env, jobject fd, int handle, ssize_t count, jint opt) {
     int theError;
-    if(count == -1) {
+    if(count == 0 && isEndOfStream(opt)) {
+        // EOF, also for non-blocking sockets: "no data available" is reported as EAGAIN, so 0 can
+        // only mean end of stream here; returning 0 would make non-blocking callers poll forever.
+        return -1;
+    } else if(count == -1 && (opt & org_newsclub_net_unix_NativeUnixSocket_OPT_NON_BLOCKING) != 0
+       && (socket_errno == EAGAIN || socket_errno == EWOULDBLOCK)) {
+        // no data available (non-blocking receive on a blocking socket, via MSG_DONTWAIT)
+        return 0;
+    } else if(count == -1) {
         theError = errno;
     } else if(count == 0) {
         // check if non-blocking below
         theError = EWOULDBLOCK;
     } else {
-        return (jint)count;
+        return count;
     }
 
     if(checkNonBlocking0(handle, theError, opt)) {
@@ -380,11 +528,18 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_receive
             _throwErrnumException(env, errno, fd);
         }
         return 0;
-    } else if(theError == EWOULDBLOCK) {
+    } else if(count == 0) {
+        // EOF
         return -1;
     } else if(count == -1) {
         if(theError == ENOENT) {
             return -1;
+        } else if(theError == EAGAIN || theError == EWOULDBLOCK) {
+            // The receive timeout (SO_RCVTIMEO) of a blocking socket has expired. This must not be
+            // reported as -1, which callers would take as end of stream, and then stop reading
+            // from a connection that is still open.
+            _throwException(env, kExceptionSocketTimeoutException, "Read timed out");
+            return 0;
         }
         // read(2) returns -1 on error. Java throws an Exception.
         if(!(*env)->ExceptionCheck(env)) {
@@ -393,5 +548,437 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_receive
     }
     count = 0;
 
+    return count;
+}
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    receivev
+ * Signature: (Ljava/io/FileDescriptor;[Ljava/nio/ByteBuffer;I[IIILorg/newsclub/net/unix/AncillaryDataSupport;I)J
+ */
+JNIEXPORT jlong JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_receivev
+(JNIEnv *env, jclass clazz CK_UNUSED, jobject fd, jobjectArray buffers, jint bufferOffset, jintArray offsetsAndLengths, jint numBuffers, jint opt, jobject ancSupp, jint hardTimeoutMillis) {
+    int handle = _getFD(env, fd);
+    if(handle < 0) {
+        _throwException(env, kExceptionSocketException, "Socket is closed");
+        return -1;
+    }
+
+    if(numBuffers > JUX_IOV_MAX) {
+        numBuffers = JUX_IOV_MAX;
+    }
+
+    jux_iovec_t stackIov[16];
+    jux_iovec_t *iov = numBuffers <= 16 ? stackIov : malloc((size_t)numBuffers * sizeof(jux_iovec_t));
+    if(iov == NULL) {
+        return -1; // OOME
+    }
+
+    ssize_t count;
+    int iovcnt = getDirectByteBufferIovecs(env, buffers, bufferOffset, offsetsAndLengths, numBuffers, iov);
+    if(iovcnt < 0) {
+        count = -1;
+    } else if(iovcnt == 0) {
+        count = 0;
+    } else {
+        jint pollRet = pollBeforeReceive(env, fd, handle, opt, hardTimeoutMillis);
+        if(pollRet != 1) {
+            count = pollRet;
+        } else {
+            count = recvmsgv_wrapper(env, handle, iov, iovcnt, NULL, NULL, opt, ancSupp);
+            count = handleReceiveResult(env, fd, handle, count, opt);
+        }
+    }
+
+    if(iov != stackIov) {
+        free(iov);
+    }
+    return (jlong)count;
+}
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    receiveMessages
+ * Signature: (Ljava/io/FileDescriptor;[Ljava/nio/ByteBuffer;I[IILjava/nio/ByteBuffer;III)I
+ */
+JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_receiveMessages
+(JNIEnv *env, jclass clazz CK_UNUSED, jobject fd, jobjectArray buffers, jint bufferOffset, jintArray offsetsAndLengths, jint numMessages, jobject addressesBuffer, jint addressStride, jint opt, jint hardTimeoutMillis) {
+    int handle = _getFD(env, fd);
+    if(handle < 0) {
+        _throwException(env, kExceptionSocketException, "Socket is closed");
+        return -1;
+    }
+
+    if(numMessages > JUX_IOV_MAX) {
+        numMessages = JUX_IOV_MAX;
+    }
+    if(numMessages <= 0) {
+        return 0;
+    }
+
+    jbyte *addrBase = NULL;
+    if(addressesBuffer != NULL) {
+        if(addressStride <= 0) {
+            _throwException(env, kExceptionIndexOutOfBoundsException, "addressStride");
+            return -1;
+        }
+        struct jni_direct_byte_buffer_ref addressesBufferRef =
+        getDirectByteBufferRef (env, addressesBuffer, 0, (size_t)addressStride * (size_t)numMessages);
+        if(addressesBufferRef.size == -1 || addressesBufferRef.buf == NULL) {
+            _throwException(env, kExceptionSocketException, "Cannot get addressesBuffer");
+            return -1;
+        }
+        addrBase = addressesBufferRef.buf;
+
+        // the sender addresses are compared byte-by-byte, so make sure unused bytes are zero
+        memset(addrBase, 0, (size_t)addressStride * (size_t)numMessages);
+    }
+
+    jux_iovec_t stackIov[16];
+    jux_iovec_t *iov = numMessages <= 16 ? stackIov : malloc((size_t)numMessages * sizeof(jux_iovec_t));
+    if(iov == NULL) {
+        return -1; // OOME
+    }
+
+    ssize_t count;
+    int iovcnt = getDirectByteBufferIovecs(env, buffers, bufferOffset, offsetsAndLengths, numMessages, iov);
+    if(iovcnt <= 0) {
+        count = (iovcnt < 0) ? -1 : 0;
+        goto end;
+    }
+
+    jint pollRet = pollBeforeReceive(env, fd, handle, opt, hardTimeoutMillis);
+    if(pollRet != 1) {
+        count = pollRet;
+        goto end;
+    }
+
+    jint lengths[JUX_IOV_MAX];
+    int flags = optToFlags(opt);
+
+#if junixsocket_have_mmsg
+    struct mmsghdr stackMsgs[16];
+    struct mmsghdr *msgs = numMessages <= 16 ? stackMsgs : calloc((size_t)numMessages, sizeof(struct mmsghdr));
+    if(msgs == NULL) {
+        count = -1; // OOME
+        goto end;
+    }
+    memset(msgs, 0, (size_t)numMessages * sizeof(struct mmsghdr));
+    for(jint i = 0; i < numMessages; i++) {
+        msgs[i].msg_hdr.msg_iov = &iov[i];
+        msgs[i].msg_hdr.msg_iovlen = 1;
+        if(addrBase != NULL) {
+            msgs[i].msg_hdr.msg_name = addrBase + (size_t)i * (size_t)addressStride;
+            msgs[i].msg_hdr.msg_namelen = (socklen_t)MIN(SOCKLEN_MAX, (unsigned)addressStride);
+        }
+    }
+
+    // block (if necessary) for the first message only, then take whatever else is available
+    do {
+        count = recvmmsg(handle, msgs, (unsigned int)numMessages, flags | MSG_WAITFORONE, NULL);
+    } while(count == -1 && socket_errno == EINTR);
+
+    for(ssize_t i = 0; i < count; i++) {
+        lengths[i] = (jint)msgs[i].msg_len;
+    }
+
+    if(msgs != stackMsgs) {
+        free(msgs);
+    }
+#else
+    // no recvmmsg; emulate by receiving one message at a time
+    count = 0;
+    for(jint i = 0; i < numMessages; i++) {
+        jux_sockaddr_t *senderBuf = NULL;
+        socklen_t senderBufLen = 0;
+        if(addrBase != NULL) {
+            senderBuf = (jux_sockaddr_t *)(addrBase + (size_t)i * (size_t)addressStride);
+            senderBufLen = (socklen_t)MIN(SOCKLEN_MAX, (unsigned)addressStride);
+        }
+        ssize_t ret;
+        do {
+            ret = recvfrom(handle, iov[i].iov_base, iov[i].iov_len, flags, (struct sockaddr *)senderBuf, senderBuf == NULL ? NULL : &senderBufLen);
+        } while(ret == -1 && socket_errno == EINTR);
+
+        if(ret == -1) {
+            if(i == 0) {
+                count = -1;
+            }
+            break;
+        }
+        lengths[i] = (jint)ret;
+        count++;
+
+#  if junixsocket_have_MSG_DONTWAIT
+        flags |= MSG_DONTWAIT;
+#  else
+        break;
+#  endif
+    }
+#endif
+
+    if(count > 0) {
+        // report the length of each received message
+        for(ssize_t i = 0; i < count; i++) {
+            (*env)->SetIntArrayRegion(env, offsetsAndLengths, (jsize)(2 * i + 1), 1, &lengths[i]);
+        }
+    } else if(count == -1) {
+        count = handleReceiveResult(env, fd, handle, count, opt);
+    }
+
+end:
+    if(iov != stackIov) {
+        free(iov);
+    }
     return (jint)count;
 }
+
+#if junixsocket_have_splice
+#  include <pthread.h>
+#  define JUX_SPLICE_CHUNK_SIZE (64 * 1024) // default pipe capacity on Linux
+
+/**
+ * splice(2) requires one end to be a pipe, so we go socket -> pipe -> file. The pipe is kept per
+ * thread, and only cached while it is empty.
+ */
+struct jux_splice_pipe {
+    int fds[2];
+};
+
+static pthread_key_t splicePipeKey;
+static jboolean splicePipeKeyValid = false;
+
+static void closeSplicePipe(void *ptr) {
+    struct jux_splice_pipe *sp = ptr;
+    if(sp != NULL) {
+        close(sp->fds[0]);
+        close(sp->fds[1]);
+        free(sp);
+    }
+}
+
+/**
+ * Returns the current thread's pipe, creating it if necessary. Returns NULL (with errno set) on
+ * error.
+ */
+static struct jux_splice_pipe *acquireSplicePipe(void) {
+    struct jux_splice_pipe *sp = splicePipeKeyValid ? pthread_getspecific(splicePipeKey) : NULL;
+    if(sp != NULL) {
+        return sp;
+    }
+    sp = malloc(sizeof(struct jux_splice_pipe));
+    if(sp == NULL) {
+        errno = ENOMEM;
+        return NULL;
+    }
+    if(pipe2(sp->fds, O_CLOEXEC) != 0) {
+        int errnum = errno;
+        free(sp);
+        errno = errnum;
+        return NULL;
+    }
+    if(splicePipeKeyValid) {
+        // if this fails, the pipe is not cached, and closed upon release
+        pthread_setspecific(splicePipeKey, sp);
+    }
+    return sp;
+}
+
+/**
+ * Releases the pipe acquired via acquireSplicePipe. A pipe that may still contain data is closed.
+ */
+static void releaseSplicePipe(struct jux_splice_pipe *sp, jboolean empty) {
+    jboolean cached = splicePipeKeyValid && pthread_getspecific(splicePipeKey) == sp;
+    if(cached && empty) {
+        // keep for reuse
+        return;
+    }
+    if(cached) {
+        pthread_setspecific(splicePipeKey, NULL);
+    }
+    closeSplicePipe(sp);
+}
+
+/**
+ * Writes the given number of bytes from the pipe to the target with read(2)/write(2), after
+ * splicing them failed, so that data already taken from the socket is not lost.
+ *
+ * Returns 0 on success, or the errno value upon error; total is updated with the bytes written.
+ */
+static int drainSplicePipe(int pipeIn, int outHandle, loff_t *offPtr, size_t len, jlong *total) {
+    char buf[8192];
+    while(len > 0) {
+        ssize_t count = read(pipeIn, buf, MIN(len, sizeof(buf)));
+        if(count < 0) {
+            if(errno == EINTR) {
+                continue;
+            }
+            return errno;
+        } else if(count == 0) {
+            return EIO; // should not happen
+        }
+        ssize_t done = 0;
+        while(done < count) {
+            ssize_t written = (offPtr == NULL) ? write(outHandle, buf + done, (size_t)(count - done))
+            : pwrite(outHandle, buf + done, (size_t)(count - done), *offPtr);
+            if(written < 0) {
+                if(errno == EINTR) {
+                    continue;
+                }
+                return errno;
+            }
+            done += written;
+            *total += written;
+            if(offPtr != NULL) {
+                *offPtr += written;
+            }
+        }
+        len -= (size_t)count;
+    }
+    return 0;
+}
+#endif
+
+void init_receive(JNIEnv *env CK_UNUSED) {
+#if junixsocket_have_splice
+    if(!splicePipeKeyValid) {
+        splicePipeKeyValid = (pthread_key_create(&splicePipeKey, closeSplicePipe) == 0);
+    }
+#endif
+}
+
+void destroy_receive(JNIEnv *env CK_UNUSED) {
+#if junixsocket_have_splice
+    if(splicePipeKeyValid) {
+        splicePipeKeyValid = false;
+        // the pipe of the current thread is closed here; pipes of other threads leak
+        closeSplicePipe(pthread_getspecific(splicePipeKey));
+        pthread_setspecific(splicePipeKey, NULL);
+        pthread_key_delete(splicePipeKey);
+    }
+#endif
+}
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    splice
+ * Signature: (Ljava/io/FileDescriptor;Ljava/io/FileDescriptor;JJII)J
+ */
+JNIEXPORT jlong JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_splice
+(JNIEnv *env, jclass clazz CK_UNUSED, jobject fdIn, jobject fdOut, jlong offset, jlong count, jint opt, jint hardTimeoutMillis) {
+#if junixsocket_have_splice
+    int inHandle = _getFD(env, fdIn);
+    if(inHandle < 0) {
+        _throwException(env, kExceptionSocketException, "Socket is closed");
+        return -1;
+    }
+    int outHandle = _getFD(env, fdOut);
+    if(outHandle < 0) {
+        _throwException(env, kExceptionSocketException, "File descriptor is closed");
+        return -1;
+    }
+    if(count <= 0) {
+        return 0;
+    }
+
+    // splice(2) does not support appending to a file; check this before any data is consumed
+    int outFlags = fcntl(outHandle, F_GETFL);
+    if(outFlags == -1 || (outFlags & O_APPEND) != 0) {
+        _throwException(env, kExceptionOperationNotSupportedSocketException, "splice");
+        return -1;
+    }
+
+    jint pollRet = pollBeforeReceive(env, fdIn, inHandle, opt, hardTimeoutMillis);
+    if(pollRet != 1) {
+        // 0: no data on non-blocking socket; -1: exception thrown
+        return -1;
+    }
+
+    struct jux_splice_pipe *sp = acquireSplicePipe();
+    if(sp == NULL) {
+        _throwErrnumException(env, errno, NULL);
+        return -1;
+    }
+
+    loff_t off = (loff_t)offset;
+    loff_t *offPtr = (offset < 0) ? NULL : &off;
+
+    jboolean nonBlocking = (opt & org_newsclub_net_unix_NativeUnixSocket_OPT_NON_BLOCKING) != 0;
+    jlong total = 0;
+    jboolean eof = false;
+    jboolean consumed = false;
+    ssize_t inPipe = 0;
+    int errnum = 0;
+
+    while(total < count) {
+        size_t len = (count - total > JUX_SPLICE_CHUNK_SIZE) ? JUX_SPLICE_CHUNK_SIZE : (size_t)(count - total);
+
+        // only block until the first chunk arrives; after that, just take what's available
+        inPipe = splice(inHandle, NULL, sp->fds[1], NULL, len, SPLICE_F_MOVE |
+                        ((nonBlocking || total > 0) ? SPLICE_F_NONBLOCK : 0));
+        if(inPipe == 0) {
+            eof = true;
+            break;
+        } else if(inPipe < 0) {
+            if(errno == EINTR) {
+                continue;
+            } else if(errno != EAGAIN && errno != EWOULDBLOCK) {
+                errnum = errno;
+            }
+            inPipe = 0;
+            break;
+        }
+        consumed = true;
+
+        jboolean drained = false;
+        while(inPipe > 0) {
+            ssize_t written = splice(sp->fds[0], NULL, outHandle, offPtr, (size_t)inPipe, SPLICE_F_MOVE);
+            if(written < 0) {
+                if(errno == EINTR) {
+                    continue;
+                }
+                // e.g., the target does not support splice; the data is out of the socket already,
+                // so copy it instead
+                errnum = drainSplicePipe(sp->fds[0], outHandle, offPtr, (size_t)inPipe, &total);
+                if(errnum == 0) {
+                    inPipe = 0;
+                    drained = true;
+                }
+                break;
+            }
+            inPipe -= written;
+            total += written;
+        }
+        if(errnum != 0 || drained) {
+            break;
+        }
+    }
+
+    releaseSplicePipe(sp, inPipe <= 0);
+
+    if(errnum != 0 && (total == 0 || inPipe > 0)) {
+        // report errors unless they occurred after some data was transferred completely (the error
+        // is then reported upon the next call)
+        if(!consumed && (errnum == EINVAL || errnum == ENOSYS)) {
+            // e.g., the socket type does not support splice
+            _throwException(env, kExceptionOperationNotSupportedSocketException, "splice");
+        } else {
+            _throwErrnumException(env, errnum, fdIn);
+        }
+        return -1;
+    } else if(total == 0 && !eof) {
+        // no data available on non-blocking socket
+        return -1;
+    }
+    return total;
+#else
+    CK_ARGUMENT_POTENTIALLY_UNUSED(fdIn);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(fdOut);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(offset);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(count);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(opt);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(hardTimeoutMillis);
+    _throwException(env, kExceptionOperationNotSupportedSocketException, "splice");
+    return -1;
+#endif
+}
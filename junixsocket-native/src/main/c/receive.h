@@ -22,5 +22,7 @@
 #include "config.h"
 #include "address.h"
 
+CK_VISIBILITY_INTERNAL void init_receive(JNIEnv *env);
+CK_VISIBILITY_INTERNAL void destroy_receive(JNIEnv *env);
 
 #endif /* receive_h */
@@ -27,6 +27,9 @@ static jboolean doSetServerSocket = true;
 static jclass kClassAbstractSelectableChannel;
 static jmethodID kMethodRemoveKey;
 
+static jclass kClassSelChImpl;
+static jmethodID kMethodSelChImplGetFD;
+
 static jboolean cap_largePorts = false;
 
 static jboolean checkCapLargePorts(JNIEnv *env);
@@ -48,11 +51,26 @@ void init_reflection(JNIEnv *env) {
         }
     }
 
+    // implemented by the JDK's selectable channels (not available on Android, etc.)
+    kClassSelChImpl = (*env)->FindClass(env, "sun/nio/ch/SelChImpl");
+    if(kClassSelChImpl == NULL) {
+        (*env)->ExceptionClear(env);
+    } else {
+        kMethodSelChImplGetFD = (*env)->GetMethodID(env, kClassSelChImpl, "getFD", "()Ljava/io/FileDescriptor;");
+        if(kMethodSelChImplGetFD == NULL) {
+            (*env)->ExceptionClear(env);
+            kClassSelChImpl = NULL;
+        } else {
+            kClassSelChImpl = (*env)->NewGlobalRef(env, kClassSelChImpl);
+        }
+    }
+
     cap_largePorts = checkCapLargePorts(env);
 }
 
 void destroy_reflection(JNIEnv *env) {
     releaseClassGlobalRef(env, kClassAbstractSelectableChannel);
+    releaseClassGlobalRef(env, kClassSelChImpl);
 }
 
 /*
@@ -202,6 +220,25 @@ JNIEXPORT void JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_deregisterSel
     }
 }
 
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    getSelectableChannelFD
+ * Signature: (Ljava/nio/channels/SelectableChannel;)Ljava/io/FileDescriptor;
+ */
+JNIEXPORT jobject JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_getSelectableChannelFD
+(JNIEnv * env, jclass clazz CK_UNUSED, jobject chann)
+{
+    if(chann == NULL || kClassSelChImpl == NULL || !(*env)->IsInstanceOf(env, chann, kClassSelChImpl)) {
+        return NULL;
+    }
+    jobject fd = (*env)->CallObjectMethod(env, chann, kMethodSelChImplGetFD);
+    if((*env)->ExceptionCheck(env)) {
+        (*env)->ExceptionClear(env);
+        return NULL;
+    }
+    return fd;
+}
+
 jboolean supportsLargePorts(void) {
     return cap_largePorts;
 }
@@ -38,17 +38,35 @@
 #endif
 
 #if defined(junixsocket_have_ancillary)
+// the maximum number of file descriptors sent without allocating the control buffer on the heap
+#define JUX_CMSG_STACK_FDS 64
+
 static jboolean sleepForRetryWriting(void) {
     usleep(1000); // 1 ms
     return true;
 }
 #endif
 
+static int optToSendFlags(jint opt) {
+    int flags = 0;
+#if junixsocket_have_MSG_DONTWAIT
+    if ((opt & (org_newsclub_net_unix_NativeUnixSocket_OPT_NON_BLOCKING | org_newsclub_net_unix_NativeUnixSocket_OPT_NON_SOCKET))
+        == org_newsclub_net_unix_NativeUnixSocket_OPT_NON_BLOCKING) {
+        // don't block, even if the socket itself is in blocking mode
+        flags |= MSG_DONTWAIT;
+    }
+#else
+    CK_ARGUMENT_POTENTIALLY_UNUSED(opt);
+#endif
+    return flags;
+}
+
 ssize_t send_wrapper(int handle, jbyte *buf, jint length, jux_sockaddr_t *sendTo, socklen_t sendToLen, jint opt) {
     ssize_t count = 0;
 
     const jboolean dgramMode = (opt & org_newsclub_net_unix_NativeUnixSocket_OPT_DGRAM_MODE) != 0;
     const jboolean nonBlockingMode = (opt & org_newsclub_net_unix_NativeUnixSocket_OPT_NON_BLOCKING) != 0;
+    const int flags = optToSendFlags(opt);
 
     fixupSocketAddress(handle, sendTo, sendToLen);
 
@@ -65,12 +83,12 @@ ssize_t send_wrapper(int handle, jbyte *buf, jint length, jux_sockaddr_t *sendTo
     for(;loop<3;loop++) {
         errno = 0;
         if (sendTo != NULL) {
-            count = sendto(handle, (char*)buf, length, 0, (struct sockaddr *)sendTo, sendToLen);
+            count = sendto(handle, (char*)buf, length, flags, (struct sockaddr *)sendTo, sendToLen);
         } else if((opt & org_newsclub_net_unix_NativeUnixSocket_OPT_NON_SOCKET) != 0) {
             // "write" can be used with pipes, too.
             count = write(handle, (char*)buf, length);
         } else {
-            count = send(handle, (char*)buf, length, 0);
+            count = send(handle, (char*)buf, length, flags);
             if(count == -1 && socket_errno == ENOTSOCK) {
                 // unexpected non-socket, try again with write
                 count = write(handle, (char*)buf, length);
@@ -112,29 +130,101 @@ ssize_t send_wrapper(int handle, jbyte *buf, jint length, jux_sockaddr_t *sendTo
     return count;
 }
 
-ssize_t sendmsg_wrapper(JNIEnv * env, int handle, jbyte *buf, jint length, jux_sockaddr_t *sendTo, socklen_t sendToLen, jint opt, jobject ancSupp) {
+static ssize_t sendv_wrapper(int handle, jux_iovec_t *iov, int iovcnt, jux_sockaddr_t *sendTo, socklen_t sendToLen, jint opt) {
+    if(iovcnt == 1) {
+        return send_wrapper(handle, iov->iov_base, (jint)iov->iov_len, sendTo, sendToLen, opt);
+    }
+#if defined(_WIN32)
+    // no gather support; a partial write is permissible for streams
+    return send_wrapper(handle, iov->iov_base, (jint)iov->iov_len, sendTo, sendToLen, opt);
+#else
+    const jboolean dgramMode = (opt & org_newsclub_net_unix_NativeUnixSocket_OPT_DGRAM_MODE) != 0;
+    const jboolean nonBlockingMode = (opt & org_newsclub_net_unix_NativeUnixSocket_OPT_NON_BLOCKING) != 0;
+
+    fixupSocketAddress(handle, sendTo, sendToLen);
+
+    struct msghdr msg = {.msg_name = (struct sockaddr*)sendTo, .msg_namelen =
+        sendToLen, .msg_iov = iov, .msg_iovlen = iovcnt };
+    const int flags = optToSendFlags(opt);
+
+    ssize_t count = 0;
+    int loop=0;
+    for(;loop<3;loop++) {
+        errno = 0;
+        if((opt & org_newsclub_net_unix_NativeUnixSocket_OPT_NON_SOCKET) != 0) {
+            // "writev" can be used with pipes, too.
+            count = writev(handle, iov, iovcnt);
+        } else {
+            count = sendmsg(handle, &msg, flags);
+            if(count == -1 && socket_errno == ENOTSOCK) {
+                // unexpected non-socket, try again with writev
+                count = writev(handle, iov, iovcnt);
+            }
+        }
+
+        if(count >= 0) {
+            break;
+        }
+        int myErr = socket_errno;
+        if(myErr == EINTR) {
+            continue;
+        }
+        if(fixupSocketAddressPostError(myErr, sendTo, sendToLen, myErr)) {
+            // try again
+            continue;
+        }
+        if((myErr == ENOBUFS || myErr == ENOMEM)) {
+            if(!dgramMode || nonBlockingMode) {
+                break;
+            }
+            count = 0; // don't throw
+            sched_yield();
+            continue;
+        }
+        break;
+    }
+    return count;
+#endif
+}
+
+static ssize_t sendmsgv_wrapper(JNIEnv * env, int handle, jux_iovec_t *iov, int iovcnt, jux_sockaddr_t *sendTo, socklen_t sendToLen, jint opt, jobject ancSupp) {
 #if !defined(junixsocket_have_ancillary)
     CK_ARGUMENT_POTENTIALLY_UNUSED(env);
     CK_ARGUMENT_POTENTIALLY_UNUSED(ancSupp);
-    return send_wrapper(handle, buf, length, sendTo, sendToLen, opt);
+    return sendv_wrapper(handle, iov, iovcnt, sendTo, sendToLen, opt);
 #else
 
     jintArray ancFds = ancSupp == NULL ? NULL : (*env)->GetObjectField(env, ancSupp, getFieldID_pendingFileDescriptors());
     if (ancFds == NULL) {
-        return send_wrapper(handle, buf, length, sendTo, sendToLen, opt);
+        return sendv_wrapper(handle, iov, iovcnt, sendTo, sendToLen, opt);
     }
 
     fixupSocketAddress(handle, sendTo, sendToLen);
 
-    struct iovec iov = {.iov_base = buf, .iov_len = (size_t)length};
     struct msghdr msg = {.msg_name = (struct sockaddr*)sendTo, .msg_namelen =
-        sendToLen, .msg_iov = &iov, .msg_iovlen = 1 };
+        sendToLen, .msg_iov = iov, .msg_iovlen = iovcnt };
+
+    // Performance: avoid malloc/free for every call; the control buffer for up to
+    // JUX_CMSG_STACK_FDS file descriptors lives on the stack
+    union {
+        struct cmsghdr align;
+        char buf[sizeof(struct cmsghdr) + 32 + JUX_CMSG_STACK_FDS * sizeof(jint)];
+    } stackControl;
 
     char *control = NULL;
     if(ancFds != NULL) {
         jsize ancFdsLen = (*env)->GetArrayLength(env, ancFds);
         msg.msg_controllen = (socklen_t)CMSG_SPACE((socklen_t)ancFdsLen * sizeof(jint));
-        control = msg.msg_control = malloc(msg.msg_controllen);
+        if(msg.msg_controllen <= sizeof(stackControl.buf)) {
+            memset(&stackControl, 0, msg.msg_controllen);
+            msg.msg_control = stackControl.buf;
+        } else {
+            control = msg.msg_control = calloc(1, msg.msg_controllen);
+            if(control == NULL) {
+                _throwException(env, kExceptionSocketException, "Out of memory");
+                return -1;
+            }
+        }
 
         socklen_t controlLen = 0;
         struct cmsghdr *cmsg = CMSG_FIRSTHDR(&msg);
@@ -143,11 +233,10 @@ ssize_t sendmsg_wrapper(JNIEnv * env, int handle, jbyte *buf, jint length, jux_s
         controlLen += (cmsg->cmsg_len = (socklen_t)CMSG_LEN((socklen_t)ancFdsLen * sizeof(jint)));
         unsigned char *data = CMSG_DATA(cmsg);
 
-        jint *ancBuf = NULL;
         if(ancFdsLen > 0) {
-            ancBuf = (*env)->GetIntArrayElements(env, ancFds, NULL);
-            memcpy(data, ancBuf, ancFdsLen * sizeof(jint));
-            (*env)->ReleaseIntArrayElements(env, ancFds, ancBuf, JNI_ABORT); // ancFds is unmodified
+            CK_IGNORE_CAST_ALIGN_BEGIN
+            (*env)->GetIntArrayRegion(env, ancFds, 0, ancFdsLen, (jint*)data);
+            CK_IGNORE_CAST_ALIGN_END
         }
 
         cmsg = junixsocket_CMSG_NXTHDR(&msg, cmsg);
@@ -156,19 +245,18 @@ ssize_t sendmsg_wrapper(JNIEnv * env, int handle, jbyte *buf, jint length, jux_s
         }
 
         msg.msg_controllen = controlLen;
-
-        (*env)->SetObjectField(env, ancSupp, getFieldID_pendingFileDescriptors(), NULL);
     }
 
+    const int flags = optToSendFlags(opt);
     ssize_t count;
 
     errno = 0;
     int myErr = 0;
     do {
-        if (msg.msg_controllen == 0) {
-            count = send(handle, msg.msg_iov->iov_base, msg.msg_iov->iov_len, 0);
+        if (msg.msg_controllen == 0 && iovcnt == 1) {
+            count = send(handle, msg.msg_iov->iov_base, msg.msg_iov->iov_len, flags);
         } else {
-            count = sendmsg(handle, &msg, 0);
+            count = sendmsg(handle, &msg, flags);
         }
         if(count >= 0) {
             break;
@@ -189,11 +277,21 @@ ssize_t sendmsg_wrapper(JNIEnv * env, int handle, jbyte *buf, jint length, jux_s
     if(control) {
         free(control);
     }
+    if(count >= 0) {
+        // only consume the file descriptors once they were actually sent;
+        // a non-blocking send may need to be retried
+        (*env)->SetObjectField(env, ancSupp, getFieldID_pendingFileDescriptors(), NULL);
+    }
 
     return count;
 #endif
 }
 
+ssize_t sendmsg_wrapper(JNIEnv * env, int handle, jbyte *buf, jint length, jux_sockaddr_t *sendTo, socklen_t sendToLen, jint opt, jobject ancSupp) {
+    jux_iovec_t iov = {.iov_base = buf, .iov_len = (size_t)length};
+    return sendmsgv_wrapper(env, handle, &iov, 1, sendTo, sendToLen, opt, ancSupp);
+}
+
 /*
  * Class:     org_newsclub_net_unix_NativeUnixSocket
  * Method:    write
@@ -220,7 +318,10 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_write(
         return -1;
     }
 
-    jbyte *buf = malloc(length);
+    // Performance: avoid malloc/free for every call; small writes use the stack,
+    // larger ones a reused per-thread buffer
+    jbyte stackBuf[JUX_SCRATCH_STACK_BUFFER_SIZE];
+    jbyte *buf = acquireScratchBuffer((size_t)length, stackBuf, sizeof(stackBuf));
     if(buf == NULL) {
         return -1; // OOME
     }
@@ -245,10 +346,12 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_write(
     } while(count == -1 && socket_errno == EINTR);
 #endif
 
-    free(buf);
+    releaseScratchBuffer(buf, stackBuf);
 
     if(count == -1) {
-        if(checkNonBlocking0(handle, errno, opt)) {
+        if(checkNonBlocking0(handle, errno, opt)
+           || ((opt & org_newsclub_net_unix_NativeUnixSocket_OPT_NON_BLOCKING) != 0
+               && (socket_errno == EAGAIN || socket_errno == EWOULDBLOCK))) {
             return 0;
         } else {
             _throwErrnumException(env, errno, fd);
@@ -259,6 +362,18 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_write(
     return (jint)count;
 }
 
+static ssize_t handleSendResult(JNIEnv *env, jobject fd, ssize_t ret, jint opt) {
+    if(ret < 0) {
+        ret = 0;
+        if(socket_errno != EAGAIN && errno != EWOULDBLOCK && ((errno != ENOBUFS && errno != ENOMEM) || (opt & org_newsclub_net_unix_NativeUnixSocket_OPT_NON_BLOCKING) == 0 )) {
+            if(!(*env)->ExceptionCheck(env)) {
+                _throwErrnumException(env, errno, fd);
+            }
+        }
+    }
+    return ret;
+}
+
 /*
  * Class:     org_newsclub_net_unix_NativeUnixSocket
  * Method:    send
@@ -296,14 +411,232 @@ JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_send
     socklen_t sendToLen = (socklen_t) MIN(SOCKLEN_MAX, MIN((unsigned)addressLen, (unsigned)addressBufferRef.size));
 
     ssize_t ret = sendmsg_wrapper(env, handle, dataBufferRef.buf, length, sendTo, sendToLen, opt, ancSupp);
-    if(ret < 0) {
+    return (jint)handleSendResult(env, fd, ret, opt);
+}
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    sendv
+ * Signature: (Ljava/io/FileDescriptor;[Ljava/nio/ByteBuffer;I[IIILorg/newsclub/net/unix/AncillaryDataSupport;)J
+ */
+JNIEXPORT jlong JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_sendv
+(JNIEnv *env, jclass clazz CK_UNUSED, jobject fd, jobjectArray buffers, jint bufferOffset, jintArray offsetsAndLengths, jint numBuffers, jint opt, jobject ancSupp) {
+    int handle = _getFD(env, fd);
+    if(handle < 0) {
+        _throwException(env, kExceptionSocketException, "Socket is closed");
+        return 0;
+    }
+
+    if(numBuffers > JUX_IOV_MAX) {
+        numBuffers = JUX_IOV_MAX;
+    }
+
+    jux_iovec_t stackIov[16];
+    jux_iovec_t *iov = numBuffers <= 16 ? stackIov : malloc((size_t)numBuffers * sizeof(jux_iovec_t));
+    if(iov == NULL) {
+        return -1; // OOME
+    }
+
+    ssize_t ret;
+    int iovcnt = getDirectByteBufferIovecs(env, buffers, bufferOffset, offsetsAndLengths, numBuffers, iov);
+    if(iovcnt < 0) {
         ret = 0;
-        if(socket_errno != EAGAIN && errno != EWOULDBLOCK && ((errno != ENOBUFS && errno != ENOMEM) || (opt & org_newsclub_net_unix_NativeUnixSocket_OPT_NON_BLOCKING) == 0 )) {
-            if(!(*env)->ExceptionCheck(env)) {
-                _throwErrnumException(env, errno, fd);
+    } else if(iovcnt == 0) {
+        ret = 0;
+    } else {
+        ret = sendmsgv_wrapper(env, handle, iov, iovcnt, NULL, 0, opt, ancSupp);
+        ret = handleSendResult(env, fd, ret, opt);
+    }
+
+    if(iov != stackIov) {
+        free(iov);
+    }
+    return (jlong)ret;
+}
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    sendMessages
+ * Signature: (Ljava/io/FileDescriptor;[Ljava/nio/ByteBuffer;I[IILjava/nio/ByteBuffer;I[II)I
+ */
+JNIEXPORT jint JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_sendMessages
+(JNIEnv *env, jclass clazz CK_UNUSED, jobject fd, jobjectArray buffers, jint bufferOffset, jintArray offsetsAndLengths, jint numMessages, jobject addressesBuffer, jint addressStride, jintArray addressLengths, jint opt) {
+    int handle = _getFD(env, fd);
+    if(handle < 0) {
+        _throwException(env, kExceptionSocketException, "Socket is closed");
+        return 0;
+    }
+
+    if(numMessages > JUX_IOV_MAX) {
+        numMessages = JUX_IOV_MAX;
+    }
+    if(numMessages <= 0) {
+        return 0;
+    }
+
+    jbyte *addrBase = NULL;
+    jint *addrLens = NULL;
+    if(addressesBuffer != NULL) {
+        if(addressLengths == NULL) {
+            _throwException(env, kExceptionNullPointerException, "addressLengths");
+            return 0;
+        }
+        if(addressStride <= 0 || (*env)->GetArrayLength(env, addressLengths) < numMessages) {
+            _throwException(env, kExceptionIndexOutOfBoundsException, "addressLengths");
+            return 0;
+        }
+        struct jni_direct_byte_buffer_ref addressesBufferRef =
+        getDirectByteBufferRef (env, addressesBuffer, 0, (size_t)addressStride * (size_t)numMessages);
+        if(addressesBufferRef.size == -1 || addressesBufferRef.buf == NULL) {
+            _throwException(env, kExceptionSocketException, "Cannot get addressesBuffer");
+            return 0;
+        }
+        addrBase = addressesBufferRef.buf;
+    }
+
+    jux_iovec_t stackIov[16];
+    jux_iovec_t *iov = numMessages <= 16 ? stackIov : malloc((size_t)numMessages * sizeof(jux_iovec_t));
+    if(iov == NULL) {
+        return 0; // OOME
+    }
+
+    ssize_t ret;
+    int iovcnt = getDirectByteBufferIovecs(env, buffers, bufferOffset, offsetsAndLengths, numMessages, iov);
+    if(iovcnt <= 0) {
+        ret = 0;
+        goto end;
+    }
+
+    if(addrBase != NULL) {
+        addrLens = (*env)->GetIntArrayElements(env, addressLengths, NULL);
+        if(addrLens == NULL) {
+            ret = 0; // OOME
+            goto end;
+        }
+    }
+
+#if junixsocket_have_mmsg
+    struct mmsghdr stackMsgs[16];
+    struct mmsghdr *msgs = numMessages <= 16 ? stackMsgs : calloc((size_t)numMessages, sizeof(struct mmsghdr));
+    if(msgs == NULL) {
+        ret = 0; // OOME
+        goto end;
+    }
+    memset(msgs, 0, (size_t)numMessages * sizeof(struct mmsghdr));
+    for(jint i = 0; i < numMessages; i++) {
+        msgs[i].msg_hdr.msg_iov = &iov[i];
+        msgs[i].msg_hdr.msg_iovlen = 1;
+        if(addrBase != NULL) {
+            msgs[i].msg_hdr.msg_name = addrBase + (size_t)i * (size_t)addressStride;
+            msgs[i].msg_hdr.msg_namelen = (socklen_t)MIN(SOCKLEN_MAX, MIN((unsigned)addrLens[i], (unsigned)addressStride));
+        }
+    }
+
+    do {
+        ret = sendmmsg(handle, msgs, (unsigned int)numMessages, 0);
+    } while(ret == -1 && socket_errno == EINTR);
+
+    if(msgs != stackMsgs) {
+        free(msgs);
+    }
+
+    if(ret == -1 && socket_errno != EAGAIN && socket_errno != EWOULDBLOCK) {
+        // Send the first message the regular way; this takes care of address fixups
+        // and retries upon ENOBUFS, and throws the appropriate exception otherwise
+        jux_sockaddr_t *sendTo = NULL;
+        socklen_t sendToLen = 0;
+        if(addrBase != NULL) {
+            sendTo = (jux_sockaddr_t *)addrBase;
+            sendToLen = (socklen_t)MIN(SOCKLEN_MAX, MIN((unsigned)addrLens[0], (unsigned)addressStride));
+        }
+        ret = sendv_wrapper(handle, &iov[0], 1, sendTo, sendToLen, opt);
+        if(ret > 0 || (ret == 0 && iov[0].iov_len == 0)) {
+            ret = 1;
+        }
+    }
+#else
+    // no sendmmsg; emulate by sending one message at a time
+    ret = 0;
+    for(jint i = 0; i < numMessages; i++) {
+        jux_sockaddr_t *sendTo = NULL;
+        socklen_t sendToLen = 0;
+        if(addrBase != NULL) {
+            sendTo = (jux_sockaddr_t *)(addrBase + (size_t)i * (size_t)addressStride);
+            sendToLen = (socklen_t)MIN(SOCKLEN_MAX, MIN((unsigned)addrLens[i], (unsigned)addressStride));
+        }
+        ssize_t count = sendv_wrapper(handle, &iov[i], 1, sendTo, sendToLen, opt);
+        if(count == -1 || (count == 0 && iov[i].iov_len > 0)) {
+            if(i == 0) {
+                ret = -1;
             }
+            break;
         }
+        ret++;
     }
+#endif
+
+    ret = handleSendResult(env, fd, ret, opt);
 
+end:
+    if(addrLens != NULL) {
+        (*env)->ReleaseIntArrayElements(env, addressLengths, addrLens, JNI_ABORT);
+    }
+    if(iov != stackIov) {
+        free(iov);
+    }
     return (jint)ret;
 }
+
+/*
+ * Class:     org_newsclub_net_unix_NativeUnixSocket
+ * Method:    sendfile
+ * Signature: (Ljava/io/FileDescriptor;Ljava/io/FileDescriptor;JJI)J
+ */
+JNIEXPORT jlong JNICALL Java_org_newsclub_net_unix_NativeUnixSocket_sendfile
+(JNIEnv *env, jclass clazz CK_UNUSED, jobject fdOut, jobject fdIn, jlong offset, jlong count, jint opt CK_UNUSED) {
+#if junixsocket_have_sendfile
+    int outHandle = _getFD(env, fdOut);
+    if(outHandle < 0) {
+        _throwException(env, kExceptionSocketException, "Socket is closed");
+        return -1;
+    }
+    int inHandle = _getFD(env, fdIn);
+    if(inHandle < 0) {
+        _throwException(env, kExceptionSocketException, "File descriptor is closed");
+        return -1;
+    }
+    if(count <= 0) {
+        return 0;
+    }
+
+    // Linux transfers at most 0x7ffff000 bytes per call
+    size_t len = (count > 0x7ffff000) ? 0x7ffff000 : (size_t)count;
+
+    off_t off = (off_t)offset;
+    ssize_t ret;
+    do {
+        ret = sendfile(outHandle, inHandle, offset < 0 ? NULL : &off, len);
+    } while(ret == -1 && errno == EINTR);
+
+    if(ret < 0) {
+        int errnum = errno;
+        if(errnum == EAGAIN || errnum == EWOULDBLOCK) {
+            return -1;
+        } else if(errnum == EINVAL || errnum == ENOSYS) {
+            // e.g., the source is not a regular file
+            _throwException(env, kExceptionOperationNotSupportedSocketException, "sendfile");
+        } else {
+            _throwErrnumException(env, errnum, fdOut);
+        }
+        return -1;
+    }
+    return (jlong)ret;
+#else
+    CK_ARGUMENT_POTENTIALLY_UNUSED(fdOut);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(fdIn);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(offset);
+    CK_ARGUMENT_POTENTIALLY_UNUSED(count);
+    _throwException(env, kExceptionOperationNotSupportedSocketException, "sendfile");
+    return -1;
+#endif
+}
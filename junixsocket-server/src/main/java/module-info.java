@@ -5,6 +5,7 @@ module org.newsclub.net.unix.server {
   exports org.newsclub.net.unix.server;
 
   requires transitive org.newsclub.net.unix;
+  requires static java.management;
   requires static com.kohlschutter.annotations.compiletime;
   requires static org.eclipse.jdt.annotation;
 }
@@ -0,0 +1,1018 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.newsclub.net.unix.AFServerSocketChannel;
+import org.newsclub.net.unix.AFSocketAddress;
+import org.newsclub.net.unix.AFSocketChannel;
+
+import com.kohlschutter.annotations.compiletime.SuppressFBWarnings;
+
+/**
+ * A non-blocking, event-driven socket server using {@link AFServerSocketChannel}s and selectors.
+ *
+ * Unlike {@link SocketServer}, which dedicates a thread to every connection, connections are
+ * multiplexed onto a fixed number of event loops, each with its own selector. Every connection has
+ * its own {@link ConnectionHandler}, which is called from its event loop whenever the connection
+ * becomes readable or writable. Handlers must therefore not block. This way, a single process can
+ * serve many thousands of mostly idle connections.
+ *
+ * New connections are accepted by one or more acceptor threads, in batches (see
+ * {@link AFServerSocketChannel#acceptBatch(int)}), and distributed among the event loops in a
+ * round-robin fashion. The acceptors share a single selector, which only one of them waits on at a
+ * time; the others take over once it has accepted a batch, and meanwhile set up the connections
+ * they have accepted. This way, a new connection does not wake up all acceptor threads. Note that
+ * waiting and accepting are therefore never done in parallel; additional acceptors only overlap
+ * accepting with the per-connection setup work. Once
+ * {@link #getMaxConcurrentConnections()} connections are open, the acceptors stop accepting new
+ * connections (without polling) until a connection is closed; pending connections then queue up
+ * in the server socket's backlog.
+ *
+ * The lifecycle hooks ({@link #onServerReady(int)}, {@link #onSubmitted(AFSocketChannel)}, etc.)
+ * correspond to those of {@link SocketServer}.
+ *
+ * @author Christian Kohlschütter
+ * @param <A> The supported address type.
+ */
+public abstract class AFSelectorSocketServer<A extends AFSocketAddress> {
+  private static final int ACCEPT_BATCH_SIZE = 64;
+
+  private final @NonNull A listenAddress;
+  private final AFServerSocketChannel<A> reuseChannel;
+
+  private int acceptorThreads = 1;
+  private int eventLoopThreads = Runtime.getRuntime().availableProcessors();
+  private int maxConcurrentConnections = 10_000;
+  private int backlog = 50;
+
+  private final AtomicBoolean stopRequested = new AtomicBoolean(false);
+  private final AtomicBoolean ready = new AtomicBoolean(false);
+  private final AtomicInteger activeConnections = new AtomicInteger();
+
+  private Thread listenThread;
+  private AFServerSocketChannel<A> serverChannel;
+  private final List<Acceptor> acceptors = new CopyOnWriteArrayList<>();
+  private final Lock acceptLock = new ReentrantLock();
+  private volatile Selector acceptSelector;
+  private SelectionKey acceptKey;
+  private long busyStartTime;
+  private final List<EventLoop> eventLoops = new CopyOnWriteArrayList<>();
+  private final AtomicInteger nextEventLoop = new AtomicInteger();
+
+  /**
+   * Creates a server using the given, bound {@link AFServerSocketChannel}.
+   *
+   * @param serverChannel The server channel to use (must be bound).
+   * @throws IOException on error.
+   */
+  @SuppressWarnings({"unchecked", "null"})
+  public AFSelectorSocketServer(AFServerSocketChannel<A> serverChannel) throws IOException {
+    this.listenAddress = (A) Objects.requireNonNull(serverChannel.getLocalAddress(),
+        "listenAddress");
+    this.reuseChannel = serverChannel;
+  }
+
+  /**
+   * Creates a server using the given {@link AFSocketAddress}.
+   *
+   * @param listenAddress The address to bind the socket on.
+   */
+  public AFSelectorSocketServer(A listenAddress) {
+    this.listenAddress = Objects.requireNonNull(listenAddress, "listenAddress");
+    this.reuseChannel = null;
+  }
+
+  /**
+   * Handles the events of a single connection.
+   *
+   * All methods are called from the connection's event loop, and must not block.
+   *
+   * @param <A> The supported address type.
+   */
+  public interface ConnectionHandler<A extends AFSocketAddress> {
+    /**
+     * Called when the connection's channel is readable. Once the end of stream has been reached,
+     * the handler should close the connection; {@link Connection#read(ByteBuffer)} does this
+     * automatically.
+     *
+     * After the peer has hung up, this is called once more (so that any data still buffered can
+     * be consumed), and then again only after {@link Connection#setReadInterest(boolean)} has been
+     * called; the handler should therefore read until the end of stream, or re-enable read
+     * interest.
+     *
+     * @param conn The connection.
+     * @throws IOException on error; the connection is then closed.
+     */
+    void onReadable(Connection<A> conn) throws IOException;
+
+    /**
+     * Called when the connection's channel is writable, and write interest has been requested via
+     * {@link Connection#setWriteInterest(boolean)}; the default implementation removes the write
+     * interest.
+     *
+     * @param conn The connection.
+     * @throws IOException on error; the connection is then closed.
+     */
+    default void onWritable(Connection<A> conn) throws IOException {
+      conn.setWriteInterest(false);
+    }
+
+    /**
+     * Called after the connection has been closed.
+     *
+     * @param conn The connection.
+     */
+    default void onClosed(Connection<A> conn) {
+    }
+  }
+
+  /**
+   * An open connection, served by one event loop.
+   *
+   * The connection is closed along with its channel, and, when reading via
+   * {@link #read(ByteBuffer)}, upon reaching the end of stream after the peer has hung up.
+   *
+   * @param <A> The supported address type.
+   */
+  public static final class Connection<A extends AFSocketAddress> implements Closeable {
+    private static final int STATE_NEW = 0;
+    private static final int STATE_SERVING = 1;
+    private static final int STATE_CLOSED = 2;
+
+    private final AFSelectorSocketServer<A> server;
+    private final AFSocketChannel<A> channel;
+    private final AFSelectorSocketServer<A>.EventLoop eventLoop;
+    private ConnectionHandler<A> handler;
+    private SelectionKey key;
+    private int interestOps = SelectionKey.OP_READ;
+    private final AtomicInteger state = new AtomicInteger(STATE_NEW);
+
+    private Connection(AFSelectorSocketServer<A> server, AFSocketChannel<A> channel,
+        AFSelectorSocketServer<A>.EventLoop eventLoop) {
+      this.server = server;
+      this.channel = channel;
+      this.eventLoop = eventLoop;
+    }
+
+    /**
+     * Returns the connection's (non-blocking) channel.
+     *
+     * @return The channel.
+     */
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    public AFSocketChannel<A> getChannel() {
+      return channel;
+    }
+
+    /**
+     * Reads from the connection's channel into the given buffer, without blocking. Once the end of
+     * stream has been reached, the connection is closed.
+     *
+     * @param dst The buffer.
+     * @return The number of bytes read, possibly 0, or -1 if the end of stream has been reached.
+     * @throws IOException on error.
+     */
+    public int read(ByteBuffer dst) throws IOException {
+      int count = channel.read(dst);
+      if (count == -1) {
+        close();
+      }
+      return count;
+    }
+
+    /**
+     * Checks if this connection is still open.
+     *
+     * @return {@code true} if open.
+     */
+    public boolean isOpen() {
+      return state.get() != STATE_CLOSED;
+    }
+
+    /**
+     * Enables or disables notifications about the channel being readable. This may be used to
+     * apply backpressure, e.g., while a response is still being written.
+     *
+     * This method may be called from any thread.
+     *
+     * @param enabled {@code true} if {@link ConnectionHandler#onReadable(Connection)} should be
+     *          called when the channel is readable.
+     */
+    public void setReadInterest(boolean enabled) {
+      updateInterest(SelectionKey.OP_READ, enabled);
+    }
+
+    /**
+     * Enables or disables notifications about the channel being writable, typically after a
+     * write could not be completed without blocking.
+     *
+     * This method may be called from any thread.
+     *
+     * @param enabled {@code true} if {@link ConnectionHandler#onWritable(Connection)} should be
+     *          called when the channel is writable.
+     */
+    public void setWriteInterest(boolean enabled) {
+      updateInterest(SelectionKey.OP_WRITE, enabled);
+    }
+
+    private void updateInterest(int op, boolean enabled) {
+      eventLoop.execute(() -> {
+        interestOps = enabled ? (interestOps | op) : (interestOps & ~op);
+        SelectionKey k = key;
+        if (k != null && k.isValid()) {
+          k.interestOps(interestOps);
+        }
+      });
+    }
+
+    /**
+     * Closes this connection.
+     *
+     * This method may be called from any thread.
+     */
+    @Override
+    public void close() {
+      int previousState = state.getAndSet(STATE_CLOSED);
+      if (previousState == STATE_CLOSED) {
+        return;
+      }
+      SelectionKey k = key;
+      if (k != null) {
+        k.cancel();
+      }
+      server.doSocketClose(channel);
+
+      ConnectionHandler<A> h = handler;
+      if (h != null) {
+        h.onClosed(this);
+      }
+      if (previousState == STATE_SERVING) {
+        // not for pending connections closed before registration (e.g., upon stop())
+        server.onAfterServingSocket(channel);
+      }
+      server.releaseConnections(1);
+    }
+
+    private void register() {
+      if (!state.compareAndSet(STATE_NEW, STATE_SERVING)) {
+        // already closed
+        return;
+      }
+      server.onBeforeServingSocket(channel);
+      try {
+        handler = Objects.requireNonNull(server.newConnectionHandler(this), "handler");
+        key = channel.register(eventLoop.selector, interestOps, this);
+        channel.socket().addCloseable(this);
+        if (!channel.isOpen()) {
+          close();
+        }
+      } catch (Exception e) { // NOPMD
+        server.onServingException(channel, e);
+        close();
+      }
+    }
+
+    private void handle(SelectionKey k) {
+      try {
+        int readyOps = k.readyOps();
+        if ((readyOps & SelectionKey.OP_READ) != 0) {
+          handler.onReadable(this);
+        }
+        if ((readyOps & SelectionKey.OP_WRITE) != 0 && k.isValid() && isOpen()) {
+          handler.onWritable(this);
+        }
+      } catch (Exception e) { // NOPMD
+        server.onServingException(channel, e);
+        close();
+      }
+    }
+  }
+
+  /**
+   * Returns the maximum number of concurrent connections.
+   *
+   * @return The maximum number of concurrent connections.
+   */
+  public int getMaxConcurrentConnections() {
+    return maxConcurrentConnections;
+  }
+
+  /**
+   * Sets the maximum number of concurrent connections.
+   *
+   * @param maxConcurrentConnections The new maximum.
+   */
+  public void setMaxConcurrentConnections(int maxConcurrentConnections) {
+    if (isRunning()) {
+      throw new IllegalStateException("Already configured");
+    }
+    if (maxConcurrentConnections <= 0) {
+      throw new IllegalArgumentException("maxConcurrentConnections");
+    }
+    this.maxConcurrentConnections = maxConcurrentConnections;
+  }
+
+  /**
+   * Returns the number of acceptor threads.
+   *
+   * @return The number of acceptor threads.
+   */
+  public int getAcceptorThreads() {
+    return acceptorThreads;
+  }
+
+  /**
+   * Sets the number of acceptor threads; the default is 1.
+   *
+   * Only one acceptor accepts connections at a time; the others meanwhile set up the connections
+   * they have accepted before. More than one acceptor therefore only helps if that setup work
+   * ({@link #onSubmitted(AFSocketChannel)}, etc.) is significant.
+   *
+   * @param acceptorThreads The number of acceptor threads.
+   */
+  public void setAcceptorThreads(int acceptorThreads) {
+    if (isRunning()) {
+      throw new IllegalStateException("Already configured");
+    }
+    if (acceptorThreads <= 0) {
+      throw new IllegalArgumentException("acceptorThreads");
+    }
+    this.acceptorThreads = acceptorThreads;
+  }
+
+  /**
+   * Returns the number of event loop threads.
+   *
+   * @return The number of event loop threads.
+   */
+  public int getEventLoopThreads() {
+    return eventLoopThreads;
+  }
+
+  /**
+   * Sets the number of event loop threads; the default is the number of available processors.
+   *
+   * @param eventLoopThreads The number of event loop threads.
+   */
+  public void setEventLoopThreads(int eventLoopThreads) {
+    if (isRunning()) {
+      throw new IllegalStateException("Already configured");
+    }
+    if (eventLoopThreads <= 0) {
+      throw new IllegalArgumentException("eventLoopThreads");
+    }
+    this.eventLoopThreads = eventLoopThreads;
+  }
+
+  /**
+   * Returns the listen backlog used when binding the server socket.
+   *
+   * @return The backlog.
+   */
+  public int getBacklog() {
+    return backlog;
+  }
+
+  /**
+   * Sets the listen backlog used when binding the server socket.
+   *
+   * @param backlog The backlog.
+   */
+  public void setBacklog(int backlog) {
+    if (isRunning()) {
+      throw new IllegalStateException("Already configured");
+    }
+    this.backlog = backlog;
+  }
+
+  /**
+   * Returns the number of currently open connections.
+   *
+   * @return The number of connections.
+   */
+  public int getActiveConnections() {
+    return activeConnections.get();
+  }
+
+  /**
+   * Checks if the server is running.
+   *
+   * @return {@code true} if the server is alive.
+   */
+  public boolean isRunning() {
+    synchronized (this) {
+      return (listenThread != null && listenThread.isAlive());
+    }
+  }
+
+  /**
+   * Checks if the server is running and accepting new connections.
+   *
+   * @return {@code true} if the server is alive and ready to accept new connections.
+   */
+  public boolean isReady() {
+    return ready.get() && !stopRequested.get() && isRunning();
+  }
+
+  /**
+   * Starts the server, and returns immediately.
+   *
+   * @see #startAndWaitToBecomeReady(long, TimeUnit)
+   */
+  public void start() {
+    synchronized (this) {
+      if (isRunning()) {
+        return;
+      }
+
+      Thread t = new Thread(AFSelectorSocketServer.this.toString() + " listening thread") {
+        @Override
+        public void run() {
+          try {
+            listen();
+          } catch (Exception e) {
+            onListenException(e);
+          } catch (Throwable e) { // NOPMD
+            onListenException(e);
+          }
+        }
+      };
+      t.start();
+
+      listenThread = t;
+    }
+  }
+
+  /**
+   * Starts the server and waits until it is ready or had to stop due to an error.
+   *
+   * @param duration The duration wait.
+   * @param unit The duration's time unit.
+   * @return {@code true} if the server is ready to serve requests.
+   * @throws InterruptedException If the wait was interrupted.
+   */
+  public boolean startAndWaitToBecomeReady(long duration, TimeUnit unit)
+      throws InterruptedException {
+    synchronized (this) {
+      start();
+      long timeStart = System.currentTimeMillis();
+      while (duration > 0) {
+        if (isReady()) {
+          return true;
+        }
+        this.wait(unit.toMillis(duration));
+        duration -= (System.currentTimeMillis() - timeStart);
+      }
+      return isReady();
+    }
+  }
+
+  /**
+   * Returns a new server socket channel.
+   *
+   * @return The new channel.
+   * @throws IOException on error.
+   */
+  @SuppressWarnings("unchecked")
+  protected AFServerSocketChannel<A> newServerSocketChannel() throws IOException {
+    return (AFServerSocketChannel<A>) getListenAddress().getAddressFamily().newServerSocket()
+        .getChannel();
+  }
+
+  private void listen() throws IOException {
+    AFServerSocketChannel<A> server = null;
+    try {
+      server = reuseChannel == null ? newServerSocketChannel() : reuseChannel;
+      synchronized (this) {
+        if (serverChannel != null) {
+          throw new IllegalStateException("The server is already listening");
+        }
+        serverChannel = server;
+      }
+      onServerStarting();
+
+      if (!server.socket().isBound()) {
+        server.bind(listenAddress, backlog);
+        onServerBound(listenAddress);
+      }
+      server.configureBlocking(false);
+
+      synchronized (this) {
+        for (int i = 0; i < eventLoopThreads; i++) {
+          EventLoop loop = new EventLoop(server.provider().openSelector());
+          eventLoops.add(loop);
+          loop.start(this + " event loop #" + i);
+        }
+        acceptSelector = server.provider().openSelector();
+        acceptKey = server.register(acceptSelector, SelectionKey.OP_ACCEPT);
+        for (int i = 0; i < acceptorThreads; i++) {
+          Acceptor acceptor = new Acceptor(server, acceptSelector);
+          acceptors.add(acceptor);
+          if (i > 0) {
+            acceptor.start(this + " acceptor #" + i);
+          }
+        }
+        ready.set(true);
+        notifyAll();
+      }
+      onServerReady(activeConnections.get());
+
+      acceptors.get(0).run();
+    } catch (SocketException e) {
+      onSocketExceptionDuringAccept(e);
+    } finally {
+      stop();
+      for (Acceptor acceptor : acceptors) {
+        acceptor.join();
+      }
+      for (EventLoop loop : eventLoops) {
+        loop.join();
+      }
+      Selector sel = acceptSelector;
+      if (sel != null) {
+        sel.close();
+      }
+      onServerStopped(server);
+    }
+  }
+
+  /**
+   * Stops the server, closing all connections.
+   *
+   * @throws IOException If there was an error.
+   */
+  @SuppressFBWarnings("NN_NAKED_NOTIFY")
+  public void stop() throws IOException {
+    if (!stopRequested.getAndSet(true)) {
+      onServerShuttingDown();
+    }
+    ready.set(false);
+
+    synchronized (this) {
+      AFServerSocketChannel<A> theServerChannel = serverChannel;
+      serverChannel = null;
+      try {
+        wakeupAcceptors();
+        for (EventLoop loop : eventLoops) {
+          loop.selector.wakeup();
+        }
+        if (theServerChannel != null) {
+          theServerChannel.close();
+        }
+      } finally {
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Reserves up to the given number of connections, without exceeding
+   * {@link #getMaxConcurrentConnections()}.
+   *
+   * @param max The maximum number of connections to reserve.
+   * @return The number of reserved connections, possibly 0.
+   */
+  private int reserveConnections(int max) {
+    while (true) { // NOPMD.WhileLoopWithLiteralBoolean
+      int active = activeConnections.get();
+      int n = Math.min(max, maxConcurrentConnections - active);
+      if (n <= 0) {
+        return 0;
+      } else if (activeConnections.compareAndSet(active, active + n)) {
+        return n;
+      }
+    }
+  }
+
+  private void releaseConnections(int n) {
+    if (n > 0 && activeConnections.getAndAdd(-n) >= maxConcurrentConnections) {
+      // resume accepting
+      wakeupAcceptors();
+    }
+  }
+
+  private void wakeupAcceptors() {
+    Selector sel = acceptSelector;
+    if (sel != null) {
+      sel.wakeup();
+    }
+  }
+
+  private void submit(AFSocketChannel<A> channel) {
+    List<EventLoop> loops = eventLoops;
+    EventLoop loop = loops.get(Math.floorMod(nextEventLoop.getAndIncrement(), loops.size()));
+    Connection<A> conn = new Connection<>(this, channel, loop);
+    onSubmitted(channel);
+    loop.submit(conn);
+  }
+
+  private abstract static class LoopThread implements Runnable {
+    final Selector selector;
+    private Thread thread;
+
+    LoopThread(Selector selector) {
+      this.selector = selector;
+    }
+
+    void start(String name) {
+      Thread t = new Thread(this, name);
+      t.setDaemon(true);
+      thread = t;
+      t.start();
+    }
+
+    boolean inLoopThread() {
+      return thread == Thread.currentThread();
+    }
+
+    void join() {
+      Thread t = thread;
+      if (t == null || t == Thread.currentThread()) {
+        return;
+      }
+      try {
+        t.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private final class Acceptor extends LoopThread {
+    private final AFServerSocketChannel<A> server;
+
+    Acceptor(AFServerSocketChannel<A> server, Selector acceptSelector) {
+      super(acceptSelector);
+      this.server = server;
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (!stopRequested.get()) {
+          List<AFSocketChannel<A>> channels;
+          acceptLock.lock();
+          try {
+            channels = acceptPending();
+          } finally {
+            acceptLock.unlock();
+          }
+          if (channels == null) {
+            break;
+          }
+
+          for (AFSocketChannel<A> channel : channels) {
+            try {
+              channel.configureBlocking(false);
+            } catch (SocketException e) {
+              // Connection closed before we could do anything
+              onSocketExceptionAfterAccept(channel, e);
+              doSocketClose(channel);
+              releaseConnections(1);
+              continue;
+            }
+            submit(channel);
+          }
+        }
+      } catch (ClosedSelectorException e) {
+        // stopped
+      } catch (SocketException e) {
+        onSocketExceptionDuringAccept(e);
+      } catch (Exception e) { // NOPMD
+        onListenException(e);
+      } finally {
+        try {
+          stop();
+        } catch (IOException e) {
+          // ignore
+        }
+      }
+    }
+
+    /**
+     * Waits for pending connections, and accepts a batch of them. Must be called with the accept
+     * lock held.
+     *
+     * @return The accepted channels (possibly none), or {@code null} if the acceptor should stop.
+     * @throws IOException on error.
+     */
+    private List<AFSocketChannel<A>> acceptPending() throws IOException {
+      if (stopRequested.get()) {
+        // another acceptor may have consumed the wakeup from stop()
+        return null;
+      }
+      int available = maxConcurrentConnections - activeConnections.get();
+      if (available <= 0) {
+        if (busyStartTime == 0) {
+          busyStartTime = System.currentTimeMillis();
+          acceptKey.interestOps(0);
+          onServerBusy(busyStartTime);
+        }
+      } else if (busyStartTime != 0) {
+        busyStartTime = 0;
+        acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+        onServerReady(activeConnections.get());
+      }
+
+      selector.select();
+      if (stopRequested.get()) {
+        return null;
+      }
+      if (!selector.selectedKeys().remove(acceptKey)) {
+        return Collections.emptyList();
+      }
+      int reserved = reserveConnections(ACCEPT_BATCH_SIZE);
+      if (reserved == 0) {
+        return Collections.emptyList();
+      }
+
+      List<AFSocketChannel<A>> channels = null;
+      try {
+        channels = server.acceptBatch(reserved);
+      } catch (ClosedChannelException e) {
+        return null;
+      } catch (SocketException e) {
+        if (!server.isOpen() || stopRequested.get()) {
+          return null;
+        }
+        throw e;
+      } finally {
+        if (channels == null) {
+          releaseConnections(reserved);
+        }
+      }
+      releaseConnections(reserved - channels.size());
+      return channels;
+    }
+  }
+
+  private final class EventLoop extends LoopThread {
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection<A>> pendingConnections = new ConcurrentLinkedQueue<>();
+
+    EventLoop(Selector selector) {
+      super(selector);
+    }
+
+    void execute(Runnable task) {
+      if (inLoopThread()) {
+        task.run();
+      } else {
+        tasks.add(task);
+        selector.wakeup();
+      }
+    }
+
+    /**
+     * Registers the given connection from within the event loop. If the event loop has already
+     * stopped, the connection is closed instead.
+     *
+     * @param conn The connection.
+     */
+    void submit(Connection<A> conn) {
+      pendingConnections.add(conn);
+      selector.wakeup();
+      if (!selector.isOpen()) {
+        // the event loop may have stopped before seeing the connection
+        closePendingConnections();
+      }
+    }
+
+    private void closePendingConnections() {
+      Connection<A> conn;
+      while ((conn = pendingConnections.poll()) != null) {
+        conn.close();
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (!stopRequested.get()) {
+          selector.select();
+
+          Connection<A> pending;
+          while ((pending = pendingConnections.poll()) != null) {
+            pending.register();
+          }
+          Runnable task;
+          while ((task = tasks.poll()) != null) {
+            task.run();
+          }
+
+          Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            @SuppressWarnings("unchecked")
+            Connection<A> conn = (Connection<A>) key.attachment();
+            if (key.isValid()) {
+              conn.handle(key);
+            }
+          }
+        }
+      } catch (ClosedSelectorException e) {
+        // stopped
+      } catch (Exception e) { // NOPMD
+        onListenException(e);
+      } finally {
+        List<SelectionKey> keys = new ArrayList<>(selector.keys());
+        try {
+          // close the selector first, so that no connection can be submitted unnoticed
+          selector.close();
+        } catch (IOException e) {
+          // ignore
+        }
+        for (SelectionKey key : keys) {
+          ((Connection<?>) key.attachment()).close();
+        }
+        closePendingConnections();
+        tasks.clear();
+      }
+    }
+  }
+
+  /**
+   * Returns a new handler for the given connection. Called from the connection's event loop,
+   * right before the connection is registered.
+   *
+   * @param conn The connection.
+   * @return The handler.
+   * @throws IOException on error; the connection is then closed.
+   */
+  protected abstract ConnectionHandler<A> newConnectionHandler(Connection<A> conn)
+      throws IOException;
+
+  /**
+   * Called upon closing a connection's channel.
+   * <p>
+   * The default implementation closes the channel directly, ignoring any {@link IOException}s.
+   *
+   * @param channel The channel to close.
+   */
+  protected void doSocketClose(AFSocketChannel<A> channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+  /**
+   * Called when the server is starting up.
+   */
+  protected void onServerStarting() {
+  }
+
+  /**
+   * Called when the server has been bound to a socket.
+   *
+   * This is not called when you instantiated the server with a pre-bound channel.
+   *
+   * @param address The bound address.
+   */
+  protected void onServerBound(A address) {
+  }
+
+  /**
+   * Called when the server is ready to accept new connections, either after startup, or after
+   * having been busy.
+   *
+   * @param activeCount The current number of open connections.
+   */
+  protected void onServerReady(int activeCount) {
+  }
+
+  /**
+   * Called when the server is busy, i.e., it stops accepting new connections because
+   * {@link #getMaxConcurrentConnections()} connections are open. Called once until the server
+   * becomes ready again.
+   *
+   * @param busyStartTime The time stamp since the server became busy.
+   */
+  protected void onServerBusy(long busyStartTime) {
+  }
+
+  /**
+   * Called when the server has been stopped.
+   *
+   * @param channel The server's channel that stopped, or {@code null}.
+   */
+  protected void onServerStopped(AFServerSocketChannel<A> channel) {
+  }
+
+  /**
+   * Called when an accepted connection gets submitted to an event loop.
+   *
+   * @param channel The connection's channel.
+   */
+  protected void onSubmitted(AFSocketChannel<A> channel) {
+  }
+
+  /**
+   * Called when the server is shutting down.
+   */
+  protected void onServerShuttingDown() {
+  }
+
+  /**
+   * Called when a {@link SocketException} was thrown during "accept".
+   *
+   * @param e The exception.
+   */
+  protected void onSocketExceptionDuringAccept(SocketException e) {
+  }
+
+  /**
+   * Called when a {@link SocketException} was thrown while setting up an accepted connection.
+   *
+   * @param channel The connection's channel.
+   * @param e The exception.
+   */
+  protected void onSocketExceptionAfterAccept(AFSocketChannel<A> channel, SocketException e) {
+  }
+
+  /**
+   * Called before a connection is registered with its event loop.
+   *
+   * @param channel The connection's channel.
+   */
+  protected void onBeforeServingSocket(AFSocketChannel<A> channel) {
+  }
+
+  /**
+   * Called when a throwable was thrown while serving a connection; the connection is then
+   * closed.
+   *
+   * @param channel The connection's channel.
+   * @param t The throwable.
+   */
+  protected void onServingException(AFSocketChannel<A> channel, Throwable t) {
+  }
+
+  /**
+   * Called after a connection has been closed. This is only called for connections for which
+   * {@link #onBeforeServingSocket(AFSocketChannel)} has been called before, i.e., not for
+   * connections that were closed before being registered with their event loop.
+   *
+   * @param channel The connection's channel.
+   */
+  protected void onAfterServingSocket(AFSocketChannel<A> channel) {
+  }
+
+  /**
+   * Called when an exception was thrown while listening on the server socket, or in an event
+   * loop.
+   *
+   * @param t The throwable.
+   */
+  protected void onListenException(Throwable t) {
+  }
+
+  /**
+   * Returns the address the server listens to.
+   *
+   * @return The listen address.
+   */
+  protected @NonNull A getListenAddress() {
+    return listenAddress;
+  }
+}
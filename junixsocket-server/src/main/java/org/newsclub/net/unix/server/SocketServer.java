@@ -19,6 +19,9 @@ package org.newsclub.net.unix.server;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
@@ -30,8 +33,10 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -45,6 +50,13 @@ import com.kohlschutter.annotations.compiletime.SuppressLint;
 /**
  * A base implementation for a simple, multi-threaded socket server.
  *
+ * Each accepted connection is served by a task submitted to an {@link ExecutorService}. By
+ * default, this is a {@link ForkJoinPool} with up to {@link #getMaxConcurrentConnections()}
+ * threads; see {@link #setExecutorServiceFactory(ExecutorServiceFactory)} for serving each
+ * connection on its own virtual thread (Java 21 or newer), or for using a custom executor. In any
+ * case, no more than {@link #getMaxConcurrentConnections()} connections are accepted and served at
+ * the same time.
+ *
  * @author Christian Kohlschütter
  * @see AFSocketServer
  * @param <A> The supported address type.
@@ -54,9 +66,21 @@ import com.kohlschutter.annotations.compiletime.SuppressLint;
 public abstract class SocketServer<A extends SocketAddress, S extends Socket, V extends ServerSocket> {
   private static final ScheduledExecutorService TIMEOUTS = Executors.newScheduledThreadPool(1);
 
+  private static final MethodHandle MH_NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR =
+      lookupNewVirtualThreadPerTaskExecutor();
+
+  private static final ExecutorServiceFactory FORK_JOIN_POOL_FACTORY = (max) -> new ForkJoinPool(
+      max, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+
+  private static final ExecutorServiceFactory VIRTUAL_THREAD_FACTORY = (max) -> {
+    ExecutorService executor = newVirtualThreadPerTaskExecutor();
+    return executor == null ? FORK_JOIN_POOL_FACTORY.newExecutorService(max) : executor;
+  };
+
   private final @NonNull A listenAddress;
 
   private int maxConcurrentConnections = Runtime.getRuntime().availableProcessors();
+  private int acceptorThreads = 1;
   private int serverTimeout = 0; // by default, the server doesn't timeout.
   private int socketTimeout = (int) TimeUnit.SECONDS.toMillis(60);
   private int serverBusyTimeout = (int) TimeUnit.SECONDS.toMillis(1);
@@ -66,10 +90,12 @@ public abstract class SocketServer<A extends SocketAddress, S extends Socket, V
   private final AtomicBoolean stopRequested = new AtomicBoolean(false);
   private final AtomicBoolean ready = new AtomicBoolean(false);
 
-  private final Object connectionsMonitor = new Object();
-  private ForkJoinPool connectionPool;
+  private ExecutorServiceFactory executorServiceFactory = FORK_JOIN_POOL_FACTORY;
+  private ExecutorService connectionPool;
+  private Semaphore connectionPermits;
 
   private ScheduledFuture<IOException> timeoutFuture;
+  private final SocketServerMetrics metrics = new SocketServerMetrics();
   private final V reuseSocket;
 
   /**
@@ -100,6 +126,115 @@ public abstract class SocketServer<A extends SocketAddress, S extends Socket, V
     this.listenAddress = listenAddress;
   }
 
+  /**
+   * Creates the {@link ExecutorService} that serves the accepted connections of a
+   * {@link SocketServer}.
+   *
+   * @see SocketServer#setExecutorServiceFactory(ExecutorServiceFactory)
+   */
+  @FunctionalInterface
+  public interface ExecutorServiceFactory {
+    /**
+     * Returns a new {@link ExecutorService}. The server limits the number of concurrently served
+     * connections by itself, so the executor does not have to reject or queue tasks beyond that
+     * number.
+     *
+     * @param maxConcurrentConnections The maximum number of concurrent connections.
+     * @return The new executor.
+     */
+    ExecutorService newExecutorService(int maxConcurrentConnections);
+  }
+
+  /**
+   * Returns the default {@link ExecutorServiceFactory}, which creates a {@link ForkJoinPool} with a
+   * parallelism of {@code maxConcurrentConnections}.
+   *
+   * @return The factory.
+   */
+  public static ExecutorServiceFactory forkJoinPoolFactory() {
+    return FORK_JOIN_POOL_FACTORY;
+  }
+
+  /**
+   * Returns an {@link ExecutorServiceFactory} that serves each connection on its own virtual thread
+   * (see {@code Executors.newVirtualThreadPerTaskExecutor()}). If virtual threads are not supported
+   * (see {@link #isVirtualThreadSupported()}), the factory falls back to
+   * {@link #forkJoinPoolFactory()}.
+   *
+   * junixsocket's blocking I/O pins the carrier thread of a virtual thread unless the system
+   * property {@code org.newsclub.net.unix.virtual-thread-poller} is set to {@code true}.
+   *
+   * @return The factory.
+   */
+  public static ExecutorServiceFactory virtualThreadFactory() {
+    return VIRTUAL_THREAD_FACTORY;
+  }
+
+  /**
+   * Checks if virtual threads are supported by this Java runtime (Java 21 or newer, or earlier
+   * versions with preview features enabled).
+   *
+   * @return {@code true} if so.
+   */
+  public static boolean isVirtualThreadSupported() {
+    ExecutorService executor = newVirtualThreadPerTaskExecutor();
+    if (executor == null) {
+      return false;
+    }
+    executor.shutdown();
+    return true;
+  }
+
+  private static MethodHandle lookupNewVirtualThreadPerTaskExecutor() {
+    try {
+      return MethodHandles.publicLookup().findStatic(Executors.class,
+          "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      // Java 18 or older
+      return null;
+    }
+  }
+
+  @SuppressWarnings("PMD.AvoidCatchingThrowable")
+  private static ExecutorService newVirtualThreadPerTaskExecutor() {
+    MethodHandle mh = MH_NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+    if (mh == null) {
+      return null;
+    }
+    try {
+      return (ExecutorService) mh.invokeExact();
+    } catch (Throwable e) { // NOPMD
+      // e.g., UnsupportedOperationException (Java 19/20 without --enable-preview)
+      return null;
+    }
+  }
+
+  /**
+   * Returns the factory for the {@link ExecutorService} that serves accepted connections.
+   *
+   * @return The factory.
+   */
+  public ExecutorServiceFactory getExecutorServiceFactory() {
+    return executorServiceFactory;
+  }
+
+  /**
+   * Sets the factory for the {@link ExecutorService} that serves accepted connections. The
+   * executor is created when the server is started for the first time, and shut down when the
+   * server times out (see {@link #setServerTimeout(int)}).
+   *
+   * @param factory The factory, e.g., {@link #forkJoinPoolFactory()} (the default), or
+   *          {@link #virtualThreadFactory()}.
+   * @see #setMaxConcurrentConnections(int)
+   */
+  public void setExecutorServiceFactory(ExecutorServiceFactory factory) {
+    Objects.requireNonNull(factory, "factory");
+    if (isRunning()) {
+      throw new IllegalStateException("Already configured");
+    }
+    this.executorServiceFactory = factory;
+  }
+
   /**
    * Returns the maximum number of concurrent connections.
    *
@@ -121,6 +256,46 @@ public abstract class SocketServer<A extends SocketAddress, S extends Socket, V
     this.maxConcurrentConnections = maxConcurrentConnections;
   }
 
+  /**
+   * Returns the number of threads that accept connections.
+   *
+   * @return The number of acceptor threads.
+   */
+  public int getAcceptorThreads() {
+    return acceptorThreads;
+  }
+
+  /**
+   * Sets the number of threads that accept connections (default: 1).
+   *
+   * All acceptor threads call {@link ServerSocket#accept()} on the same server socket. On Linux,
+   * the kernel wakes up only one blocked thread per incoming connection, so there is no
+   * "thundering herd" effect. More than one acceptor thread may help servers that accept a large
+   * number of short-lived connections per second; they all share the limit set by
+   * {@link #setMaxConcurrentConnections(int)}.
+   *
+   * Every acceptor thread reserves one connection of that limit while it waits in
+   * {@link ServerSocket#accept()}; the accepted connection is then served within that reservation.
+   * With several acceptor threads, {@link #onServerBusy(long)} may therefore be called while other
+   * acceptor threads are still waiting for connections. The number of connections served at the
+   * same time never exceeds the limit.
+   *
+   * Unlike {@code SO_REUSEPORT} for TCP/IP, there is only one listening socket; to spread
+   * connections across several server sockets (e.g., for AF_UNIX, several socket files), run one
+   * server per socket, and connect using an {@code AFShardedSocketConnector}.
+   *
+   * @param acceptorThreads The number of acceptor threads, at least 1.
+   */
+  public void setAcceptorThreads(int acceptorThreads) {
+    if (acceptorThreads < 1) {
+      throw new IllegalArgumentException("acceptorThreads");
+    }
+    if (isRunning()) {
+      throw new IllegalStateException("Already configured");
+    }
+    this.acceptorThreads = acceptorThreads;
+  }
+
   /**
    * Returns the server timeout (in milliseconds).
    *
@@ -178,6 +353,15 @@ public abstract class SocketServer<A extends SocketAddress, S extends Socket, V
     this.serverBusyTimeout = timeout;
   }
 
+  /**
+   * Returns the connection metrics of this server.
+   *
+   * @return The metrics.
+   */
+  public SocketServerMetrics getMetrics() {
+    return metrics;
+  }
+
   /**
    * Checks if the server is running.
    *
@@ -209,8 +393,9 @@ public abstract class SocketServer<A extends SocketAddress, S extends Socket, V
         return;
       }
       if (connectionPool == null) {
-        connectionPool = new ForkJoinPool(maxConcurrentConnections,
-            ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        connectionPool = Objects.requireNonNull(executorServiceFactory.newExecutorService(
+            maxConcurrentConnections), "executorService");
+        connectionPermits = new Semaphore(maxConcurrentConnections);
       }
 
       Thread t = new Thread(SocketServer.this.toString() + " listening thread") {
@@ -281,6 +466,8 @@ public abstract class SocketServer<A extends SocketAddress, S extends Socket, V
   @SuppressWarnings("null")
   private void listen() throws IOException {
     V server = null;
+    Object mbeanName = null;
+    Thread[] acceptors = new Thread[acceptorThreads - 1];
     try {
       synchronized (this) {
         if (reuseSocket != null) {
@@ -306,86 +493,190 @@ public abstract class SocketServer<A extends SocketAddress, S extends Socket, V
       }
       server.setSoTimeout(serverTimeout);
 
+      mbeanName = metrics.registerMBean(listenAddress);
+      for (int i = 0; i < acceptors.length; i++) {
+        acceptors[i] = startAcceptorThread(server, i + 1);
+      }
       acceptLoop(server);
     } catch (SocketException e) {
       onSocketExceptionDuringAccept(e);
     } finally {
+      SocketServerMetrics.unregisterMBean(mbeanName);
       stop();
+      joinAcceptorThreads(acceptors);
       onServerStopped(server);
     }
   }
 
+  private Thread startAcceptorThread(V server, int num) {
+    Thread t = new Thread(SocketServer.this.toString() + " acceptor thread " + num) {
+      @Override
+      public void run() {
+        try {
+          acceptLoop(server);
+        } catch (SocketException e) {
+          onSocketExceptionDuringAccept(e);
+        } catch (Exception e) {
+          onListenException(e);
+        } catch (Throwable e) { // NOPMD
+          onListenException(e);
+        } finally {
+          try {
+            // stop the other acceptors, too
+            SocketServer.this.stop();
+          } catch (IOException e) {
+            onListenException(e);
+          }
+        }
+      }
+    };
+    t.start();
+    return t;
+  }
+
+  private static void joinAcceptorThreads(Thread[] acceptors) {
+    boolean interrupted = false;
+    for (Thread t : acceptors) {
+      if (t == null) {
+        continue;
+      }
+      while (true) { // NOPMD.WhileLoopWithLiteralBoolean
+        try {
+          t.join();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   @SuppressWarnings("PMD.CognitiveComplexity")
   @SuppressFBWarnings("NN_NAKED_NOTIFY")
   @SuppressLint("RESOURCE_LEAK")
   private void acceptLoop(V server) throws IOException {
-    long busyStartTime = 0;
+    final ExecutorService executor;
+    final Semaphore permits;
+    synchronized (this) {
+      executor = connectionPool;
+      permits = connectionPermits;
+    }
+
     acceptLoop : while (!stopRequested.get() && !Thread.interrupted()) {
       try {
-        while (!stopRequested.get() && connectionPool
-            .getActiveThreadCount() >= maxConcurrentConnections) {
-          if (busyStartTime == 0) {
-            busyStartTime = System.currentTimeMillis();
-          }
-          onServerBusy(busyStartTime);
-
-          synchronized (connectionsMonitor) {
-            try {
-              connectionsMonitor.wait(serverBusyTimeout);
-            } catch (InterruptedException e) {
-              throw (InterruptedIOException) new InterruptedIOException(
-                  "Interrupted while waiting on server resources").initCause(e);
-            }
-          }
-        }
-        busyStartTime = 0;
-
-        if (stopRequested.get() || server == null) {
+        if (!acquireConnectionPermit(permits)) {
           break;
         }
+        boolean submitted = false;
+        try {
+          if (stopRequested.get() || server == null) {
+            break;
+          }
 
-        synchronized (SocketServer.this) {
-          SocketServer.this.notifyAll();
-        }
-        ready.set(true);
-        onServerReady(connectionPool.getActiveThreadCount());
+          ready.set(true);
+          synchronized (SocketServer.this) {
+            SocketServer.this.notifyAll();
+          }
+          onServerReady(metrics.getActiveConnections());
 
-        final S socket;
-        try {
-          @SuppressWarnings("unchecked")
-          S theSocket = (S) server.accept();
-          socket = theSocket;
-        } catch (SocketException e) {
-          if (server.isClosed()) {
-            // already closed, ignore
-            break acceptLoop;
-          } else {
-            throw e;
+          final S socket;
+          final long acceptNanos;
+          try {
+            @SuppressWarnings("unchecked")
+            S theSocket = (S) server.accept();
+            socket = theSocket;
+            acceptNanos = System.nanoTime();
+            metrics.recordAccepted();
+          } catch (SocketException e) {
+            if (server.isClosed()) {
+              // already closed, ignore
+              break acceptLoop;
+            } else {
+              throw e;
+            }
+          }
+          try {
+            socket.setSoTimeout(socketTimeout);
+          } catch (SocketException e) {
+            // Connection closed before we could do anything
+            metrics.recordRejected();
+            onSocketExceptionAfterAccept(socket, e);
+            socket.close();
+
+            continue acceptLoop;
           }
-        }
-        try {
-          socket.setSoTimeout(socketTimeout);
-        } catch (SocketException e) {
-          // Connection closed before we could do anything
-          onSocketExceptionAfterAccept(socket, e);
-          socket.close();
 
-          continue acceptLoop;
+          Future<?> submission;
+          try {
+            submission = submit(socket, executor, permits, acceptNanos);
+          } catch (RejectedExecutionException e) {
+            metrics.recordRejected();
+            onSocketExceptionAfterAccept(socket, (SocketException) new SocketException(
+                "Executor rejected connection").initCause(e));
+            socket.close();
+            continue acceptLoop;
+          }
+          submitted = true;
+          onSubmitted(socket, submission);
+        } finally {
+          if (!submitted) {
+            permits.release();
+          }
         }
-
-        onSubmitted(socket, submit(socket, connectionPool));
       } catch (SocketTimeoutException e) {
-        if (!connectionPool.isQuiescent()) {
+        if (metrics.getActiveConnections() > 0) {
           continue acceptLoop;
         } else {
           onServerShuttingDown();
-          connectionPool.shutdown();
+          executor.shutdown();
+          synchronized (this) {
+            if (connectionPool == executor) {
+              connectionPool = null;
+            }
+          }
           break acceptLoop;
         }
       }
     }
   }
 
+  /**
+   * Waits until another connection may be served, calling {@link #onServerBusy(long)} every
+   * {@link #getServerBusyTimeout()} milliseconds while waiting.
+   *
+   * @param permits The connection permits.
+   * @return {@code true} if a permit was acquired, {@code false} if the server was stopped.
+   * @throws InterruptedIOException If the wait was interrupted.
+   */
+  private boolean acquireConnectionPermit(Semaphore permits) throws InterruptedIOException {
+    if (permits.tryAcquire()) {
+      return true;
+    }
+    long busyStartTime = System.currentTimeMillis();
+    long busyStartNanos = System.nanoTime();
+    try {
+      do {
+        if (stopRequested.get()) {
+          return false;
+        }
+        onServerBusy(busyStartTime);
+        if (serverBusyTimeout <= 0) {
+          permits.acquire();
+          return true;
+        }
+      } while (!permits.tryAcquire(serverBusyTimeout, TimeUnit.MILLISECONDS));
+    } catch (InterruptedException e) {
+      throw (InterruptedIOException) new InterruptedIOException(
+          "Interrupted while waiting on server resources").initCause(e);
+    } finally {
+      metrics.recordBusy(System.nanoTime() - busyStartNanos);
+    }
+    return true;
+  }
+
   /**
    * Stops the server.
    *
@@ -394,10 +685,16 @@ public abstract class SocketServer<A extends SocketAddress, S extends Socket, V
   @SuppressWarnings("null")
   @SuppressFBWarnings("NN_NAKED_NOTIFY")
   public void stop() throws IOException {
-    stopRequested.set(true);
+    boolean firstStop = !stopRequested.getAndSet(true);
     ready.set(false);
 
     synchronized (this) {
+      Semaphore permits = connectionPermits;
+      if (firstStop && permits != null) {
+        // wake up acceptors that wait for a permit; having been stopped, they don't accept any
+        // further connections, and the server cannot be restarted
+        permits.release(acceptorThreads);
+      }
       V theServerSocket = serverSocket;
       serverSocket = null;
       try {
@@ -417,32 +714,44 @@ public abstract class SocketServer<A extends SocketAddress, S extends Socket, V
     }
   }
 
-  private Future<?> submit(final S socket, ExecutorService executor) {
+  private Future<?> submit(final S socket, ExecutorService executor, Semaphore permits,
+      long acceptNanos) {
     Objects.requireNonNull(socket);
     return executor.submit(new Runnable() {
       @Override
       public void run() {
-        onBeforeServingSocket(socket);
-
-        try { // NOPMD
-          doServeSocket(socket);
-        } catch (Exception e) { // NOPMD
-          onServingException(socket, e); // NOPMD
-        } catch (Throwable t) { // NOPMD
-          onServingException(socket, t); // NOPMD
+        try {
+          serveSocket(socket, acceptNanos);
         } finally {
-          // Notify the server's accept thread that we handled the connection
-          synchronized (connectionsMonitor) {
-            connectionsMonitor.notifyAll();
-          }
-
-          doSocketClose(socket);
-          onAfterServingSocket(socket);
+          metrics.connectionClosed();
+          // Let the server's accept thread know that we handled the connection
+          permits.release();
         }
       }
     });
   }
 
+  private void serveSocket(S socket, long acceptNanos) {
+    onBeforeServingSocket(socket);
+
+    long serveStartNanos = System.nanoTime();
+    metrics.recordQueueWait(serveStartNanos - acceptNanos);
+    Throwable thrown = null;
+    try { // NOPMD
+      doServeSocket(socket);
+    } catch (Exception e) { // NOPMD
+      thrown = e;
+      onServingException(socket, e); // NOPMD
+    } catch (Throwable t) { // NOPMD
+      thrown = t;
+      onServingException(socket, t); // NOPMD
+    } finally {
+      metrics.recordServed(System.nanoTime() - serveStartNanos, thrown);
+      doSocketClose(socket);
+      onAfterServingSocket(socket);
+    }
+  }
+
   /**
    * Called upon closing a socket after serving the connection.
    * <p>
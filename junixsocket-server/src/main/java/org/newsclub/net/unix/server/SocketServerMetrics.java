@@ -0,0 +1,479 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.server;
+
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Connection statistics of a {@link SocketServer}; see {@link SocketServer#getMetrics()}.
+ *
+ * The metrics distinguish the time a connection waits before it is served (because the server is
+ * busy, see {@link #getBusyMillisTotal()}, or because the executor has no thread available, see
+ * {@link #getQueueWaitMicrosTotal()}) from the time spent serving it (see
+ * {@link #getServeDurationHistogram()}). Counters are only updated once or twice per connection,
+ * so the overhead is low; they are always enabled.
+ *
+ * If the system property {@code org.newsclub.net.unix.server.jmx} is set to {@code true}, the
+ * metrics of a running server are also registered as a JMX MBean, named
+ * {@value #OBJECT_NAME_PREFIX} followed by the quoted listen address. This requires the
+ * {@code java.management} module.
+ *
+ * @author Christian Kohlschütter
+ */
+public final class SocketServerMetrics implements SocketServerMetricsMBean {
+  /**
+   * The prefix of the JMX object name of a server's metrics.
+   */
+  public static final String OBJECT_NAME_PREFIX = "org.newsclub.net.unix.server:type=SocketServer,"
+      + "address=";
+
+  private static final boolean JMX_ENABLED = Boolean.parseBoolean(System.getProperty(
+      "org.newsclub.net.unix.server.jmx", "false"));
+
+  private static final long[] BUCKET_BOUNDS_MICROS = {
+      100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 60_000_000, Long.MAX_VALUE};
+
+  private final LongAdder accepted = new LongAdder();
+  private final LongAdder served = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder timedOut = new LongAdder();
+  private final LongAdder servingExceptions = new LongAdder();
+  private final LongAdder queueWaitNanos = new LongAdder();
+  private final AtomicLong queueWaitNanosMax = new AtomicLong();
+  private final LongAdder serveNanos = new LongAdder();
+  private final AtomicLong serveNanosMax = new AtomicLong();
+  private final LongAdder[] serveHistogram = new LongAdder[BUCKET_BOUNDS_MICROS.length];
+  private final LongAdder busyNanos = new LongAdder();
+  private final LongAdder busyPeriods = new LongAdder();
+  private final AtomicInteger active = new AtomicInteger();
+
+  private volatile long startNanos = System.nanoTime();
+
+  SocketServerMetrics() {
+    for (int i = 0; i < serveHistogram.length; i++) {
+      serveHistogram[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Returns the upper bounds (inclusive), in microseconds, of the buckets of
+   * {@link #getServeDurationHistogram()}. The last bucket is unbounded ({@link Long#MAX_VALUE}).
+   *
+   * @return The upper bounds.
+   */
+  public static long[] getServeDurationBucketBoundsMicros() {
+    return BUCKET_BOUNDS_MICROS.clone();
+  }
+
+  void recordAccepted() {
+    accepted.increment();
+    active.incrementAndGet();
+  }
+
+  void recordRejected() {
+    rejected.increment();
+    active.decrementAndGet();
+  }
+
+  void recordQueueWait(long nanos) {
+    queueWaitNanos.add(nanos);
+    queueWaitNanosMax.accumulateAndGet(nanos, Math::max);
+  }
+
+  void recordServed(long nanos, @Nullable Throwable t) {
+    served.increment();
+    if (t instanceof SocketTimeoutException) {
+      timedOut.increment();
+    } else if (t != null) {
+      servingExceptions.increment();
+    }
+    serveNanos.add(nanos);
+    serveNanosMax.accumulateAndGet(nanos, Math::max);
+
+    long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+    int bucket = 0;
+    while (micros > BUCKET_BOUNDS_MICROS[bucket]) {
+      bucket++;
+    }
+    serveHistogram[bucket].increment();
+  }
+
+  void recordBusy(long nanos) {
+    busyPeriods.increment();
+    busyNanos.add(nanos);
+  }
+
+  void connectionClosed() {
+    active.decrementAndGet();
+  }
+
+  /**
+   * Registers these metrics as a JMX MBean, if enabled.
+   *
+   * @param address The server's listen address.
+   * @return The (opaque) object name, or {@code null} if not registered.
+   */
+  @Nullable
+  Object registerMBean(Object address) {
+    if (!JMX_ENABLED) {
+      return null;
+    }
+    try {
+      return SocketServerMetricsJMX.registerMBean(this, address);
+    } catch (LinkageError e) {
+      // java.management not available
+      return null;
+    }
+  }
+
+  static void unregisterMBean(@Nullable Object name) {
+    if (name == null) {
+      return;
+    }
+    try {
+      SocketServerMetricsJMX.unregisterMBean(name);
+    } catch (LinkageError e) {
+      // ignore
+    }
+  }
+
+  /**
+   * Returns a point-in-time copy of these metrics.
+   *
+   * @return The snapshot.
+   */
+  public Snapshot snapshot() {
+    return new Snapshot(this);
+  }
+
+  @Override
+  public long getAcceptedConnections() {
+    return accepted.sum();
+  }
+
+  @Override
+  public double getAcceptRate() {
+    return rate(getAcceptedConnections(), System.nanoTime() - startNanos);
+  }
+
+  private static double rate(long count, long elapsedNanos) {
+    return elapsedNanos <= 0 ? 0 : count * 1_000_000_000.0 / elapsedNanos;
+  }
+
+  @Override
+  public long getServedConnections() {
+    return served.sum();
+  }
+
+  @Override
+  public int getActiveConnections() {
+    return active.get();
+  }
+
+  @Override
+  public long getRejectedConnections() {
+    return rejected.sum();
+  }
+
+  @Override
+  public long getTimedOutConnections() {
+    return timedOut.sum();
+  }
+
+  @Override
+  public long getServingExceptions() {
+    return servingExceptions.sum();
+  }
+
+  @Override
+  public long getQueueWaitMicrosTotal() {
+    return TimeUnit.NANOSECONDS.toMicros(queueWaitNanos.sum());
+  }
+
+  @Override
+  public long getQueueWaitMicrosMax() {
+    return TimeUnit.NANOSECONDS.toMicros(queueWaitNanosMax.get());
+  }
+
+  @Override
+  public long getServeMicrosTotal() {
+    return TimeUnit.NANOSECONDS.toMicros(serveNanos.sum());
+  }
+
+  @Override
+  public long getServeMicrosMax() {
+    return TimeUnit.NANOSECONDS.toMicros(serveNanosMax.get());
+  }
+
+  @Override
+  public long[] getServeDurationHistogram() {
+    long[] counts = new long[serveHistogram.length];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = serveHistogram[i].sum();
+    }
+    return counts;
+  }
+
+  @Override
+  public long getBusyMillisTotal() {
+    return TimeUnit.NANOSECONDS.toMillis(busyNanos.sum());
+  }
+
+  @Override
+  public long getBusyPeriods() {
+    return busyPeriods.sum();
+  }
+
+  @Override
+  public void reset() {
+    accepted.reset();
+    served.reset();
+    rejected.reset();
+    timedOut.reset();
+    servingExceptions.reset();
+    queueWaitNanos.reset();
+    queueWaitNanosMax.set(0);
+    serveNanos.reset();
+    serveNanosMax.set(0);
+    for (LongAdder adder : serveHistogram) {
+      adder.reset();
+    }
+    busyNanos.reset();
+    busyPeriods.reset();
+    startNanos = System.nanoTime();
+  }
+
+  @Override
+  public String toString() {
+    return snapshot().toString();
+  }
+
+  /**
+   * An immutable, point-in-time copy of {@link SocketServerMetrics}.
+   *
+   * Since the counters are updated concurrently, the values of a snapshot may not be perfectly
+   * consistent with each other.
+   */
+  public static final class Snapshot {
+    private final long elapsedNanos;
+    private final long acceptedConnections;
+    private final long servedConnections;
+    private final int activeConnections;
+    private final long rejectedConnections;
+    private final long timedOutConnections;
+    private final long servingExceptions;
+    private final long queueWaitMicrosTotal;
+    private final long queueWaitMicrosMax;
+    private final long serveMicrosTotal;
+    private final long serveMicrosMax;
+    private final long[] serveDurationHistogram;
+    private final long busyMillisTotal;
+    private final long busyPeriods;
+
+    private Snapshot(SocketServerMetrics m) {
+      this.elapsedNanos = System.nanoTime() - m.startNanos;
+      this.acceptedConnections = m.getAcceptedConnections();
+      this.servedConnections = m.getServedConnections();
+      this.activeConnections = m.getActiveConnections();
+      this.rejectedConnections = m.getRejectedConnections();
+      this.timedOutConnections = m.getTimedOutConnections();
+      this.servingExceptions = m.getServingExceptions();
+      this.queueWaitMicrosTotal = m.getQueueWaitMicrosTotal();
+      this.queueWaitMicrosMax = m.getQueueWaitMicrosMax();
+      this.serveMicrosTotal = m.getServeMicrosTotal();
+      this.serveMicrosMax = m.getServeMicrosMax();
+      this.serveDurationHistogram = m.getServeDurationHistogram();
+      this.busyMillisTotal = m.getBusyMillisTotal();
+      this.busyPeriods = m.getBusyPeriods();
+    }
+
+    /**
+     * Returns the time, in milliseconds, covered by this snapshot, i.e., since the metrics were
+     * created or last reset.
+     *
+     * @return The time.
+     */
+    public long getElapsedMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * See {@link SocketServerMetrics#getAcceptedConnections()}.
+     *
+     * @return The count.
+     */
+    public long getAcceptedConnections() {
+      return acceptedConnections;
+    }
+
+    /**
+     * See {@link SocketServerMetrics#getAcceptRate()}.
+     *
+     * @return The rate.
+     */
+    public double getAcceptRate() {
+      return rate(acceptedConnections, elapsedNanos);
+    }
+
+    /**
+     * See {@link SocketServerMetrics#getServedConnections()}.
+     *
+     * @return The count.
+     */
+    public long getServedConnections() {
+      return servedConnections;
+    }
+
+    /**
+     * See {@link SocketServerMetrics#getActiveConnections()}.
+     *
+     * @return The count.
+     */
+    public int getActiveConnections() {
+      return activeConnections;
+    }
+
+    /**
+     * See {@link SocketServerMetrics#getRejectedConnections()}.
+     *
+     * @return The count.
+     */
+    public long getRejectedConnections() {
+      return rejectedConnections;
+    }
+
+    /**
+     * See {@link SocketServerMetrics#getTimedOutConnections()}.
+     *
+     * @return The count.
+     */
+    public long getTimedOutConnections() {
+      return timedOutConnections;
+    }
+
+    /**
+     * See {@link SocketServerMetrics#getServingExceptions()}.
+     *
+     * @return The count.
+     */
+    public long getServingExceptions() {
+      return servingExceptions;
+    }
+
+    /**
+     * See {@link SocketServerMetrics#getQueueWaitMicrosTotal()}.
+     *
+     * @return The total time.
+     */
+    public long getQueueWaitMicrosTotal() {
+      return queueWaitMicrosTotal;
+    }
+
+    /**
+     * See {@link SocketServerMetrics#getQueueWaitMicrosMax()}.
+     *
+     * @return The maximum time.
+     */
+    public long getQueueWaitMicrosMax() {
+      return queueWaitMicrosMax;
+    }
+
+    /**
+     * Returns the average time, in microseconds, that a served connection spent between being
+     * accepted and being served.
+     *
+     * @return The average time.
+     */
+    public double getQueueWaitMicrosMean() {
+      return servedConnections == 0 ? 0 : (double) queueWaitMicrosTotal / servedConnections;
+    }
+
+    /**
+     * See {@link SocketServerMetrics#getServeMicrosTotal()}.
+     *
+     * @return The total time.
+     */
+    public long getServeMicrosTotal() {
+      return serveMicrosTotal;
+    }
+
+    /**
+     * See {@link SocketServerMetrics#getServeMicrosMax()}.
+     *
+     * @return The maximum time.
+     */
+    public long getServeMicrosMax() {
+      return serveMicrosMax;
+    }
+
+    /**
+     * Returns the average time, in microseconds, spent serving a connection.
+     *
+     * @return The average time.
+     */
+    public double getServeMicrosMean() {
+      return servedConnections == 0 ? 0 : (double) serveMicrosTotal / servedConnections;
+    }
+
+    /**
+     * See {@link SocketServerMetrics#getServeDurationHistogram()}.
+     *
+     * @return The counts, one per bucket.
+     */
+    public long[] getServeDurationHistogram() {
+      return serveDurationHistogram.clone();
+    }
+
+    /**
+     * See {@link SocketServerMetrics#getBusyMillisTotal()}.
+     *
+     * @return The total time.
+     */
+    public long getBusyMillisTotal() {
+      return busyMillisTotal;
+    }
+
+    /**
+     * See {@link SocketServerMetrics#getBusyPeriods()}.
+     *
+     * @return The count.
+     */
+    public long getBusyPeriods() {
+      return busyPeriods;
+    }
+
+    @Override
+    public String toString() {
+      return "accepted=" + acceptedConnections + ";acceptRate=" + String.format(Locale.ENGLISH,
+          "%.1f", getAcceptRate()) + ";served=" + servedConnections
+          + ";active=" + activeConnections + ";rejected=" + rejectedConnections + ";timedOut="
+          + timedOutConnections + ";exceptions=" + servingExceptions + ";queueWaitMicrosMax="
+          + queueWaitMicrosMax + ";serveMicrosMax=" + serveMicrosMax + ";serveHistogram="
+          + Arrays.toString(serveDurationHistogram) + ";busyMillis=" + busyMillisTotal
+          + ";busyPeriods=" + busyPeriods;
+    }
+  }
+}
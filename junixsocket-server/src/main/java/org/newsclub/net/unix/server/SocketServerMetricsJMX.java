@@ -0,0 +1,71 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.server;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Registers {@link SocketServerMetrics} with JMX; only used via
+ * {@link SocketServerMetrics#registerMBean(Object)}, which handles a missing
+ * {@code java.management} module.
+ *
+ * @author Christian Kohlschütter
+ */
+final class SocketServerMetricsJMX {
+  private SocketServerMetricsJMX() {
+    throw new IllegalStateException("No instances");
+  }
+
+  /**
+   * Registers the given metrics as an MBean with the platform MBean server.
+   *
+   * @param metrics The metrics.
+   * @param address The server's listen address.
+   * @return The object name, or {@code null} if not registered.
+   */
+  static @Nullable Object registerMBean(SocketServerMetrics metrics, Object address) {
+    try {
+      ObjectName name = new ObjectName(SocketServerMetrics.OBJECT_NAME_PREFIX + ObjectName.quote(
+          String.valueOf(address)));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+      return name;
+    } catch (JMException | SecurityException e) {
+      // another server may already be registered under this name
+      return null;
+    }
+  }
+
+  /**
+   * Unregisters an MBean that was registered via {@link #registerMBean(SocketServerMetrics,
+   * Object)}.
+   *
+   * @param name The object name.
+   */
+  static void unregisterMBean(Object name) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean((ObjectName) name);
+    } catch (JMException | SecurityException e) {
+      // ignore
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.server;
+
+/**
+ * The JMX management interface of {@link SocketServerMetrics}.
+ *
+ * @author Christian Kohlschütter
+ */
+public interface SocketServerMetricsMBean {
+  /**
+   * Returns the number of accepted connections.
+   *
+   * @return The count.
+   */
+  long getAcceptedConnections();
+
+  /**
+   * Returns the average number of accepted connections per second, since the metrics were created
+   * or last reset.
+   *
+   * @return The rate.
+   */
+  double getAcceptRate();
+
+  /**
+   * Returns the number of connections that have been served, successfully or not.
+   *
+   * @return The count.
+   */
+  long getServedConnections();
+
+  /**
+   * Returns the number of connections that have been accepted and not yet been served completely.
+   *
+   * @return The count.
+   */
+  int getActiveConnections();
+
+  /**
+   * Returns the number of connections that were closed after accept without being served, because
+   * the socket could not be configured, or the executor rejected the connection.
+   *
+   * @return The count.
+   */
+  long getRejectedConnections();
+
+  /**
+   * Returns the number of connections whose serving ended with a socket timeout.
+   *
+   * @return The count.
+   */
+  long getTimedOutConnections();
+
+  /**
+   * Returns the number of connections whose serving ended with any other exception.
+   *
+   * @return The count.
+   */
+  long getServingExceptions();
+
+  /**
+   * Returns the total time, in microseconds, that connections spent between being accepted and
+   * being served, i.e., waiting for the executor.
+   *
+   * @return The total time.
+   */
+  long getQueueWaitMicrosTotal();
+
+  /**
+   * Returns the longest time, in microseconds, that a connection spent between being accepted and
+   * being served.
+   *
+   * @return The maximum time.
+   */
+  long getQueueWaitMicrosMax();
+
+  /**
+   * Returns the total time, in microseconds, spent serving connections.
+   *
+   * @return The total time.
+   */
+  long getServeMicrosTotal();
+
+  /**
+   * Returns the longest time, in microseconds, spent serving a single connection.
+   *
+   * @return The maximum time.
+   */
+  long getServeMicrosMax();
+
+  /**
+   * Returns the number of served connections per serve duration bucket; see
+   * {@link SocketServerMetrics#getServeDurationBucketBoundsMicros()}.
+   *
+   * @return The counts, one per bucket.
+   */
+  long[] getServeDurationHistogram();
+
+  /**
+   * Returns the total time, in milliseconds, the server was busy, i.e., waited for a connection to
+   * finish before accepting another one, because it was serving the maximum number of concurrent
+   * connections.
+   *
+   * @return The total time.
+   */
+  long getBusyMillisTotal();
+
+  /**
+   * Returns how often the server became busy.
+   *
+   * @return The count.
+   */
+  long getBusyPeriods();
+
+  /**
+   * Resets all counters to zero; the number of active connections is not affected.
+   */
+  void reset();
+}
@@ -0,0 +1,277 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.newsclub.net.unix.AFSocketChannel;
+import org.newsclub.net.unix.AFUNIXSocket;
+import org.newsclub.net.unix.AFUNIXSocketAddress;
+
+public class AFSelectorSocketServerTest {
+  /**
+   * Echoes everything it reads; stops reading while a response cannot be written completely.
+   */
+  private static final class EchoHandler implements
+      AFSelectorSocketServer.ConnectionHandler<AFUNIXSocketAddress> {
+    private final ByteBuffer buf = ByteBuffer.allocate(1024);
+
+    @Override
+    public void onReadable(AFSelectorSocketServer.Connection<AFUNIXSocketAddress> conn)
+        throws IOException {
+      if (conn.read(buf) > 0) {
+        flush(conn);
+      }
+    }
+
+    @Override
+    public void onWritable(AFSelectorSocketServer.Connection<AFUNIXSocketAddress> conn)
+        throws IOException {
+      flush(conn);
+    }
+
+    private void flush(AFSelectorSocketServer.Connection<AFUNIXSocketAddress> conn)
+        throws IOException {
+      buf.flip();
+      conn.getChannel().write(buf);
+      buf.compact();
+      boolean pending = buf.position() > 0;
+      conn.setReadInterest(!pending);
+      conn.setWriteInterest(pending);
+    }
+  }
+
+  private static final class EchoServer extends AFSelectorSocketServer<AFUNIXSocketAddress> {
+    EchoServer(AFUNIXSocketAddress listenAddress) {
+      super(listenAddress);
+    }
+
+    @Override
+    protected ConnectionHandler<AFUNIXSocketAddress> newConnectionHandler(
+        Connection<AFUNIXSocketAddress> conn) throws IOException {
+      return new EchoHandler();
+    }
+  }
+
+  @Test
+  public void testAcceptReadWrite() throws Exception {
+    EchoServer server = new EchoServer(AFUNIXSocketAddress.ofNewTempFile());
+    server.setAcceptorThreads(2);
+    server.setEventLoopThreads(2);
+    try {
+      assertTrue(server.startAndWaitToBecomeReady(5, TimeUnit.SECONDS));
+
+      // more data than fits into the handler's buffer, so write interest is needed
+      byte[] data = new byte[256 * 1024];
+      for (int i = 0; i < data.length; i++) {
+        data[i] = (byte) i;
+      }
+      for (int c = 0; c < 4; c++) {
+        try (AFUNIXSocket sock = AFUNIXSocket.connectTo(server.getListenAddress())) {
+          Thread writer = new Thread(() -> {
+            try {
+              sock.getOutputStream().write(data);
+            } catch (IOException e) {
+              // the read below fails
+            }
+          });
+          writer.start();
+
+          byte[] echo = new byte[data.length];
+          InputStream in = sock.getInputStream();
+          int off = 0;
+          int count;
+          while (off < echo.length && (count = in.read(echo, off, echo.length - off)) != -1) {
+            off += count;
+          }
+          writer.join();
+          assertArrayEquals(data, echo);
+        }
+      }
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testPeerHangupWithPendingData() throws Exception {
+    CountDownLatch hungUp = new CountDownLatch(1);
+    CountDownLatch closed = new CountDownLatch(1);
+    ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+    AFSelectorSocketServer<AFUNIXSocketAddress> server =
+        new AFSelectorSocketServer<AFUNIXSocketAddress>(AFUNIXSocketAddress.ofNewTempFile()) {
+          @Override
+          protected ConnectionHandler<AFUNIXSocketAddress> newConnectionHandler(
+              Connection<AFUNIXSocketAddress> conn) throws IOException {
+            try {
+              // only register the connection once the peer has sent its data and hung up
+              assertTrue(hungUp.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+              throw new IOException(e);
+            }
+            return new ConnectionHandler<AFUNIXSocketAddress>() {
+              private final ByteBuffer buf = ByteBuffer.allocate(3);
+
+              @Override
+              public void onReadable(Connection<AFUNIXSocketAddress> c) throws IOException {
+                while (c.read(buf) > 0) {
+                  buf.flip();
+                  synchronized (received) {
+                    received.write(buf.array(), 0, buf.limit());
+                  }
+                  buf.clear();
+                }
+              }
+
+              @Override
+              public void onClosed(Connection<AFUNIXSocketAddress> c) {
+                closed.countDown();
+              }
+            };
+          }
+        };
+    server.setEventLoopThreads(1);
+    try {
+      assertTrue(server.startAndWaitToBecomeReady(5, TimeUnit.SECONDS));
+
+      byte[] data = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+      try (AFUNIXSocket sock = AFUNIXSocket.connectTo(server.getListenAddress())) {
+        OutputStream out = sock.getOutputStream();
+        out.write(data);
+        out.flush();
+      }
+      hungUp.countDown();
+
+      assertTrue(closed.await(5, TimeUnit.SECONDS));
+      synchronized (received) {
+        assertArrayEquals(data, received.toByteArray());
+      }
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testStop() throws Exception {
+    EchoServer server = new EchoServer(AFUNIXSocketAddress.ofNewTempFile());
+    assertTrue(server.startAndWaitToBecomeReady(5, TimeUnit.SECONDS));
+    try (AFUNIXSocket sock = AFUNIXSocket.connectTo(server.getListenAddress())) {
+      sock.getOutputStream().write(42);
+      assertEquals(42, sock.getInputStream().read());
+
+      server.stop();
+      // the server closes the connection
+      assertEquals(-1, sock.getInputStream().read());
+    }
+    long deadline = System.currentTimeMillis() + 5000;
+    while (server.isRunning() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertFalse(server.isRunning());
+    assertEquals(0, server.getActiveConnections());
+  }
+
+  @Test
+  public void testServingHooksCalledInPairs() throws Exception {
+    CountDownLatch reading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch submitted = new CountDownLatch(2);
+    AtomicInteger before = new AtomicInteger();
+    AtomicInteger after = new AtomicInteger();
+
+    AFSelectorSocketServer<AFUNIXSocketAddress> server =
+        new AFSelectorSocketServer<AFUNIXSocketAddress>(AFUNIXSocketAddress.ofNewTempFile()) {
+          @Override
+          protected ConnectionHandler<AFUNIXSocketAddress> newConnectionHandler(
+              Connection<AFUNIXSocketAddress> conn) throws IOException {
+            return new ConnectionHandler<AFUNIXSocketAddress>() {
+              @Override
+              public void onReadable(Connection<AFUNIXSocketAddress> c) throws IOException {
+                c.read(ByteBuffer.allocate(1));
+
+                // keep the event loop busy, so the next connection stays pending
+                reading.countDown();
+                try {
+                  assertTrue(release.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                  throw new IOException(e);
+                }
+              }
+            };
+          }
+
+          @Override
+          protected void onSubmitted(AFSocketChannel<AFUNIXSocketAddress> channel) {
+            submitted.countDown();
+          }
+
+          @Override
+          protected void onBeforeServingSocket(AFSocketChannel<AFUNIXSocketAddress> channel) {
+            before.incrementAndGet();
+          }
+
+          @Override
+          protected void onAfterServingSocket(AFSocketChannel<AFUNIXSocketAddress> channel) {
+            after.incrementAndGet();
+          }
+        };
+    server.setEventLoopThreads(1);
+    try {
+      assertTrue(server.startAndWaitToBecomeReady(5, TimeUnit.SECONDS));
+      try (AFUNIXSocket sock1 = AFUNIXSocket.connectTo(server.getListenAddress())) {
+        sock1.getOutputStream().write(42);
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+
+        try (AFUNIXSocket sock2 = AFUNIXSocket.connectTo(server.getListenAddress())) {
+          assertTrue(submitted.await(5, TimeUnit.SECONDS));
+
+          server.stop();
+          release.countDown();
+
+          // both connections are closed, but only the first one has been served
+          assertEquals(-1, sock1.getInputStream().read());
+          assertEquals(-1, sock2.getInputStream().read());
+        }
+      }
+      long deadline = System.currentTimeMillis() + 5000;
+      while (server.isRunning() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertFalse(server.isRunning());
+      assertEquals(1, before.get());
+      assertEquals(1, after.get());
+    } finally {
+      release.countDown();
+      server.stop();
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+import org.newsclub.net.unix.AFSocket;
+import org.newsclub.net.unix.AFUNIXSocket;
+import org.newsclub.net.unix.AFUNIXSocketAddress;
+
+public class SocketServerMetricsTest {
+  private static long micros(long micros) {
+    return TimeUnit.MICROSECONDS.toNanos(micros);
+  }
+
+  @Test
+  public void testHistogramBuckets() throws Exception {
+    SocketServerMetrics metrics = new SocketServerMetrics();
+
+    // bucket bounds are inclusive
+    metrics.recordServed(micros(0), null);
+    metrics.recordServed(micros(100), null);
+    metrics.recordServed(micros(101), null);
+    metrics.recordServed(micros(10_000), null);
+    metrics.recordServed(micros(60_000_000), null);
+    metrics.recordServed(micros(60_000_001), null);
+    metrics.recordServed(Long.MAX_VALUE, null);
+
+    assertArrayEquals(new long[] {2, 1, 1, 0, 0, 0, 1, 2}, metrics.getServeDurationHistogram());
+    assertEquals(7, metrics.getServedConnections());
+    assertEquals(TimeUnit.NANOSECONDS.toMicros(Long.MAX_VALUE), metrics.getServeMicrosMax());
+    assertEquals(SocketServerMetrics.getServeDurationBucketBoundsMicros().length, metrics
+        .getServeDurationHistogram().length);
+  }
+
+  @Test
+  public void testCounters() throws Exception {
+    SocketServerMetrics metrics = new SocketServerMetrics();
+
+    metrics.recordAccepted();
+    metrics.recordAccepted();
+    metrics.recordAccepted();
+    assertEquals(3, metrics.getActiveConnections());
+
+    metrics.recordRejected();
+    assertEquals(2, metrics.getActiveConnections());
+
+    metrics.recordQueueWait(micros(5));
+    metrics.recordQueueWait(micros(7));
+    metrics.recordServed(micros(1), new SocketTimeoutException());
+    metrics.recordServed(micros(1), new IOException());
+    metrics.connectionClosed();
+    metrics.connectionClosed();
+    metrics.recordBusy(TimeUnit.MILLISECONDS.toNanos(20));
+
+    SocketServerMetrics.Snapshot snapshot = metrics.snapshot();
+    assertEquals(3, snapshot.getAcceptedConnections());
+    assertEquals(1, snapshot.getRejectedConnections());
+    assertEquals(2, snapshot.getServedConnections());
+    assertEquals(0, snapshot.getActiveConnections());
+    assertEquals(1, snapshot.getTimedOutConnections());
+    assertEquals(1, snapshot.getServingExceptions());
+    assertEquals(12, snapshot.getQueueWaitMicrosTotal());
+    assertEquals(7, snapshot.getQueueWaitMicrosMax());
+    assertEquals(20, snapshot.getBusyMillisTotal());
+    assertEquals(1, snapshot.getBusyPeriods());
+
+    metrics.reset();
+    assertEquals(0, metrics.getAcceptedConnections());
+    assertEquals(0, metrics.getServedConnections());
+    assertEquals(0, metrics.getBusyPeriods());
+    assertArrayEquals(new long[SocketServerMetrics.getServeDurationBucketBoundsMicros().length],
+        metrics.getServeDurationHistogram());
+    // the snapshot is not affected
+    assertEquals(3, snapshot.getAcceptedConnections());
+  }
+
+  @Test
+  public void testServerMetrics() throws Exception {
+    AFSocketServer<AFUNIXSocketAddress> server = new AFSocketServer<AFUNIXSocketAddress>(
+        AFUNIXSocketAddress.ofNewTempFile()) {
+      @Override
+      protected void doServeSocket(AFSocket<? extends AFUNIXSocketAddress> socket)
+          throws IOException {
+        int b = socket.getInputStream().read();
+        if (b == 1) {
+          throw new IOException("Expected exception");
+        } else if (b == 2) {
+          try {
+            Thread.sleep(150);
+          } catch (InterruptedException e) {
+            throw new IOException(e);
+          }
+        }
+      }
+    };
+    SocketServerMetrics metrics = server.getMetrics();
+    try {
+      assertTrue(server.startAndWaitToBecomeReady(5, TimeUnit.SECONDS));
+
+      for (int b : new int[] {0, 0, 0, 1, 2}) {
+        try (AFUNIXSocket sock = AFUNIXSocket.connectTo(server.getListenAddress())) {
+          sock.setSoTimeout(5000);
+          sock.getOutputStream().write(b);
+          assertEquals(-1, sock.getInputStream().read());
+        }
+      }
+
+      // the connection is counted as closed right after the server has closed the socket
+      long deadline = System.currentTimeMillis() + 5000;
+      while (metrics.getActiveConnections() > 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+
+      SocketServerMetrics.Snapshot snapshot = metrics.snapshot();
+      assertEquals(5, snapshot.getAcceptedConnections());
+      assertEquals(5, snapshot.getServedConnections());
+      assertEquals(0, snapshot.getActiveConnections());
+      assertEquals(0, snapshot.getRejectedConnections());
+      assertEquals(1, snapshot.getServingExceptions());
+      assertTrue(snapshot.getServeMicrosMax() >= 150_000);
+
+      long[] histogram = snapshot.getServeDurationHistogram();
+      long sum = 0;
+      for (long count : histogram) {
+        sum += count;
+      }
+      assertEquals(5, sum);
+      // 100 ms < 150 ms <= 1 s
+      assertTrue(histogram[4] >= 1);
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testJMX() throws Exception {
+    // java.management is an optional dependency
+    assumeTrue(ModuleLayer.boot().findModule("java.management").isPresent(),
+        "java.management not available");
+
+    SocketServerMetrics metrics = new SocketServerMetrics();
+    metrics.recordAccepted();
+
+    Object name = SocketServerMetricsJMX.registerMBean(metrics, "test-" + System.nanoTime());
+    assertNotNull(name);
+    MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+    try {
+      assertEquals(1L, mbs.getAttribute((ObjectName) name, "AcceptedConnections"));
+      assertEquals(1, mbs.getAttribute((ObjectName) name, "ActiveConnections"));
+    } finally {
+      SocketServerMetricsJMX.unregisterMBean(name);
+    }
+    assertFalse(mbs.isRegistered((ObjectName) name));
+  }
+}
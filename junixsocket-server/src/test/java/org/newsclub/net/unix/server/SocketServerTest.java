@@ -0,0 +1,277 @@
+/*
+ * junixsocket
+ *
+ * Copyright 2009-2023 Christian Kohlschütter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.newsclub.net.unix.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.newsclub.net.unix.AFServerSocket;
+import org.newsclub.net.unix.AFSocket;
+import org.newsclub.net.unix.AFUNIXSocket;
+import org.newsclub.net.unix.AFUNIXSocketAddress;
+
+public class SocketServerTest {
+  /**
+   * A server that calls the given handler for every connection, and counts down a latch once it
+   * has stopped.
+   */
+  private static class TestServer extends AFSocketServer<AFUNIXSocketAddress> {
+    private final SocketHandler handler;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final CountDownLatch busy = new CountDownLatch(1);
+
+    TestServer(SocketHandler handler) throws IOException {
+      super(AFUNIXSocketAddress.ofNewTempFile());
+      this.handler = handler;
+    }
+
+    @Override
+    protected void doServeSocket(AFSocket<? extends AFUNIXSocketAddress> socket)
+        throws IOException {
+      handler.serve(socket);
+    }
+
+    @Override
+    protected void onServerBusy(long busyStartTime) {
+      busy.countDown();
+    }
+
+    @Override
+    protected void onServerStopped(AFServerSocket<? extends AFUNIXSocketAddress> socket) {
+      stopped.countDown();
+    }
+  }
+
+  @FunctionalInterface
+  private interface SocketHandler {
+    void serve(AFSocket<? extends AFUNIXSocketAddress> socket) throws IOException;
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Connects to the given server, and waits until the server has closed the connection.
+   *
+   * @param server The server.
+   * @throws IOException on error.
+   */
+  private static void connectAndAwaitClose(TestServer server) throws IOException {
+    try (AFUNIXSocket sock = AFUNIXSocket.connectTo(server.getListenAddress())) {
+      sock.setSoTimeout(5000);
+      assertEquals(-1, sock.getInputStream().read());
+    }
+  }
+
+  @Test
+  public void testMaxConcurrentConnections() throws Exception {
+    Semaphore started = new Semaphore(0);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger concurrent = new AtomicInteger();
+    AtomicInteger maxConcurrent = new AtomicInteger();
+
+    TestServer server = new TestServer((sock) -> {
+      maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+      try {
+        started.release();
+        awaitUninterruptibly(release);
+      } finally {
+        concurrent.decrementAndGet();
+      }
+    });
+    server.setMaxConcurrentConnections(2);
+
+    List<AFUNIXSocket> clients = new ArrayList<>();
+    try {
+      assertTrue(server.startAndWaitToBecomeReady(5, TimeUnit.SECONDS));
+      for (int i = 0; i < 3; i++) {
+        clients.add(AFUNIXSocket.connectTo(server.getListenAddress()));
+      }
+
+      assertTrue(started.tryAcquire(2, 5, TimeUnit.SECONDS));
+      // the third connection waits in the backlog until a permit becomes available
+      assertFalse(started.tryAcquire(200, TimeUnit.MILLISECONDS));
+
+      release.countDown();
+      assertTrue(started.tryAcquire(5, TimeUnit.SECONDS));
+      assertEquals(2, maxConcurrent.get());
+    } finally {
+      release.countDown();
+      for (AFUNIXSocket sock : clients) {
+        sock.close();
+      }
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testPermitReleasedAfterExceptionAndClose() throws Exception {
+    AtomicInteger count = new AtomicInteger();
+    CountDownLatch served = new CountDownLatch(2);
+
+    TestServer server = new TestServer((sock) -> {
+      if (count.getAndIncrement() == 0) {
+        throw new IOException("Expected exception");
+      }
+      served.countDown();
+    });
+    server.setMaxConcurrentConnections(1);
+    try {
+      assertTrue(server.startAndWaitToBecomeReady(5, TimeUnit.SECONDS));
+
+      // with only one permit, each connection is only served if the previous one returned it
+      connectAndAwaitClose(server); // throws
+      connectAndAwaitClose(server);
+      connectAndAwaitClose(server);
+
+      assertTrue(served.await(5, TimeUnit.SECONDS));
+      assertEquals(3, count.get());
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testStopWakesAcceptorWaitingForPermit() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    TestServer server = new TestServer((sock) -> {
+      started.countDown();
+      awaitUninterruptibly(release);
+    });
+    server.setMaxConcurrentConnections(1);
+    server.setServerBusyTimeout(0); // wait for a permit without timeout
+    try {
+      assertTrue(server.startAndWaitToBecomeReady(5, TimeUnit.SECONDS));
+      try (AFUNIXSocket sock = AFUNIXSocket.connectTo(server.getListenAddress())) {
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // the acceptor now waits for the permit held by the connection above
+        assertTrue(server.busy.await(5, TimeUnit.SECONDS));
+
+        server.stop();
+        assertTrue(server.stopped.await(5, TimeUnit.SECONDS));
+      }
+    } finally {
+      release.countDown();
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testMultipleAcceptors() throws Exception {
+    Set<Thread> acceptors = ConcurrentHashMap.newKeySet();
+    CountDownLatch allAcceptorsUsed = new CountDownLatch(3);
+    CountDownLatch served = new CountDownLatch(3);
+
+    TestServer server = new TestServer((sock) -> served.countDown()) {
+      @Override
+      protected void onSubmitted(AFSocket<? extends AFUNIXSocketAddress> socket,
+          Future<?> submission) {
+        if (acceptors.add(Thread.currentThread())) {
+          allAcceptorsUsed.countDown();
+        }
+        // keep this acceptor busy, so the next connection is accepted by another one
+        awaitUninterruptibly(allAcceptorsUsed);
+      }
+    };
+    server.setAcceptorThreads(3);
+    server.setMaxConcurrentConnections(4);
+    try {
+      assertTrue(server.startAndWaitToBecomeReady(5, TimeUnit.SECONDS));
+      for (int i = 0; i < 3; i++) {
+        connectAndAwaitClose(server);
+      }
+      assertTrue(served.await(5, TimeUnit.SECONDS));
+      assertEquals(3, acceptors.size());
+    } finally {
+      server.stop();
+    }
+
+    assertTrue(server.stopped.await(5, TimeUnit.SECONDS));
+    for (Thread t : acceptors) {
+      t.join(5000);
+      assertFalse(t.isAlive(), t.getName());
+    }
+    assertFalse(server.isRunning());
+  }
+
+  @Test
+  public void testExecutorServiceFactory() throws Exception {
+    AtomicInteger maxConnections = new AtomicInteger();
+    CountDownLatch served = new CountDownLatch(1);
+
+    TestServer server = new TestServer((sock) -> served.countDown());
+    server.setMaxConcurrentConnections(3);
+    server.setExecutorServiceFactory((max) -> {
+      maxConnections.set(max);
+      return SocketServer.forkJoinPoolFactory().newExecutorService(max);
+    });
+    try {
+      assertTrue(server.startAndWaitToBecomeReady(5, TimeUnit.SECONDS));
+      connectAndAwaitClose(server);
+      assertTrue(served.await(5, TimeUnit.SECONDS));
+      assertEquals(3, maxConnections.get());
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testVirtualThreadFactory() throws Exception {
+    ExecutorService executor = SocketServer.virtualThreadFactory().newExecutorService(2);
+    try {
+      // falls back to a ForkJoinPool if virtual threads are not supported
+      assertEquals(!SocketServer.isVirtualThreadSupported(), executor instanceof ForkJoinPool);
+    } finally {
+      executor.shutdown();
+    }
+
+    CountDownLatch served = new CountDownLatch(2);
+    TestServer server = new TestServer((sock) -> served.countDown());
+    server.setExecutorServiceFactory(SocketServer.virtualThreadFactory());
+    try {
+      assertTrue(server.startAndWaitToBecomeReady(5, TimeUnit.SECONDS));
+      connectAndAwaitClose(server);
+      connectAndAwaitClose(server);
+      assertTrue(served.await(5, TimeUnit.SECONDS));
+    } finally {
+      server.stop();
+    }
+  }
+}